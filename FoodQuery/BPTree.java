@@ -18,9 +18,11 @@ package application;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Queue;
 
 /**
@@ -84,10 +86,138 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
 			newRoot.children.add(newChild);
 			newRoot.children.add(this.root);
 			newRoot.keys.add(rootKey);
+			newRoot.recount();
 			this.root = newRoot;
 		}
 	}
 
+	/**
+	 * Removes one key-value pair from the tree. Nodes that become too small on
+	 * the way back up borrow a key from a sibling, or are merged with one when
+	 * neither sibling has a key to spare.
+	 * 
+	 * Note: if several pairs match, only one of them is removed.
+	 * 
+	 * @param key
+	 *            The K key of the pair to remove
+	 * @param value
+	 *            The V value of the pair to remove
+	 * @return true if a pair was removed, false if no pair matched
+	 */
+	@Override
+	public boolean remove(K key, V value) {
+		if (key == null) {
+			return false;
+		}
+
+		boolean removed = this.root.remove(key, value);
+
+		// an internal root left with a single child is replaced by that child
+		if (this.root instanceof BPTree.InternalNode && this.root.keys.isEmpty()) {
+			this.root = ((InternalNode) this.root).children.get(0);
+		}
+		return removed;
+	}
+
+	/**
+	 * Moves a value from one key to another, as a remove of (oldKey, value)
+	 * followed by an insert of (newKey, value)
+	 * 
+	 * @param oldKey
+	 *            The K key the value is currently stored under
+	 * @param newKey
+	 *            The K key to store the value under
+	 * @param value
+	 *            The V value to move
+	 * @return true if the value was moved, false if no pair matched
+	 */
+	@Override
+	public boolean update(K oldKey, K newKey, V value) {
+		if (newKey == null || !remove(oldKey, value)) {
+			return false;
+		}
+		insert(newKey, value);
+		return true;
+	}
+
+	/**
+	 * Replaces the contents of the tree with the given key-value pairs. Leaves are
+	 * packed directly from the sorted pairs and each internal level is then built
+	 * from the level below it, so loading n pairs costs O(n) instead of n
+	 * separate inserts with their repeated splits.
+	 * 
+	 * @param keys
+	 *            The K keys to load, sorted in ascending order
+	 * @param values
+	 *            The V value of each key, in the same order as keys
+	 * @throws IllegalArgumentException
+	 *             if keys and values differ in size or keys are not sorted
+	 */
+	public void bulkLoad(List<K> keys, List<V> values) {
+		if (keys.size() != values.size()) {
+			throw new IllegalArgumentException("Keys and values differ in size: " + keys.size() + " != " + values.size());
+		}
+
+		// copy into array lists so the loops below get constant time access
+		List<K> keyList = new ArrayList<K>(keys);
+		List<V> valueList = new ArrayList<V>(values);
+		for (int i = 1; i < keyList.size(); i++) {
+			if (keyList.get(i).compareTo(keyList.get(i - 1)) < 0) {
+				throw new IllegalArgumentException("Keys must be sorted in ascending order");
+			}
+		}
+
+		int n = keyList.size();
+		if (n == 0) {
+			this.root = new LeafNode();
+			return;
+		}
+
+		// spread the pairs evenly over the fewest leaves that can hold them
+		int leafCount = (n + branchingFactor - 2) / (branchingFactor - 1);
+		List<Node> level = new ArrayList<Node>(leafCount);
+		LeafNode previous = null;
+		int from = 0;
+		for (int l = 0; l < leafCount; l++) {
+			int to = (int) ((long) n * (l + 1) / leafCount);
+			LeafNode leaf = new LeafNode();
+			leaf.keys.addAll(keyList.subList(from, to));
+			leaf.values.addAll(valueList.subList(from, to));
+
+			// links the leaf chain as we go
+			leaf.previous = previous;
+			if (previous != null) {
+				previous.next = leaf;
+			}
+			previous = leaf;
+			level.add(leaf);
+			from = to;
+		}
+
+		// build each internal level from the one below until one node is left
+		while (level.size() > 1) {
+			int parentCount = (level.size() + branchingFactor - 1) / branchingFactor;
+			List<Node> parents = new ArrayList<Node>(parentCount);
+			from = 0;
+			for (int p = 0; p < parentCount; p++) {
+				int to = (int) ((long) level.size() * (p + 1) / parentCount);
+				InternalNode parent = new InternalNode();
+				for (int c = from; c < to; c++) {
+					parent.children.add(level.get(c));
+					if (c > from) {
+						parent.keys.add(level.get(c).getFirstLeafKey());
+					}
+				}
+				parent.recount();
+				parents.add(parent);
+				from = to;
+			}
+			level = parents;
+		}
+
+		this.root = level.get(0);
+	}
+
 	/**
 	 * Gets the values that satisfy the given range search arguments.
 	 * 
@@ -108,10 +238,219 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
 	 */
 	@Override
 	public List<V> rangeSearch(K key, String comparator) {
-		if (!comparator.contentEquals(">=") && !comparator.contentEquals("==") && !comparator.contentEquals("<="))
-			return new ArrayList<V>();
+		List<V> comparedValues = new ArrayList<V>();
+		if (key == null || comparator == null) {
+			return comparedValues;
+		}
+
+		// each comparator is a range with one or both ends at the key
+		Iterator<V> it;
+		switch (comparator) {
+		case "<=":
+			it = rangeIterator(null, key);
+			break;
+		case ">=":
+			it = rangeIterator(key, null);
+			break;
+		case "==":
+			it = rangeIterator(key, key);
+			break;
+		default:
+			return comparedValues;
+		}
+
+		while (it.hasNext()) {
+			comparedValues.add(it.next());
+		}
+		return comparedValues;
+	}
+
+	/**
+	 * Gets the values whose keys are between lo and hi, in ascending order of key.
+	 * The tree is descended once, to the first leaf of the range, and leaves are
+	 * then scanned until a key is past hi, so a narrow range costs O(log n + k).
+	 * 
+	 * @param lo
+	 *            lower end of the range, or null for no lower bound
+	 * @param loInclusive
+	 *            whether keys equal to lo are included
+	 * @param hi
+	 *            upper end of the range, or null for no upper bound
+	 * @param hiInclusive
+	 *            whether keys equal to hi are included
+	 * @return list of values in the range; if nothing found, return empty list
+	 */
+	@Override
+	public List<V> rangeSearch(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+		List<V> comparedValues = new ArrayList<V>();
+		Iterator<V> it = new RangeIterator(lo, loInclusive, hi, hiInclusive);
+		while (it.hasNext()) {
+			comparedValues.add(it.next());
+		}
+		return comparedValues;
+	}
+
+	/**
+	 * Gets an iterator over the values whose keys are in the range [lo, hi], in
+	 * ascending order of key. The iterator descends the tree once to the first
+	 * leaf of the range and then follows the next links of the leaf chain, so it
+	 * needs no recursion and no intermediate lists.
+	 * 
+	 * @param lo
+	 *            smallest key to include, or null for no lower bound
+	 * @param hi
+	 *            largest key to include, or null for no upper bound
+	 * @return iterator over the values in the range
+	 */
+	@Override
+	public Iterator<V> rangeIterator(K lo, K hi) {
+		return new RangeIterator(lo, true, hi, true);
+	}
+
+	/**
+	 * Gets the values of the k largest keys by walking back from the rightmost
+	 * leaf through the previous links
+	 * 
+	 * @param k
+	 *            the number of values to return
+	 * @param descending
+	 *            whether the values are ordered from the largest key down
+	 * @return list of at most k values
+	 */
+	@Override
+	public List<V> topK(int k, boolean descending) {
+		List<V> values = new ArrayList<V>();
+		LeafNode leaf = this.root.lastLeaf();
+		while (leaf != null && values.size() < k) {
+			for (int i = leaf.values.size() - 1; i >= 0 && values.size() < k; i--) {
+				values.add(leaf.values.get(i));
+			}
+			leaf = leaf.previous;
+		}
+
+		if (!descending) {
+			Collections.reverse(values);
+		}
+		return values;
+	}
+
+	/**
+	 * Gets the values of the k smallest keys by walking forward from the leftmost
+	 * leaf through the next links
+	 * 
+	 * @param k
+	 *            the number of values to return
+	 * @return list of at most k values
+	 */
+	@Override
+	public List<V> bottomK(int k) {
+		List<V> values = new ArrayList<V>();
+		LeafNode leaf = this.root.firstLeaf();
+		while (leaf != null && values.size() < k) {
+			for (int i = 0; i < leaf.values.size() && values.size() < k; i++) {
+				values.add(leaf.values.get(i));
+			}
+			leaf = leaf.next;
+		}
+		return values;
+	}
+
+	/**
+	 * Gets the number of key-value pairs in the tree
+	 * 
+	 * @return the size of the tree
+	 */
+	public int size() {
+		return this.root.count();
+	}
 
-		return this.root.rangeSearch(key, comparator);
+	/**
+	 * Counts the keys between lo and hi in O(log n). Internal nodes keep the size
+	 * of their subtree, so whole subtrees inside the range are counted without
+	 * visiting their leaves.
+	 * 
+	 * @param lo
+	 *            lower end of the range, or null for no lower bound
+	 * @param loInclusive
+	 *            whether keys equal to lo are counted
+	 * @param hi
+	 *            upper end of the range, or null for no upper bound
+	 * @param hiInclusive
+	 *            whether keys equal to hi are counted
+	 * @return the number of keys in the range
+	 */
+	public int count(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+		int below = lo == null ? 0 : this.root.countBelow(lo, !loInclusive);
+		int upTo = hi == null ? size() : this.root.countBelow(hi, hiInclusive);
+		return Math.max(upTo - below, 0);
+	}
+
+	/**
+	 * Gets the rank of a key, which is the number of keys smaller than it
+	 * 
+	 * @param key
+	 *            The K key to rank
+	 * @return the number of keys < key
+	 */
+	public int rank(K key) {
+		return this.root.countBelow(key, false);
+	}
+
+	/**
+	 * Gets the value stored with the i-th smallest key, counting from 0
+	 * 
+	 * @param i
+	 *            position of the key in ascending order
+	 * @return the value at position i
+	 * @throws IndexOutOfBoundsException
+	 *             if i is not in [0, size())
+	 */
+	public V select(int i) {
+		Position position = locate(i);
+		return position.leaf.values.get(position.index);
+	}
+
+	/**
+	 * Gets the i-th smallest key, counting from 0. For example selectKey(size() /
+	 * 2) is the median.
+	 * 
+	 * @param i
+	 *            position of the key in ascending order
+	 * @return the key at position i
+	 * @throws IndexOutOfBoundsException
+	 *             if i is not in [0, size())
+	 */
+	public K selectKey(int i) {
+		Position position = locate(i);
+		return position.leaf.keys.get(position.index);
+	}
+
+	/**
+	 * Descends to the leaf holding position i by skipping whole children using
+	 * their counts. Nothing is written on the way, so readers can select from the
+	 * same tree at once.
+	 * 
+	 * @param i
+	 *            position of the key in ascending order
+	 * @return the leaf holding position i and the index within it
+	 */
+	private Position locate(int i) {
+		if (i < 0 || i >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size());
+		}
+
+		Node node = this.root;
+		while (node instanceof BPTree.InternalNode) {
+			InternalNode internal = (InternalNode) node;
+			int child = 0;
+			while (i >= internal.children.get(child).count()) {
+				i -= internal.children.get(child).count();
+				child++;
+			}
+			node = internal.children.get(child);
+		}
+
+		return new Position((LeafNode) node, i);
 	}
 
 	/**
@@ -160,6 +499,26 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
 		return sb.toString();
 	}
 
+	/**
+	 * A position in the tree, a leaf and an index within it
+	 */
+	private class Position {
+
+		// the leaf
+		final LeafNode leaf;
+
+		// the index within the leaf
+		final int index;
+
+		/**
+		 * Package constructor
+		 */
+		Position(LeafNode leaf, int index) {
+			this.leaf = leaf;
+			this.index = index;
+		}
+	}
+
 	/**
 	 * This abstract class represents any type of node in the tree This class is a
 	 * super class of the LeafNode and InternalNode types.
@@ -206,12 +565,152 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
 		 */
 		abstract Node split();
 
-		/*
-		 * (non-Javadoc)
+		/**
+		 * Removes one key-value pair from under this node, rebalancing any child
+		 * that becomes too small
 		 * 
-		 * @see BPTree#rangeSearch(java.lang.Object, java.lang.String)
+		 * @param key
+		 *            The K key of the pair to remove
+		 * @param value
+		 *            The V value of the pair to remove
+		 * @return true if a pair was removed
+		 */
+		abstract boolean remove(K key, V value);
+
+		/**
+		 * Moves the last entry of the left sibling to the front of this node
+		 * 
+		 * @param left
+		 *            the left sibling, which has keys to spare
+		 * @param separator
+		 *            the parent key between left and this node
+		 * @return the new parent key between left and this node
+		 */
+		abstract K borrowFromLeft(Node left, K separator);
+
+		/**
+		 * Moves the first entry of the right sibling to the end of this node
+		 * 
+		 * @param right
+		 *            the right sibling, which has keys to spare
+		 * @param separator
+		 *            the parent key between this node and right
+		 * @return the new parent key between this node and right
+		 */
+		abstract K borrowFromRight(Node right, K separator);
+
+		/**
+		 * Appends every entry of the right sibling to this node
+		 * 
+		 * @param right
+		 *            the right sibling, which is dropped by the parent afterwards
+		 * @param separator
+		 *            the parent key between this node and right
+		 */
+		abstract void merge(Node right, K separator);
+
+		/**
+		 * Checks to see if the current node has fewer keys than a non-root node may
+		 * hold, which is useful after removing.
+		 * 
+		 * @return boolean true if the current node has underflowed
+		 */
+		boolean isUnderflow() {
+			return this.keys.size() < (branchingFactor - 1) / 2;
+		}
+
+		/**
+		 * Checks to see if the current node can give a key to a sibling without
+		 * underflowing itself.
+		 * 
+		 * @return boolean true if the current node has a key to spare
+		 */
+		boolean canLend() {
+			return this.keys.size() > (branchingFactor - 1) / 2;
+		}
+
+		/**
+		 * Finds the leftmost leaf that may contain the given key
+		 * 
+		 * @param key
+		 *            The K key to search for
+		 * @return the leaf where a scan for key should start
+		 */
+		abstract LeafNode findLeaf(K key);
+
+		/**
+		 * Gets the leftmost leaf under this node
+		 * 
+		 * @return the first leaf
+		 */
+		abstract LeafNode firstLeaf();
+
+		/**
+		 * Gets the rightmost leaf under this node
+		 * 
+		 * @return the last leaf
+		 */
+		abstract LeafNode lastLeaf();
+
+		/**
+		 * Gets the number of key-value pairs under this node
+		 * 
+		 * @return the subtree count
+		 */
+		abstract int count();
+
+		/**
+		 * Counts the keys under this node that are below the given key
+		 * 
+		 * @param key
+		 *            The K key to compare against
+		 * @param inclusive
+		 *            whether keys equal to key are counted
+		 * @return the number of keys < key, or <= key when inclusive
 		 */
-		abstract List<V> rangeSearch(K key, String comparator);
+		abstract int countBelow(K key, boolean inclusive);
+
+		/**
+		 * Finds the index of the first key that is > the given key
+		 * 
+		 * @param key
+		 *            The K key to search for
+		 * @return an index in [0, keys.size()]
+		 */
+		int upperBound(K key) {
+			int low = 0;
+			int high = this.keys.size();
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (this.keys.get(mid).compareTo(key) <= 0) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Finds the index of the first key that is >= the given key
+		 * 
+		 * @param key
+		 *            The K key to search for
+		 * @return an index in [0, keys.size()]
+		 */
+		int lowerBound(K key) {
+			int low = 0;
+			int high = this.keys.size();
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (this.keys.get(mid).compareTo(key) < 0) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
 
 		/**
 		 * Checks to see if the current node has overflowed, which is useful when
@@ -247,12 +746,48 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
 		// List of children nodes
 		List<Node> children;
 
+		// Number of key-value pairs in this subtree
+		int count;
+
 		/**
 		 * Package constructor
 		 */
 		InternalNode() {
 			super();
 			this.children = new ArrayList<Node>();
+			this.count = 0;
+		}
+
+		/**
+		 * @see BPTree.Node#count()
+		 */
+		int count() {
+			return this.count;
+		}
+
+		/**
+		 * Recomputes the subtree count from the children's counts
+		 */
+		void recount() {
+			this.count = 0;
+			for (Node child : this.children) {
+				this.count += child.count();
+			}
+		}
+
+		/**
+		 * Children left of the one holding the boundary are counted whole, so only
+		 * one child per level is descended into.
+		 * 
+		 * @see BPTree.Node#countBelow(java.lang.Comparable, boolean)
+		 */
+		int countBelow(K key, boolean inclusive) {
+			int i = inclusive ? upperBound(key) : lowerBound(key);
+			int total = 0;
+			for (int j = 0; j < i; j++) {
+				total += this.children.get(j).count();
+			}
+			return total + this.children.get(i).countBelow(key, inclusive);
 		}
 
 		/**
@@ -334,6 +869,7 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
 				this.children.add(i, newChild);
 			}
 
+			this.count++;
 		}
 
 		/**
@@ -363,132 +899,122 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
 				this.keys.remove(0);
 			}
 
+			// both halves recount their subtrees
+			newInternalNode.recount();
+			this.recount();
+
 			return newInternalNode;
 		}
 
 		/**
-		 * @see BPTree.Node#rangeSearch(java.lang.Comparable, java.lang.String)
+		 * @see BPTree.Node#remove(java.lang.Comparable, java.lang.Object)
 		 */
-		List<V> rangeSearch(K key, String comparator) {
-
-			List<V> comparedValues = new ArrayList<V>();
-
-			// indices for the middle, left bound, and right bound for binary search
-			int mid = (this.keys.size() - 1) / 2;
-			int left = 0;
-			int right = this.keys.size() - 1;
-
-			// checks the comparator
-			switch (comparator) {
-			case "<=":
-
-				// applies binary search for half the keys size
-				for (int i = 0; i <= (this.keys.size() / 2); i++) {
-
-					// if key to search is >= to current key at mid
-					if (key.compareTo(this.keys.get(mid)) >= 0) {
-
-						// search right
-						left = mid + 1;
-						mid = (((mid + 1) + right) / 2);
-
-					} else {
-
-						// search left
-						right = mid - 1;
-						mid = (left + (mid - 1)) / 2;
-
+		boolean remove(K key, V value) {
+
+			// equal keys can span every child from the first separator >= key on, as
+			// long as the separators stay equal to key
+			for (int i = lowerBound(key); i < this.children.size(); i++) {
+				if (this.children.get(i).remove(key, value)) {
+					this.count--;
+					if (this.children.get(i).isUnderflow()) {
+						rebalance(i);
 					}
-
-				}
-
-				// once binary search ends, if key to search is >= key at last index found
-				if (key.compareTo(this.keys.get(mid)) >= 0) {
-
-					// go into right subtree
-					comparedValues.addAll(this.children.get(mid + 1).rangeSearch(key, comparator));
-				} else {
-
-					// go into left subtree
-					comparedValues.addAll(this.children.get(mid).rangeSearch(key, comparator));
-				}
-
-				break;
-
-			case ">=":
-
-				// applies binary search for half the keys size
-				for (int i = 0; i <= (this.keys.size() / 2); i++) {
-
-					// if key to search is > current key at mid
-					if (key.compareTo(this.keys.get(mid)) > 0) {
-
-						// search right
-						left = mid + 1;
-						mid = (((mid + 1) + right) / 2);
-
-					} else {
-
-						// search left
-						right = mid - 1;
-						mid = (left + (mid - 1)) / 2;
-
-					}
-
+					return true;
 				}
 
-				// once binary search ends, if key to search <= key at last index found
-				if (key.compareTo(this.keys.get(mid)) <= 0) {
-
-					// go into left subtree
-					comparedValues.addAll(this.children.get(mid).rangeSearch(key, comparator));
-
-				} else {
-
-					// go into right subtree
-					comparedValues.addAll(this.children.get(mid + 1).rangeSearch(key, comparator));
+				if (i == this.keys.size() || this.keys.get(i).compareTo(key) != 0) {
+					break;
 				}
+			}
 
-				break;
-
-			case "==":
-
-				// applies binary search for half the keys size
-				for (int i = 0; i <= (this.keys.size() / 2); i++) {
-
-					// if key to search is > current key at mid
-					if (key.compareTo(this.keys.get(mid)) > 0) {
-
-						// search right
-						left = mid + 1;
-						mid = (((mid + 1) + right) / 2);
-
-					} else {
-
-						// search left
-						right = mid - 1;
-						mid = (left + (mid - 1)) / 2;
-
-					}
+			return false;
+		}
 
-				}
+		/**
+		 * Fixes an underflowed child by borrowing from a sibling that has keys to
+		 * spare, or by merging it with a sibling when neither does
+		 * 
+		 * @param i
+		 *            index of the underflowed child
+		 */
+		private void rebalance(int i) {
+			Node child = this.children.get(i);
+			Node left = i > 0 ? this.children.get(i - 1) : null;
+			Node right = i < this.keys.size() ? this.children.get(i + 1) : null;
+
+			if (left != null && left.canLend()) {
+				this.keys.set(i - 1, child.borrowFromLeft(left, this.keys.get(i - 1)));
+			} else if (right != null && right.canLend()) {
+				this.keys.set(i, child.borrowFromRight(right, this.keys.get(i)));
+			} else if (left != null) {
+				left.merge(child, this.keys.remove(i - 1));
+				this.children.remove(i);
+			} else {
+				child.merge(right, this.keys.remove(i));
+				this.children.remove(i + 1);
+			}
+		}
 
-				// once binary search ends, if key to search <= key at last index found
-				if (key.compareTo(this.keys.get(mid)) <= 0) {
+		/**
+		 * @see BPTree.Node#borrowFromLeft(BPTree.Node, java.lang.Comparable)
+		 */
+		K borrowFromLeft(Node left, K separator) {
+			InternalNode sibling = (InternalNode) left;
+
+			// the separator comes down in front of the sibling's last child, and the
+			// sibling's last key goes up in its place
+			this.keys.add(0, separator);
+			this.children.add(0, sibling.children.remove(sibling.children.size() - 1));
+			this.count += this.children.get(0).count();
+			sibling.count -= this.children.get(0).count();
+			return sibling.keys.remove(sibling.keys.size() - 1);
+		}
 
-					// go into left subtree
-					comparedValues.addAll(this.children.get(mid).rangeSearch(key, comparator));
-				} else {
+		/**
+		 * @see BPTree.Node#borrowFromRight(BPTree.Node, java.lang.Comparable)
+		 */
+		K borrowFromRight(Node right, K separator) {
+			InternalNode sibling = (InternalNode) right;
+
+			// the separator comes down behind the sibling's first child, and the
+			// sibling's first key goes up in its place
+			this.keys.add(separator);
+			this.children.add(sibling.children.remove(0));
+			this.count += this.children.get(this.children.size() - 1).count();
+			sibling.count -= this.children.get(this.children.size() - 1).count();
+			return sibling.keys.remove(0);
+		}
 
-					// go into right subtree
-					comparedValues.addAll(this.children.get(mid + 1).rangeSearch(key, comparator));
-				}
+		/**
+		 * @see BPTree.Node#merge(BPTree.Node, java.lang.Comparable)
+		 */
+		void merge(Node right, K separator) {
+			InternalNode sibling = (InternalNode) right;
+			this.keys.add(separator);
+			this.keys.addAll(sibling.keys);
+			this.children.addAll(sibling.children);
+			this.count += sibling.count;
+		}
 
-				break;
-			}
+		/**
+		 * @see BPTree.Node#findLeaf(java.lang.Comparable)
+		 */
+		LeafNode findLeaf(K key) {
+			return this.children.get(lowerBound(key)).findLeaf(key);
+		}
 
-			return comparedValues;
+		/**
+		 * @see BPTree.Node#firstLeaf()
+		 */
+		LeafNode firstLeaf() {
+			return this.children.get(0).firstLeaf();
+		}
 
+		/**
+		 * @see BPTree.Node#lastLeaf()
+		 */
+		LeafNode lastLeaf() {
+			return this.children.get(this.children.size() - 1).lastLeaf();
 		}
 
 	} // End of class InternalNode
@@ -598,75 +1124,186 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
 		}
 
 		/**
-		 * @see BPTree.Node#rangeSearch(Comparable, String)
+		 * @see BPTree.Node#remove(Comparable, Object)
 		 */
-		List<V> rangeSearch(K key, String comparator) {
-
-			List<V> comparedValues = new ArrayList<V>();
+		boolean remove(K key, V value) {
+			for (int i = lowerBound(key); i < this.keys.size() && this.keys.get(i).compareTo(key) == 0; i++) {
+				V current = this.values.get(i);
+				if (current == null ? value == null : current.equals(value)) {
+					this.keys.remove(i);
+					this.values.remove(i);
+					return true;
+				}
+			}
+			return false;
+		}
 
-			// check the comparator
-			switch (comparator) {
-			case "<=":
+		/**
+		 * @see BPTree.Node#borrowFromLeft(BPTree.Node, Comparable)
+		 */
+		K borrowFromLeft(Node left, K separator) {
+			LeafNode sibling = (LeafNode) left;
+			this.keys.add(0, sibling.keys.remove(sibling.keys.size() - 1));
+			this.values.add(0, sibling.values.remove(sibling.values.size() - 1));
+			return this.keys.get(0);
+		}
 
-				// if this leaf node has a previously linked leaf node, rangeSearch on previous
-				if (this.previous != null) {
-					comparedValues.addAll(this.previous.rangeSearch(key, comparator));
-				}
+		/**
+		 * @see BPTree.Node#borrowFromRight(BPTree.Node, Comparable)
+		 */
+		K borrowFromRight(Node right, K separator) {
+			LeafNode sibling = (LeafNode) right;
+			this.keys.add(sibling.keys.remove(0));
+			this.values.add(sibling.values.remove(0));
+			return sibling.keys.get(0);
+		}
 
-				// check the keys in the current node to determine insertion
-				for (int i = 0; i < this.keys.size(); i++) {
-					if (this.keys.get(i).compareTo(key) <= 0) {
-						comparedValues.add(this.values.get(i));
-					}
-				}
+		/**
+		 * @see BPTree.Node#merge(BPTree.Node, Comparable)
+		 */
+		void merge(Node right, K separator) {
+			LeafNode sibling = (LeafNode) right;
+			this.keys.addAll(sibling.keys);
+			this.values.addAll(sibling.values);
+
+			// unlink the sibling from the leaf chain
+			this.next = sibling.next;
+			if (this.next != null) {
+				this.next.previous = this;
+			}
+		}
 
-				break;
+		/**
+		 * @see BPTree.Node#count()
+		 */
+		int count() {
+			return this.keys.size();
+		}
 
-			case ">=":
+		/**
+		 * @see BPTree.Node#countBelow(Comparable, boolean)
+		 */
+		int countBelow(K key, boolean inclusive) {
+			return inclusive ? upperBound(key) : lowerBound(key);
+		}
 
-				// check the keys in the current node to determine insertion
-				for (int j = 0; j < this.keys.size(); j++) {
+		/**
+		 * @see BPTree.Node#findLeaf(Comparable)
+		 */
+		LeafNode findLeaf(K key) {
+			return this;
+		}
 
-					if (this.keys.get(j).compareTo(key) >= 0) {
-						comparedValues.add(this.values.get(j));
-					}
-				}
+		/**
+		 * @see BPTree.Node#firstLeaf()
+		 */
+		LeafNode firstLeaf() {
+			return this;
+		}
 
-				// if this leaf node has a next linked leaf node, rangeSearch on next
-				if (this.next != null) {
-					comparedValues.addAll(this.next.rangeSearch(key, comparator));
-				}
+		/**
+		 * @see BPTree.Node#lastLeaf()
+		 */
+		LeafNode lastLeaf() {
+			return this;
+		}
 
-				break;
+	} // End of class LeafNode
 
-			case "==":
+	/**
+	 * Iterates over the values of a key range by walking the leaf chain. The
+	 * iterator always rests on the next value to return, or on a null leaf once
+	 * the range is exhausted.
+	 * 
+	 * @author Aaron Hernandez
+	 * @author Xiao Fei
+	 * @author Henry Koenig
+	 */
+	private class RangeIterator implements Iterator<V> {
 
-				// iterate over keys in current leaf node
-				for (int j = 0; j < this.keys.size(); j++) {
+		// The leaf holding the next value, null when there are no more values
+		private LeafNode leaf;
 
-					// if a key match exists, add to values list
-					if (this.keys.get(j).compareTo(key) == 0) {
+		// Index of the next value in leaf
+		private int index;
 
-						comparedValues.add(this.values.get(j));
+		// Upper end of the range, null for no upper bound
+		private K hi;
 
-					} else if (this.keys.get(j).compareTo(key) > 0) {
+		// Whether keys equal to hi are returned
+		private boolean hiInclusive;
 
-						// if found a current node key > key we're searching
-						return comparedValues;
+		/**
+		 * Descends to the first value of the range
+		 * 
+		 * @param lo
+		 *            lower end of the range, or null
+		 * @param loInclusive
+		 *            whether keys equal to lo are included
+		 * @param hi
+		 *            upper end of the range, or null
+		 * @param hiInclusive
+		 *            whether keys equal to hi are included
+		 */
+		RangeIterator(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+			this.hi = hi;
+			this.hiInclusive = hiInclusive;
+			if (lo == null) {
+				this.leaf = root.firstLeaf();
+				this.index = 0;
+			} else {
+				this.leaf = root.findLeaf(lo);
+				this.index = this.leaf.lowerBound(lo);
+			}
+			settle();
 
-					}
+			// an exclusive lower end skips the keys equal to lo, which may span leaves
+			if (lo != null && !loInclusive) {
+				while (this.leaf != null && this.leaf.keys.get(this.index).compareTo(lo) == 0) {
+					this.index++;
+					settle();
 				}
+			}
+		}
+
+		/**
+		 * Moves past exhausted leaves and stops the iterator once a key is past hi
+		 */
+		private void settle() {
+			while (this.leaf != null && this.index >= this.leaf.keys.size()) {
+				this.leaf = this.leaf.next;
+				this.index = 0;
+			}
 
-				// if this leaf node has a next linked leaf node, rangeSearch on next
-				if (this.next != null) {
-					comparedValues.addAll(this.next.rangeSearch(key, comparator));
+			if (this.leaf != null && this.hi != null) {
+				int cmp = this.leaf.keys.get(this.index).compareTo(this.hi);
+				if (cmp > 0 || (cmp == 0 && !this.hiInclusive)) {
+					this.leaf = null;
 				}
+			}
+		}
+
+		/**
+		 * @see java.util.Iterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext() {
+			return this.leaf != null;
+		}
 
-				break;
+		/**
+		 * @see java.util.Iterator#next()
+		 */
+		@Override
+		public V next() {
+			if (this.leaf == null) {
+				throw new NoSuchElementException();
 			}
 
-			return comparedValues;
+			V value = this.leaf.values.get(this.index++);
+			settle();
+			return value;
 		}
 
-	} // End of class LeafNode
+	} // End of class RangeIterator
 } // End of class BPTree
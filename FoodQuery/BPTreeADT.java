@@ -1,5 +1,6 @@
 package application;
 
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -20,6 +21,33 @@ public interface BPTreeADT<K, V> {
     public void insert(K key, V value);
     
     
+    /**
+     * Removes one key-value pair from the tree and rebalances
+     * the nodes it was removed from if they become too small
+     * 
+     * Note: if several pairs match, only one of them is removed.
+     * 
+     * @param key of the pair to remove
+     * @param value of the pair to remove
+     * @return true if a pair was removed, false if no pair 
+     * matched the key and value
+     */
+    public boolean remove(K key, V value);
+    
+    
+    /**
+     * Moves a value from one key to another, as a remove of 
+     * (oldKey, value) followed by an insert of (newKey, value)
+     * 
+     * @param oldKey the key the value is currently stored under
+     * @param newKey the key to store the value under
+     * @param value the value to move
+     * @return true if the value was moved, false if no pair 
+     * matched oldKey and value (nothing is inserted)
+     */
+    public boolean update(K oldKey, K newKey, V value);
+    
+    
     /**
      * Gets the values that satisfy the given range 
      * search arguments.
@@ -44,6 +72,87 @@ public interface BPTreeADT<K, V> {
     public List<V> rangeSearch(K key, String comparator);
     
     
+    /**
+     * Gets the values whose keys are between lo and hi, in 
+     * ascending order of key. Each end of the range can be
+     * inclusive or exclusive.
+     * 
+     * Example:
+     *     If given lo = 100, loInclusive = true, hi = 300 and 
+     *     hiInclusive = false:
+     *         return all the values with the corresponding 
+     *      keys >= 100 and < 300
+     *      
+     * A null lo or hi leaves that side of the range unbounded.
+     * If nothing is in the range, return empty list.
+     * 
+     * @param lo lower end of the range, or null
+     * @param loInclusive whether keys equal to lo are included
+     * @param hi upper end of the range, or null
+     * @param hiInclusive whether keys equal to hi are included
+     * @return list of values in the range; if nothing found, 
+     * return empty list
+     */
+    public List<V> rangeSearch(K lo, boolean loInclusive, K hi, boolean hiInclusive);
+    
+    
+    /**
+     * Gets an iterator over the values whose keys are in the 
+     * range [lo, hi], in ascending order of key.
+     * 
+     * Values are found lazily as the iterator advances, so a
+     * caller that stops early never visits the rest of the range.
+     * 
+     * Example:
+     *     If given lo = 2.5 and hi = 7.0:
+     *         iterate over all the values with the corresponding 
+     *      keys >= 2.5 and <= 7.0
+     *      
+     * A null lo or hi leaves that side of the range unbounded.
+     * 
+     * @param lo smallest key to include, or null
+     * @param hi largest key to include, or null
+     * @return iterator over the values in the range
+     */
+    public Iterator<V> rangeIterator(K lo, K hi);
+    
+    
+    /**
+     * Gets the values of the k largest keys. The search starts 
+     * at the rightmost leaf and walks back through the leaves, 
+     * stopping after k values, so it costs O(log n + k) instead 
+     * of a scan of the whole tree.
+     * 
+     * Example:
+     *     If given k = 3 and descending = true:
+     *         return the values of the 3 largest keys, 
+     *      largest first
+     *      
+     * If k <= 0, return empty list. If the tree holds fewer 
+     * than k values, return all of them.
+     * 
+     * @param k the number of values to return
+     * @param descending whether the values are ordered from the 
+     * largest key down, otherwise in ascending order of key
+     * @return list of at most k values
+     */
+    public List<V> topK(int k, boolean descending);
+    
+    
+    /**
+     * Gets the values of the k smallest keys in ascending order 
+     * of key. The search starts at the leftmost leaf and stops 
+     * after k values, so it costs O(log n + k).
+     * 
+     * If k <= 0, return empty list. If the tree holds fewer 
+     * than k values, return all of them.
+     * 
+     * @param k the number of values to return
+     * @return list of at most k values
+     */
+    public List<V> bottomK(int k);
+    
+    
     /**
      * Returns a string representation for the tree
      * This method is provided to students in the implementation.
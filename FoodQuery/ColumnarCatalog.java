@@ -0,0 +1,1044 @@
+/**
+ * Filename:   ColumnarCatalog.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+/**
+ * A read-only catalog in a compressed columnar file, an alternative to the text
+ * format read by FoodData.loadFoodItems. Each column is stored on its own:
+ *
+ * Ids made of lowercase hex digits are stored as the bytes they spell, two
+ * digits to a byte; any other ids as UTF-8. Names are split after their first
+ * underscore into a brand prefix and the rest, and each part is a code into a
+ * sorted dictionary of the distinct values. The dictionaries are front coded,
+ * each entry stores only what it does not share with the one before it.
+ *
+ * Nutrient columns are fixed-point: the values of a column are scaled by the
+ * smallest power of ten that makes every one of them a whole number which
+ * divides back to exactly the same double. A column where no power does, for
+ * example one holding -0.0 or NaN, keeps the bits of its doubles in an order
+ * preserving form instead. Either way the column is a column of longs.
+ *
+ * Columns of longs, the nutrients and the two name codes, are cut into blocks
+ * of 4096 rows. A block keeps its minimum and maximum, and each of its values
+ * is stored as its distance from the minimum, bit-packed with as many bits as
+ * the largest distance needs. filterRows() reads the minimum and maximum first,
+ * skips the blocks that cannot match, takes whole the blocks that match
+ * entirely, and only unpacks the rest.
+ *
+ * The file starts with the magic number and the version, then holds the
+ * sections, each on an 8 byte boundary, then a footer with the schema, the
+ * encodings and where each section starts. The last 16 bytes are where the
+ * footer starts, the magic number and the version. All numbers are
+ * little-endian.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class ColumnarCatalog {
+
+	// "FDC1", marks a file written by write()
+	private static final int MAGIC = 0x31434446;
+
+	// Version of the file format
+	private static final int VERSION = 1;
+
+	// Rows in a block, the unit that minimums and maximums are kept for
+	private static final int BLOCK_ROWS = 4096;
+
+	// Bytes of the statistics of one block: minimum, maximum, offset and width
+	private static final int BLOCK_STATS_BYTES = 32;
+
+	// Encodings of the id column
+	private static final int HEX_IDS = 0;
+	private static final int UTF_IDS = 1;
+
+	// Encodings of a nutrient column
+	private static final int FIXED_POINT = 0;
+	private static final int SORTABLE_BITS = 1;
+
+	// Hex digits by value
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	// Number of food items
+	private final int size;
+
+	// Rows in a block
+	private final int blockRows;
+
+	// How the ids are stored, HEX_IDS or UTF_IDS
+	private final int idEncoding;
+
+	// Hex digits in each id, for HEX_IDS
+	private final int idLength;
+
+	// The ids, packed hex or UTF-8
+	private final ByteBuffer ids;
+
+	// Where each id starts in ids and where the last ends, for UTF_IDS
+	private final int[] idOffsets;
+
+	// The distinct brand prefixes, in order
+	private final String[] brands;
+
+	// The distinct rests of names, in order
+	private final String[] suffixes;
+
+	// Brand prefix of each row, as a code into brands
+	private final PackedColumn brandCodes;
+
+	// Rest of the name of each row, as a code into suffixes
+	private final PackedColumn suffixCodes;
+
+	// Each nutrient column, by ordinal
+	private final PackedColumn[] columns;
+
+	// How each nutrient column is stored, FIXED_POINT or SORTABLE_BITS
+	private final int[] encodings;
+
+	// Power of ten each fixed-point column is scaled by
+	private final int[] scales;
+
+	/**
+	 * Private constructor, catalogs are created with open()
+	 */
+	private ColumnarCatalog(int size, int blockRows, int idEncoding, int idLength, ByteBuffer ids, int[] idOffsets,
+			String[] brands, String[] suffixes, PackedColumn brandCodes, PackedColumn suffixCodes,
+			PackedColumn[] columns, int[] encodings, int[] scales) {
+		this.size = size;
+		this.blockRows = blockRows;
+		this.idEncoding = idEncoding;
+		this.idLength = idLength;
+		this.ids = ids;
+		this.idOffsets = idOffsets;
+		this.brands = brands;
+		this.suffixes = suffixes;
+		this.brandCodes = brandCodes;
+		this.suffixCodes = suffixCodes;
+		this.columns = columns;
+		this.encodings = encodings;
+		this.scales = scales;
+	}
+
+	/**
+	 * Writes food items to a columnar file. Writing them in name order, as
+	 * FoodData.getAllFoodItems returns them, keeps the brand codes of a block
+	 * close together so they pack into few bits.
+	 *
+	 * @param foodItems
+	 *            the food items, in the order of their rows
+	 * @param file
+	 *            the file to write, replaced if it exists
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(List<FoodItem> foodItems, File file) throws IOException {
+		int n = foodItems.size();
+
+		// split each name after its first underscore and code both parts
+		String[] brandOf = new String[n];
+		String[] suffixOf = new String[n];
+		for (int row = 0; row < n; row++) {
+			String name = foodItems.get(row).getName();
+			int cut = name.indexOf('_') + 1;
+			brandOf[row] = name.substring(0, cut);
+			suffixOf[row] = name.substring(cut);
+		}
+		String[] brands = dictionary(brandOf);
+		String[] suffixes = dictionary(suffixOf);
+
+		// each nutrient column as fixed-point if it can be, else as its bits
+		long[][] values = new long[Nutrient.VALUES.length][n];
+		int[] encodings = new int[Nutrient.VALUES.length];
+		int[] scales = new int[Nutrient.VALUES.length];
+		for (Nutrient nutrient : Nutrient.VALUES) {
+			double[] column = new double[n];
+			for (int row = 0; row < n; row++) {
+				column[row] = foodItems.get(row).getNutrientValue(nutrient);
+			}
+			int scale = fixedPointScale(column);
+			encodings[nutrient.ordinal()] = scale < 0 ? SORTABLE_BITS : FIXED_POINT;
+			scales[nutrient.ordinal()] = Math.max(scale, 0);
+			for (int row = 0; row < n; row++) {
+				values[nutrient.ordinal()][row] = encode(encodings[nutrient.ordinal()], scales[nutrient.ordinal()],
+						column[row]);
+			}
+		}
+		int idLength = hexIdLength(foodItems);
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			FoodSnapshot.Writer out = new FoodSnapshot.Writer(channel);
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+
+			// ids
+			long idStart = out.position;
+			if (idLength >= 0) {
+				for (FoodItem foodItem : foodItems) {
+					out.put(hexBytes(foodItem.getID()));
+				}
+			} else {
+				byte[][] utf = new byte[n][];
+				int offset = 0;
+				for (int row = 0; row < n; row++) {
+					utf[row] = foodItems.get(row).getID().getBytes(StandardCharsets.UTF_8);
+					out.putInt(offset);
+					if (offset + (long) utf[row].length > Integer.MAX_VALUE) {
+						throw new IOException("Too many id bytes for one columnar file");
+					}
+					offset += utf[row].length;
+				}
+				out.putInt(offset);
+				for (byte[] id : utf) {
+					out.put(id);
+				}
+			}
+			long idBytes = out.position - idStart;
+			out.align();
+
+			// dictionaries
+			long brandStart = out.position;
+			out.put(frontCode(brands));
+			long brandBytes = out.position - brandStart;
+			out.align();
+			long suffixStart = out.position;
+			out.put(frontCode(suffixes));
+			long suffixBytes = out.position - suffixStart;
+			out.align();
+
+			// the columns of longs
+			long[] brandSection = writeColumn(out, codes(brandOf, brands));
+			long[] suffixSection = writeColumn(out, codes(suffixOf, suffixes));
+			long[][] columnSections = new long[Nutrient.VALUES.length][];
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				columnSections[nutrient.ordinal()] = writeColumn(out, values[nutrient.ordinal()]);
+			}
+
+			// footer, then where it starts
+			long footerStart = out.position;
+			out.putInt(n);
+			out.putInt(BLOCK_ROWS);
+			out.putInt(Nutrient.VALUES.length);
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				out.putString(nutrient.getName());
+			}
+			out.putInt(idLength >= 0 ? HEX_IDS : UTF_IDS);
+			out.putInt(Math.max(idLength, 0));
+			out.putLong(idStart);
+			out.putLong(idBytes);
+			out.putInt(brands.length);
+			out.putLong(brandStart);
+			out.putLong(brandBytes);
+			out.putInt(suffixes.length);
+			out.putLong(suffixStart);
+			out.putLong(suffixBytes);
+			putSection(out, brandSection);
+			putSection(out, suffixSection);
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				out.putInt(encodings[nutrient.ordinal()]);
+				out.putInt(scales[nutrient.ordinal()]);
+				putSection(out, columnSections[nutrient.ordinal()]);
+			}
+			out.align();
+			out.putLong(footerStart);
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.flush();
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * Opens a columnar file written by write(). The dictionaries and the block
+	 * statistics are read into memory, the columns are mapped.
+	 *
+	 * @param file
+	 *            the file to open
+	 * @return the catalog
+	 * @throws IOException
+	 *             if the file cannot be read, or is not a columnar file of the
+	 *             current version and schema
+	 */
+	public static ColumnarCatalog open(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			if (fileSize < 24 || map(channel, 0, 8, file).getInt(0) != MAGIC) {
+				throw new IOException("Not a columnar file: " + file);
+			}
+			ByteBuffer tail = map(channel, fileSize - 16, 16, file);
+			long footerStart = tail.getLong(0);
+			if (tail.getInt(8) != MAGIC || tail.getInt(12) != VERSION) {
+				throw new IOException("Not a columnar file: " + file);
+			}
+			if (footerStart < 8 || footerStart > fileSize - 16) {
+				throw new IOException("Corrupt columnar file: " + file);
+			}
+			ByteBuffer footer = map(channel, footerStart, fileSize - 16 - footerStart, file);
+
+			try {
+				// schema
+				int n = footer.getInt();
+				int blockRows = footer.getInt();
+				if (n < 0 || blockRows <= 0) {
+					throw new IOException("Corrupt columnar file: " + file);
+				}
+				int blocks = (int) (((long) n + blockRows - 1) / blockRows);
+				if (footer.getInt() != Nutrient.VALUES.length) {
+					throw new IOException("Columnar file schema does not match: " + file);
+				}
+				for (Nutrient nutrient : Nutrient.VALUES) {
+					if (!nutrient.getName().equals(getString(footer, file))) {
+						throw new IOException("Columnar file schema does not match: " + file);
+					}
+				}
+
+				// ids
+				int idEncoding = footer.getInt();
+				int idLength = footer.getInt();
+				ByteBuffer idSection = map(channel, footer.getLong(), footer.getLong(), file);
+				ByteBuffer ids;
+				int[] idOffsets = null;
+				if (idEncoding == HEX_IDS) {
+					if (idLength < 0 || idLength % 2 != 0 || idSection.capacity() != (long) n * (idLength / 2)) {
+						throw new IOException("Corrupt columnar file: " + file);
+					}
+					ids = idSection;
+				} else if (idEncoding == UTF_IDS) {
+					idOffsets = new int[n + 1];
+					idSection.asIntBuffer().get(idOffsets);
+					idSection.position(4 * (n + 1));
+					ids = idSection.slice();
+					for (int row = 0; row < n; row++) {
+						if (idOffsets[row] < 0 || idOffsets[row] > idOffsets[row + 1]) {
+							throw new IOException("Corrupt columnar file: " + file);
+						}
+					}
+					if (idOffsets[n] != ids.capacity()) {
+						throw new IOException("Corrupt columnar file: " + file);
+					}
+				} else {
+					throw new IOException("Corrupt columnar file: " + file);
+				}
+
+				// dictionaries and the columns of longs
+				int brandCount = footer.getInt();
+				String[] brands = frontDecode(map(channel, footer.getLong(), footer.getLong(), file), brandCount, file);
+				int suffixCount = footer.getInt();
+				String[] suffixes = frontDecode(map(channel, footer.getLong(), footer.getLong(), file), suffixCount,
+						file);
+				PackedColumn brandCodes = readColumn(channel, footer, n, blockRows, blocks, file);
+				PackedColumn suffixCodes = readColumn(channel, footer, n, blockRows, blocks, file);
+				brandCodes.checkCodes(brands.length, file);
+				suffixCodes.checkCodes(suffixes.length, file);
+				PackedColumn[] columns = new PackedColumn[Nutrient.VALUES.length];
+				int[] encodings = new int[Nutrient.VALUES.length];
+				int[] scales = new int[Nutrient.VALUES.length];
+				for (Nutrient nutrient : Nutrient.VALUES) {
+					encodings[nutrient.ordinal()] = footer.getInt();
+					scales[nutrient.ordinal()] = footer.getInt();
+					if ((encodings[nutrient.ordinal()] != FIXED_POINT && encodings[nutrient.ordinal()] != SORTABLE_BITS)
+							|| scales[nutrient.ordinal()] < 0 || scales[nutrient.ordinal()] > ExactDecimal.MAX_SCALE) {
+						throw new IOException("Corrupt columnar file: " + file);
+					}
+					columns[nutrient.ordinal()] = readColumn(channel, footer, n, blockRows, blocks, file);
+				}
+
+				return new ColumnarCatalog(n, blockRows, idEncoding, idLength, ids, idOffsets, brands, suffixes,
+						brandCodes, suffixCodes, columns, encodings, scales);
+			} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+				throw new IOException("Corrupt columnar file: " + file);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of food items in the catalog
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the number of blocks the columns are cut into
+	 */
+	public int blockCount() {
+		return this.brandCodes.blockCount();
+	}
+
+	/**
+	 * Reads a food item from the columns
+	 *
+	 * @param row
+	 *            the row id of the food item, its position in the written list
+	 * @return a new food item, not in any catalog
+	 * @throws IndexOutOfBoundsException
+	 *             if row is not in [0, size())
+	 */
+	public FoodItem getFoodItem(int row) {
+		if (row < 0 || row >= this.size) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + this.size);
+		}
+		int block = row / this.blockRows;
+		int i = row % this.blockRows;
+		String name = this.brands[(int) this.brandCodes.get(block, i)]
+				+ this.suffixes[(int) this.suffixCodes.get(block, i)];
+		FoodItem foodItem = new FoodItem(id(row), name);
+		for (Nutrient nutrient : Nutrient.VALUES) {
+			foodItem.addNutrient(nutrient, decode(nutrient.ordinal(), this.columns[nutrient.ordinal()].get(block, i)));
+		}
+		return foodItem;
+	}
+
+	/**
+	 * Reads the food items of the given rows, in the order of the rows
+	 *
+	 * @param rowIds
+	 *            bitmap of row ids
+	 * @return the food items
+	 */
+	public List<FoodItem> getFoodItems(RowBitmap rowIds) {
+		List<FoodItem> foodItems = new ArrayList<FoodItem>(rowIds.cardinality());
+		PrimitiveIterator.OfInt it = rowIds.iterator();
+		while (it.hasNext()) {
+			foodItems.add(getFoodItem(it.nextInt()));
+		}
+		return foodItems;
+	}
+
+	/**
+	 * Reads every food item, unpacking the columns a block at a time
+	 *
+	 * @return the food items in row order
+	 */
+	public List<FoodItem> readAll() {
+		List<FoodItem> foodItems = new ArrayList<FoodItem>(this.size);
+		long[] brandBlock = new long[this.blockRows];
+		long[] suffixBlock = new long[this.blockRows];
+		long[][] valueBlocks = new long[Nutrient.VALUES.length][this.blockRows];
+
+		for (int block = 0; block < blockCount(); block++) {
+			int count = this.brandCodes.unpack(block, brandBlock);
+			this.suffixCodes.unpack(block, suffixBlock);
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				this.columns[nutrient.ordinal()].unpack(block, valueBlocks[nutrient.ordinal()]);
+			}
+			for (int i = 0; i < count; i++) {
+				int row = block * this.blockRows + i;
+				FoodItem foodItem = new FoodItem(id(row),
+						this.brands[(int) brandBlock[i]] + this.suffixes[(int) suffixBlock[i]]);
+				for (Nutrient nutrient : Nutrient.VALUES) {
+					foodItem.addNutrient(nutrient, decode(nutrient.ordinal(), valueBlocks[nutrient.ordinal()][i]));
+				}
+				foodItems.add(foodItem);
+			}
+		}
+		return foodItems;
+	}
+
+	/**
+	 * Gets the rows that satisfy every window of a query. A block is skipped if
+	 * its minimum and maximum put a nutrient outside the window, taken whole if
+	 * they put every nutrient inside, and otherwise unpacked one nutrient at a
+	 * time, keeping the rows that are still in every window.
+	 *
+	 * @param query
+	 *            the compiled query
+	 * @return bitmap of the matching row ids
+	 */
+	public RowBitmap filterRows(CompiledQuery query) {
+		if (query.isEmpty()) {
+			return new RowBitmap();
+		}
+
+		// the windows in the encoded values of each column
+		List<Nutrient> nutrients = query.getNutrients();
+		long[] lo = new long[nutrients.size()];
+		long[] hi = new long[nutrients.size()];
+		for (int k = 0; k < nutrients.size(); k++) {
+			Nutrient nutrient = nutrients.get(k);
+			if (Double.isNaN(query.lo(nutrient)) || Double.isNaN(query.hi(nutrient))) {
+				return new RowBitmap();
+			}
+			lo[k] = encodedAtLeast(nutrient.ordinal(), query.lo(nutrient));
+			hi[k] = encodedAtMost(nutrient.ordinal(), query.hi(nutrient));
+			if (lo[k] > hi[k]) {
+				return new RowBitmap();
+			}
+		}
+
+		int[] matches = new int[64];
+		int matchCount = 0;
+		int[] candidates = new int[this.blockRows];
+		long[] deltas = new long[this.blockRows];
+		boolean[] covered = new boolean[nutrients.size()];
+		for (int block = 0; block < blockCount(); block++) {
+			int count = this.brandCodes.blockSize(block);
+
+			// decide from the statistics alone where they can
+			boolean skip = false;
+			boolean whole = true;
+			for (int k = 0; k < nutrients.size() && !skip; k++) {
+				PackedColumn column = this.columns[nutrients.get(k).ordinal()];
+				skip = column.max[block] < lo[k] || column.min[block] > hi[k];
+				covered[k] = column.min[block] >= lo[k] && column.max[block] <= hi[k];
+				whole &= covered[k];
+			}
+			if (skip) {
+				continue;
+			}
+			int candidateCount = count;
+			for (int i = 0; i < count; i++) {
+				candidates[i] = i;
+			}
+
+			// narrow the rows down by each window the block is not inside, comparing
+			// distances from the block's minimum
+			for (int k = 0; k < nutrients.size() && !whole && candidateCount > 0; k++) {
+				if (covered[k]) {
+					continue;
+				}
+				PackedColumn column = this.columns[nutrients.get(k).ordinal()];
+				long min = column.min[block];
+				long from = Math.max(lo[k], min) - min + Long.MIN_VALUE;
+				long to = Math.min(hi[k], column.max[block]) - min + Long.MIN_VALUE;
+				column.unpackDeltas(block, deltas);
+				int kept = 0;
+				for (int c = 0; c < candidateCount; c++) {
+					long delta = deltas[candidates[c]] + Long.MIN_VALUE;
+					if (delta >= from && delta <= to) {
+						candidates[kept++] = candidates[c];
+					}
+				}
+				candidateCount = kept;
+			}
+
+			if (matchCount + candidateCount > matches.length) {
+				matches = Arrays.copyOf(matches, Math.max(matches.length * 2, matchCount + candidateCount));
+			}
+			for (int c = 0; c < candidateCount; c++) {
+				matches[matchCount++] = block * this.blockRows + candidates[c];
+			}
+		}
+		return RowBitmap.of(Arrays.copyOf(matches, matchCount));
+	}
+
+	/**
+	 * @return the id of a row
+	 */
+	private String id(int row) {
+		if (this.idEncoding == HEX_IDS) {
+			int bytes = this.idLength / 2;
+			char[] digits = new char[this.idLength];
+			for (int i = 0; i < bytes; i++) {
+				int b = this.ids.get(row * bytes + i) & 0xff;
+				digits[2 * i] = HEX_DIGITS[b >>> 4];
+				digits[2 * i + 1] = HEX_DIGITS[b & 0xf];
+			}
+			return new String(digits);
+		}
+		byte[] bytes = new byte[this.idOffsets[row + 1] - this.idOffsets[row]];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = this.ids.get(this.idOffsets[row] + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the double an encoded value of a nutrient column stands for
+	 */
+	private double decode(int ordinal, long value) {
+		if (this.encodings[ordinal] == FIXED_POINT) {
+			return ExactDecimal.toDouble(value, this.scales[ordinal]);
+		}
+		return Double.longBitsToDouble(value ^ ((value >> 63) & Long.MAX_VALUE));
+	}
+
+	/**
+	 * @return the smallest encoded value of a nutrient column that decodes to at
+	 *         least the bound
+	 */
+	private long encodedAtLeast(int ordinal, double bound) {
+		if (this.encodings[ordinal] == SORTABLE_BITS) {
+			// -0.0 is no less than 0, so a window from 0 takes it in
+			return sortable(bound == 0 ? -0.0 : bound);
+		}
+		double scaled = Math.ceil(bound * ExactDecimal.powerOfTen(this.scales[ordinal]));
+		if (scaled <= -ExactDecimal.MAX_MANTISSA) {
+			return -ExactDecimal.MAX_MANTISSA;
+		}
+		if (scaled >= ExactDecimal.MAX_MANTISSA) {
+			return ExactDecimal.MAX_MANTISSA;
+		}
+
+		// the scaling may round either way, step to the exact boundary
+		long value = (long) scaled;
+		while (decode(ordinal, value - 1) >= bound) {
+			value--;
+		}
+		while (decode(ordinal, value) < bound) {
+			value++;
+		}
+		return value;
+	}
+
+	/**
+	 * @return the largest encoded value of a nutrient column that decodes to at
+	 *         most the bound
+	 */
+	private long encodedAtMost(int ordinal, double bound) {
+		if (this.encodings[ordinal] == SORTABLE_BITS) {
+			return sortable(bound == 0 ? 0.0 : bound);
+		}
+		double scaled = Math.floor(bound * ExactDecimal.powerOfTen(this.scales[ordinal]));
+		if (scaled <= -ExactDecimal.MAX_MANTISSA) {
+			return -ExactDecimal.MAX_MANTISSA;
+		}
+		if (scaled >= ExactDecimal.MAX_MANTISSA) {
+			return ExactDecimal.MAX_MANTISSA;
+		}
+		long value = (long) scaled;
+		while (decode(ordinal, value + 1) <= bound) {
+			value++;
+		}
+		while (decode(ordinal, value) > bound) {
+			value--;
+		}
+		return value;
+	}
+
+	/**
+	 * Finds the smallest power of ten that turns every value of a column into a
+	 * whole number that divides back to the same double
+	 *
+	 * @return the exponent, or -1 if there is none
+	 */
+	private static int fixedPointScale(double[] column) {
+		for (int scale = 0; scale <= ExactDecimal.MAX_SCALE; scale++) {
+			boolean exact = true;
+			for (int row = 0; row < column.length && exact; row++) {
+				exact = ExactDecimal.mantissa(column[row], scale) != ExactDecimal.INEXACT;
+			}
+			if (exact) {
+				return scale;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the encoded value of a double in a column of the given encoding
+	 */
+	private static long encode(int encoding, int scale, double value) {
+		if (encoding == FIXED_POINT) {
+			return ExactDecimal.mantissa(value, scale);
+		}
+		return sortable(value);
+	}
+
+	/**
+	 * Turns the bits of a double into a long that orders the same way, by
+	 * flipping all but the sign bit of negative values. Doing it twice gives the
+	 * bits back.
+	 */
+	private static long sortable(double value) {
+		long bits = Double.doubleToRawLongBits(value);
+		return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+	}
+
+	/**
+	 * @return the number of hex digits of every id, if all ids are the same even
+	 *         number of lowercase hex digits, else -1
+	 */
+	private static int hexIdLength(List<FoodItem> foodItems) {
+		int length = foodItems.isEmpty() ? 0 : foodItems.get(0).getID().length();
+		if (length % 2 != 0) {
+			return -1;
+		}
+		for (FoodItem foodItem : foodItems) {
+			String id = foodItem.getID();
+			if (id.length() != length) {
+				return -1;
+			}
+			for (int i = 0; i < length; i++) {
+				char c = id.charAt(i);
+				if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f')) {
+					return -1;
+				}
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * @return the bytes a lowercase hex id spells
+	 */
+	private static byte[] hexBytes(String id) {
+		byte[] bytes = new byte[id.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (Character.digit(id.charAt(2 * i), 16) << 4 | Character.digit(id.charAt(2 * i + 1), 16));
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return the distinct values, in order
+	 */
+	private static String[] dictionary(String[] values) {
+		String[] sorted = values.clone();
+		Arrays.sort(sorted);
+		int count = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (count == 0 || !sorted[count - 1].equals(sorted[i])) {
+				sorted[count++] = sorted[i];
+			}
+		}
+		return Arrays.copyOf(sorted, count);
+	}
+
+	/**
+	 * @return the position of each value in the dictionary
+	 */
+	private static long[] codes(String[] values, String[] dictionary) {
+		long[] codes = new long[values.length];
+		for (int row = 0; row < values.length; row++) {
+			codes[row] = Arrays.binarySearch(dictionary, values[row]);
+		}
+		return codes;
+	}
+
+	/**
+	 * Front codes a dictionary: each entry is the number of UTF-8 bytes it shares
+	 * with the one before it and the number it adds, as varints, and then the
+	 * bytes it adds
+	 */
+	private static byte[] frontCode(String[] dictionary) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] previous = new byte[0];
+		for (String entry : dictionary) {
+			byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+			int shared = 0;
+			while (shared < bytes.length && shared < previous.length && bytes[shared] == previous[shared]) {
+				shared++;
+			}
+			putVarint(out, shared);
+			putVarint(out, bytes.length - shared);
+			out.write(bytes, shared, bytes.length - shared);
+			previous = bytes;
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes a front coded dictionary
+	 */
+	private static String[] frontDecode(ByteBuffer in, int count, File file) throws IOException {
+		if (count < 0) {
+			throw new IOException("Corrupt columnar file: " + file);
+		}
+		String[] dictionary = new String[count];
+		byte[] previous = new byte[0];
+		for (int i = 0; i < count; i++) {
+			int shared = getVarint(in, file);
+			int added = getVarint(in, file);
+			if (shared > previous.length || added > in.remaining()) {
+				throw new IOException("Corrupt columnar file: " + file);
+			}
+			byte[] bytes = Arrays.copyOf(previous, shared + added);
+			in.get(bytes, shared, added);
+			dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+			previous = bytes;
+		}
+		return dictionary;
+	}
+
+	/**
+	 * Writes a non-negative int 7 bits at a time, low bits first
+	 */
+	private static void putVarint(ByteArrayOutputStream out, int value) {
+		while (value >= 0x80) {
+			out.write(value & 0x7f | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Reads an int written by putVarint
+	 */
+	private static int getVarint(ByteBuffer in, File file) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				if (value < 0) {
+					break;
+				}
+				return value;
+			}
+		}
+		throw new IOException("Corrupt columnar file: " + file);
+	}
+
+	/**
+	 * Writes a column of longs: the statistics of each block, then the packed
+	 * distances of each block from its minimum
+	 *
+	 * @return where the statistics start, where the packed values start and how
+	 *         many bytes they take
+	 */
+	private static long[] writeColumn(FoodSnapshot.Writer out, long[] values) throws IOException {
+		int blocks = (values.length + BLOCK_ROWS - 1) / BLOCK_ROWS;
+		long[] min = new long[blocks];
+		long[] max = new long[blocks];
+		int[] width = new int[blocks];
+
+		// statistics, each block's words follow the last one's
+		long statsStart = out.position;
+		long words = 0;
+		for (int block = 0; block < blocks; block++) {
+			int from = block * BLOCK_ROWS;
+			int to = Math.min(values.length, from + BLOCK_ROWS);
+			min[block] = values[from];
+			max[block] = values[from];
+			for (int row = from + 1; row < to; row++) {
+				min[block] = Math.min(min[block], values[row]);
+				max[block] = Math.max(max[block], values[row]);
+			}
+			width[block] = 64 - Long.numberOfLeadingZeros(max[block] - min[block]);
+			out.putLong(min[block]);
+			out.putLong(max[block]);
+			out.putLong(words);
+			out.putLong(width[block]);
+			words += ((long) (to - from) * width[block] + 63) >>> 6;
+		}
+
+		// packed values, each word filled from its low bits
+		long dataStart = out.position;
+		for (int block = 0; block < blocks; block++) {
+			int from = block * BLOCK_ROWS;
+			int to = Math.min(values.length, from + BLOCK_ROWS);
+			if (width[block] == 0) {
+				continue;
+			}
+			long word = 0;
+			int filled = 0;
+			for (int row = from; row < to; row++) {
+				long delta = values[row] - min[block];
+				word |= delta << filled;
+				filled += width[block];
+				if (filled >= 64) {
+					out.putLong(word);
+					filled -= 64;
+					word = filled == 0 ? 0 : delta >>> (width[block] - filled);
+				}
+			}
+			if (filled > 0) {
+				out.putLong(word);
+			}
+		}
+		return new long[] { statsStart, dataStart, out.position - dataStart };
+	}
+
+	/**
+	 * Writes where a column's sections start and how long its packed values are
+	 */
+	private static void putSection(FoodSnapshot.Writer out, long[] section) throws IOException {
+		for (long value : section) {
+			out.putLong(value);
+		}
+	}
+
+	/**
+	 * Reads the statistics of a column described next in the footer and maps its
+	 * packed values
+	 */
+	private static PackedColumn readColumn(FileChannel channel, ByteBuffer footer, int n, int blockRows, int blocks,
+			File file) throws IOException {
+		ByteBuffer stats = map(channel, footer.getLong(), (long) blocks * BLOCK_STATS_BYTES, file);
+		ByteBuffer data = map(channel, footer.getLong(), footer.getLong(), file);
+		PackedColumn column = new PackedColumn(data, n, blockRows, blocks);
+		for (int block = 0; block < blocks; block++) {
+			column.min[block] = stats.getLong();
+			column.max[block] = stats.getLong();
+			column.offset[block] = stats.getLong();
+			long width = stats.getLong();
+			long words = ((long) column.blockSize(block) * width + 63) >>> 6;
+			if (column.min[block] > column.max[block] || width < 0 || width > 64 || column.offset[block] < 0
+					|| (column.offset[block] + words) * 8 > data.capacity()) {
+				throw new IOException("Corrupt columnar file: " + file);
+			}
+			column.width[block] = (int) width;
+		}
+		return column;
+	}
+
+	/**
+	 * Reads a short string written by FoodSnapshot.Writer.putString
+	 */
+	private static String getString(ByteBuffer in, File file) throws IOException {
+		int length = in.getInt();
+		if (length < 0 || length > 1024) {
+			throw new IOException("Corrupt columnar file: " + file);
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Maps a section of the file, little-endian
+	 */
+	private static ByteBuffer map(FileChannel channel, long position, long bytes, File file) throws IOException {
+		if (position < 0 || bytes < 0 || bytes > Integer.MAX_VALUE || position + bytes > channel.size()) {
+			throw new IOException("Corrupt columnar file: " + file);
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, bytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * A column of longs cut into blocks, each stored as the distances of its
+	 * values from its minimum, bit-packed into little-endian words
+	 */
+	private static class PackedColumn {
+
+		// the packed words of every block
+		final ByteBuffer data;
+
+		// number of values
+		final int size;
+
+		// values in a block
+		final int blockRows;
+
+		// smallest and largest value of each block
+		final long[] min;
+		final long[] max;
+
+		// first word of each block in data
+		final long[] offset;
+
+		// bits of each packed distance, by block
+		final int[] width;
+
+		/**
+		 * Package constructor, the statistics are filled in by the caller
+		 */
+		PackedColumn(ByteBuffer data, int size, int blockRows, int blocks) {
+			this.data = data;
+			this.size = size;
+			this.blockRows = blockRows;
+			this.min = new long[blocks];
+			this.max = new long[blocks];
+			this.offset = new long[blocks];
+			this.width = new int[blocks];
+		}
+
+		int blockCount() {
+			return this.min.length;
+		}
+
+		/**
+		 * @return the number of values in a block, only the last one is short
+		 */
+		int blockSize(int block) {
+			return Math.min(this.blockRows, this.size - block * this.blockRows);
+		}
+
+		/**
+		 * @return the value at a position of a block
+		 */
+		long get(int block, int i) {
+			if (this.width[block] == 0) {
+				return this.min[block];
+			}
+			return this.min[block] + delta(block, i);
+		}
+
+		/**
+		 * Unpacks the values of a block
+		 *
+		 * @return the number of values in the block
+		 */
+		int unpack(int block, long[] values) {
+			int count = unpackDeltas(block, values);
+			for (int i = 0; i < count; i++) {
+				values[i] += this.min[block];
+			}
+			return count;
+		}
+
+		/**
+		 * Unpacks the distances of a block's values from its minimum
+		 *
+		 * @return the number of values in the block
+		 */
+		int unpackDeltas(int block, long[] deltas) {
+			int count = blockSize(block);
+			if (this.width[block] == 0) {
+				Arrays.fill(deltas, 0, count, 0);
+				return count;
+			}
+			for (int i = 0; i < count; i++) {
+				deltas[i] = delta(block, i);
+			}
+			return count;
+		}
+
+		/**
+		 * @return the packed distance at a position of a block, which spans at
+		 *         most two words
+		 */
+		private long delta(int block, int i) {
+			int width = this.width[block];
+			long bit = (long) i * width;
+			int word = (int) (this.offset[block] + (bit >>> 6));
+			int shift = (int) (bit & 63);
+			long value = this.data.getLong(word * 8) >>> shift;
+			if (shift + width > 64) {
+				value |= this.data.getLong((word + 1) * 8) << (64 - shift);
+			}
+			return width == 64 ? value : value & ((1L << width) - 1);
+		}
+
+		/**
+		 * Checks that every value is a position in a dictionary of the given size
+		 */
+		void checkCodes(int dictionarySize, File file) throws IOException {
+			for (int block = 0; block < blockCount(); block++) {
+				if (this.min[block] < 0 || this.max[block] >= dictionarySize) {
+					throw new IOException("Corrupt columnar file: " + file);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/**
+ * Filename:   CompiledQuery.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A list of nutrient rules parsed once into typed form. Every rule on the same
+ * nutrient is merged into one [lo, hi] window of primitive doubles, indexed by
+ * Nutrient.ordinal(), so running the query never splits, parses or compares
+ * strings. A compiled query is immutable and can be reused for as long as the
+ * rules are.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class CompiledQuery {
+
+	/**
+	 * The comparison operator of a rule
+	 */
+	public enum Operator {
+		AT_LEAST(">="), AT_MOST("<="), EQUAL("==");
+
+		// The symbol of the operator in a rule
+		private final String symbol;
+
+		/**
+		 * Private constructor
+		 *
+		 * @param symbol
+		 *            the symbol of the operator in a rule
+		 */
+		private Operator(String symbol) {
+			this.symbol = symbol;
+		}
+
+		/**
+		 * @return the symbol of the operator in a rule
+		 */
+		public String getSymbol() {
+			return this.symbol;
+		}
+
+		/**
+		 * Finds the operator with the given symbol
+		 *
+		 * @param symbol
+		 *            one of "<=", "==", ">="
+		 * @return the operator, or null if no operator has that symbol
+		 */
+		public static Operator fromSymbol(String symbol) {
+			for (Operator operator : values()) {
+				if (operator.symbol.equals(symbol)) {
+					return operator;
+				}
+			}
+			return null;
+		}
+	}
+
+	// Separates the parts of a rule, compiled once rather than on every split
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	// Lower end of the window of each nutrient, by ordinal
+	private final double[] lo;
+
+	// Upper end of the window of each nutrient, by ordinal
+	private final double[] hi;
+
+	// The nutrients that have a window, in the order they first appear
+	private final List<Nutrient> nutrients;
+
+	// False if a rule named an unknown nutrient or operator
+	private final boolean valid;
+
+	/**
+	 * Private constructor, queries are made by compile()
+	 */
+	private CompiledQuery(double[] lo, double[] hi, List<Nutrient> nutrients, boolean valid) {
+		this.lo = lo;
+		this.hi = hi;
+		this.nutrients = Collections.unmodifiableList(nutrients);
+		this.valid = valid;
+	}
+
+	/**
+	 * Compiles rules in the format of FoodData.filterByNutrients, "<nutrient>
+	 * <comparator> <value>", where the parts may be separated by any run of
+	 * whitespace. A rule with an unknown nutrient or comparator makes the whole
+	 * query match nothing, the same as filterByNutrients.
+	 *
+	 * @param rules
+	 *            list of rules
+	 * @return the compiled query
+	 * @throws NumberFormatException
+	 *             if the value of a rule is not a double
+	 */
+	public static CompiledQuery compile(List<String> rules) {
+		int nutrientCount = Nutrient.values().length;
+		double[] lo = new double[nutrientCount];
+		double[] hi = new double[nutrientCount];
+		Arrays.fill(lo, Double.NEGATIVE_INFINITY);
+		Arrays.fill(hi, Double.POSITIVE_INFINITY);
+		List<Nutrient> nutrients = new ArrayList<Nutrient>();
+
+		for (String rule : rules) {
+			String[] currRule = WHITESPACE.split(rule.trim());
+			Nutrient nutrient = Nutrient.fromName(currRule[0]);
+			Operator operator = Operator.fromSymbol(currRule[1]);
+			double value = Double.parseDouble(currRule[2]);
+			if (nutrient == null || operator == null) {
+				return new CompiledQuery(lo, hi, new ArrayList<Nutrient>(), false);
+			}
+
+			// narrow the nutrient's window by the rule
+			int n = nutrient.ordinal();
+			if (!nutrients.contains(nutrient)) {
+				nutrients.add(nutrient);
+			}
+			if (operator != Operator.AT_MOST) {
+				lo[n] = Math.max(lo[n], value);
+			}
+			if (operator != Operator.AT_LEAST) {
+				hi[n] = Math.min(hi[n], value);
+			}
+		}
+		return new CompiledQuery(lo, hi, nutrients, true);
+	}
+
+	/**
+	 * Normalizes rules so that lists of the same rules in any order, case or
+	 * spacing give equal keys
+	 *
+	 * @param rules
+	 *            list of rules
+	 * @return the normalized rules, sorted
+	 */
+	public static List<String> normalize(List<String> rules) {
+		List<String> normalized = new ArrayList<String>(rules.size());
+		for (String rule : rules) {
+			normalized.add(String.join(" ", WHITESPACE.split(rule.trim().toLowerCase())));
+		}
+		Collections.sort(normalized);
+		return normalized;
+	}
+
+	/**
+	 * @return true if no food item can match, because a rule was invalid or a
+	 *         window is empty
+	 */
+	public boolean isEmpty() {
+		if (!this.valid) {
+			return true;
+		}
+		for (Nutrient nutrient : this.nutrients) {
+			if (this.lo[nutrient.ordinal()] > this.hi[nutrient.ordinal()]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the nutrients that have a window, in the order they first appear in
+	 *         the rules
+	 */
+	public List<Nutrient> getNutrients() {
+		return this.nutrients;
+	}
+
+	/**
+	 * @return true if the query has a window on the nutrient
+	 */
+	public boolean constrains(Nutrient nutrient) {
+		return this.nutrients.contains(nutrient);
+	}
+
+	/**
+	 * @return the lower end of the nutrient's window, -Infinity if it has none
+	 */
+	public double lo(Nutrient nutrient) {
+		return this.lo[nutrient.ordinal()];
+	}
+
+	/**
+	 * @return the upper end of the nutrient's window, Infinity if it has none
+	 */
+	public double hi(Nutrient nutrient) {
+		return this.hi[nutrient.ordinal()];
+	}
+
+	/**
+	 * Two queries are equal if they match the same food items for any catalog,
+	 * that is if they have the same windows, however their rules were written
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof CompiledQuery)) {
+			return false;
+		}
+		CompiledQuery query = (CompiledQuery) other;
+		if (this.isEmpty() || query.isEmpty()) {
+			return this.isEmpty() && query.isEmpty();
+		}
+		return Arrays.equals(this.lo, query.lo) && Arrays.equals(this.hi, query.hi);
+	}
+
+	/**
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return this.isEmpty() ? 0 : 31 * Arrays.hashCode(this.lo) + Arrays.hashCode(this.hi);
+	}
+
+	/**
+	 * Returns a string representation of the query
+	 *
+	 * @return the window of each nutrient
+	 */
+	@Override
+	public String toString() {
+		if (!this.valid) {
+			return "[invalid]";
+		}
+
+		StringBuilder sb = new StringBuilder("[");
+		for (Nutrient nutrient : this.nutrients) {
+			if (sb.length() > 1) {
+				sb.append(", ");
+			}
+			sb.append(nutrient.getName()).append(" in [").append(lo(nutrient)).append(", ").append(hi(nutrient))
+					.append(']');
+		}
+		return sb.append(']').toString();
+	}
+}
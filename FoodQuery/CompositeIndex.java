@@ -0,0 +1,397 @@
+/**
+ * Filename:   CompositeIndex.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An index over an ordered tuple of nutrients, like (calories, protein). Food
+ * items are kept in a B+ tree sorted by the first nutrient, then by the second
+ * one, and so on, and every entry carries the values of all the nutrients in
+ * the tuple.
+ *
+ * A query that constrains the leading nutrients is answered with one scan of
+ * the tree between the tuple of lower ends and the tuple of upper ends. The
+ * values of the other nutrients in the tuple are checked from the entries
+ * themselves, so no second index is scanned and no lists are intersected.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class CompositeIndex {
+
+	// Branching factor of the tree
+	private static final int BRANCHING_FACTOR = 64;
+
+	// The nutrients of the tuple, in order
+	private final String[] nutrients;
+
+	// The same nutrients as enum constants, null for a nutrient that is not one
+	private final Nutrient[] keys;
+
+	// Entries sorted by their tuple, each entry is also its own value
+	private BPTree<Tuple, Tuple> tree;
+
+	// The entry of each row, null for rows not in the index. Entries are removed
+	// by these rather than by the food item's current values, which may have
+	// changed since the item was added.
+	private List<Tuple> tuplesByRow;
+
+	/**
+	 * Public constructor for an empty index
+	 *
+	 * @param nutrients
+	 *            the nutrients of the tuple, in order [CASE-INSENSITIVE]
+	 */
+	public CompositeIndex(String... nutrients) {
+		if (nutrients.length == 0) {
+			throw new IllegalArgumentException("A composite index needs at least one nutrient");
+		}
+
+		this.nutrients = new String[nutrients.length];
+		this.keys = new Nutrient[nutrients.length];
+		for (int i = 0; i < nutrients.length; i++) {
+			this.nutrients[i] = nutrients[i].toLowerCase();
+			this.keys[i] = Nutrient.fromName(nutrients[i]);
+		}
+		this.tree = new BPTree<Tuple, Tuple>(BRANCHING_FACTOR);
+		this.tuplesByRow = new ArrayList<Tuple>();
+	}
+
+	/**
+	 * Gets the nutrients of the tuple
+	 *
+	 * @return the nutrients, in order
+	 */
+	public List<String> getNutrients() {
+		return Collections.unmodifiableList(Arrays.asList(this.nutrients));
+	}
+
+	/**
+	 * Adds a food item to the index
+	 *
+	 * @param foodItem
+	 *            the food item to add
+	 * @param columns
+	 *            the columns holding the food item's row
+	 * @param row
+	 *            the row id of the food item
+	 */
+	public void insert(FoodItem foodItem, NutrientColumns columns, int row) {
+		Tuple tuple = tupleOf(foodItem, columns, row);
+		this.tree.insert(tuple, tuple);
+		setTuple(row, tuple);
+	}
+
+	/**
+	 * Removes the food item of a row from the index
+	 *
+	 * @param row
+	 *            the row id of the food item
+	 * @return true if the food item was removed, false if the row is not indexed
+	 */
+	public boolean remove(int row) {
+		Tuple tuple = row < this.tuplesByRow.size() ? this.tuplesByRow.set(row, null) : null;
+		return tuple != null && this.tree.remove(tuple, tuple);
+	}
+
+	/**
+	 * Moves the food item of a row to its new tuple, if any nutrient of the tuple
+	 * changed
+	 *
+	 * @param newItem
+	 *            the new version of the food item
+	 * @param columns
+	 *            the columns holding the food item's row
+	 * @param row
+	 *            the row id of the food item
+	 */
+	public void update(FoodItem newItem, NutrientColumns columns, int row) {
+		Tuple oldTuple = row < this.tuplesByRow.size() ? this.tuplesByRow.get(row) : null;
+		Tuple newTuple = tupleOf(newItem, columns, row);
+
+		// the stored entry is matched by its old tuple, so this is a remove and an
+		// insert rather than a BPTree update of the value
+		if (oldTuple != null && !oldTuple.equals(newTuple) && this.tree.remove(oldTuple, oldTuple)) {
+			this.tree.insert(newTuple, newTuple);
+			setTuple(row, newTuple);
+		}
+	}
+
+	/**
+	 * Replaces the contents of the index with the given rows. The tuples are
+	 * sorted once and bulk loaded.
+	 *
+	 * @param rows
+	 *            food items by row id, null for removed rows
+	 * @param columns
+	 *            the columns holding the rows
+	 */
+	public void bulkLoad(List<FoodItem> rows, NutrientColumns columns) {
+		List<Tuple> tuples = new ArrayList<Tuple>(rows.size());
+		for (int row = 0; row < rows.size(); row++) {
+			if (rows.get(row) != null) {
+				tuples.add(tupleOf(rows.get(row), columns, row));
+			}
+		}
+		load(tuples, rows.size());
+	}
+
+	/**
+	 * Replaces the contents of the index with the given rows, taken in an order
+	 * already known to be the tuple order, such as one from toRowArray(). The
+	 * sort then only confirms the order in one pass.
+	 *
+	 * @param rows
+	 *            food items by row id
+	 * @param columns
+	 *            the columns holding the rows
+	 * @param order
+	 *            the row ids to index, in tuple order
+	 */
+	public void bulkLoad(List<FoodItem> rows, NutrientColumns columns, int[] order) {
+		List<Tuple> tuples = new ArrayList<Tuple>(order.length);
+		for (int row : order) {
+			tuples.add(tupleOf(rows.get(row), columns, row));
+		}
+		load(tuples, rows.size());
+	}
+
+	/**
+	 * Sorts the tuples and bulk loads them into a new tree
+	 *
+	 * @param tuples
+	 *            the tuples, in any order
+	 * @param rowCount
+	 *            one more than the largest row id
+	 */
+	private void load(List<Tuple> tuples, int rowCount) {
+		Collections.sort(tuples);
+
+		List<Tuple> newTuplesByRow = new ArrayList<Tuple>(Collections.nCopies(rowCount, (Tuple) null));
+		for (Tuple tuple : tuples) {
+			newTuplesByRow.set(tuple.row, tuple);
+		}
+		BPTree<Tuple, Tuple> newTree = new BPTree<Tuple, Tuple>(BRANCHING_FACTOR);
+		newTree.bulkLoad(tuples, tuples);
+		this.tree = newTree;
+		this.tuplesByRow = newTuplesByRow;
+	}
+
+	/**
+	 * Gets every row id of the index in tuple order
+	 *
+	 * @return the row ids in tuple order
+	 */
+	public int[] toRowArray() {
+		int[] rows = new int[this.tree.size()];
+		Iterator<Tuple> it = this.tree.rangeIterator(null, null);
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = it.next().row;
+		}
+		return rows;
+	}
+
+	/**
+	 * Counts how many leading nutrients of the tuple have a window. The index
+	 * only narrows a scan through its leading nutrients, so this is how well it
+	 * fits a query.
+	 *
+	 * @param query
+	 *            the compiled nutrient rules
+	 * @return the number of leading nutrients that are queried
+	 */
+	public int prefixLength(CompiledQuery query) {
+		int length = 0;
+		while (length < this.keys.length && this.keys[length] != null && query.constrains(this.keys[length])) {
+			length++;
+		}
+		return length;
+	}
+
+	/**
+	 * Gets the row ids of the food items whose values fall in the window of every
+	 * nutrient of the tuple that has one. Windows on nutrients outside the tuple
+	 * are ignored.
+	 *
+	 * @param query
+	 *            the compiled nutrient rules
+	 * @return the matching row ids, in tuple order
+	 */
+	public int[] search(CompiledQuery query) {
+		double[] lo = new double[this.keys.length];
+		double[] hi = new double[this.keys.length];
+		for (int i = 0; i < this.keys.length; i++) {
+			lo[i] = this.keys[i] == null ? Double.NEGATIVE_INFINITY : query.lo(this.keys[i]);
+			hi[i] = this.keys[i] == null ? Double.POSITIVE_INFINITY : query.hi(this.keys[i]);
+		}
+
+		// every match sorts between the tuple of lower ends and the tuple of upper
+		// ends, and only the nutrients after the leading one can miss in between
+		int[] rowIds = new int[16];
+		int count = 0;
+		Iterator<Tuple> it = this.tree.rangeIterator(new Tuple(lo, -1), new Tuple(hi, -1));
+		while (it.hasNext()) {
+			Tuple tuple = it.next();
+			if (tuple.within(lo, hi)) {
+				if (count == rowIds.length) {
+					rowIds = Arrays.copyOf(rowIds, count * 2);
+				}
+				rowIds[count++] = tuple.row;
+			}
+		}
+		return Arrays.copyOf(rowIds, count);
+	}
+
+	/**
+	 * Keeps the entry of a row
+	 *
+	 * @param row
+	 *            the row id of the food item
+	 * @param tuple
+	 *            its entry
+	 */
+	private void setTuple(int row, Tuple tuple) {
+		while (this.tuplesByRow.size() <= row) {
+			this.tuplesByRow.add(null);
+		}
+		this.tuplesByRow.set(row, tuple);
+	}
+
+	/**
+	 * Builds the tuple of a food item. The 5 tracked nutrients are read from the
+	 * catalog's columns, which only change when the catalog updates the row, so
+	 * a food item changed in place is still indexed by its values in the catalog.
+	 *
+	 * @param foodItem
+	 *            the food item, for nutrients other than the 5 tracked ones
+	 * @param columns
+	 *            the columns holding the food item's row
+	 * @param row
+	 *            the row id of the food item
+	 * @return the food item's values of the tuple's nutrients
+	 */
+	private Tuple tupleOf(FoodItem foodItem, NutrientColumns columns, int row) {
+		double[] values = new double[this.nutrients.length];
+		for (int i = 0; i < this.nutrients.length; i++) {
+			values[i] = this.keys[i] != null ? columns.get(row, this.keys[i])
+					: foodItem.getNutrientValue(this.nutrients[i]);
+		}
+		return new Tuple(values, row);
+	}
+
+	/**
+	 * Returns a string representation of the index
+	 *
+	 * @return the nutrients of the tuple
+	 */
+	@Override
+	public String toString() {
+		return "CompositeIndex" + Arrays.toString(this.nutrients);
+	}
+
+	/**
+	 * The nutrient values of one food item. Tuples are ordered by their values
+	 * alone, so food items with the same values are equal keys, and two tuples
+	 * are equal only if they also belong to the same row.
+	 */
+	private static class Tuple implements Comparable<Tuple> {
+
+		// the nutrient values, in the order of the index's nutrients
+		final double[] values;
+
+		// the row id of the food item
+		final int row;
+
+		/**
+		 * Package constructor
+		 *
+		 * @param values
+		 *            the nutrient values
+		 * @param row
+		 *            the row id of the food item
+		 */
+		Tuple(double[] values, int row) {
+			this.values = values;
+			this.row = row;
+		}
+
+		/**
+		 * Checks each value against its [lo, hi] window
+		 *
+		 * @return true if every value is in its window
+		 */
+		boolean within(double[] lo, double[] hi) {
+			for (int i = 0; i < this.values.length; i++) {
+				if (this.values[i] < lo[i] || this.values[i] > hi[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Compares the values in order. Values are compared with < and > rather
+		 * than Double.compare so that the order agrees with the window checks.
+		 */
+		@Override
+		public int compareTo(Tuple other) {
+			for (int i = 0; i < this.values.length; i++) {
+				if (this.values[i] < other.values[i]) {
+					return -1;
+				}
+				if (this.values[i] > other.values[i]) {
+					return 1;
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Tuple)) {
+				return false;
+			}
+			Tuple tuple = (Tuple) other;
+			return this.row == tuple.row && compareTo(tuple) == 0;
+		}
+
+		/**
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return this.row;
+		}
+
+		/**
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return Arrays.toString(this.values);
+		}
+	}
+}
@@ -0,0 +1,824 @@
+/**
+ * Filename:   ConcurrentBPTree.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A thread-safe B+ tree using optimistic lock coupling. Every node has its own
+ * version lock, a StampedLock whose optimistic read stamp is the node's
+ * version and whose write lock changes it. There is no lock over the whole
+ * tree.
+ *
+ * A read goes down the tree without taking any lock. At every hop it reads the
+ * child pointer, takes the child's version, and then checks that the parent's
+ * version has not changed, so it never follows a pointer out of a node that a
+ * writer was changing. A check that fails restarts the operation from the root.
+ * Range reads also remember the version of every leaf they read and check them
+ * all once more at the end, so a result is the contents of the tree at one
+ * moment. A read that keeps colliding with writes falls back to holding read
+ * locks on the leaves it visits.
+ *
+ * A write goes down the same way and upgrades the version of the leaf it
+ * changes to a write lock, which only succeeds if the leaf is unchanged since
+ * it was read. Full nodes are split on the way down, each split locking just
+ * the node, its parent and the leaf after it, so a split never has to climb
+ * back up. Writers never wait for a lock: an upgrade that fails restarts the
+ * write. Nodes that become small after removals are not merged.
+ *
+ * ConcurrentBPTreeStressTest checks it against BPTree and under concurrent
+ * readers and writers.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ *
+ * @param <K>
+ *            key - the type of key stored in the tree
+ * @param <V>
+ *            value - the type of value stored in the tree
+ */
+public class ConcurrentBPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
+
+	// Optimistic attempts of a range read before it takes read locks
+	private static final int OPTIMISTIC_ATTEMPTS = 8;
+
+	// Results of reading one leaf of a scan
+	private static final int MORE = 0;
+	private static final int DONE = 1;
+	private static final int TORN = 2;
+
+	// Results of one attempt at a remove
+	private static final int REMOVED = 0;
+	private static final int NOT_FOUND = 1;
+	private static final int RESTART = 2;
+
+	// Most keys a node holds, one less than the branching factor
+	private final int maxKeys;
+
+	// Root of the tree, replaced while the old root is write locked
+	private volatile Node root;
+
+	/**
+	 * Public constructor for a concurrent BPTree
+	 *
+	 * @param branchingFactor
+	 *            The branching factor of the tree
+	 */
+	public ConcurrentBPTree(int branchingFactor) {
+		if (branchingFactor <= 2) {
+			throw new IllegalArgumentException("Illegal branching factor: " + branchingFactor);
+		}
+
+		this.maxKeys = branchingFactor - 1;
+		this.root = new Node(true);
+	}
+
+	/**
+	 * Inserts the key and value. Key-value pairs with duplicate keys can be
+	 * inserted, a pair goes after the pairs with an equal key.
+	 *
+	 * @see BPTreeADT#insert(Object, Object)
+	 */
+	@Override
+	public void insert(K key, V value) {
+		if (key == null) {
+			throw new IllegalArgumentException("Null key");
+		}
+		while (!tryInsert(key, value)) {
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Removes one key-value pair. Leaves are not merged when they shrink.
+	 *
+	 * @see BPTreeADT#remove(Object, Object)
+	 */
+	@Override
+	public boolean remove(K key, V value) {
+		if (key == null) {
+			return false;
+		}
+		int result;
+		while ((result = tryRemove(key, value)) == RESTART) {
+			Thread.yield();
+		}
+		return result == REMOVED;
+	}
+
+	/**
+	 * Moves a value from one key to another. The remove and the insert are each
+	 * atomic, but a read between them sees the value under neither key.
+	 *
+	 * @see BPTreeADT#update(Object, Object, Object)
+	 */
+	@Override
+	public boolean update(K oldKey, K newKey, V value) {
+		if (newKey == null || !remove(oldKey, value)) {
+			return false;
+		}
+		insert(newKey, value);
+		return true;
+	}
+
+	/**
+	 * @see BPTreeADT#rangeSearch(Object, String)
+	 */
+	@Override
+	public List<V> rangeSearch(K key, String comparator) {
+		if (key == null || comparator == null) {
+			return new ArrayList<V>();
+		}
+
+		// each comparator is a range with one or both ends at the key
+		switch (comparator) {
+		case "<=":
+			return rangeSearch(null, true, key, true);
+		case ">=":
+			return rangeSearch(key, true, null, true);
+		case "==":
+			return rangeSearch(key, true, key, true);
+		default:
+			return new ArrayList<V>();
+		}
+	}
+
+	/**
+	 * @see BPTreeADT#rangeSearch(Object, boolean, Object, boolean)
+	 */
+	@Override
+	public List<V> rangeSearch(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+		return scan(lo, loInclusive, hi, hiInclusive, Integer.MAX_VALUE, false);
+	}
+
+	/**
+	 * Gets an iterator over the values whose keys are in the range [lo, hi]. A
+	 * lazy iterator would hold leaves across calls, so the range is read in full
+	 * as one consistent result and the iterator walks that result.
+	 *
+	 * @see BPTreeADT#rangeIterator(Object, Object)
+	 */
+	@Override
+	public Iterator<V> rangeIterator(K lo, K hi) {
+		return rangeSearch(lo, true, hi, true).iterator();
+	}
+
+	/**
+	 * @see BPTreeADT#topK(int, boolean)
+	 */
+	@Override
+	public List<V> topK(int k, boolean descending) {
+		if (k <= 0) {
+			return new ArrayList<V>();
+		}
+		List<V> values = scan(null, true, null, true, k, true);
+		if (!descending) {
+			Collections.reverse(values);
+		}
+		return values;
+	}
+
+	/**
+	 * @see BPTreeADT#bottomK(int)
+	 */
+	@Override
+	public List<V> bottomK(int k) {
+		if (k <= 0) {
+			return new ArrayList<V>();
+		}
+		return scan(null, true, null, true, k, false);
+	}
+
+	/**
+	 * Returns the nodes level by level, as BPTree does. The tree is read locked
+	 * from the root down while it is printed.
+	 *
+	 * @see BPTreeADT#toString()
+	 */
+	@Override
+	public String toString() {
+		List<Node> locked = new ArrayList<Node>();
+		List<Long> stamps = new ArrayList<Long>();
+		try {
+			Node top;
+			long stamp;
+			do {
+				top = this.root;
+				stamp = top.lock.readLock();
+				if (top != this.root) {
+					top.lock.unlockRead(stamp);
+					stamp = 0;
+				}
+			} while (stamp == 0);
+			locked.add(top);
+			stamps.add(stamp);
+
+			// a locked parent keeps its children from splitting, so each level is
+			// locked before the next one is read
+			StringBuilder sb = new StringBuilder();
+			List<Node> level = Arrays.asList(top);
+			while (!level.isEmpty()) {
+				List<Node> nextLevel = new ArrayList<Node>();
+				sb.append('{');
+				for (int i = 0; i < level.size(); i++) {
+					Node node = level.get(i);
+					if (i > 0) {
+						sb.append(", ");
+					}
+					sb.append(node.toString());
+					for (int c = 0; !node.leaf && c <= node.count; c++) {
+						Node child = node.childAt(c);
+						stamps.add(child.lock.readLock());
+						locked.add(child);
+						nextLevel.add(child);
+					}
+				}
+				sb.append("}\n");
+				level = nextLevel;
+			}
+			return sb.toString();
+		} finally {
+			for (int i = 0; i < locked.size(); i++) {
+				locked.get(i).lock.unlockRead(stamps.get(i));
+			}
+		}
+	}
+
+	/**
+	 * One attempt at an insert
+	 *
+	 * @return false if the attempt ran into a concurrent write and has to be
+	 *         restarted, or split a node on the way and restarts to find room
+	 */
+	private boolean tryInsert(K key, V value) {
+		Node node = this.root;
+		long version = node.lock.tryOptimisticRead();
+		if (version == 0 || node != this.root) {
+			return false;
+		}
+
+		Node parent = null;
+		long parentVersion = 0;
+		while (true) {
+			// a full node is split before going further, so the parent of every node
+			// on the way always has room for one more separator
+			if (node.count >= this.maxKeys) {
+				split(parent, parentVersion, node, version);
+				return false;
+			}
+			if (node.leaf) {
+				break;
+			}
+
+			// pairs with keys equal to a separator go right of it
+			Node child = node.childAt(node.bound(key, true));
+			if (child == null) {
+				return false;
+			}
+			long childVersion = child.lock.tryOptimisticRead();
+			if (childVersion == 0 || !node.lock.validate(version)) {
+				return false;
+			}
+			parent = node;
+			parentVersion = version;
+			node = child;
+			version = childVersion;
+		}
+
+		// the leaf is unchanged since it was read if the upgrade succeeds
+		long stamp = node.lock.tryConvertToWriteLock(version);
+		if (stamp == 0) {
+			return false;
+		}
+		try {
+			node.insertAt(node.bound(key, true), key, value);
+		} finally {
+			node.lock.unlockWrite(stamp);
+		}
+		return true;
+	}
+
+	/**
+	 * Splits a full node in two, moving the upper half to a new node to its right
+	 * and adding a separator for it to the parent, or to a new root. Nothing is
+	 * changed unless the node, the parent and, for a leaf, the leaf after it can
+	 * all be write locked at the versions they were read at.
+	 *
+	 * @param parent
+	 *            the parent of the node, null if the node is the root
+	 * @param parentVersion
+	 *            the version the parent was read at
+	 * @param node
+	 *            the full node
+	 * @param version
+	 *            the version the node was read at
+	 */
+	private void split(Node parent, long parentVersion, Node node, long version) {
+		long parentStamp = 0;
+		if (parent != null && (parentStamp = parent.lock.tryConvertToWriteLock(parentVersion)) == 0) {
+			return;
+		}
+		long stamp = node.lock.tryConvertToWriteLock(version);
+		Node next = node.leaf ? node.next : null;
+		long nextStamp = 0;
+		try {
+			// the leaf after a split leaf gets a new previous leaf
+			if (stamp == 0 || (parent == null && node != this.root)
+					|| (next != null && (nextStamp = next.lock.tryWriteLock()) == 0)) {
+				return;
+			}
+
+			Node right = new Node(node.leaf);
+			K separator = node.leaf ? splitLeaf(node, right) : splitInner(node, right);
+			if (parent == null) {
+				Node newRoot = new Node(false);
+				newRoot.children[0] = node;
+				newRoot.insertChild(0, separator, right);
+				this.root = newRoot;
+			} else {
+				int i = 0;
+				while (parent.children[i] != node) {
+					i++;
+				}
+				parent.insertChild(i, separator, right);
+			}
+		} finally {
+			if (nextStamp != 0) {
+				next.lock.unlockWrite(nextStamp);
+			}
+			if (stamp != 0) {
+				node.lock.unlockWrite(stamp);
+			}
+			if (parentStamp != 0) {
+				parent.lock.unlockWrite(parentStamp);
+			}
+		}
+	}
+
+	/**
+	 * Moves the upper half of a write locked leaf to an empty leaf and links the
+	 * new leaf in after it
+	 *
+	 * @return the first key of the new leaf, its separator
+	 */
+	private K splitLeaf(Node leaf, Node right) {
+		int half = leaf.count / 2;
+		int moved = leaf.count - half;
+		System.arraycopy(leaf.keys, half, right.keys, 0, moved);
+		System.arraycopy(leaf.values, half, right.values, 0, moved);
+		Arrays.fill(leaf.keys, half, leaf.count, null);
+		Arrays.fill(leaf.values, half, leaf.count, null);
+		right.count = moved;
+		leaf.count = half;
+
+		right.next = leaf.next;
+		right.previous = leaf;
+		if (leaf.next != null) {
+			leaf.next.previous = right;
+		}
+		leaf.next = right;
+		return right.keyAt(0);
+	}
+
+	/**
+	 * Moves the keys and children after the middle key of a write locked internal
+	 * node to an empty one
+	 *
+	 * @return the middle key, which moves up to the parent
+	 */
+	private K splitInner(Node node, Node right) {
+		int middle = node.count / 2;
+		K separator = node.keyAt(middle);
+		int moved = node.count - middle - 1;
+		System.arraycopy(node.keys, middle + 1, right.keys, 0, moved);
+		System.arraycopy(node.children, middle + 1, right.children, 0, moved + 1);
+		Arrays.fill(node.keys, middle, node.count, null);
+		Arrays.fill(node.children, middle + 1, node.count + 1, null);
+		right.count = moved;
+		node.count = middle;
+		return separator;
+	}
+
+	/**
+	 * One attempt at a remove. The leaves holding the key are read in order; the
+	 * first one holding the pair is upgraded to a write lock.
+	 *
+	 * @return REMOVED, NOT_FOUND, or RESTART if the attempt ran into a concurrent
+	 *         write
+	 */
+	private int tryRemove(K key, V value) {
+		long[] stamp = new long[1];
+		Node leaf = findLeaf(key, false, stamp);
+		if (leaf == null) {
+			return RESTART;
+		}
+		long version = stamp[0];
+
+		List<Node> visited = new ArrayList<Node>();
+		List<Long> versions = new ArrayList<Long>();
+		while (true) {
+			int found = -1;
+			boolean past = false;
+			int start = leaf.bound(key, false);
+			if (start < 0) {
+				return RESTART;
+			}
+			for (int i = start; i < leaf.size() && found < 0 && !past; i++) {
+				K current = leaf.keyAt(i);
+				if (current == null) {
+					return RESTART;
+				}
+				int c = current.compareTo(key);
+				past = c > 0;
+				if (c == 0) {
+					V currentValue = leaf.valueAt(i);
+					if (currentValue == null ? value == null : currentValue.equals(value)) {
+						found = i;
+					}
+				}
+			}
+
+			if (found >= 0) {
+				long writeStamp = leaf.lock.tryConvertToWriteLock(version);
+				if (writeStamp == 0) {
+					return RESTART;
+				}
+				try {
+					leaf.removeAt(found);
+				} finally {
+					leaf.lock.unlockWrite(writeStamp);
+				}
+				return REMOVED;
+			}
+
+			// pairs with an equal key can continue in the next leaves
+			Node next = past ? null : leaf.next;
+			if (!leaf.lock.validate(version)) {
+				return RESTART;
+			}
+			visited.add(leaf);
+			versions.add(version);
+			if (next == null) {
+				break;
+			}
+			long nextVersion = next.lock.tryOptimisticRead();
+			if (nextVersion == 0 || !leaf.lock.validate(version)) {
+				return RESTART;
+			}
+			leaf = next;
+			version = nextVersion;
+		}
+
+		// the pair is missing only if none of the leaves it could be in changed
+		return validateAll(visited, versions) ? NOT_FOUND : RESTART;
+	}
+
+	/**
+	 * Reads the values of a range, or the first or last limit values, as one
+	 * consistent result. A few optimistic attempts are made before the leaves
+	 * are read locked.
+	 *
+	 * @param backward
+	 *            whether to read from the last leaf back, ignoring lo and hi
+	 * @return the values in scan order
+	 */
+	private List<V> scan(K lo, boolean loInclusive, K hi, boolean hiInclusive, int limit, boolean backward) {
+		for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+			List<V> values = optimisticScan(lo, loInclusive, hi, hiInclusive, limit, backward);
+			if (values != null) {
+				return values;
+			}
+			Thread.yield();
+		}
+		return lockedScan(lo, loInclusive, hi, hiInclusive, limit, backward);
+	}
+
+	/**
+	 * One optimistic attempt at a scan. Each leaf is checked before moving on to
+	 * its neighbor, and all of them again at the end.
+	 *
+	 * @return the values in scan order, or null if a leaf changed meanwhile
+	 */
+	private List<V> optimisticScan(K lo, boolean loInclusive, K hi, boolean hiInclusive, int limit,
+			boolean backward) {
+		long[] stamp = new long[1];
+		Node leaf = findLeaf(lo, backward, stamp);
+		if (leaf == null) {
+			return null;
+		}
+		long version = stamp[0];
+
+		List<V> values = new ArrayList<V>();
+		List<Node> visited = new ArrayList<Node>();
+		List<Long> versions = new ArrayList<Long>();
+		while (true) {
+			int state = collect(leaf, lo, loInclusive, hi, hiInclusive, limit, backward, values);
+			Node neighbor = backward ? leaf.previous : leaf.next;
+			if (state == TORN || !leaf.lock.validate(version)) {
+				return null;
+			}
+			visited.add(leaf);
+			versions.add(version);
+			if (state == DONE || neighbor == null) {
+				break;
+			}
+			long neighborVersion = neighbor.lock.tryOptimisticRead();
+			if (neighborVersion == 0 || !leaf.lock.validate(version)) {
+				return null;
+			}
+			leaf = neighbor;
+			version = neighborVersion;
+		}
+		return validateAll(visited, versions) ? values : null;
+	}
+
+	/**
+	 * A scan that read locks each leaf it visits and keeps them all locked until
+	 * it is done. Writers never wait for a lock while holding one, so waiting
+	 * here cannot deadlock.
+	 *
+	 * @return the values in scan order
+	 */
+	private List<V> lockedScan(K lo, boolean loInclusive, K hi, boolean hiInclusive, int limit, boolean backward) {
+		long[] stamp = new long[1];
+		Node leaf;
+		long readStamp;
+		do {
+			leaf = findLeaf(lo, backward, stamp);
+			readStamp = leaf == null ? 0 : leaf.lock.tryConvertToReadLock(stamp[0]);
+			if (readStamp == 0) {
+				Thread.yield();
+			}
+		} while (readStamp == 0);
+
+		List<V> values = new ArrayList<V>();
+		List<Node> locked = new ArrayList<Node>();
+		List<Long> stamps = new ArrayList<Long>();
+		try {
+			while (true) {
+				locked.add(leaf);
+				stamps.add(readStamp);
+				int state = collect(leaf, lo, loInclusive, hi, hiInclusive, limit, backward, values);
+				Node neighbor = backward ? leaf.previous : leaf.next;
+				if (state == DONE || neighbor == null) {
+					return values;
+				}
+				readStamp = neighbor.lock.readLock();
+				leaf = neighbor;
+			}
+		} finally {
+			for (int i = 0; i < locked.size(); i++) {
+				locked.get(i).lock.unlockRead(stamps.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Adds the values of one leaf of a scan, in scan order
+	 *
+	 * @return MORE if the scan goes on to the next leaf, DONE if it is past hi
+	 *         or has limit values, TORN if the leaf was read mid-write
+	 */
+	private int collect(Node leaf, K lo, boolean loInclusive, K hi, boolean hiInclusive, int limit,
+			boolean backward, List<V> values) {
+		int n = leaf.size();
+		for (int j = 0; j < n; j++) {
+			int i = backward ? n - 1 - j : j;
+			K key = leaf.keyAt(i);
+			if (key == null) {
+				return TORN;
+			}
+			if (lo != null) {
+				int c = key.compareTo(lo);
+				if (c < 0 || (c == 0 && !loInclusive)) {
+					continue;
+				}
+			}
+			if (hi != null) {
+				int c = key.compareTo(hi);
+				if (c > 0 || (c == 0 && !hiInclusive)) {
+					return DONE;
+				}
+			}
+			values.add(leaf.valueAt(i));
+			if (values.size() >= limit) {
+				return DONE;
+			}
+		}
+		return MORE;
+	}
+
+	/**
+	 * Goes down from the root to a leaf, checking each parent after taking the
+	 * version of its child
+	 *
+	 * @param key
+	 *            the key to find the leftmost leaf that can hold, or null for
+	 *            the first leaf
+	 * @param last
+	 *            whether to find the last leaf instead
+	 * @param stamp
+	 *            receives the version the leaf was read at
+	 * @return the leaf, or null if a node changed on the way
+	 */
+	private Node findLeaf(K key, boolean last, long[] stamp) {
+		Node node = this.root;
+		long version = node.lock.tryOptimisticRead();
+		if (version == 0 || node != this.root) {
+			return null;
+		}
+
+		while (!node.leaf) {
+			int i = last ? node.size() : key == null ? 0 : node.bound(key, false);
+			Node child = node.childAt(i);
+			if (child == null) {
+				return null;
+			}
+			long childVersion = child.lock.tryOptimisticRead();
+			if (childVersion == 0 || !node.lock.validate(version)) {
+				return null;
+			}
+			node = child;
+			version = childVersion;
+		}
+		stamp[0] = version;
+		return node;
+	}
+
+	/**
+	 * @return true if no node changed since the version it was read at
+	 */
+	private boolean validateAll(List<Node> nodes, List<Long> versions) {
+		for (int i = 0; i < nodes.size(); i++) {
+			if (!nodes.get(i).lock.validate(versions.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A node of the tree. Its fields are read without locks by optimistic
+	 * readers, which may see them mid-write; such a read only counts once the
+	 * node's version is checked, so every accessor here stays in bounds and
+	 * reports torn slots instead of failing.
+	 */
+	private class Node {
+
+		// Version lock of the node
+		final StampedLock lock;
+
+		// Whether this node is a leaf
+		final boolean leaf;
+
+		// Number of keys in use
+		int count;
+
+		// Keys, the first count slots are in use
+		final Object[] keys;
+
+		// Values of a leaf by key slot, null for an internal node
+		final Object[] values;
+
+		// Children of an internal node, count + 1 slots in use, null for a leaf
+		final Object[] children;
+
+		// Next leaf in key order
+		Node next;
+
+		// Previous leaf in key order
+		Node previous;
+
+		/**
+		 * Package constructor for an empty node
+		 *
+		 * @param leaf
+		 *            whether the node is a leaf
+		 */
+		Node(boolean leaf) {
+			this.lock = new StampedLock();
+			this.leaf = leaf;
+			this.keys = new Object[maxKeys];
+			this.values = leaf ? new Object[maxKeys] : null;
+			this.children = leaf ? null : new Object[maxKeys + 1];
+		}
+
+		/**
+		 * @return the number of keys, never more than the slots
+		 */
+		int size() {
+			return Math.max(0, Math.min(this.count, this.keys.length));
+		}
+
+		/**
+		 * @return the key in slot i, null if the slot is empty
+		 */
+		@SuppressWarnings("unchecked")
+		K keyAt(int i) {
+			return (K) this.keys[i];
+		}
+
+		/**
+		 * @return the value in slot i
+		 */
+		@SuppressWarnings("unchecked")
+		V valueAt(int i) {
+			return (V) this.values[i];
+		}
+
+		/**
+		 * @return the child in slot i, null if i is out of range or the slot is
+		 *         empty
+		 */
+		@SuppressWarnings("unchecked")
+		Node childAt(int i) {
+			return i >= 0 && i <= size() ? (Node) this.children[i] : null;
+		}
+
+		/**
+		 * Counts the keys less than the given key, or less than or equal to it
+		 *
+		 * @return the count, or -1 if an empty slot was read
+		 */
+		int bound(K key, boolean inclusive) {
+			int low = 0;
+			int high = size();
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				K current = keyAt(middle);
+				if (current == null) {
+					return -1;
+				}
+				int c = current.compareTo(key);
+				if (c < 0 || (c == 0 && inclusive)) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Inserts a pair into a write locked leaf with room for it
+		 */
+		void insertAt(int i, K key, V value) {
+			System.arraycopy(this.keys, i, this.keys, i + 1, this.count - i);
+			System.arraycopy(this.values, i, this.values, i + 1, this.count - i);
+			this.keys[i] = key;
+			this.values[i] = value;
+			this.count++;
+		}
+
+		/**
+		 * Removes a pair from a write locked leaf
+		 */
+		void removeAt(int i) {
+			System.arraycopy(this.keys, i + 1, this.keys, i, this.count - i - 1);
+			System.arraycopy(this.values, i + 1, this.values, i, this.count - i - 1);
+			this.count--;
+			this.keys[this.count] = null;
+			this.values[this.count] = null;
+		}
+
+		/**
+		 * Inserts a separator at slot i of a write locked internal node with room
+		 * for it, and the child to its right at slot i + 1
+		 */
+		void insertChild(int i, K separator, Node child) {
+			System.arraycopy(this.keys, i, this.keys, i + 1, this.count - i);
+			System.arraycopy(this.children, i + 1, this.children, i + 2, this.count - i);
+			this.keys[i] = separator;
+			this.children[i + 1] = child;
+			this.count++;
+		}
+
+		/**
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return Arrays.asList(this.keys).subList(0, size()).toString();
+		}
+	}
+}
@@ -0,0 +1,381 @@
+/**
+ * Filename:   ConcurrentBPTreeStressTest.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks ConcurrentBPTree against serial models and prints its throughput.
+ *
+ * First, one thread runs the same random inserts, removes, updates and reads on
+ * a ConcurrentBPTree and on a BPTree and compares every result.
+ *
+ * Then writer and reader threads run at once. Each writer inserts its own
+ * values in sequence order and removes them in the same order, so at any
+ * moment the values of a writer in the tree are one unbroken run of its
+ * sequence numbers, and a writer checks every remove against that model.
+ * Readers check that each range read is sorted, stays in its range, and holds
+ * an unbroken run of each writer's values within the range; a read put
+ * together from leaves seen at different moments would show gaps. Reads of the
+ * whole tree must also never go back in time: each writer's run may only move
+ * forward from one read to the next. At the end the tree must hold exactly the
+ * values the writers' models say it does.
+ *
+ * Usage: java application.ConcurrentBPTreeStressTest [seconds per round]
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class ConcurrentBPTreeStressTest {
+
+	// Distinct keys, few enough that many values share a key
+	private static final int KEY_RANGE = 5000;
+
+	// Values each writer keeps in the tree at most
+	private static final int WINDOW = 2000;
+
+	// Writer threads in each concurrent round
+	private static final int WRITERS = 2;
+
+	/**
+	 * Runs the checks, throwing at the first failure
+	 *
+	 * @param args
+	 *            seconds per concurrent round, 2 by default
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the threads
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		long millis = (long) ((args.length > 0 ? Double.parseDouble(args[0]) : 2) * 1000);
+
+		for (int branchingFactor : new int[] { 3, 4, 16, 64 }) {
+			compareWithBPTree(branchingFactor, 50000, new Random(branchingFactor));
+		}
+		System.out.println("serial model: ok");
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int readers = 1; readers < cores * 2; readers *= 2) {
+			stress(Math.min(readers, cores), millis);
+		}
+		stress(4, millis);
+		System.out.println("concurrent: ok");
+	}
+
+	/**
+	 * Runs random operations on a ConcurrentBPTree and a BPTree and compares the
+	 * results. Keys are drawn from a small range so duplicates span leaves.
+	 */
+	private static void compareWithBPTree(int branchingFactor, int operations, Random random) {
+		ConcurrentBPTree<Integer, Integer> tree = new ConcurrentBPTree<Integer, Integer>(branchingFactor);
+		BPTree<Integer, Integer> model = new BPTree<Integer, Integer>(branchingFactor);
+		Map<Integer, Integer> keyOf = new HashMap<Integer, Integer>();
+		List<Integer> present = new ArrayList<Integer>();
+		int keys = 1 + random.nextInt(500);
+
+		for (int op = 0; op < operations; op++) {
+			// as many removes as inserts once the tree has some values
+			int choice = random.nextInt(10);
+			if (choice < 3 || present.size() < 1000) {
+				int value = op;
+				int key = random.nextInt(keys);
+				tree.insert(key, value);
+				model.insert(key, value);
+				keyOf.put(value, key);
+				present.add(value);
+			} else if (choice < 6) {
+				// remove a present value, or sometimes one that is not there
+				int value = random.nextBoolean() ? present.get(random.nextInt(present.size())) : -1 - op;
+				int key = keyOf.containsKey(value) ? keyOf.get(value) : random.nextInt(keys);
+				check(tree.remove(key, value) == model.remove(key, value), "remove " + key + " " + value);
+				if (keyOf.remove(value) != null) {
+					present.remove((Integer) value);
+				}
+			} else if (choice < 7) {
+				int value = present.get(random.nextInt(present.size()));
+				int newKey = random.nextInt(keys);
+				check(tree.update(keyOf.get(value), newKey, value) == model.update(keyOf.get(value), newKey, value),
+						"update " + value);
+				keyOf.put(value, newKey);
+			} else if (choice < 8) {
+				Integer lo = random.nextInt(5) == 0 ? null : random.nextInt(keys);
+				Integer hi = random.nextInt(5) == 0 ? null : random.nextInt(keys);
+				boolean loInclusive = random.nextBoolean();
+				boolean hiInclusive = random.nextBoolean();
+				sameResult(tree.rangeSearch(lo, loInclusive, hi, hiInclusive),
+						model.rangeSearch(lo, loInclusive, hi, hiInclusive), keyOf, "range " + lo + " " + hi);
+			} else if (choice < 9) {
+				String comparator = new String[] { "<=", ">=", "==", "<" }[random.nextInt(4)];
+				int key = random.nextInt(keys);
+				sameResult(tree.rangeSearch(key, comparator), model.rangeSearch(key, comparator), keyOf,
+						comparator + " " + key);
+			} else {
+				int k = random.nextInt(50) - 5;
+				boolean descending = random.nextBoolean();
+				sameKeys(tree.topK(k, descending), model.topK(k, descending), keyOf, "topK " + k);
+				sameKeys(tree.bottomK(k), model.bottomK(k), keyOf, "bottomK " + k);
+			}
+		}
+		sameResult(tree.rangeSearch(null, true, null, true), model.rangeSearch(null, true, null, true), keyOf,
+				"final contents");
+		check(!tree.toString().isEmpty(), "toString");
+	}
+
+	/**
+	 * Checks that two results hold the same values with the same keys in the
+	 * same key order. Values with equal keys may come in any order.
+	 */
+	private static void sameResult(List<Integer> actual, List<Integer> expected, Map<Integer, Integer> keyOf,
+			String what) {
+		sameKeys(actual, expected, keyOf, what);
+		List<Integer> sortedActual = new ArrayList<Integer>(actual);
+		List<Integer> sortedExpected = new ArrayList<Integer>(expected);
+		Collections.sort(sortedActual);
+		Collections.sort(sortedExpected);
+		check(sortedActual.equals(sortedExpected), what + ": values differ");
+	}
+
+	/**
+	 * Checks that two results have the same sequence of keys
+	 */
+	private static void sameKeys(List<Integer> actual, List<Integer> expected, Map<Integer, Integer> keyOf,
+			String what) {
+		check(actual.size() == expected.size(), what + ": " + actual.size() + " values, expected " + expected.size());
+		for (int i = 0; i < actual.size(); i++) {
+			check(keyOf.get(actual.get(i)).equals(keyOf.get(expected.get(i))), what + ": keys differ at " + i);
+		}
+	}
+
+	/**
+	 * Runs writers and readers on one tree for a while, checking every read, and
+	 * prints the throughput
+	 *
+	 * @param readers
+	 *            the number of reader threads
+	 * @param millis
+	 *            how long to run
+	 */
+	private static void stress(int readers, long millis) throws InterruptedException {
+		ConcurrentBPTree<Integer, Long> tree = new ConcurrentBPTree<Integer, Long>(16);
+		AtomicBoolean stop = new AtomicBoolean();
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		AtomicLong reads = new AtomicLong();
+		AtomicLong writes = new AtomicLong();
+		long[] firstSeq = new long[WRITERS];
+		long[] endSeq = new long[WRITERS];
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int w = 0; w < WRITERS; w++) {
+			int writer = w;
+			threads.add(new Thread(() -> {
+				Random random = new Random(writer);
+				long first = 0;
+				long end = 0;
+				long count = 0;
+				while (!stop.get()) {
+					if (end - first < WINDOW && (end == first || random.nextInt(3) != 0)) {
+						tree.insert(keyOf(writer, end), valueOf(writer, end));
+						end++;
+					} else {
+						check(tree.remove(keyOf(writer, first), valueOf(writer, first)), "writer lost " + first);
+						first++;
+					}
+					if (random.nextInt(16) == 0) {
+						check(!tree.remove(keyOf(writer, end), valueOf(writer, end)), "writer found " + end);
+					}
+					count++;
+				}
+				firstSeq[writer] = first;
+				endSeq[writer] = end;
+				writes.addAndGet(count);
+			}));
+		}
+		for (int r = 0; r < readers; r++) {
+			int reader = r;
+			threads.add(new Thread(() -> {
+				Random random = new Random(100 + reader);
+				long[] lastFirst = new long[WRITERS];
+				long[] lastEnd = new long[WRITERS];
+				long count = 0;
+				while (!stop.get()) {
+					int choice = random.nextInt(8);
+					if (choice == 0) {
+						checkWholeTree(tree.rangeSearch(null, true, null, true), lastFirst, lastEnd);
+					} else if (choice < 7) {
+						int lo = random.nextInt(KEY_RANGE);
+						int hi = lo + random.nextInt(KEY_RANGE / 10);
+						checkRange(tree.rangeSearch(lo, true, hi, true), lo, hi);
+					} else {
+						int k = 1 + random.nextInt(100);
+						checkSorted(random.nextBoolean() ? tree.bottomK(k) : tree.topK(k, false));
+					}
+					count++;
+				}
+				reads.addAndGet(count);
+			}));
+		}
+
+		for (Thread thread : threads) {
+			thread.setUncaughtExceptionHandler((t, e) -> failure.compareAndSet(null, e));
+			thread.start();
+		}
+		Thread.sleep(millis);
+		stop.set(true);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure.get() != null) {
+			throw new IllegalStateException("Stress round failed", failure.get());
+		}
+
+		// the tree holds exactly each writer's run from its models
+		List<Long> expected = new ArrayList<Long>();
+		for (int w = 0; w < WRITERS; w++) {
+			for (long seq = firstSeq[w]; seq < endSeq[w]; seq++) {
+				expected.add(valueOf(w, seq));
+			}
+		}
+		List<Long> actual = tree.rangeSearch(null, true, null, true);
+		checkSorted(actual);
+		Collections.sort(expected);
+		Collections.sort(actual);
+		check(actual.equals(expected), "final contents differ from the writers' models");
+
+		System.out.printf("%d writers, %d readers: %,.0f reads/s, %,.0f writes/s%n", WRITERS, readers,
+				reads.get() * 1000.0 / millis, writes.get() * 1000.0 / millis);
+	}
+
+	/**
+	 * Checks a read of the whole tree: sorted, each writer's values one
+	 * unbroken run, and each run no earlier than in this reader's last read
+	 */
+	private static void checkWholeTree(List<Long> values, long[] lastFirst, long[] lastEnd) {
+		checkSorted(values);
+		long[] first = new long[WRITERS];
+		long[] end = new long[WRITERS];
+		int[] seen = new int[WRITERS];
+		for (int w = 0; w < WRITERS; w++) {
+			first[w] = Long.MAX_VALUE;
+			end[w] = Long.MIN_VALUE;
+		}
+		for (long value : values) {
+			int w = writerOf(value);
+			first[w] = Math.min(first[w], seqOf(value));
+			end[w] = Math.max(end[w], seqOf(value) + 1);
+			seen[w]++;
+		}
+		for (int w = 0; w < WRITERS; w++) {
+			if (seen[w] == 0) {
+				continue;
+			}
+			check(end[w] - first[w] == seen[w], "whole read has a gap in writer " + w);
+			check(first[w] >= lastFirst[w] && end[w] >= lastEnd[w], "whole read went back in time");
+			lastFirst[w] = first[w];
+			lastEnd[w] = end[w];
+		}
+	}
+
+	/**
+	 * Checks a read of the range [lo, hi]: sorted, in range, and no value of a
+	 * writer missing between its first and last value in the read
+	 */
+	private static void checkRange(List<Long> values, int lo, int hi) {
+		checkSorted(values);
+		long[] first = new long[WRITERS];
+		long[] last = new long[WRITERS];
+		int[] seen = new int[WRITERS];
+		for (int w = 0; w < WRITERS; w++) {
+			first[w] = Long.MAX_VALUE;
+			last[w] = Long.MIN_VALUE;
+		}
+		for (long value : values) {
+			int w = writerOf(value);
+			int key = keyOf(w, seqOf(value));
+			check(key >= lo && key <= hi, "range read out of range");
+			first[w] = Math.min(first[w], seqOf(value));
+			last[w] = Math.max(last[w], seqOf(value));
+			seen[w]++;
+		}
+		for (int w = 0; w < WRITERS; w++) {
+			int inRange = 0;
+			for (long seq = first[w]; seen[w] > 0 && seq <= last[w]; seq++) {
+				int key = keyOf(w, seq);
+				if (key >= lo && key <= hi) {
+					inRange++;
+				}
+			}
+			check(inRange == seen[w], "range read has a gap in writer " + w);
+		}
+	}
+
+	/**
+	 * Checks that the keys of the values never decrease
+	 */
+	private static void checkSorted(List<Long> values) {
+		for (int i = 1; i < values.size(); i++) {
+			int previous = keyOf(writerOf(values.get(i - 1)), seqOf(values.get(i - 1)));
+			int current = keyOf(writerOf(values.get(i)), seqOf(values.get(i)));
+			check(previous <= current, "read out of key order");
+		}
+	}
+
+	/**
+	 * @return the key of a writer's value, spread over KEY_RANGE
+	 */
+	private static int keyOf(int writer, long seq) {
+		long h = (seq * 31 + writer) * 0x9E3779B97F4A7C15L;
+		return (int) ((h >>> 33) % KEY_RANGE);
+	}
+
+	/**
+	 * @return a value naming its writer and sequence number
+	 */
+	private static long valueOf(int writer, long seq) {
+		return ((long) writer << 40) | seq;
+	}
+
+	/**
+	 * @return the writer of a value
+	 */
+	private static int writerOf(long value) {
+		return (int) (value >>> 40);
+	}
+
+	/**
+	 * @return the sequence number of a value
+	 */
+	private static long seqOf(long value) {
+		return value & ((1L << 40) - 1);
+	}
+
+	/**
+	 * Throws if a condition does not hold
+	 */
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new IllegalStateException(message);
+		}
+	}
+}
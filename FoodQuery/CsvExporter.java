@@ -0,0 +1,346 @@
+/**
+ * Filename:   CsvExporter.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Writes food items to a file in the format read by FoodData.loadFoodItems, on
+ * several threads. The items are cut into chunks, each chunk is formatted
+ * straight to bytes in its own direct buffer on a fork-join pool, and the
+ * buffers are written in order with gathering writes while the next chunks are
+ * formatted. Only a few chunks per thread are in flight at once, and their
+ * buffers are reused, so memory stays the same however large the export.
+ *
+ * Values are written in the shortest form that reads back as the same double:
+ * 100 rather than 100.0, 0.1 rather than 0.10000000000000001. A value is
+ * tried with 0, 1, 2, ... digits after the point until the digits divided by
+ * the power of ten give the value back; for digits below 2^53 that division is
+ * correctly rounded, which is exactly what the parser computes. Values too
+ * large or small for that, NaN and the infinities are left to Double.toString.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class CsvExporter {
+
+	// Food items formatted by one task
+	private static final int CHUNK_ITEMS = 8192;
+
+	// Chunks in flight per thread of the pool
+	private static final int CHUNKS_PER_THREAD = 2;
+
+	// Bytes a chunk buffer starts with, it grows if a chunk needs more
+	private static final int CHUNK_BYTES = CHUNK_ITEMS * 160;
+
+	// The name of each nutrient followed by a comma, by ordinal
+	private static final byte[][] NUTRIENT_FIELDS = new byte[Nutrient.VALUES.length][];
+
+	static {
+		for (Nutrient nutrient : Nutrient.VALUES) {
+			NUTRIENT_FIELDS[nutrient.ordinal()] = (nutrient.getName() + ",").getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	// The pool the chunks are formatted on
+	private final ForkJoinPool pool;
+
+	// Chunk buffers ready to be reused
+	private final ConcurrentLinkedQueue<ByteBuffer> buffers;
+
+	/**
+	 * Public constructor for an exporter that formats on the common fork-join pool
+	 */
+	public CsvExporter() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Public constructor
+	 *
+	 * @param pool
+	 *            the pool the chunks are formatted on
+	 */
+	public CsvExporter(ForkJoinPool pool) {
+		this.pool = pool;
+		this.buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+	}
+
+	/**
+	 * Writes food items to a file, one per line
+	 *
+	 * @param foodItems
+	 *            the food items in the order they are written, with fast random
+	 *            access
+	 * @param file
+	 *            the file to write, replaced if it exists
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void write(List<FoodItem> foodItems, File file) throws IOException {
+		int chunkCount = (foodItems.size() + CHUNK_ITEMS - 1) / CHUNK_ITEMS;
+		int window = Math.max(2, this.pool.getParallelism() * CHUNKS_PER_THREAD);
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ArrayDeque<ForkJoinTask<ByteBuffer>> inFlight = new ArrayDeque<ForkJoinTask<ByteBuffer>>();
+			int next = 0;
+			try {
+				while (next < chunkCount || !inFlight.isEmpty()) {
+
+					// keep the window full, the chunks are formatted while earlier ones are
+					// written
+					while (next < chunkCount && inFlight.size() < window) {
+						int from = next * CHUNK_ITEMS;
+						int to = Math.min(foodItems.size(), from + CHUNK_ITEMS);
+						inFlight.add(this.pool.submit(() -> format(foodItems, from, to)));
+						next++;
+					}
+
+					// write every chunk that is done in order with one gathering write,
+					// waiting for the oldest if none is
+					ByteBuffer[] batch = takeReady(inFlight);
+					try {
+						writeFully(channel, batch);
+					} finally {
+						for (ByteBuffer buffer : batch) {
+							release(buffer);
+						}
+					}
+				}
+			} finally {
+				for (ForkJoinTask<ByteBuffer> task : inFlight) {
+					task.cancel(false);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Takes the oldest chunk, waiting for it if needed, and every chunk after it
+	 * that is already formatted
+	 *
+	 * @return the buffers of the chunks, in order
+	 */
+	private ByteBuffer[] takeReady(ArrayDeque<ForkJoinTask<ByteBuffer>> inFlight) throws IOException {
+		int ready = 1;
+		boolean first = true;
+		for (ForkJoinTask<ByteBuffer> task : inFlight) {
+			if (first) {
+				first = false;
+			} else if (task.isDone()) {
+				ready++;
+			} else {
+				break;
+			}
+		}
+
+		ByteBuffer[] batch = new ByteBuffer[ready];
+		for (int i = 0; i < ready; i++) {
+			try {
+				batch[i] = inFlight.removeFirst().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while formatting a chunk");
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IOException("Could not format a chunk", e.getCause());
+			}
+		}
+		return batch;
+	}
+
+	/**
+	 * Writes every byte of the buffers, in order
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer[] batch) throws IOException {
+		long remaining = 0;
+		for (ByteBuffer buffer : batch) {
+			remaining += buffer.remaining();
+		}
+		while (remaining > 0) {
+			remaining -= channel.write(batch);
+		}
+	}
+
+	/**
+	 * Formats a range of food items into a buffer
+	 *
+	 * @return the buffer, flipped for writing
+	 */
+	private ByteBuffer format(List<FoodItem> foodItems, int from, int to) {
+		ByteBuffer buffer = this.buffers.poll();
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(CHUNK_BYTES);
+		}
+		buffer.clear();
+
+		for (int i = from; i < to; i++) {
+			FoodItem foodItem = foodItems.get(i);
+
+			// a line that does not fit moves the chunk to a buffer twice the size
+			int start = buffer.position();
+			while (!formatLine(foodItem, buffer)) {
+				ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+				buffer.flip().limit(start);
+				larger.put(buffer);
+				buffer = larger;
+				start = buffer.position();
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Formats one line, <id>,<name>,calories,<value>,...,protein,<value>
+	 *
+	 * @return false if the buffer ran out of room
+	 */
+	private static boolean formatLine(FoodItem foodItem, ByteBuffer buffer) {
+		try {
+			putText(buffer, foodItem.getID());
+			buffer.put((byte) ',');
+			putText(buffer, foodItem.getName());
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				buffer.put((byte) ',');
+				buffer.put(NUTRIENT_FIELDS[nutrient.ordinal()]);
+				putDouble(buffer, foodItem.getNutrientValue(nutrient));
+			}
+			buffer.put((byte) '\n');
+			return true;
+		} catch (BufferOverflowException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Puts text as UTF-8, ASCII one char at a time
+	 */
+	private static void putText(ByteBuffer buffer, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c >= 0x80) {
+				buffer.put(text.substring(i).getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+			buffer.put((byte) c);
+		}
+	}
+
+	/**
+	 * Puts a double in the shortest form that reads back as the same value
+	 */
+	private static void putDouble(ByteBuffer buffer, double value) {
+		if (value == 0) {
+			if (1 / value < 0) {
+				buffer.put((byte) '-');
+			}
+			buffer.put((byte) '0');
+			return;
+		}
+
+		double magnitude = Math.abs(value);
+		if (magnitude < ExactDecimal.MAX_MANTISSA) {
+
+			// most values in a catalog are whole numbers
+			long whole = (long) magnitude;
+			if (whole == magnitude) {
+				if (value < 0) {
+					buffer.put((byte) '-');
+				}
+				putDecimal(buffer, whole, 0);
+				return;
+			}
+			for (int scale = 1; scale <= ExactDecimal.MAX_SCALE; scale++) {
+				long mantissa = ExactDecimal.mantissa(magnitude, scale);
+				if (mantissa != ExactDecimal.INEXACT) {
+					if (value < 0) {
+						buffer.put((byte) '-');
+					}
+					putDecimal(buffer, mantissa, scale);
+					return;
+				}
+			}
+		}
+
+		// anything else round-trips through the JDK
+		String text = Double.toString(value);
+		for (int i = 0; i < text.length(); i++) {
+			buffer.put((byte) text.charAt(i));
+		}
+	}
+
+	/**
+	 * Puts mantissa / 10^scale as decimal digits
+	 */
+	private static void putDecimal(ByteBuffer buffer, long mantissa, int scale) {
+		int digits = 1;
+		for (long rest = mantissa / 10; rest > 0; rest /= 10) {
+			digits++;
+		}
+
+		// leading zeros so there is a digit before the point
+		int width = Math.max(digits, scale + 1);
+		int start = buffer.position();
+		int length = scale > 0 ? width + 1 : width;
+		if (buffer.remaining() < length) {
+			throw new BufferOverflowException();
+		}
+
+		// fill from the last digit back, placing the point scale digits in
+		int end = start + length;
+		long rest = mantissa;
+		int written = 0;
+		for (int i = end - 1; i >= start; i--) {
+			if (scale > 0 && written == scale) {
+				buffer.put(i, (byte) '.');
+				written++;
+				continue;
+			}
+			buffer.put(i, (byte) ('0' + rest % 10));
+			rest /= 10;
+			written++;
+		}
+		buffer.position(end);
+	}
+
+	/**
+	 * Keeps a chunk buffer for the next chunk
+	 */
+	private void release(ByteBuffer buffer) {
+		if (buffer.capacity() == CHUNK_BYTES) {
+			this.buffers.offer(buffer);
+		}
+	}
+}
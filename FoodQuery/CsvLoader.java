@@ -0,0 +1,253 @@
+/**
+ * Filename:   CsvLoader.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads a food item file in the format of FoodData.loadFoodItems on several
+ * threads. The file is memory mapped and cut into chunks that each end on a
+ * line break, every chunk is parsed on a fork-join pool into its own list of
+ * food items, and the lists are concatenated in file order at the end. No
+ * thread shares anything with another while parsing.
+ *
+ * As with loadFoodItems, reading stops at the first empty line, or the first
+ * line without an id.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class CsvLoader {
+
+	// Most bytes in one chunk, well below the 2 GB limit of a single mapping
+	private static final int MAX_CHUNK_BYTES = 16 * 1024 * 1024;
+
+	// Fewest bytes in one chunk, smaller files are not worth splitting further
+	private static final int MIN_CHUNK_BYTES = 256 * 1024;
+
+	// The pool the chunks are parsed on
+	private final ForkJoinPool pool;
+
+	/**
+	 * Public constructor for a loader that parses on the common fork-join pool
+	 */
+	public CsvLoader() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Public constructor
+	 *
+	 * @param pool
+	 *            the pool the chunks are parsed on
+	 */
+	public CsvLoader(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Reads every food item of a file
+	 *
+	 * @param file
+	 *            the food item file
+	 * @return the food items in file order, not yet in any catalog
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public List<FoodItem> read(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long[] bounds = chunkBounds(channel);
+			Chunk[] chunks = new Chunk[bounds.length - 1];
+			for (int i = 0; i < chunks.length; i++) {
+				chunks[i] = new Chunk(channel, bounds[i], bounds[i + 1]);
+			}
+			this.pool.invoke(new ParseTask(chunks, 0, chunks.length));
+
+			// concatenate the chunks in file order, up to the first one that stopped
+			int total = 0;
+			for (Chunk chunk : chunks) {
+				if (chunk.error != null) {
+					throw chunk.error;
+				}
+				total += chunk.foodItems.size();
+			}
+			List<FoodItem> foodItems = new ArrayList<FoodItem>(total);
+			for (Chunk chunk : chunks) {
+				foodItems.addAll(chunk.foodItems);
+				if (chunk.stopped) {
+					break;
+				}
+			}
+			return foodItems;
+		}
+	}
+
+	/**
+	 * Cuts the file into chunks of about equal size, moving every cut forward to
+	 * just after the next line break
+	 *
+	 * @param channel
+	 *            the open file
+	 * @return the start of every chunk followed by the end of the file
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	private long[] chunkBounds(FileChannel channel) throws IOException {
+		long size = channel.size();
+		int parallelism = this.pool.getParallelism();
+
+		// a few chunks per thread so that uneven chunks still balance out
+		long chunkBytes = Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, size / (parallelism * 4L) + 1));
+
+		List<Long> bounds = new ArrayList<Long>();
+		bounds.add(0L);
+		ByteBuffer probe = ByteBuffer.allocate(4096);
+		long cut = chunkBytes;
+		while (cut < size) {
+
+			// the chunk ends just after the first line break at or after the cut
+			long end = -1;
+			long position = cut;
+			while (end < 0 && position < size) {
+				probe.clear();
+				int read = channel.read(probe, position);
+				if (read <= 0) {
+					break;
+				}
+				for (int i = 0; i < read; i++) {
+					if (probe.get(i) == '\n') {
+						end = position + i + 1;
+						break;
+					}
+				}
+				position += read;
+			}
+			if (end < 0 || end >= size) {
+				break;
+			}
+			bounds.add(end);
+			cut = end + chunkBytes;
+		}
+		bounds.add(size);
+
+		long[] result = new long[bounds.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = bounds.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * One chunk of the file and the food items parsed from it
+	 */
+	private static class Chunk {
+
+		// the open file
+		final FileChannel channel;
+
+		// first byte of the chunk
+		final long start;
+
+		// byte after the last one of the chunk
+		final long end;
+
+		// food items of the chunk, in file order
+		List<FoodItem> foodItems;
+
+		// true if the chunk holds the line that ends the file's data
+		boolean stopped;
+
+		// the error that stopped the chunk from being read, if any
+		IOException error;
+
+		/**
+		 * Package constructor
+		 */
+		Chunk(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.foodItems = new ArrayList<FoodItem>();
+		}
+
+		/**
+		 * Maps the chunk and parses it line by line
+		 */
+		void parse() {
+			MappedByteBuffer buffer;
+			try {
+				buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, this.start, this.end - this.start);
+			} catch (IOException e) {
+				this.error = e;
+				return;
+			}
+
+			// the lines are parsed in place from the mapped bytes
+			if (!new FoodRecordParser().parseLines(buffer, 0, buffer.limit(), this.foodItems::add)) {
+				this.stopped = true;
+			}
+		}
+	}
+
+	/**
+	 * Parses a range of chunks, splitting it in half until one chunk is left
+	 */
+	private static class ParseTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		// all the chunks of the file
+		private final Chunk[] chunks;
+
+		// first chunk of the range
+		private final int from;
+
+		// chunk after the last one of the range
+		private final int to;
+
+		/**
+		 * Package constructor
+		 */
+		ParseTask(Chunk[] chunks, int from, int to) {
+			this.chunks = chunks;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= 1) {
+				if (this.from < this.to) {
+					this.chunks[this.from].parse();
+				}
+				return;
+			}
+			int middle = (this.from + this.to) >>> 1;
+			invokeAll(new ParseTask(this.chunks, this.from, middle), new ParseTask(this.chunks, middle, this.to));
+		}
+	}
+}
@@ -0,0 +1,1503 @@
+/**
+ * Filename:   DoubleBPTree.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Queue;
+
+/**
+ * A B+ tree specialized for primitive double keys and int row ids. Keys are
+ * stored in double[] arrays and values in int[] arrays, so no key or value is
+ * ever boxed and every comparison is a primitive one. FoodData uses one of
+ * these trees per nutrient, where each value is the row id of a FoodItem.
+ *
+ * The boxed BPTreeADT methods are kept so the tree can be used anywhere a
+ * BPTreeADT<Double, Integer> is expected, but callers on the hot path should
+ * use the primitive insert(double, int) and rangeSearchRows(double, String).
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class DoubleBPTree implements BPTreeADT<Double, Integer> {
+
+	// Root of the tree
+	private Node root;
+
+	// Branching factor is the number of children nodes
+	// for internal nodes of the tree
+	private int branchingFactor;
+
+	/**
+	 * Public constructor
+	 *
+	 * @param branchingFactor
+	 *            The branching factor of the DoubleBPTree
+	 */
+	public DoubleBPTree(int branchingFactor) {
+		if (branchingFactor <= 2) {
+			throw new IllegalArgumentException("Illegal branching factor: " + branchingFactor);
+		}
+
+		this.branchingFactor = branchingFactor;
+		this.root = new LeafNode();
+	}
+
+	/**
+	 * Inserts the key and value in the appropriate nodes in the tree
+	 *
+	 * @param key
+	 *            The Double key to insert into the tree
+	 * @param value
+	 *            The Integer row id to insert into the tree
+	 */
+	@Override
+	public void insert(Double key, Integer value) {
+		insert(key.doubleValue(), value.intValue());
+	}
+
+	/**
+	 * Inserts the key and row id in the appropriate nodes in the tree without
+	 * boxing either of them
+	 *
+	 * Note: key-value pairs with duplicate keys can be inserted into the tree.
+	 *
+	 * @param key
+	 *            The double key to insert into the tree
+	 * @param row
+	 *            The int row id to insert into the tree
+	 */
+	public void insert(double key, int row) {
+		this.root.insert(key, row);
+		if (this.root.isOverflow()) {
+			InternalNode newRoot = new InternalNode();
+			Split split = this.root.split();
+			newRoot.keys[0] = split.key;
+			newRoot.children[0] = this.root;
+			newRoot.children[1] = split.sibling;
+			newRoot.counts[0] = this.root.count();
+			newRoot.counts[1] = split.sibling.count();
+			newRoot.size = 1;
+			this.root = newRoot;
+		}
+	}
+
+	/**
+	 * Removes one key-row pair from the tree, borrowing from or merging with
+	 * siblings on the way back up wherever a node becomes too small
+	 *
+	 * @param key
+	 *            The Double key of the pair to remove
+	 * @param value
+	 *            The Integer row id of the pair to remove
+	 * @return true if a pair was removed, false if no pair matched
+	 */
+	@Override
+	public boolean remove(Double key, Integer value) {
+		if (key == null || value == null) {
+			return false;
+		}
+		return remove(key.doubleValue(), value.intValue());
+	}
+
+	/**
+	 * Removes one key-row pair from the tree without boxing either of them
+	 *
+	 * @param key
+	 *            The double key of the pair to remove
+	 * @param row
+	 *            The int row id of the pair to remove
+	 * @return true if a pair was removed, false if no pair matched
+	 */
+	public boolean remove(double key, int row) {
+		boolean removed = this.root.remove(key, row);
+
+		// an internal root left with a single child is replaced by that child
+		if (this.root instanceof DoubleBPTree.InternalNode && this.root.size == 0) {
+			this.root = ((InternalNode) this.root).children[0];
+		}
+		return removed;
+	}
+
+	/**
+	 * Moves a row id from one key to another
+	 *
+	 * @param oldKey
+	 *            The Double key the row is currently stored under
+	 * @param newKey
+	 *            The Double key to store the row under
+	 * @param value
+	 *            The Integer row id to move
+	 * @return true if the row was moved, false if no pair matched
+	 */
+	@Override
+	public boolean update(Double oldKey, Double newKey, Integer value) {
+		if (oldKey == null || newKey == null || value == null) {
+			return false;
+		}
+		return update(oldKey.doubleValue(), newKey.doubleValue(), value.intValue());
+	}
+
+	/**
+	 * Moves a row id from one key to another without boxing
+	 *
+	 * @param oldKey
+	 *            The double key the row is currently stored under
+	 * @param newKey
+	 *            The double key to store the row under
+	 * @param row
+	 *            The int row id to move
+	 * @return true if the row was moved, false if no pair matched
+	 */
+	public boolean update(double oldKey, double newKey, int row) {
+		if (!remove(oldKey, row)) {
+			return false;
+		}
+		insert(newKey, row);
+		return true;
+	}
+
+	/**
+	 * Replaces the contents of the tree with the given key-row pairs, building
+	 * packed leaves and then each internal level bottom-up. This is O(n) compared
+	 * to the O(n log n) splits of inserting the pairs one at a time.
+	 *
+	 * @param keys
+	 *            the keys to load, sorted in ascending order
+	 * @param rows
+	 *            the row id of each key, parallel to keys
+	 * @throws IllegalArgumentException
+	 *             if the arrays differ in length or keys are not sorted
+	 */
+	public void bulkLoad(double[] keys, int[] rows) {
+		if (keys.length != rows.length) {
+			throw new IllegalArgumentException("Keys and rows differ in length: " + keys.length + " != " + rows.length);
+		}
+		for (int i = 1; i < keys.length; i++) {
+			if (keys[i] < keys[i - 1]) {
+				throw new IllegalArgumentException("Keys must be sorted in ascending order");
+			}
+		}
+
+		int n = keys.length;
+		if (n == 0) {
+			this.root = new LeafNode();
+			return;
+		}
+
+		// spread the pairs evenly over the fewest leaves that can hold them
+		int leafCount = (n + branchingFactor - 2) / (branchingFactor - 1);
+		Node[] level = new Node[leafCount];
+		LeafNode previous = null;
+		int from = 0;
+		for (int l = 0; l < leafCount; l++) {
+			int to = (int) ((long) n * (l + 1) / leafCount);
+			LeafNode leaf = new LeafNode();
+			leaf.size = to - from;
+			System.arraycopy(keys, from, leaf.keys, 0, leaf.size);
+			System.arraycopy(rows, from, leaf.rows, 0, leaf.size);
+
+			// links the leaf chain as we go
+			leaf.previous = previous;
+			if (previous != null) {
+				previous.next = leaf;
+			}
+			previous = leaf;
+			level[l] = leaf;
+			from = to;
+		}
+
+		// build each internal level from the one below until one node is left
+		while (level.length > 1) {
+			int parentCount = (level.length + branchingFactor - 1) / branchingFactor;
+			Node[] parents = new Node[parentCount];
+			from = 0;
+			for (int p = 0; p < parentCount; p++) {
+				int to = (int) ((long) level.length * (p + 1) / parentCount);
+				InternalNode parent = new InternalNode();
+				for (int c = from; c < to; c++) {
+					parent.children[c - from] = level[c];
+					parent.counts[c - from] = level[c].count();
+					if (c > from) {
+						parent.keys[c - from - 1] = level[c].firstLeaf().keys[0];
+					}
+				}
+				parent.size = to - from - 1;
+				parents[p] = parent;
+				from = to;
+			}
+			level = parents;
+		}
+
+		this.root = level[0];
+	}
+
+	/**
+	 * Sorts parallel key and row arrays by key in ascending order. The sort is
+	 * stable, so rows with equal keys keep their relative order, the same order
+	 * that inserting them one at a time would give.
+	 *
+	 * @param keys
+	 *            the keys to sort
+	 * @param rows
+	 *            the row id of each key, reordered along with keys
+	 */
+	public static void sortByKey(double[] keys, int[] rows) {
+		if (keys.length != rows.length) {
+			throw new IllegalArgumentException("Keys and rows differ in length: " + keys.length + " != " + rows.length);
+		}
+		mergeSort(keys, rows, keys.clone(), rows.clone(), 0, keys.length);
+	}
+
+	/**
+	 * Top-down merge sort of keys[from, to) using the copies as scratch space.
+	 * On entry the copies hold the same values as keys and rows.
+	 */
+	private static void mergeSort(double[] keys, int[] rows, double[] keyCopy, int[] rowCopy, int from, int to) {
+		if (to - from < 2) {
+			return;
+		}
+
+		// sort both halves of the copy, then merge them back into keys
+		int mid = (from + to) >>> 1;
+		mergeSort(keyCopy, rowCopy, keys, rows, from, mid);
+		mergeSort(keyCopy, rowCopy, keys, rows, mid, to);
+
+		int left = from;
+		int right = mid;
+		for (int i = from; i < to; i++) {
+			if (right >= to || (left < mid && keyCopy[left] <= keyCopy[right])) {
+				keys[i] = keyCopy[left];
+				rows[i] = rowCopy[left++];
+			} else {
+				keys[i] = keyCopy[right];
+				rows[i] = rowCopy[right++];
+			}
+		}
+	}
+
+	/**
+	 * Gets the values that satisfy the given range search arguments.
+	 *
+	 * Value of comparator can be one of these: "<=", "==", ">="
+	 *
+	 * If key is null or not found, return empty list. If comparator is null, empty,
+	 * or not according to required form, return empty list.
+	 *
+	 * @param key
+	 *            to be searched
+	 * @param comparator
+	 *            is a string
+	 * @return list of row ids that are the result of the range search; if nothing
+	 *         found, return empty list
+	 */
+	@Override
+	public List<Integer> rangeSearch(Double key, String comparator) {
+		List<Integer> comparedValues = new ArrayList<Integer>();
+		if (key == null) {
+			return comparedValues;
+		}
+
+		for (int row : rangeSearchRows(key.doubleValue(), comparator)) {
+			comparedValues.add(row);
+		}
+		return comparedValues;
+	}
+
+	/**
+	 * Gets the row ids that satisfy the given range search arguments as a
+	 * primitive array, in ascending key order.
+	 *
+	 * Value of comparator can be one of these: "<=", "==", ">="
+	 *
+	 * @param key
+	 *            to be searched
+	 * @param comparator
+	 *            is a string
+	 * @return array of row ids that are the result of the range search; if nothing
+	 *         found or the comparator is invalid, return an empty array
+	 */
+	public int[] rangeSearchRows(double key, String comparator) {
+		if (comparator == null) {
+			return new int[0];
+		}
+
+		// each comparator is a range with one or both ends at the key
+		PrimitiveIterator.OfInt it;
+		switch (comparator) {
+		case "<=":
+			it = rangeRows(Double.NEGATIVE_INFINITY, key);
+			break;
+		case ">=":
+			it = rangeRows(key, Double.POSITIVE_INFINITY);
+			break;
+		case "==":
+			it = rangeRows(key, key);
+			break;
+		default:
+			return new int[0];
+		}
+
+		RowBuffer rows = new RowBuffer();
+		while (it.hasNext()) {
+			rows.add(it.nextInt());
+		}
+		return rows.toArray();
+	}
+
+	/**
+	 * Gets the row ids whose keys are between lo and hi, in ascending order of
+	 * key. A null lo or hi leaves that side of the range unbounded.
+	 *
+	 * @param lo
+	 *            lower end of the range, or null
+	 * @param loInclusive
+	 *            whether keys equal to lo are included
+	 * @param hi
+	 *            upper end of the range, or null
+	 * @param hiInclusive
+	 *            whether keys equal to hi are included
+	 * @return list of row ids in the range; if nothing found, return empty list
+	 */
+	@Override
+	public List<Integer> rangeSearch(Double lo, boolean loInclusive, Double hi, boolean hiInclusive) {
+		List<Integer> comparedValues = new ArrayList<Integer>();
+		int[] rowIds = rangeSearchRows(lo == null ? Double.NEGATIVE_INFINITY : lo.doubleValue(), loInclusive,
+				hi == null ? Double.POSITIVE_INFINITY : hi.doubleValue(), hiInclusive);
+		for (int row : rowIds) {
+			comparedValues.add(row);
+		}
+		return comparedValues;
+	}
+
+	/**
+	 * Gets the row ids whose keys are between lo and hi as a primitive array, in
+	 * ascending order of key. The tree is descended once, to the first leaf of the
+	 * range, and leaves are scanned until a key is past hi, so a narrow range
+	 * costs O(log n + k).
+	 *
+	 * @param lo
+	 *            lower end of the range
+	 * @param loInclusive
+	 *            whether keys equal to lo are included
+	 * @param hi
+	 *            upper end of the range
+	 * @param hiInclusive
+	 *            whether keys equal to hi are included
+	 * @return array of row ids in the range
+	 */
+	public int[] rangeSearchRows(double lo, boolean loInclusive, double hi, boolean hiInclusive) {
+		PrimitiveIterator.OfInt it = rangeRows(lo, loInclusive, hi, hiInclusive);
+		RowBuffer rows = new RowBuffer();
+		while (it.hasNext()) {
+			rows.add(it.nextInt());
+		}
+		return rows.toArray();
+	}
+
+	/**
+	 * Gets an iterator over the row ids whose keys are in the range [lo, hi], in
+	 * ascending order of key. A null lo or hi leaves that side unbounded.
+	 *
+	 * @param lo
+	 *            smallest key to include, or null
+	 * @param hi
+	 *            largest key to include, or null
+	 * @return iterator over the row ids in the range
+	 */
+	@Override
+	public PrimitiveIterator.OfInt rangeIterator(Double lo, Double hi) {
+		return rangeRows(lo == null ? Double.NEGATIVE_INFINITY : lo.doubleValue(),
+				hi == null ? Double.POSITIVE_INFINITY : hi.doubleValue());
+	}
+
+	/**
+	 * Gets an iterator over the row ids whose keys are in the range [lo, hi], in
+	 * ascending order of key. The iterator descends the tree once and then walks
+	 * the leaf chain, yielding primitive row ids through nextInt().
+	 *
+	 * @param lo
+	 *            smallest key to include
+	 * @param hi
+	 *            largest key to include
+	 * @return iterator over the row ids in the range
+	 */
+	public PrimitiveIterator.OfInt rangeRows(double lo, double hi) {
+		return new RowIterator(lo, true, hi, true);
+	}
+
+	/**
+	 * Gets an iterator over the row ids whose keys are between lo and hi, where
+	 * each end of the range can be inclusive or exclusive.
+	 *
+	 * @param lo
+	 *            lower end of the range
+	 * @param loInclusive
+	 *            whether keys equal to lo are included
+	 * @param hi
+	 *            upper end of the range
+	 * @param hiInclusive
+	 *            whether keys equal to hi are included
+	 * @return iterator over the row ids in the range
+	 */
+	public PrimitiveIterator.OfInt rangeRows(double lo, boolean loInclusive, double hi, boolean hiInclusive) {
+		return new RowIterator(lo, loInclusive, hi, hiInclusive);
+	}
+
+	/**
+	 * Gets the row ids of the k largest keys
+	 *
+	 * @param k
+	 *            the number of row ids to return
+	 * @param descending
+	 *            whether the row ids are ordered from the largest key down
+	 * @return list of at most k row ids
+	 */
+	@Override
+	public List<Integer> topK(int k, boolean descending) {
+		List<Integer> values = new ArrayList<Integer>();
+		for (int row : topKRows(k, descending)) {
+			values.add(row);
+		}
+		return values;
+	}
+
+	/**
+	 * Gets the row ids of the k largest keys as a primitive array. The scan starts
+	 * at the rightmost leaf and follows the previous links until k rows are found.
+	 *
+	 * @param k
+	 *            the number of row ids to return
+	 * @param descending
+	 *            whether the row ids are ordered from the largest key down
+	 * @return array of at most k row ids
+	 */
+	public int[] topKRows(int k, boolean descending) {
+		int[] rowIds = new int[Math.max(0, Math.min(k, size()))];
+		int found = 0;
+		for (LeafNode leaf = this.root.lastLeaf(); leaf != null && found < rowIds.length; leaf = leaf.previous) {
+			for (int i = leaf.size - 1; i >= 0 && found < rowIds.length; i--) {
+				rowIds[found++] = leaf.rows[i];
+			}
+		}
+
+		// the rows were collected largest first, flip them for ascending order
+		if (!descending) {
+			for (int i = 0, j = rowIds.length - 1; i < j; i++, j--) {
+				int row = rowIds[i];
+				rowIds[i] = rowIds[j];
+				rowIds[j] = row;
+			}
+		}
+		return rowIds;
+	}
+
+	/**
+	 * Gets the row ids of the k smallest keys in ascending order of key
+	 *
+	 * @param k
+	 *            the number of row ids to return
+	 * @return list of at most k row ids
+	 */
+	@Override
+	public List<Integer> bottomK(int k) {
+		List<Integer> values = new ArrayList<Integer>();
+		for (int row : bottomKRows(k)) {
+			values.add(row);
+		}
+		return values;
+	}
+
+	/**
+	 * Gets the row ids of the k smallest keys as a primitive array. The scan starts
+	 * at the leftmost leaf and follows the next links until k rows are found.
+	 *
+	 * @param k
+	 *            the number of row ids to return
+	 * @return array of at most k row ids
+	 */
+	public int[] bottomKRows(int k) {
+		int[] rowIds = new int[Math.max(0, Math.min(k, size()))];
+		int found = 0;
+		for (LeafNode leaf = this.root.firstLeaf(); leaf != null && found < rowIds.length; leaf = leaf.next) {
+			int take = Math.min(leaf.size, rowIds.length - found);
+			System.arraycopy(leaf.rows, 0, rowIds, found, take);
+			found += take;
+		}
+		return rowIds;
+	}
+
+	/**
+	 * @return the number of key-row pairs in the tree
+	 */
+	public int size() {
+		return this.root.count();
+	}
+
+	/**
+	 * Counts the keys between lo and hi in O(log n). Internal nodes keep the
+	 * number of pairs under each child, so whole subtrees inside the range are
+	 * counted without being visited.
+	 *
+	 * @param lo
+	 *            lower end of the range
+	 * @param loInclusive
+	 *            whether keys equal to lo are counted
+	 * @param hi
+	 *            upper end of the range
+	 * @param hiInclusive
+	 *            whether keys equal to hi are counted
+	 * @return the number of keys in the range
+	 */
+	public int count(double lo, boolean loInclusive, double hi, boolean hiInclusive) {
+		int count = this.root.countBelow(hi, hiInclusive) - this.root.countBelow(lo, !loInclusive);
+		return Math.max(count, 0);
+	}
+
+	/**
+	 * Gets the rank of a key, which is the number of keys smaller than it
+	 *
+	 * @param key
+	 *            the key to rank
+	 * @return the number of keys < key
+	 */
+	public int rank(double key) {
+		return this.root.countBelow(key, false);
+	}
+
+	/**
+	 * Gets the i-th smallest key, counting from 0. For example selectKey(size() /
+	 * 2) is the median.
+	 *
+	 * @param i
+	 *            position of the key in ascending order
+	 * @return the key at position i
+	 * @throws IndexOutOfBoundsException
+	 *             if i is not in [0, size())
+	 */
+	public double selectKey(int i) {
+		Position position = locate(i);
+		return position.leaf.keys[position.index];
+	}
+
+	/**
+	 * Gets the row id stored with the i-th smallest key, counting from 0
+	 *
+	 * @param i
+	 *            position of the key in ascending order
+	 * @return the row id at position i
+	 * @throws IndexOutOfBoundsException
+	 *             if i is not in [0, size())
+	 */
+	public int selectRow(int i) {
+		Position position = locate(i);
+		return position.leaf.rows[position.index];
+	}
+
+	/**
+	 * Descends to the leaf holding position i by skipping whole children using
+	 * their counts. The tree is only read, never written.
+	 *
+	 * @param i
+	 *            position of the key in ascending order
+	 * @return the leaf holding position i and the index within it
+	 */
+	private Position locate(int i) {
+		if (i < 0 || i >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size());
+		}
+
+		Node node = this.root;
+		while (node instanceof DoubleBPTree.InternalNode) {
+			InternalNode internal = (InternalNode) node;
+			int child = 0;
+			while (i >= internal.counts[child]) {
+				i -= internal.counts[child];
+				child++;
+			}
+			node = internal.children[child];
+		}
+
+		return new Position((LeafNode) node, i);
+	}
+
+	/**
+	 * Gets every row id in ascending order of key, by walking the leaf chain
+	 *
+	 * @return the row ids of the tree in key order
+	 */
+	public int[] toRowArray() {
+		int[] rows = new int[size()];
+		int i = 0;
+		for (LeafNode leaf = this.root.firstLeaf(); leaf != null; leaf = leaf.next) {
+			System.arraycopy(leaf.rows, 0, rows, i, leaf.size);
+			i += leaf.size;
+		}
+		return rows;
+	}
+
+	/**
+	 * Writes the tree to a file in the page format read by MappedBPTree.open. The
+	 * leaf chain already holds the pairs in key order, so they are written out
+	 * without sorting.
+	 *
+	 * @param file
+	 *            the file to write, replaced if it exists
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void save(File file) throws IOException {
+		double[] keys = new double[size()];
+		int[] rows = new int[keys.length];
+		int i = 0;
+		for (LeafNode leaf = this.root.firstLeaf(); leaf != null; leaf = leaf.next) {
+			System.arraycopy(leaf.keys, 0, keys, i, leaf.size);
+			System.arraycopy(leaf.rows, 0, rows, i, leaf.size);
+			i += leaf.size;
+		}
+		MappedBPTree.write(file, keys, rows, this.branchingFactor);
+	}
+
+	/**
+	 * Returns a string representation for the tree
+	 *
+	 * @return a string representation
+	 */
+	@Override
+	public String toString() {
+
+		Queue<List<Node>> queue = new LinkedList<List<Node>>();
+		queue.add(Arrays.asList(root));
+
+		StringBuilder sb = new StringBuilder();
+		while (!queue.isEmpty()) {
+
+			Queue<List<Node>> nextQueue = new LinkedList<List<Node>>();
+			while (!queue.isEmpty()) {
+
+				List<Node> nodes = queue.remove();
+				sb.append('{');
+
+				Iterator<Node> it = nodes.iterator();
+				while (it.hasNext()) {
+
+					Node node = it.next();
+					sb.append(node.toString());
+
+					if (it.hasNext())
+						sb.append(", ");
+
+					if (node instanceof DoubleBPTree.InternalNode) {
+						InternalNode internal = (InternalNode) node;
+						nextQueue.add(Arrays.asList(internal.children).subList(0, internal.size + 1));
+					}
+				}
+
+				sb.append('}');
+				if (!queue.isEmpty())
+					sb.append(", ");
+				else {
+					sb.append('\n');
+				}
+			}
+			queue = nextQueue;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * A growable int array used to collect row ids without boxing them
+	 */
+	private static class RowBuffer {
+
+		// the collected row ids
+		private int[] data = new int[16];
+
+		// the number of collected row ids
+		private int size;
+
+		/**
+		 * Appends a row id, doubling the backing array when it is full
+		 *
+		 * @param row
+		 *            the row id to append
+		 */
+		void add(int row) {
+			if (size == data.length) {
+				data = Arrays.copyOf(data, size * 2);
+			}
+			data[size++] = row;
+		}
+
+		/**
+		 * @return the collected row ids trimmed to size
+		 */
+		int[] toArray() {
+			return Arrays.copyOf(data, size);
+		}
+	}
+
+	/**
+	 * A position in the tree, a leaf and an index within it
+	 */
+	private class Position {
+
+		// the leaf
+		final LeafNode leaf;
+
+		// the index within the leaf
+		final int index;
+
+		/**
+		 * Package constructor
+		 */
+		Position(LeafNode leaf, int index) {
+			this.leaf = leaf;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * The result of splitting a node, the new right sibling and the key that
+	 * separates it from the node
+	 */
+	private class Split {
+
+		// the new right sibling
+		final Node sibling;
+
+		// the key to push up into the parent
+		final double key;
+
+		/**
+		 * Package constructor
+		 */
+		Split(Node sibling, double key) {
+			this.sibling = sibling;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * Iterates over the row ids of a key range by walking the leaf chain. The
+	 * iterator always rests on the next row to return, or on a null leaf once the
+	 * range is exhausted.
+	 */
+	private class RowIterator implements PrimitiveIterator.OfInt {
+
+		// The leaf holding the next row, null when there are no more rows
+		private LeafNode leaf;
+
+		// Index of the next row in leaf
+		private int index;
+
+		// Upper end of the range
+		private double hi;
+
+		// Whether keys equal to hi are returned
+		private boolean hiInclusive;
+
+		/**
+		 * Descends to the first row of the range
+		 *
+		 * @param lo
+		 *            lower end of the range
+		 * @param loInclusive
+		 *            whether keys equal to lo are included
+		 * @param hi
+		 *            upper end of the range
+		 * @param hiInclusive
+		 *            whether keys equal to hi are included
+		 */
+		RowIterator(double lo, boolean loInclusive, double hi, boolean hiInclusive) {
+			this.hi = hi;
+			this.hiInclusive = hiInclusive;
+			this.leaf = root.findLeaf(lo);
+			this.index = this.leaf.lowerBound(lo);
+			settle();
+
+			// an exclusive lower end skips the keys equal to lo, which may span leaves
+			if (!loInclusive) {
+				while (this.leaf != null && this.leaf.keys[this.index] == lo) {
+					this.index++;
+					settle();
+				}
+			}
+		}
+
+		/**
+		 * Moves past exhausted leaves and stops the iterator once a key is past hi
+		 */
+		private void settle() {
+			while (this.leaf != null && this.index >= this.leaf.size) {
+				this.leaf = this.leaf.next;
+				this.index = 0;
+			}
+
+			if (this.leaf != null) {
+				double key = this.leaf.keys[this.index];
+				if (key > this.hi || (key == this.hi && !this.hiInclusive)) {
+					this.leaf = null;
+				}
+			}
+		}
+
+		/**
+		 * @see java.util.Iterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext() {
+			return this.leaf != null;
+		}
+
+		/**
+		 * @see java.util.PrimitiveIterator.OfInt#nextInt()
+		 */
+		@Override
+		public int nextInt() {
+			if (this.leaf == null) {
+				throw new NoSuchElementException();
+			}
+
+			int row = this.leaf.rows[this.index++];
+			settle();
+			return row;
+		}
+	}
+
+	/**
+	 * This abstract class represents any type of node in the tree. This class is a
+	 * super class of the LeafNode and InternalNode types.
+	 *
+	 * @author Aaron Hernandez
+	 * @author Xiao Fei
+	 * @author Henry Koenig
+	 */
+	private abstract class Node {
+
+		// Array of keys, only the first size entries are in use
+		double[] keys;
+
+		// Number of keys currently in this node
+		int size;
+
+		/**
+		 * Package constructor
+		 */
+		Node() {
+			this.keys = new double[branchingFactor];
+			this.size = 0;
+		}
+
+		/**
+		 * Inserts key and row id in the appropriate leaf node and balances the tree if
+		 * required by splitting
+		 *
+		 * @param key
+		 *            The double key to insert
+		 * @param row
+		 *            The int row id to insert
+		 */
+		abstract void insert(double key, int row);
+
+		/**
+		 * Splits this node, keeping the lower half and moving the upper half to a
+		 * new right sibling
+		 *
+		 * @return the new sibling and the key to push up into the parent
+		 */
+		abstract Split split();
+
+		/**
+		 * Removes one key-row pair from under this node, rebalancing any child that
+		 * becomes too small
+		 *
+		 * @param key
+		 *            The double key of the pair to remove
+		 * @param row
+		 *            The int row id of the pair to remove
+		 * @return true if a pair was removed
+		 */
+		abstract boolean remove(double key, int row);
+
+		/**
+		 * Moves the last entry of the left sibling to the front of this node
+		 *
+		 * @param left
+		 *            the left sibling, which has keys to spare
+		 * @param separator
+		 *            the parent key between left and this node
+		 * @return the new parent key between left and this node
+		 */
+		abstract double borrowFromLeft(Node left, double separator);
+
+		/**
+		 * Moves the first entry of the right sibling to the end of this node
+		 *
+		 * @param right
+		 *            the right sibling, which has keys to spare
+		 * @param separator
+		 *            the parent key between this node and right
+		 * @return the new parent key between this node and right
+		 */
+		abstract double borrowFromRight(Node right, double separator);
+
+		/**
+		 * Appends every entry of the right sibling to this node
+		 *
+		 * @param right
+		 *            the right sibling, which is dropped by the parent afterwards
+		 * @param separator
+		 *            the parent key between this node and right
+		 */
+		abstract void merge(Node right, double separator);
+
+		/**
+		 * Finds the leftmost leaf that may contain the given key
+		 *
+		 * @param key
+		 *            the key to search for
+		 * @return the leaf where a scan for key should start
+		 */
+		abstract LeafNode findLeaf(double key);
+
+		/**
+		 * @return the leftmost leaf under this node
+		 */
+		abstract LeafNode firstLeaf();
+
+		/**
+		 * @return the rightmost leaf under this node
+		 */
+		abstract LeafNode lastLeaf();
+
+		/**
+		 * @return the number of key-row pairs under this node
+		 */
+		abstract int count();
+
+		/**
+		 * Counts the keys under this node that are below the given key
+		 *
+		 * @param key
+		 *            the key to compare against
+		 * @param inclusive
+		 *            whether keys equal to key are counted
+		 * @return the number of keys < key, or <= key when inclusive
+		 */
+		abstract int countBelow(double key, boolean inclusive);
+
+		/**
+		 * Checks to see if the current node has overflowed, which is useful when
+		 * splitting.
+		 *
+		 * @return boolean true if the current node has overflowed, false otherwise
+		 */
+		boolean isOverflow() {
+			return this.size >= branchingFactor;
+		}
+
+		/**
+		 * Checks to see if the current node has fewer keys than a non-root node may
+		 * hold, which is useful after removing.
+		 *
+		 * @return boolean true if the current node has underflowed
+		 */
+		boolean isUnderflow() {
+			return this.size < (branchingFactor - 1) / 2;
+		}
+
+		/**
+		 * Checks to see if the current node can give a key to a sibling without
+		 * underflowing itself.
+		 *
+		 * @return boolean true if the current node has a key to spare
+		 */
+		boolean canLend() {
+			return this.size > (branchingFactor - 1) / 2;
+		}
+
+		/**
+		 * Finds the index of the first key that is >= the given key
+		 *
+		 * @param key
+		 *            the key to search for
+		 * @return an index in [0, size]
+		 */
+		int lowerBound(double key) {
+			int low = 0;
+			int high = this.size;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (this.keys[mid] < key) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Finds the index of the first key that is > the given key
+		 *
+		 * @param key
+		 *            the key to search for
+		 * @return an index in [0, size]
+		 */
+		int upperBound(double key) {
+			int low = 0;
+			int high = this.size;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (this.keys[mid] <= key) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Gets a String representation of the keys
+		 *
+		 * @return a String representing the list of keys in the current Node.
+		 */
+		public String toString() {
+			return Arrays.toString(Arrays.copyOf(keys, size));
+		}
+
+	} // End of abstract class Node
+
+	/**
+	 * This class represents an internal node of the tree. Child i holds the keys
+	 * that are <= keys[i], and child size holds the keys greater than every
+	 * separator.
+	 *
+	 * @author Aaron Hernandez
+	 * @author Xiao Fei
+	 * @author Henry Koenig
+	 */
+	private class InternalNode extends Node {
+
+		// Array of children nodes, only the first size + 1 entries are in use
+		Node[] children;
+
+		// Number of key-row pairs under each child, parallel to children, so that
+		// counting queries never have to visit the children themselves
+		int[] counts;
+
+		/**
+		 * Package constructor
+		 */
+		InternalNode() {
+			super();
+			this.children = new Node[branchingFactor + 1];
+			this.counts = new int[branchingFactor + 1];
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#insert(double, int)
+		 */
+		void insert(double key, int row) {
+
+			// equal keys can span several children, the new one goes into the last so
+			// it lands after all of them
+			int i = upperBound(key);
+			Node child = this.children[i];
+			child.insert(key, row);
+			this.counts[i]++;
+
+			// if the child overflowed, split it and add the new sibling after it
+			if (child.isOverflow()) {
+				Split split = child.split();
+				System.arraycopy(this.keys, i, this.keys, i + 1, this.size - i);
+				System.arraycopy(this.children, i + 1, this.children, i + 2, this.size - i);
+				System.arraycopy(this.counts, i + 1, this.counts, i + 2, this.size - i);
+				this.keys[i] = split.key;
+				this.children[i + 1] = split.sibling;
+				this.counts[i] = child.count();
+				this.counts[i + 1] = split.sibling.count();
+				this.size++;
+			}
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#count()
+		 */
+		int count() {
+			int total = 0;
+			for (int i = 0; i <= this.size; i++) {
+				total += this.counts[i];
+			}
+			return total;
+		}
+
+		/**
+		 * Children left of the one holding the boundary are counted whole from
+		 * counts, so only one child per level is descended into.
+		 *
+		 * @see DoubleBPTree.Node#countBelow(double, boolean)
+		 */
+		int countBelow(double key, boolean inclusive) {
+			int i = inclusive ? upperBound(key) : lowerBound(key);
+			int total = 0;
+			for (int j = 0; j < i; j++) {
+				total += this.counts[j];
+			}
+			return total + this.children[i].countBelow(key, inclusive);
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#split()
+		 */
+		Split split() {
+			InternalNode newInternalNode = new InternalNode();
+			int mid = this.size / 2;
+
+			// the middle key moves up, everything after it moves to the new sibling
+			double splitKey = this.keys[mid];
+			newInternalNode.size = this.size - mid - 1;
+			System.arraycopy(this.keys, mid + 1, newInternalNode.keys, 0, newInternalNode.size);
+			System.arraycopy(this.children, mid + 1, newInternalNode.children, 0, newInternalNode.size + 1);
+			System.arraycopy(this.counts, mid + 1, newInternalNode.counts, 0, newInternalNode.size + 1);
+			Arrays.fill(this.children, mid + 1, this.size + 1, null);
+			this.size = mid;
+
+			return new Split(newInternalNode, splitKey);
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#remove(double, int)
+		 */
+		boolean remove(double key, int row) {
+
+			// equal keys can span every child from the first separator >= key on, as
+			// long as the separators stay equal to key
+			for (int i = lowerBound(key); i <= this.size; i++) {
+				if (this.children[i].remove(key, row)) {
+					this.counts[i]--;
+					if (this.children[i].isUnderflow()) {
+						rebalance(i);
+					}
+					return true;
+				}
+
+				if (i == this.size || this.keys[i] != key) {
+					break;
+				}
+			}
+
+			return false;
+		}
+
+		/**
+		 * Fixes an underflowed child by borrowing from a sibling that has keys to
+		 * spare, or by merging it with a sibling when neither does
+		 *
+		 * @param i
+		 *            index of the underflowed child
+		 */
+		private void rebalance(int i) {
+			Node child = this.children[i];
+			Node left = i > 0 ? this.children[i - 1] : null;
+			Node right = i < this.size ? this.children[i + 1] : null;
+
+			if (left != null && left.canLend()) {
+				this.keys[i - 1] = child.borrowFromLeft(left, this.keys[i - 1]);
+				this.counts[i - 1] = left.count();
+				this.counts[i] = child.count();
+			} else if (right != null && right.canLend()) {
+				this.keys[i] = child.borrowFromRight(right, this.keys[i]);
+				this.counts[i] = child.count();
+				this.counts[i + 1] = right.count();
+			} else if (left != null) {
+				left.merge(child, this.keys[i - 1]);
+				removeChild(i);
+				this.counts[i - 1] = left.count();
+			} else {
+				child.merge(right, this.keys[i]);
+				removeChild(i + 1);
+				this.counts[i] = child.count();
+			}
+		}
+
+		/**
+		 * Drops the child at index c along with the separator to its left
+		 *
+		 * @param c
+		 *            index of the child to drop, at least 1
+		 */
+		private void removeChild(int c) {
+			System.arraycopy(this.keys, c, this.keys, c - 1, this.size - c);
+			System.arraycopy(this.children, c + 1, this.children, c, this.size - c);
+			System.arraycopy(this.counts, c + 1, this.counts, c, this.size - c);
+			this.children[this.size] = null;
+			this.size--;
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#borrowFromLeft(Node, double)
+		 */
+		double borrowFromLeft(Node left, double separator) {
+			InternalNode sibling = (InternalNode) left;
+
+			// the separator comes down in front of the sibling's last child
+			System.arraycopy(this.keys, 0, this.keys, 1, this.size);
+			System.arraycopy(this.children, 0, this.children, 1, this.size + 1);
+			System.arraycopy(this.counts, 0, this.counts, 1, this.size + 1);
+			this.keys[0] = separator;
+			this.children[0] = sibling.children[sibling.size];
+			this.counts[0] = sibling.counts[sibling.size];
+			this.size++;
+
+			// and the sibling's last key goes up in its place
+			double newSeparator = sibling.keys[sibling.size - 1];
+			sibling.children[sibling.size] = null;
+			sibling.size--;
+			return newSeparator;
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#borrowFromRight(Node, double)
+		 */
+		double borrowFromRight(Node right, double separator) {
+			InternalNode sibling = (InternalNode) right;
+
+			// the separator comes down behind the sibling's first child
+			this.keys[this.size] = separator;
+			this.children[this.size + 1] = sibling.children[0];
+			this.counts[this.size + 1] = sibling.counts[0];
+			this.size++;
+
+			// and the sibling's first key goes up in its place
+			double newSeparator = sibling.keys[0];
+			System.arraycopy(sibling.keys, 1, sibling.keys, 0, sibling.size - 1);
+			System.arraycopy(sibling.children, 1, sibling.children, 0, sibling.size);
+			System.arraycopy(sibling.counts, 1, sibling.counts, 0, sibling.size);
+			sibling.children[sibling.size] = null;
+			sibling.size--;
+			return newSeparator;
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#merge(Node, double)
+		 */
+		void merge(Node right, double separator) {
+			InternalNode sibling = (InternalNode) right;
+			this.keys[this.size] = separator;
+			System.arraycopy(sibling.keys, 0, this.keys, this.size + 1, sibling.size);
+			System.arraycopy(sibling.children, 0, this.children, this.size + 1, sibling.size + 1);
+			System.arraycopy(sibling.counts, 0, this.counts, this.size + 1, sibling.size + 1);
+			this.size += sibling.size + 1;
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#findLeaf(double)
+		 */
+		LeafNode findLeaf(double key) {
+			return this.children[lowerBound(key)].findLeaf(key);
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#firstLeaf()
+		 */
+		LeafNode firstLeaf() {
+			return this.children[0].firstLeaf();
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#lastLeaf()
+		 */
+		LeafNode lastLeaf() {
+			return this.children[this.size].lastLeaf();
+		}
+
+	} // End of class InternalNode
+
+	/**
+	 * This class represents a leaf node of the tree. Keys and row ids are held in
+	 * parallel primitive arrays.
+	 *
+	 * @author Aaron Hernandez
+	 * @author Xiao Fei
+	 * @author Henry Koenig
+	 */
+	private class LeafNode extends Node {
+
+		// Array of row ids, parallel to keys
+		int[] rows;
+
+		// Reference to the next leaf node
+		LeafNode next;
+
+		// Reference to the previous leaf node
+		LeafNode previous;
+
+		/**
+		 * Package constructor
+		 */
+		LeafNode() {
+			super();
+			this.rows = new int[branchingFactor];
+			this.next = null;
+			this.previous = null;
+		}
+
+		/**
+		 * Inserts after any existing equal keys so duplicates keep insertion order
+		 *
+		 * @see DoubleBPTree.Node#insert(double, int)
+		 */
+		void insert(double key, int row) {
+			int i = upperBound(key);
+			System.arraycopy(this.keys, i, this.keys, i + 1, this.size - i);
+			System.arraycopy(this.rows, i, this.rows, i + 1, this.size - i);
+			this.keys[i] = key;
+			this.rows[i] = row;
+			this.size++;
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#split()
+		 */
+		Split split() {
+			LeafNode newLeaf = new LeafNode();
+			int mid = this.size / 2;
+
+			// move the upper half of the key-row pairs to newLeaf
+			newLeaf.size = this.size - mid;
+			System.arraycopy(this.keys, mid, newLeaf.keys, 0, newLeaf.size);
+			System.arraycopy(this.rows, mid, newLeaf.rows, 0, newLeaf.size);
+			this.size = mid;
+
+			// links newLeaf in after the current leaf node
+			newLeaf.next = this.next;
+			newLeaf.previous = this;
+			if (this.next != null) {
+				this.next.previous = newLeaf;
+			}
+			this.next = newLeaf;
+
+			return new Split(newLeaf, newLeaf.keys[0]);
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#remove(double, int)
+		 */
+		boolean remove(double key, int row) {
+			for (int i = lowerBound(key); i < this.size && this.keys[i] == key; i++) {
+				if (this.rows[i] == row) {
+					System.arraycopy(this.keys, i + 1, this.keys, i, this.size - i - 1);
+					System.arraycopy(this.rows, i + 1, this.rows, i, this.size - i - 1);
+					this.size--;
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#borrowFromLeft(Node, double)
+		 */
+		double borrowFromLeft(Node left, double separator) {
+			LeafNode sibling = (LeafNode) left;
+			System.arraycopy(this.keys, 0, this.keys, 1, this.size);
+			System.arraycopy(this.rows, 0, this.rows, 1, this.size);
+			this.keys[0] = sibling.keys[sibling.size - 1];
+			this.rows[0] = sibling.rows[sibling.size - 1];
+			this.size++;
+			sibling.size--;
+			return this.keys[0];
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#borrowFromRight(Node, double)
+		 */
+		double borrowFromRight(Node right, double separator) {
+			LeafNode sibling = (LeafNode) right;
+			this.keys[this.size] = sibling.keys[0];
+			this.rows[this.size] = sibling.rows[0];
+			this.size++;
+			System.arraycopy(sibling.keys, 1, sibling.keys, 0, sibling.size - 1);
+			System.arraycopy(sibling.rows, 1, sibling.rows, 0, sibling.size - 1);
+			sibling.size--;
+			return sibling.keys[0];
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#merge(Node, double)
+		 */
+		void merge(Node right, double separator) {
+			LeafNode sibling = (LeafNode) right;
+			System.arraycopy(sibling.keys, 0, this.keys, this.size, sibling.size);
+			System.arraycopy(sibling.rows, 0, this.rows, this.size, sibling.size);
+			this.size += sibling.size;
+
+			// unlink the sibling from the leaf chain
+			this.next = sibling.next;
+			if (this.next != null) {
+				this.next.previous = this;
+			}
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#count()
+		 */
+		int count() {
+			return this.size;
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#countBelow(double, boolean)
+		 */
+		int countBelow(double key, boolean inclusive) {
+			return inclusive ? upperBound(key) : lowerBound(key);
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#findLeaf(double)
+		 */
+		LeafNode findLeaf(double key) {
+			return this;
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#firstLeaf()
+		 */
+		LeafNode firstLeaf() {
+			return this;
+		}
+
+		/**
+		 * @see DoubleBPTree.Node#lastLeaf()
+		 */
+		LeafNode lastLeaf() {
+			return this;
+		}
+
+	} // End of class LeafNode
+} // End of class DoubleBPTree
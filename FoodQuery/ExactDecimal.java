@@ -0,0 +1,105 @@
+/**
+ * Filename:   ExactDecimal.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+/**
+ * Decimal values written as a whole-number mantissa and a scale, the number of
+ * digits after the point, so 3.25 is 325 at scale 2. A double holds every
+ * mantissa below 2^53 and every power of ten up to 10^22 exactly, so within
+ * those bounds one division turns a mantissa and scale into the correctly
+ * rounded double, the same one Double.parseDouble gives for the digits.
+ *
+ * Shared by the .csv parser, the .csv exporter and the columnar file, so a
+ * value written by one reads back the same through the others.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+final class ExactDecimal {
+
+	// Largest scale, 10^22 is the largest power of ten a double holds exactly
+	static final int MAX_SCALE = 22;
+
+	// Mantissas stay below this, where doubles hold every whole number
+	static final long MAX_MANTISSA = 1L << 53;
+
+	// Returned by mantissa for a value with no exact mantissa at a scale
+	static final long INEXACT = Long.MIN_VALUE;
+
+	// Powers of ten by scale
+	private static final double[] POWERS_OF_TEN = new double[MAX_SCALE + 1];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	/**
+	 * Private constructor, only static methods
+	 */
+	private ExactDecimal() {
+	}
+
+	/**
+	 * @param scale
+	 *            the scale, from 0 to MAX_SCALE
+	 * @return 10^scale
+	 */
+	static double powerOfTen(int scale) {
+		return POWERS_OF_TEN[scale];
+	}
+
+	/**
+	 * Gets mantissa / 10^scale, correctly rounded as long as the mantissa is
+	 * below MAX_MANTISSA in magnitude
+	 *
+	 * @param mantissa
+	 *            the digits of the value
+	 * @param scale
+	 *            the digits after the point, from 0 to MAX_SCALE
+	 * @return the value
+	 */
+	static double toDouble(long mantissa, int scale) {
+		return scale == 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+	}
+
+	/**
+	 * Gets the mantissa of a value at a scale, if there is one that gives back
+	 * exactly the same double, -0.0 and 0.0 told apart
+	 *
+	 * @param value
+	 *            the value
+	 * @param scale
+	 *            the digits after the point, from 0 to MAX_SCALE
+	 * @return the mantissa, below MAX_MANTISSA in magnitude, or INEXACT
+	 */
+	static long mantissa(double value, int scale) {
+		double scaled = value * POWERS_OF_TEN[scale];
+		if (!(Math.abs(scaled) < MAX_MANTISSA)) {
+			return INEXACT;
+		}
+		long mantissa = Math.round(scaled);
+		if (Math.abs(mantissa) >= MAX_MANTISSA || Double.doubleToRawLongBits(toDouble(mantissa, scale)) != Double
+				.doubleToRawLongBits(value)) {
+			return INEXACT;
+		}
+		return mantissa;
+	}
+}
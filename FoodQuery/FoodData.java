@@ -11,14 +11,23 @@
 package application;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.io.File;
-import java.io.PrintWriter;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import javafx.collections.FXCollections;
+import java.nio.file.NoSuchFileException;
 
 /**
  * This class represents the backend for managing all the operations associated
@@ -30,26 +39,68 @@ import javafx.collections.FXCollections;
  */
 public class FoodData implements FoodDataADT<FoodItem> {
 
-	// List of all the food items.
-	private List<FoodItem> foodItemList;
+	// Branching factor of the nutrient indexes. The primitive trees keep their
+	// keys in arrays, so wide nodes make range scans mostly sequential reads.
+	private static final int INDEX_BRANCHING_FACTOR = 64;
 
-	// Map of nutrients containg BPTrees of their value with the corresponding
-	// foodItem
-	private HashMap<String, BPTree<Double, FoodItem>> indexes;
+	// Number of compiled rule lists kept by compile()
+	private static final int COMPILED_QUERY_CACHE_SIZE = 1024;
+
+	// Most filter results kept by the result cache, and the most memory they
+	// may take
+	private static final int RESULT_CACHE_SIZE = 256;
+	private static final long RESULT_CACHE_BYTES = 64L * 1024 * 1024;
+
+	// The food items with their indexes. A load builds a whole new catalog and
+	// publishes it in one volatile write, so a filter never sees a half-loaded
+	// one.
+	private volatile Catalog catalog;
+
+	// Held for reading while a filter walks the published catalog, and for
+	// writing while a single change updates it in place, so a filter never
+	// walks a tree in the middle of a split.
+	private final ReentrantReadWriteLock catalogLock;
+
+	// Row id of each food item by its unique id. Only code holding the lock
+	// changes take reads it, so it is kept out of the catalog.
+	private HashMap<String, Integer> rowsById;
+
+	// Compiled rule lists by their rules as given and by their normalized
+	// rules, least recently used first. A compiled query does not depend on the
+	// food items, so entries never go stale.
+	private final Map<List<String>, CompiledQuery> compiledQueries;
+
+	// Results of recent filters, by compiled query or name substring
+	private final QueryCache resultCache;
+
+	// Journal every change is recorded in, null unless one was opened
+	private FoodJournal journal;
 
 	/**
 	 * Public constructor for FoodData
 	 */
 	public FoodData() {
-		this.foodItemList = FXCollections.observableArrayList();// Created as an observable arrayList
-		this.indexes = new HashMap<String, BPTree<Double, FoodItem>>();
+		this.rowsById = new HashMap<String, Integer>();
+		this.catalogLock = new ReentrantReadWriteLock();
+		this.compiledQueries = Collections.synchronizedMap(new LinkedHashMap<List<String>, CompiledQuery>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<List<String>, CompiledQuery> eldest) {
+				return size() > COMPILED_QUERY_CACHE_SIZE;
+			}
+		});
+		this.resultCache = new QueryCache(RESULT_CACHE_SIZE, RESULT_CACHE_BYTES);
 
 		// Create all of our BPtrees and add to map
-		indexes.put("calories", new BPTree<Double, FoodItem>(3));
-		indexes.put("fat", new BPTree<Double, FoodItem>(3));
-		indexes.put("carbohydrate", new BPTree<Double, FoodItem>(3));
-		indexes.put("fiber", new BPTree<Double, FoodItem>(3));
-		indexes.put("protein", new BPTree<Double, FoodItem>(3));
+		HashMap<String, DoubleBPTree> indexes = new HashMap<String, DoubleBPTree>();
+		indexes.put("calories", new DoubleBPTree(INDEX_BRANCHING_FACTOR));
+		indexes.put("fat", new DoubleBPTree(INDEX_BRANCHING_FACTOR));
+		indexes.put("carbohydrate", new DoubleBPTree(INDEX_BRANCHING_FACTOR));
+		indexes.put("fiber", new DoubleBPTree(INDEX_BRANCHING_FACTOR));
+		indexes.put("protein", new DoubleBPTree(INDEX_BRANCHING_FACTOR));
+		this.catalog = new Catalog(new SortedCatalog(), new ArrayList<FoodItem>(), new NutrientColumns(),
+				new NameIndex(), indexes, new ArrayList<CompositeIndex>());
 	}
 
 	/**
@@ -66,49 +117,182 @@ public class FoodData implements FoodDataADT<FoodItem> {
 	 * All food items will strictly contain 5 nutrients in the given order:
 	 * calories,fat,carbohydrate,fiber,protein 6. Nutrients are CASE-INSENSITIVE.
 	 * 
+	 * A file that repeats an id, or has an id that is already loaded, is not
+	 * loaded at all.
+	 * 
 	 * @param filePath
 	 *            path of the food item data file (e.g.
 	 *            folder1/subfolder1/.../foodItems.csv)
 	 */
 	@Override
-	public void loadFoodItems(String filePath) {
+	public synchronized void loadFoodItems(String filePath) {
+		// Our input file we are loading from, read as bytes so that each line is
+		// parsed in place without making a String for it
+		try (InputStream readFile = new FileInputStream(filePath)) {
+			List<FoodItem> loaded = new ArrayList<FoodItem>();
+
+			// collects the file's food items up to the first empty line, the catalog
+			// and the indexes are bulk loaded once the whole file has been read
+			new FoodRecordParser().parse(readFile, loaded);
+
+			// sorts the file's food items once and merges them into a copy of
+			// foodItemList, sorts each nutrient column once and rebuilds its index
+			// bottom-up, then publishes the new catalog
+			this.publish(this.withBatch(loaded));
+			this.compactJournal();
+
+		} catch (FileNotFoundException e) {
+			// if we somehow can't find the file, print this error message
+			System.out.println("File not Found");
+		} catch (IOException | IllegalArgumentException e) {
+			// any other read error or a duplicate id, print its message
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Loads the data in the .csv file like loadFoodItems, but parses the file on
+	 * several threads. The file is memory mapped and split into chunks at line
+	 * breaks, each chunk is parsed into its own list, and the lists are merged
+	 * into the catalog and the indexes in one batch once every chunk is done.
+	 * Like loadFoodItems, a file with a duplicate id is not loaded.
+	 * 
+	 * @param filePath
+	 *            path of the food item data file (e.g.
+	 *            folder1/subfolder1/.../foodItems.csv)
+	 */
+	public synchronized void loadFoodItemsParallel(String filePath) {
 		try {
-			// Our input file we are loading from
-			File inFile = new File(filePath);
-			Scanner readFile = new Scanner(inFile);
+			List<FoodItem> loaded = new CsvLoader().read(new File(filePath));
 
-			while (readFile.hasNextLine()) {
+			// sorts the file's food items once and merges them into a copy of
+			// foodItemList, then rebuilds each index bottom-up and publishes the result
+			this.publish(this.withBatch(loaded));
+			this.compactJournal();
 
-				// splits each new line at the dividing ","
-				String[] currLine = readFile.nextLine().split(",");
-				if (currLine.length == 0 || currLine[0].equals("")) {
-					// Exits loop at end of data or at start of empty lines
-					break;
-				}
+		} catch (FileNotFoundException | NoSuchFileException e) {
+			// if we somehow can't find the file, print this error message
+			System.out.println("File not Found");
+		} catch (IOException | IllegalArgumentException e) {
+			// any other read error or a duplicate id, print its message
+			System.out.println(e.getMessage());
+		}
+	}
 
-				// Sets ID and name
-				FoodItem tempFood = (new FoodItem(currLine[0], currLine[1]));
+	/**
+	 * Replaces the loaded data with a snapshot written by saveSnapshot. Nothing
+	 * is parsed or sorted: the columns are used as read, the indexes are bulk
+	 * loaded from their stored order, and the food item list from the stored
+	 * name order. Row ids are those of the snapshot.
+	 * 
+	 * @param filePath
+	 *            path of the snapshot file
+	 */
+	public synchronized void loadSnapshot(String filePath) {
+		try {
+			this.installSnapshot(FoodSnapshot.read(new File(filePath)));
+			this.compactJournal();
 
-				// Adds Nutrients by name/value pairs
-				for (int i = 2; i < currLine.length; i += 2) {
-					tempFood.addNutrient(currLine[i], Double.parseDouble(currLine[i + 1]));
+		} catch (FileNotFoundException | NoSuchFileException e) {
+			// if we somehow can't find the file, print this error message
+			System.out.println("File not Found");
+		} catch (IOException | IllegalArgumentException e) {
+			// any other read error or a corrupt file, print its message
+			System.out.println(e.getMessage());
+		}
+	}
 
-					if (i + 1 == currLine.length - 2) {
-						// breaks loops on improper file format i.e. nutrients without corresponding
-						// values
-						break;
-					}
-				}
-				// adds our newly created food item to our foodItemList
-				this.addFoodItem(tempFood);
-			}
-			// closes our input
-			readFile.close();
+	/**
+	 * Loads the food items of a columnar file written by saveColumnar, like
+	 * loadFoodItems loads a .csv file. The columns are unpacked a block at a
+	 * time instead of parsing text, and the food items are merged into the
+	 * catalog and the indexes in one batch. A file with a duplicate id is not
+	 * loaded.
+	 * 
+	 * @param filePath
+	 *            path of the columnar file
+	 */
+	public synchronized void loadColumnar(String filePath) {
+		try {
+			List<FoodItem> loaded = ColumnarCatalog.open(new File(filePath)).readAll();
 
-		} catch (FileNotFoundException e) {
+			// sorts the file's food items once and merges them into a copy of
+			// foodItemList, then rebuilds each index bottom-up and publishes the result
+			this.publish(this.withBatch(loaded));
+			this.compactJournal();
+
+		} catch (FileNotFoundException | NoSuchFileException e) {
 			// if we somehow can't find the file, print this error message
 			System.out.println("File not Found");
+		} catch (IOException | IllegalArgumentException e) {
+			// any other read error, a corrupt file or a duplicate id, print its message
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Builds the catalog of a snapshot aside and then replaces the current one
+	 * with it
+	 * 
+	 * @param snapshot
+	 *            the snapshot to load
+	 */
+	private void installSnapshot(FoodSnapshot snapshot) {
+		int n = snapshot.size();
+		NutrientColumns newColumns = new NutrientColumns(snapshot.columns, n);
+		List<FoodItem> newRows = new ArrayList<FoodItem>(n);
+		HashMap<String, Integer> newRowsById = new HashMap<String, Integer>(n * 4 / 3 + 1);
+		for (int row = 0; row < n; row++) {
+			FoodItem foodItem = new FoodItem(snapshot.ids[row], snapshot.names[row], newColumns, row);
+			newRows.add(foodItem);
+			if (newRowsById.put(foodItem.getID(), row) != null) {
+				throw new IllegalArgumentException("Duplicate food item id: " + foodItem.getID());
+			}
 		}
+
+		// the batch is already in name order, so sorting it only checks the order
+		List<FoodItem> byName = new ArrayList<FoodItem>(n);
+		for (int row : snapshot.nameOrder) {
+			byName.add(newRows.get(row));
+		}
+		SortedCatalog newCatalog = new SortedCatalog();
+		newCatalog.addRows(snapshot.nameOrder, byName);
+
+		// each index gathers its keys in stored order and is bulk loaded
+		HashMap<String, DoubleBPTree> newIndexes = new HashMap<String, DoubleBPTree>();
+		for (Nutrient nutrient : Nutrient.values()) {
+			int[] rowIds = snapshot.sortedRows[nutrient.ordinal()];
+			double[] column = newColumns.column(nutrient);
+			double[] keys = new double[n];
+			for (int i = 0; i < n; i++) {
+				keys[i] = column[rowIds[i]];
+			}
+			DoubleBPTree index = new DoubleBPTree(INDEX_BRANCHING_FACTOR);
+			index.bulkLoad(keys, rowIds);
+			newIndexes.put(nutrient.getName(), index);
+		}
+		List<CompositeIndex> newComposites = new ArrayList<CompositeIndex>();
+		for (int i = 0; i < snapshot.compositeIndexes.size(); i++) {
+			CompositeIndex composite = new CompositeIndex(snapshot.compositeIndexes.get(i));
+			composite.bulkLoad(newRows, newColumns, snapshot.compositeRows.get(i));
+			newComposites.add(composite);
+		}
+
+		// publish the new catalog, the name index is built on first use
+		this.rowsById = newRowsById;
+		this.publish(new Catalog(newCatalog, newRows, newColumns, null, newIndexes, newComposites));
+	}
+
+	/**
+	 * Replaces the published catalog with one built aside. Its version follows the
+	 * old one's, so no cached result of the old catalog is returned for it.
+	 * 
+	 * @param newCatalog
+	 *            the catalog to publish, not yet seen by any filter
+	 */
+	private void publish(Catalog newCatalog) {
+		newCatalog.version = this.catalog.version + 1;
+		this.catalog = newCatalog;
 	}
 
 	/**
@@ -131,17 +315,97 @@ public class FoodData implements FoodDataADT<FoodItem> {
 	 */
 	@Override
 	public List<FoodItem> filterByName(String substring) {
-		List<FoodItem> filteredList = new ArrayList<FoodItem>();
+		catalogLock.readLock().lock();
+		try {
+			Catalog current = this.catalog;
+			return this.getFoodItems(current, this.filterRowsByName(current, substring));
+		} finally {
+			catalogLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the row ids of the food items whose names contain the substring,
+	 * ignoring case, so the result can be ANDed with the bitmaps of other
+	 * filters. Only the names that contain every trigram of the substring are
+	 * checked. Results are cached until the catalog changes.
+	 *
+	 * @param substring
+	 *            substring to be searched
+	 * @return read-only bitmap of the matching row ids
+	 */
+	public RowBitmap filterRowsByName(String substring) {
+		catalogLock.readLock().lock();
+		try {
+			return this.filterRowsByName(this.catalog, substring);
+		} finally {
+			catalogLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the row ids of the food items of a catalog whose names contain the
+	 * substring
+	 *
+	 * @param current
+	 *            the catalog to search
+	 * @param substring
+	 *            substring to be searched
+	 * @return read-only bitmap of the matching row ids
+	 */
+	private RowBitmap filterRowsByName(Catalog current, String substring) {
+		String key = substring.toLowerCase();
+		long currentVersion = current.version;
+		RowBitmap filteredRows = resultCache.get(key, currentVersion);
+		if (filteredRows == null) {
+			filteredRows = nameIndex(current).search(key);
+			resultCache.put(key, currentVersion, filteredRows);
+		}
+		return filteredRows;
+	}
 
-		// check the name of every food item in the list
-		for (int i = 0; i < foodItemList.size(); i++) {
+	/**
+	 * Gets the name index, building it from the rows the first time it is needed
+	 * after a snapshot load. The trigram postings are the one part of the catalog
+	 * a snapshot does not hold, so a warm start only pays for them on the first
+	 * name search. The caller holds catalogLock for reading, so no food item is
+	 * added while the index is built, and the catalog's own monitor keeps two
+	 * filters from both building it.
+	 * 
+	 * @param current
+	 *            the catalog to get the name index of
+	 * @return the name index
+	 */
+	private NameIndex nameIndex(Catalog current) {
+		NameIndex index = current.nameIndex;
+		if (index == null) {
+			synchronized (current) {
+				index = current.nameIndex;
+				if (index == null) {
+					index = buildNameIndex(current.rows);
+					current.nameIndex = index;
+				}
+			}
+		}
+		return index;
+	}
 
-			// add food that contains substring to filtered list
-			if (foodItemList.get(i).getName().contains(substring)) {
-				filteredList.add(foodItemList.get(i));
+	/**
+	 * Builds a name index over every food item in the rows
+	 * 
+	 * @param rows
+	 *            food items by row id, null for removed rows
+	 * @return the name index
+	 */
+	private static NameIndex buildNameIndex(List<FoodItem> rows) {
+		NameIndex index = new NameIndex();
+		for (int row = 0; row < rows.size(); row++) {
+			FoodItem foodItem = rows.get(row);
+			if (foodItem != null) {
+				index.add(row, foodItem.getName());
 			}
 		}
-		return filteredList;
+		return index;
 	}
 
 	/**
@@ -171,24 +435,511 @@ public class FoodData implements FoodDataADT<FoodItem> {
 			return this.getAllFoodItems();
 		}
 
-		// Holds the results of each rule being applied individually
-		List<List<FoodItem>> rulesResults = new ArrayList<List<FoodItem>>();
+		CompiledQuery query = this.compile(rules);
+		catalogLock.readLock().lock();
+		try {
+			Catalog current = this.catalog;
+			return this.getFoodItems(current, this.filterRowsByNutrients(current, query));
+		} finally {
+			catalogLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the row ids of the food items that fulfill ALL the provided rules, in
+	 * the same format as filterByNutrients. The rules are planned first: only the
+	 * most selective rule is looked up in its index, and the other rules are
+	 * checked against the nutrient columns of those candidate rows. No FoodItem
+	 * is looked at until the caller asks for the final result.
+	 *
+	 * @param rules
+	 *            list of rules
+	 * @return bitmap of the matching row ids; if no rules are given, every row
+	 */
+	public RowBitmap filterRowsByNutrients(List<String> rules) {
+		return this.filterRowsByNutrients(this.compile(rules));
+	}
+
+	/**
+	 * Gets the row ids of the food items that match a compiled query. Callers
+	 * that run the same rules repeatedly can compile them once and skip the
+	 * rule parsing entirely.
+	 *
+	 * Results are cached by their query until the catalog changes, so a query
+	 * with the same windows as a recent one is not planned or run again.
+	 *
+	 * @param query
+	 *            rules compiled by compile()
+	 * @return read-only bitmap of the matching row ids; if the query has no rules,
+	 *         every row
+	 */
+	public RowBitmap filterRowsByNutrients(CompiledQuery query) {
+		catalogLock.readLock().lock();
+		try {
+			return this.filterRowsByNutrients(this.catalog, query);
+		} finally {
+			catalogLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the row ids of the food items of a catalog that match a compiled query
+	 *
+	 * @param current
+	 *            the catalog to filter
+	 * @param query
+	 *            rules compiled by compile()
+	 * @return read-only bitmap of the matching row ids
+	 */
+	private RowBitmap filterRowsByNutrients(Catalog current, CompiledQuery query) {
+		long currentVersion = current.version;
+		RowBitmap filteredRows = resultCache.get(query, currentVersion);
+		if (filteredRows == null) {
+			filteredRows = this.execute(current, this.plan(current, query));
+			resultCache.put(query, currentVersion, filteredRows);
+		}
+		return filteredRows;
+	}
+
+	/**
+	 * Gets the cache of filter results, whose hit and miss counts show how well
+	 * it is sized
+	 *
+	 * @return the result cache
+	 */
+	public QueryCache getResultCache() {
+		return this.resultCache;
+	}
+
+	/**
+	 * Compiles rules in the same format as filterByNutrients into a typed query.
+	 * The most recently used queries are cached by their rules as given, so
+	 * rules seen before are looked up without being parsed or normalized. A miss
+	 * falls back to the normalized rules, so the same rules in any order, case
+	 * or spacing are only parsed once.
+	 *
+	 * @param rules
+	 *            list of rules
+	 * @return the compiled query
+	 */
+	public CompiledQuery compile(List<String> rules) {
+		if (rules == null) {
+			rules = new ArrayList<String>();
+		}
+
+		CompiledQuery query = compiledQueries.get(rules);
+		if (query == null) {
+			List<String> key = CompiledQuery.normalize(rules);
+			query = compiledQueries.get(key);
+			if (query == null) {
+				query = CompiledQuery.compile(rules);
+				compiledQueries.put(key, query);
+			}
+
+			// the caller may change its list later, so the cache keeps a copy
+			compiledQueries.put(new ArrayList<String>(rules), query);
+		}
+		return query;
+	}
+
+	/**
+	 * Chooses how to answer the given rules, in the same format as
+	 * filterByNutrients. The indexes count the rows in any window in O(log n), so
+	 * the selectivity of every rule is known exactly before anything is scanned.
+	 * The rule with the fewest rows drives an index scan, and the others become
+	 * predicates ordered so the one that rejects the most rows is checked first.
+	 *
+	 * @param rules
+	 *            list of rules
+	 * @return the chosen plan
+	 */
+	public QueryPlan plan(List<String> rules) {
+		return this.plan(this.compile(rules));
+	}
+
+	/**
+	 * Chooses how to answer a compiled query
+	 *
+	 * @param query
+	 *            rules compiled by compile()
+	 * @return the chosen plan
+	 */
+	public QueryPlan plan(CompiledQuery query) {
+		catalogLock.readLock().lock();
+		try {
+			return this.plan(this.catalog, query);
+		} finally {
+			catalogLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Chooses how to answer a compiled query against a catalog, estimating with
+	 * that catalog's indexes so the plan runs against the version it was
+	 * estimated on
+	 *
+	 * @param current
+	 *            the catalog to plan for
+	 * @param query
+	 *            rules compiled by compile()
+	 * @return the chosen plan
+	 */
+	private QueryPlan plan(Catalog current, CompiledQuery query) {
+
+		// no food item can satisfy an invalid rule or an empty window
+		if (query.isEmpty()) {
+			return new QueryPlan(QueryPlan.Strategy.EMPTY, null, null, null, null, 0, query);
+		}
+
+		// If we don't have any rules, every food item matches
+		if (query.getNutrients().isEmpty()) {
+			return new QueryPlan(QueryPlan.Strategy.ALL, null, null, null, null, current.foodItemList.size(), query);
+		}
+		HashMap<String, DoubleBPTree> currentIndexes = current.indexes;
+
+		// estimate every window, an empty one means no food item can match
+		int[] estimates = new int[Nutrient.values().length];
+		Nutrient best = null;
+		for (Nutrient nutrient : query.getNutrients()) {
+			int estimate = currentIndexes.get(nutrient.getName()).count(query.lo(nutrient), true, query.hi(nutrient),
+					true);
+			if (estimate == 0) {
+				return new QueryPlan(QueryPlan.Strategy.EMPTY, null, null, null, null, 0, query);
+			}
+
+			estimates[nutrient.ordinal()] = estimate;
+			if (best == null || estimate < estimates[best.ordinal()]) {
+				best = nutrient;
+			}
+		}
+
+		// a composite index is worth it when its leading nutrient is as selective
+		// as the best single rule, since it then also narrows the next nutrients
+		QueryPlan plan;
+		List<String> scanned;
+		CompositeIndex composite = chooseCompositeIndex(current, query);
+		if (composite != null
+				&& estimates[Nutrient.fromName(composite.getNutrients().get(0)).ordinal()] <= estimates[best.ordinal()]) {
+			scanned = composite.getNutrients();
+			plan = new QueryPlan(QueryPlan.Strategy.COMPOSITE_SCAN, null, composite, "(" + String.join(", ", scanned) + ")", null,
+					estimates[Nutrient.fromName(scanned.get(0)).ordinal()], query);
+		} else {
+			scanned = Arrays.asList(best.getName());
+			plan = new QueryPlan(QueryPlan.Strategy.INDEX_SCAN, currentIndexes.get(best.getName()), null, best.getName(),
+					new double[] { query.lo(best), query.hi(best) }, estimates[best.ordinal()], query);
+		}
+
+		// every other window is a predicate, the most selective is checked first
+		List<Nutrient> predicates = new ArrayList<Nutrient>();
+		for (Nutrient nutrient : query.getNutrients()) {
+			if (!scanned.contains(nutrient.getName())) {
+				predicates.add(nutrient);
+			}
+		}
+		predicates.sort(Comparator.comparingInt(nutrient -> estimates[nutrient.ordinal()]));
+		for (Nutrient nutrient : predicates) {
+			plan.addPredicate(nutrient, new double[] { query.lo(nutrient), query.hi(nutrient) },
+					estimates[nutrient.ordinal()]);
+		}
+		return plan;
+	}
+
+	/**
+	 * Describes the plan chosen for the given rules, in the same format as
+	 * filterByNutrients. For example ["fiber == 17", "calories <= 400"] gives
+	 *
+	 * <pre>
+	 * Index scan on fiber [17.0, 17.0], est. 3 rows
+	 *   Filter calories [-Infinity, 400.0], est. 210 rows
+	 * </pre>
+	 *
+	 * @param rules
+	 *            list of rules
+	 * @return the plan as text
+	 */
+	public String explain(List<String> rules) {
+		return this.plan(rules).toString();
+	}
+
+	/**
+	 * Runs a plan: scans its driver for the candidate rows, then keeps the rows
+	 * whose nutrient values pass every predicate. Each predicate reads one value
+	 * from its nutrient column, so a check costs two array reads.
+	 *
+	 * @param current
+	 *            the catalog the plan was made for
+	 * @param plan
+	 *            the plan to run
+	 * @return bitmap of the matching row ids
+	 */
+	private RowBitmap execute(Catalog current, QueryPlan plan) {
+		int[] candidates;
+		switch (plan.strategy) {
+		case ALL:
+			return allRows(current.rows);
+		case INDEX_SCAN:
+			candidates = plan.driverIndex.rangeSearchRows(plan.driverWindow[0], true, plan.driverWindow[1], true);
+			break;
+		case COMPOSITE_SCAN:
+			candidates = plan.composite.search(plan.query);
+			break;
+		default:
+			return new RowBitmap();
+		}
+
+		// fetch each predicate's column and window once
+		int predicateCount = plan.predicates.size();
+		double[][] predicateColumns = new double[predicateCount][];
+		double[] lo = new double[predicateCount];
+		double[] hi = new double[predicateCount];
+		for (int p = 0; p < predicateCount; p++) {
+			predicateColumns[p] = current.columns.column(plan.predicates.get(p));
+			lo[p] = plan.predicateWindows.get(p)[0];
+			hi[p] = plan.predicateWindows.get(p)[1];
+		}
+
+		// keep the candidates that pass every predicate, compacting them in place
+		int count = 0;
+		for (int row : candidates) {
+			boolean matches = true;
+			for (int p = 0; p < predicateCount && matches; p++) {
+				double value = predicateColumns[p][row];
+				matches = value >= lo[p] && value <= hi[p];
+			}
+			if (matches) {
+				candidates[count++] = row;
+			}
+		}
+		return RowBitmap.of(Arrays.copyOf(candidates, count));
+	}
+
+	/**
+	 * Gets the food items of the given row ids, in ascending order by name like
+	 * the rest of the catalog. Rows whose food item was removed since the row ids
+	 * were found are left out.
+	 *
+	 * @param rowIds
+	 *            row ids of food items in this catalog
+	 * @return list of the food items
+	 */
+	public List<FoodItem> getFoodItems(RowBitmap rowIds) {
+		catalogLock.readLock().lock();
+		try {
+			return this.getFoodItems(this.catalog, rowIds);
+		} finally {
+			catalogLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the food items of the given row ids of a catalog, in ascending order by
+	 * name
+	 *
+	 * @param current
+	 *            the catalog the row ids are from
+	 * @param rowIds
+	 *            row ids of food items in the catalog
+	 * @return list of the food items
+	 */
+	private List<FoodItem> getFoodItems(Catalog current, RowBitmap rowIds) {
+		List<FoodItem> foods = new ArrayList<FoodItem>(rowIds.cardinality());
+		PrimitiveIterator.OfInt it = rowIds.iterator();
+		while (it.hasNext()) {
+			int row = it.nextInt();
+			FoodItem foodItem = row < current.rows.size() ? current.rows.get(row) : null;
+			if (foodItem != null) {
+				foods.add(foodItem);
+			}
+		}
+
+		// the rows come out in row order, which keeps items with equal names in the
+		// order they were added
+		foods.sort(Comparator.comparing(FoodItem::getName));
+		return foods;
+	}
+
+	/**
+	 * @param rows
+	 *            food items by row id, null for removed rows
+	 * @return a bitmap of the row ids of every food item in the rows
+	 */
+	private static RowBitmap allRows(List<FoodItem> rows) {
+		RowBitmap all = new RowBitmap();
+		for (int row = 0; row < rows.size(); row++) {
+			if (rows.get(row) != null) {
+				all.add(row);
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * Counts the food items that fulfill ALL the provided rules, in the same
+	 * format as filterByNutrients. When the rules only touch one nutrient the
+	 * count comes straight from that nutrient's index in O(log n) without
+	 * visiting any matching item. Rules on several nutrients still need the
+	 * intersection, which is counted on the bitmaps without building a list.
+	 *
+	 * @param rules
+	 *            list of rules
+	 * @return the number of food items that match every rule
+	 */
+	public int countByNutrients(List<String> rules) {
+		return this.countByNutrients(this.compile(rules));
+	}
+
+	/**
+	 * Counts the food items that match a compiled query
+	 *
+	 * @param query
+	 *            rules compiled by compile()
+	 * @return the number of food items that match every rule
+	 */
+	public int countByNutrients(CompiledQuery query) {
+		if (query.isEmpty()) {
+			return 0;
+		}
+
+		catalogLock.readLock().lock();
+		try {
+
+			// If we don't have any rules, every food item matches
+			Catalog current = this.catalog;
+			List<Nutrient> nutrients = query.getNutrients();
+			if (nutrients.isEmpty()) {
+				return current.foodItemList.size();
+			}
+
+			// a single window is answered by the index counts alone
+			if (nutrients.size() == 1) {
+				Nutrient nutrient = nutrients.get(0);
+				return current.indexes.get(nutrient.getName()).count(query.lo(nutrient), true, query.hi(nutrient),
+						true);
+			}
+
+			return filterRowsByNutrients(current, query).cardinality();
+		} finally {
+			catalogLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the k food items with the most of a nutrient, most first. Only the
+	 * right end of the nutrient's index is read, so the cost depends on k and not
+	 * on the size of the catalog.
+	 *
+	 * @param nutrient
+	 *            name of one of the 5 nutrients [CASE-INSENSITIVE]
+	 * @param k
+	 *            the number of food items to return
+	 * @return list of at most k food items; if the nutrient is unknown, return
+	 *         empty list
+	 */
+	public List<FoodItem> topKByNutrient(String nutrient, int k) {
+		catalogLock.readLock().lock();
+		try {
+			Catalog current = this.catalog;
+			DoubleBPTree index = nutrient == null ? null : current.indexes.get(nutrient.toLowerCase());
+			if (index == null) {
+				return new ArrayList<FoodItem>();
+			}
+			return toFoodItems(current, index.topKRows(k, true));
+		} finally {
+			catalogLock.readLock().unlock();
+		}
+	}
 
-		// range searches for each rule, and adds the result to rulesResults
-		for (int i = 0; i < rules.size(); i++) {
-			String[] currRule = rules.get(i).split(" ");
-			rulesResults.add(indexes.get(currRule[0]).rangeSearch(Double.parseDouble(currRule[2]), currRule[1]));
+	/**
+	 * Gets the k food items with the least of a nutrient, least first
+	 *
+	 * @param nutrient
+	 *            name of one of the 5 nutrients [CASE-INSENSITIVE]
+	 * @param k
+	 *            the number of food items to return
+	 * @return list of at most k food items; if the nutrient is unknown, return
+	 *         empty list
+	 */
+	public List<FoodItem> bottomKByNutrient(String nutrient, int k) {
+		catalogLock.readLock().lock();
+		try {
+			Catalog current = this.catalog;
+			DoubleBPTree index = nutrient == null ? null : current.indexes.get(nutrient.toLowerCase());
+			if (index == null) {
+				return new ArrayList<FoodItem>();
+			}
+			return toFoodItems(current, index.bottomKRows(k));
+		} finally {
+			catalogLock.readLock().unlock();
 		}
+	}
 
-		// The list that is the intersection of the results
-		List<FoodItem> filteredFoods = rulesResults.get(0);
+	/**
+	 * Looks up the food items of the given row ids, keeping their order
+	 *
+	 * @param current
+	 *            the catalog the row ids are from
+	 * @param rowIds
+	 *            row ids from one of the indexes
+	 * @return the food items of the rows
+	 */
+	private static List<FoodItem> toFoodItems(Catalog current, int[] rowIds) {
+		List<FoodItem> foods = new ArrayList<FoodItem>(rowIds.length);
+		for (int row : rowIds) {
+			foods.add(current.rows.get(row));
+		}
+		return foods;
+	}
 
-		// Find the actual intersection of all the rules being applied
-		for (int i = 1; i < rulesResults.size(); i++) {
-			filteredFoods.retainAll(rulesResults.get(i));
+	/**
+	 * Declares a composite index on an ordered tuple of nutrients, like
+	 * (calories, protein), and builds it from the loaded food items. A filter whose
+	 * rules cover the first two or more nutrients of the tuple is then answered
+	 * from this index with one scan instead of one scan per nutrient.
+	 *
+	 * @param nutrients
+	 *            the nutrients of the tuple, in order [CASE-INSENSITIVE]
+	 * @throws IllegalArgumentException
+	 *             if no nutrient is given or one is not among the 5 nutrients
+	 */
+	public synchronized void addCompositeIndex(String... nutrients) {
+		Catalog current = this.catalog;
+		for (String nutrient : nutrients) {
+			if (!current.indexes.containsKey(nutrient.toLowerCase())) {
+				throw new IllegalArgumentException("Unknown nutrient: " + nutrient);
+			}
 		}
 
-		return filteredFoods;
+		CompositeIndex composite = new CompositeIndex(nutrients);
+		composite.bulkLoad(current.rows, current.columns);
+
+		// publish a new list so running filters keep the list they started with
+		List<CompositeIndex> newComposites = new ArrayList<CompositeIndex>(current.compositeIndexes);
+		newComposites.add(composite);
+		current.compositeIndexes = newComposites;
+	}
+
+	/**
+	 * Picks the composite index with the longest run of queried leading
+	 * nutrients. A run of one is no better than the single nutrient index, so at
+	 * least two leading nutrients must be queried.
+	 *
+	 * @param current
+	 *            the catalog whose composite indexes are considered
+	 * @param query
+	 *            the compiled rules
+	 * @return the best composite index, or null if none fits
+	 */
+	private static CompositeIndex chooseCompositeIndex(Catalog current, CompiledQuery query) {
+		CompositeIndex best = null;
+		int bestLength = 1;
+		for (CompositeIndex composite : current.compositeIndexes) {
+			int length = composite.prefixLength(query);
+			if (length > bestLength) {
+				best = composite;
+				bestLength = length;
+			}
+		}
+		return best;
 	}
 
 	/**
@@ -196,35 +947,517 @@ public class FoodData implements FoodDataADT<FoodItem> {
 	 * 
 	 * @param foodItem
 	 *            the food item instance to be added
+	 * @throws IllegalArgumentException
+	 *             if a food item with the same id is already loaded
 	 */
 	@Override
-	public void addFoodItem(FoodItem foodItem) {
-		boolean foodAdded = false;
+	public synchronized void addFoodItem(FoodItem foodItem) {
+		this.checkNewIDs(Collections.singletonList(foodItem));
+		catalogLock.writeLock().lock();
+		try {
+			Catalog current = this.catalog;
+			int row = this.addToCatalog(current, foodItem);
+
+			// Lastly, add to all BPtrees
+			current.indexes.get("calories").insert(current.columns.get(row, Nutrient.CALORIES), row);
+			current.indexes.get("fat").insert(current.columns.get(row, Nutrient.FAT), row);
+			current.indexes.get("carbohydrate").insert(current.columns.get(row, Nutrient.CARBOHYDRATE), row);
+			current.indexes.get("fiber").insert(current.columns.get(row, Nutrient.FIBER), row);
+			current.indexes.get("protein").insert(current.columns.get(row, Nutrient.PROTEIN), row);
+
+			for (CompositeIndex composite : current.compositeIndexes) {
+				composite.insert(foodItem, current.columns, row);
+			}
+			current.version++;
+		} finally {
+			catalogLock.writeLock().unlock();
+		}
+		this.recordPut(foodItem);
+	}
+
+	/**
+	 * Adds a batch of food items to the loaded data. A batch at least as large as
+	 * the catalog is added like a loaded file: a new catalog is built aside with
+	 * the nutrient indexes rebuilt bottom-up, and then published. A smaller batch
+	 * is sorted by name, merged into the food item list in one pass and inserted
+	 * into the indexes item by item.
+	 * 
+	 * @param foodItems
+	 *            the food items to be added
+	 * @throws IllegalArgumentException
+	 *             if the batch repeats an id or has an id that is already loaded,
+	 *             in which case nothing is added
+	 */
+	public synchronized void addFoodItems(Collection<FoodItem> foodItems) {
+		this.checkNewIDs(foodItems);
+		Catalog current = this.catalog;
+		if (foodItems.size() >= current.foodItemList.size()) {
+			this.publish(this.withBatch(foodItems));
+		} else {
+			catalogLock.writeLock().lock();
+			try {
+				int[] rowIds = this.addAllToCatalog(current, foodItems);
+				for (int row : rowIds) {
+					for (Nutrient nutrient : Nutrient.values()) {
+						current.indexes.get(nutrient.getName()).insert(current.columns.get(row, nutrient), row);
+					}
+					for (CompositeIndex composite : current.compositeIndexes) {
+						composite.insert(current.rows.get(row), current.columns, row);
+					}
+				}
+				current.version++;
+			} finally {
+				catalogLock.writeLock().unlock();
+			}
+		}
+		for (FoodItem foodItem : foodItems) {
+			this.recordPut(foodItem);
+		}
+	}
+
+	/**
+	 * Adds a food item to the sorted food item list of a catalog and gives it a
+	 * row id, without touching the nutrient indexes.
+	 * 
+	 * @param current
+	 *            the catalog to add to
+	 * @param foodItem
+	 *            the food item instance to be added
+	 * @return the row id given to the food item
+	 */
+	private int addToCatalog(Catalog current, FoodItem foodItem) {
+		int row = this.addRow(current.rows, current.columns, foodItem);
+		if (current.nameIndex != null) {
+			current.nameIndex.add(row, foodItem.getName());
+		}
+		current.foodItemList.addRow(row, foodItem);
+		return row;
+	}
+
+	/**
+	 * Adds a batch of food items to the sorted food item list of a catalog and
+	 * gives each a row id, without touching the nutrient indexes.
+	 * 
+	 * @param current
+	 *            the catalog to add to
+	 * @param foodItems
+	 *            the food items to be added
+	 * @return the row id given to each food item, in iteration order
+	 */
+	private int[] addAllToCatalog(Catalog current, Collection<FoodItem> foodItems) {
+		List<FoodItem> batch = new ArrayList<FoodItem>(foodItems);
+		int[] rowIds = new int[batch.size()];
+		for (int i = 0; i < rowIds.length; i++) {
+			rowIds[i] = this.addRow(current.rows, current.columns, batch.get(i));
+			if (current.nameIndex != null) {
+				current.nameIndex.add(rowIds[i], batch.get(i).getName());
+			}
+		}
+		current.foodItemList.addRows(rowIds, batch);
+		return rowIds;
+	}
+
+	/**
+	 * Builds a new catalog holding the published food items plus a batch, without
+	 * changing anything a filter of the published catalog reads. The rows list
+	 * and the food item list are copied, which is O(n) like rebuilding the
+	 * indexes. The columns are shared: the batch's rows are added after every
+	 * row the published catalog uses.
+	 * 
+	 * @param foodItems
+	 *            the food items to be added
+	 * @return the new catalog, not yet published
+	 * @throws IllegalArgumentException
+	 *             if the batch repeats an id or has an id that is already loaded
+	 */
+	private Catalog withBatch(Collection<FoodItem> foodItems) {
+		this.checkNewIDs(foodItems);
+		Catalog current = this.catalog;
+		List<FoodItem> batch = new ArrayList<FoodItem>(foodItems);
+		List<FoodItem> newRows = new ArrayList<FoodItem>(current.rows.size() + batch.size());
+		newRows.addAll(current.rows);
+		int[] rowIds = new int[batch.size()];
+		for (int i = 0; i < rowIds.length; i++) {
+			rowIds[i] = this.addRow(newRows, current.columns, batch.get(i));
+		}
+
+		// sorts the batch once and merges it into a copy of foodItemList
+		SortedCatalog newList = current.foodItemList.withRows(rowIds, batch);
+
+		// a name index is only built if the published catalog had one
+		NameIndex newNameIndex = current.nameIndex == null ? null : buildNameIndex(newRows);
+		return new Catalog(newList, newRows, current.columns, newNameIndex,
+				buildIndexes(current.indexes.keySet(), newRows, current.columns),
+				buildCompositeIndexes(current.compositeIndexes, newRows, current.columns));
+	}
+
+	/**
+	 * Checks that no food item of a batch has the id of a loaded food item or of
+	 * another food item of the batch. Ids are what removeFoodItem,
+	 * updateFoodItem and the journal find food items by, so they must be unique.
+	 * 
+	 * @param foodItems
+	 *            the food items about to be added
+	 * @throws IllegalArgumentException
+	 *             if an id is not unique
+	 */
+	private void checkNewIDs(Collection<FoodItem> foodItems) {
+		HashSet<String> batchIDs = new HashSet<String>(foodItems.size() * 4 / 3 + 1);
+		for (FoodItem foodItem : foodItems) {
+			String id = foodItem.getID();
+			if (rowsById.containsKey(id) || !batchIDs.add(id)) {
+				throw new IllegalArgumentException("Duplicate food item id: " + id);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a food item with the given id is loaded
+	 * 
+	 * @param id
+	 *            the id to look for
+	 * @return true if a loaded food item has that id
+	 */
+	public synchronized boolean containsID(String id) {
+		return rowsById.containsKey(id);
+	}
+
+	/**
+	 * Gives a food item the next row id and moves its nutrients into that row
+	 * 
+	 * @param rows
+	 *            food items by row id, the food item is added at the end
+	 * @param columns
+	 *            the columns to add the food item's row to
+	 * @param foodItem
+	 *            the food item instance to be added
+	 * @return the row id given to the food item
+	 */
+	private int addRow(List<FoodItem> rows, NutrientColumns columns, FoodItem foodItem) {
+		int row = columns.addRow();
+		rows.add(foodItem);
+		foodItem.bind(columns, row);
+		rowsById.put(foodItem.getID(), row);
+		return row;
+	}
+
+	/**
+	 * Removes the food item with the same id as the given one. Each nutrient index
+	 * drops just that item's entry instead of being rebuilt.
+	 * 
+	 * @param foodItem
+	 *            the food item to remove, matched by id
+	 * @return true if a food item was removed, false if no food item has that id
+	 */
+	public synchronized boolean removeFoodItem(FoodItem foodItem) {
+		return this.removeById(foodItem.getID());
+	}
+
+	/**
+	 * Removes the food item with the given id
+	 * 
+	 * @param id
+	 *            the id of the food item to remove
+	 * @return true if a food item was removed, false if no food item has that id
+	 */
+	private boolean removeById(String id) {
+		Integer rowId = rowsById.remove(id);
+		if (rowId == null) {
+			return false;
+		}
+		int row = rowId;
+
+		catalogLock.writeLock().lock();
+		try {
+			Catalog current = this.catalog;
+			FoodItem oldItem = current.rows.set(row, null);
+			current.foodItemList.removeRow(row);
+
+			// the removed item keeps its own copy of its nutrients
+			oldItem.detach(current.columns, row);
+			if (current.nameIndex != null) {
+				current.nameIndex.remove(row);
+			}
+
+			// remove the row from every BPtree
+			for (Map.Entry<String, DoubleBPTree> index : current.indexes.entrySet()) {
+				index.getValue().remove(current.columns.get(row, Nutrient.fromName(index.getKey())), row);
+			}
+			for (CompositeIndex composite : current.compositeIndexes) {
+				composite.remove(row);
+			}
+			current.version++;
+		} finally {
+			catalogLock.writeLock().unlock();
+		}
+		this.recordRemove(id);
+		return true;
+	}
+
+	/**
+	 * Replaces the food item with the same id as the given one, keeping its row
+	 * id. Only the nutrient indexes whose value changed are touched.
+	 * 
+	 * @param foodItem
+	 *            the new version of the food item, matched by id
+	 * @return true if a food item was updated, false if no food item has that id
+	 */
+	public synchronized boolean updateFoodItem(FoodItem foodItem) {
+		Integer rowId = rowsById.get(foodItem.getID());
+		if (rowId == null) {
+			return false;
+		}
+		int row = rowId;
+
+		catalogLock.writeLock().lock();
+		try {
+			Catalog current = this.catalog;
+			NutrientColumns columns = current.columns;
+			FoodItem oldItem = current.rows.set(row, foodItem);
+
+			// read the old values before the new item's values overwrite the row; the
+			// row still holds them even if the item in it was changed in place, since
+			// changing a nutrient detaches the item from the row
+			oldItem.detach(columns, row);
+			double[] oldValues = new double[Nutrient.values().length];
+			for (Nutrient nutrient : Nutrient.values()) {
+				oldValues[nutrient.ordinal()] = columns.get(row, nutrient);
+			}
+			foodItem.bind(columns, row);
+
+			// an item keeps its place in the food item list unless its name changed
+			current.foodItemList.replaceRow(row, foodItem);
+			if (current.nameIndex != null && !oldItem.getName().equals(foodItem.getName())) {
+				current.nameIndex.remove(row);
+				current.nameIndex.add(row, foodItem.getName());
+			}
+
+			// move the row to its new key in every BPtree whose value changed
+			for (Map.Entry<String, DoubleBPTree> index : current.indexes.entrySet()) {
+				Nutrient nutrient = Nutrient.fromName(index.getKey());
+				double oldValue = oldValues[nutrient.ordinal()];
+				double newValue = columns.get(row, nutrient);
+				if (oldValue != newValue) {
+					index.getValue().update(oldValue, newValue, row);
+				}
+			}
+			for (CompositeIndex composite : current.compositeIndexes) {
+				composite.update(foodItem, columns, row);
+			}
+			current.version++;
+		} finally {
+			catalogLock.writeLock().unlock();
+		}
+		this.recordPut(foodItem);
+		return true;
+	}
+
+	/**
+	 * Starts saving every change to a journal: a base snapshot plus a log that
+	 * each change is appended to, so a save costs the size of the change instead
+	 * of rewriting the catalog. The log is synced to disk in group commits and
+	 * folded into the base in the background once it grows large.
+	 * 
+	 * If the base file exists, the loaded data is replaced with the base and the
+	 * changes logged since. Otherwise the loaded data, plus any logged changes,
+	 * becomes the base.
+	 * 
+	 * @param basePath
+	 *            path of the base file, the log files are kept next to it
+	 */
+	public synchronized void openJournal(String basePath) {
+		this.closeJournal();
+		FoodJournal newJournal = new FoodJournal(new File(basePath));
+		try {
+			FoodSnapshot base = newJournal.readBase();
+			if (base != null) {
+				this.installSnapshot(base);
+			}
+
+			// replaying does not record anything, no journal is open yet
+			newJournal.replay(foodItem -> {
+				if (rowsById.containsKey(foodItem.getID())) {
+					this.updateFoodItem(foodItem);
+				} else {
+					this.addFoodItem(foodItem);
+				}
+			}, this::removeById);
+			newJournal.start();
+			this.journal = newJournal;
+			if (base == null) {
+				this.compactJournal();
+			}
+
+		} catch (IOException | IllegalArgumentException e) {
+			// a base or log that cannot be read leaves the loaded data as it was
+			System.out.println(e.getMessage());
+			this.journal = null;
+			try {
+				newJournal.close();
+			} catch (IOException closeError) {
+				System.out.println(closeError.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Writes the changes made since the last group commit to the journal's log
+	 * and syncs it to disk now, which costs the size of those changes. Does
+	 * nothing if no journal is open.
+	 */
+	public synchronized void syncJournal() {
+		if (journal != null) {
+			try {
+				journal.sync();
+			} catch (IOException e) {
+				System.out.println(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Syncs the journal's last changes to disk and stops journaling. Does nothing
+	 * if no journal is open.
+	 */
+	public synchronized void closeJournal() {
+		FoodJournal oldJournal = this.journal;
+		this.journal = null;
+		if (oldJournal != null) {
+			try {
+				oldJournal.close();
+			} catch (IOException e) {
+				System.out.println(e.getMessage());
+			}
+		}
+	}
 
-		// Find the proper place to insert in alphabetical order by name
-		for (int i = 0; i < foodItemList.size(); i++) {
+	/**
+	 * Records an added or updated food item in the journal, if one is open
+	 * 
+	 * @param foodItem
+	 *            the food item as it now is
+	 */
+	private void recordPut(FoodItem foodItem) {
+		if (journal != null) {
+			try {
+				journal.put(foodItem);
+				this.foldJournalIfNeeded();
+			} catch (IOException e) {
+				System.out.println(e.getMessage());
+			}
+		}
+	}
 
-			// comparing the food item's name to existing food items' names
-			if (foodItemList.get(i).getName().compareTo(foodItem.getName()) > 0) {
-				foodItemList.add(i, foodItem);
-				foodAdded = true;
-				break;
+	/**
+	 * Records a removed food item in the journal, if one is open
+	 * 
+	 * @param id
+	 *            the id of the removed food item
+	 */
+	private void recordRemove(String id) {
+		if (journal != null) {
+			try {
+				journal.remove(id);
+				this.foldJournalIfNeeded();
+			} catch (IOException e) {
+				System.out.println(e.getMessage());
 			}
+		}
+	}
 
+	/**
+	 * Folds the journal's log into its base once the log has grown large. The
+	 * journal makes the new base from the files on its own thread, so only the
+	 * nutrients of the composite indexes are copied here.
+	 */
+	private void foldJournalIfNeeded() throws IOException {
+		if (journal.needsCompaction()) {
+			List<String[]> composites = new ArrayList<String[]>();
+			for (CompositeIndex composite : this.catalog.compositeIndexes) {
+				List<String> nutrients = composite.getNutrients();
+				composites.add(nutrients.toArray(new String[nutrients.size()]));
+			}
+			journal.compact(composites);
 		}
+	}
 
-		// If we didn't add in the list somewhere, add it to the end of the list
-		if (!foodAdded) {
-			foodItemList.add(foodItem);
+	/**
+	 * Makes the loaded data the journal's new base, if one is open. Changes that
+	 * replace most of the catalog at once are saved this way instead of as one
+	 * record per food item.
+	 */
+	private void compactJournal() {
+		if (journal != null) {
+			try {
+				journal.compact(this.snapshot());
+			} catch (IOException e) {
+				System.out.println(e.getMessage());
+			}
 		}
+	}
+
+	/**
+	 * Builds nutrient indexes over the rows list. Each nutrient column is sorted
+	 * once and then bulk loaded, which is much cheaper than inserting the rows one
+	 * at a time.
+	 * 
+	 * @param nutrients
+	 *            names of the nutrients to index
+	 * @param rows
+	 *            food items by row id, null for removed rows
+	 * @param columns
+	 *            nutrient values of the rows
+	 * @return the indexes by nutrient name
+	 */
+	private static HashMap<String, DoubleBPTree> buildIndexes(Collection<String> nutrients, List<FoodItem> rows,
+			NutrientColumns columns) {
+		HashMap<String, DoubleBPTree> newIndexes = new HashMap<String, DoubleBPTree>();
+		for (String nutrient : nutrients) {
+			double[] column = columns.column(Nutrient.fromName(nutrient));
+			double[] keys = new double[rows.size()];
+			int[] rowIds = new int[rows.size()];
+			int count = 0;
+			for (int row = 0; row < rows.size(); row++) {
+
+				// skip the rows of removed food items
+				if (rows.get(row) != null) {
+					keys[count] = column[row];
+					rowIds[count++] = row;
+				}
+			}
 
-		// Lastly, add to all BPtrees
-		indexes.get("calories").insert(foodItem.getNutrientValue("calories"), foodItem);
-		indexes.get("fat").insert(foodItem.getNutrientValue("fat"), foodItem);
-		indexes.get("carbohydrate").insert(foodItem.getNutrientValue("carbohydrate"), foodItem);
-		indexes.get("fiber").insert(foodItem.getNutrientValue("fiber"), foodItem);
-		indexes.get("protein").insert(foodItem.getNutrientValue("protein"), foodItem);
+			keys = Arrays.copyOf(keys, count);
+			rowIds = Arrays.copyOf(rowIds, count);
+			DoubleBPTree.sortByKey(keys, rowIds);
+			DoubleBPTree index = new DoubleBPTree(INDEX_BRANCHING_FACTOR);
+			index.bulkLoad(keys, rowIds);
+			newIndexes.put(nutrient, index);
+		}
+		return newIndexes;
+	}
 
+	/**
+	 * Builds composite indexes on the same nutrients as the given ones over the
+	 * rows list
+	 * 
+	 * @param composites
+	 *            the composite indexes to rebuild
+	 * @param rows
+	 *            food items by row id, null for removed rows
+	 * @param columns
+	 *            nutrient values of the rows
+	 * @return the new composite indexes, in the same order
+	 */
+	private static List<CompositeIndex> buildCompositeIndexes(List<CompositeIndex> composites, List<FoodItem> rows,
+			NutrientColumns columns) {
+		List<CompositeIndex> newComposites = new ArrayList<CompositeIndex>();
+		for (CompositeIndex composite : composites) {
+			List<String> nutrients = composite.getNutrients();
+			CompositeIndex rebuilt = new CompositeIndex(nutrients.toArray(new String[nutrients.size()]));
+			rebuilt.bulkLoad(rows, columns);
+			newComposites.add(rebuilt);
+		}
+		return newComposites;
 	}
 
 	/**
@@ -239,54 +1472,182 @@ public class FoodData implements FoodDataADT<FoodItem> {
 		 * we don't want to return foodItemList itself, as other classes should not be
 		 * able to modify it
 		 */
-		return new ArrayList<FoodItem>(this.foodItemList);
+		catalogLock.readLock().lock();
+		try {
+			return new ArrayList<FoodItem>(this.catalog.foodItemList);
+		} finally {
+			catalogLock.readLock().unlock();
+		}
 	}
 
 	/**
-	 * Save the list of food items in ascending order by name
+	 * Save the list of food items in ascending order by name. The lines are
+	 * formatted on several threads straight to bytes by CsvExporter, and values
+	 * are written in their shortest form, 100 rather than 100.0, that reads back
+	 * as exactly the same double.
 	 * 
 	 * @param filename
 	 *            name of the file where the data needs to be saved
 	 */
 	@Override
 	public void saveFoodItems(String filename) {
+		try {
+			new CsvExporter().write(this.getAllFoodItems(), new File(filename));
+		} catch (IOException e) {
+			// If we encounter some sort of IOException, we will print its message
+			System.out.println(e.getMessage());
+		}
+	}
 
+	/**
+	 * Saves the loaded data to a binary snapshot that loadSnapshot reads back
+	 * without parsing. The rows of removed food items are left out, so the row
+	 * ids of the snapshot are dense.
+	 * 
+	 * @param filePath
+	 *            path of the snapshot file
+	 */
+	public synchronized void saveSnapshot(String filePath) {
+		try {
+			this.snapshot().write(new File(filePath));
+		} catch (IOException e) {
+			// If we encounter some sort of IOException, we will print its message
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Saves the list of food items in ascending order by name to a compressed
+	 * columnar file, which loadColumnar reads back and ColumnarCatalog can
+	 * filter without loading
+	 * 
+	 * @param filePath
+	 *            path of the columnar file
+	 */
+	public void saveColumnar(String filePath) {
 		try {
+			ColumnarCatalog.write(this.getAllFoodItems(), new File(filePath));
+		} catch (IOException e) {
+			// If we encounter some sort of IOException, we will print its message
+			System.out.println(e.getMessage());
+		}
+	}
 
-			File outFile = new File(filename);
+	/**
+	 * Copies the loaded data into a snapshot, numbering the rows densely. Only
+	 * called while holding the lock changes take, so the catalog does not change
+	 * while it is copied.
+	 * 
+	 * @return the snapshot
+	 */
+	private FoodSnapshot snapshot() {
+		Catalog current = this.catalog;
+		List<FoodItem> rows = current.rows;
+		NutrientColumns columns = current.columns;
+		int[] newRowIds = new int[rows.size()];
+		int n = 0;
+		for (int row = 0; row < rows.size(); row++) {
+			newRowIds[row] = rows.get(row) == null ? -1 : n++;
+		}
+
+		String[] ids = new String[n];
+		String[] names = new String[n];
+		double[][] snapshotColumns = new double[Nutrient.values().length][n];
+		for (int row = 0; row < rows.size(); row++) {
+			FoodItem foodItem = rows.get(row);
+			if (foodItem != null) {
+				ids[newRowIds[row]] = foodItem.getID();
+				names[newRowIds[row]] = foodItem.getName();
+				for (Nutrient nutrient : Nutrient.values()) {
+					snapshotColumns[nutrient.ordinal()][newRowIds[row]] = columns.get(row, nutrient);
+				}
+			}
+		}
+
+		// the indexes and the food item list are already in order, so they are
+		// walked rather than sorted
+		int[][] sortedRows = new int[Nutrient.values().length][];
+		for (Nutrient nutrient : Nutrient.values()) {
+			int[] rowIds = current.indexes.get(nutrient.getName()).toRowArray();
+			for (int i = 0; i < rowIds.length; i++) {
+				rowIds[i] = newRowIds[rowIds[i]];
+			}
+			sortedRows[nutrient.ordinal()] = rowIds;
+		}
+		int[] nameOrder = current.foodItemList.toRowArray();
+		for (int i = 0; i < nameOrder.length; i++) {
+			nameOrder[i] = newRowIds[nameOrder[i]];
+		}
 
-			// Prevent FIleNotFoundException later by creating a new file if outFile is not
-			// found
-			if (!outFile.exists()) {
-				outFile.createNewFile();
+		List<String[]> composites = new ArrayList<String[]>();
+		List<int[]> compositeRows = new ArrayList<int[]>();
+		for (CompositeIndex composite : current.compositeIndexes) {
+			List<String> nutrients = composite.getNutrients();
+			composites.add(nutrients.toArray(new String[nutrients.size()]));
+			int[] rowIds = composite.toRowArray();
+			for (int j = 0; j < rowIds.length; j++) {
+				rowIds[j] = newRowIds[rowIds[j]];
 			}
+			compositeRows.add(rowIds);
+		}
+		return new FoodSnapshot(ids, names, snapshotColumns, sortedRows, nameOrder, composites, compositeRows);
+	}
 
-			PrintWriter writer = new PrintWriter(outFile);
+	/**
+	 * The food items of a FoodData with everything filters read about them.
+	 * Every filter reads the published catalog once and then only uses that
+	 * object, so a load that publishes a new catalog meanwhile does not change
+	 * what the filter sees.
+	 * 
+	 * A load builds its catalog aside and publishes it in one volatile write.
+	 * Adding, removing or updating a single food item changes the published
+	 * catalog in place instead, since copying it would cost O(n) per change. Such
+	 * a change holds catalogLock for writing and every filter holds it for
+	 * reading, so a filter sees a change either whole or not at all.
+	 */
+	private static class Catalog {
 
-			// Writes a new line in proper format for every food item
-			for (int i = 0; i < foodItemList.size(); i++) {
-				writer.print(foodItemList.get(i).getID() + ",");
-				writer.print(foodItemList.get(i).getName() + ",");
+		// List of all the food items, sorted by name. Positional inserts and
+		// removes take O(log n).
+		final SortedCatalog foodItemList;
 
-				// hashMap of our nutrients for this specific FoodItem
-				HashMap<String, Double> nutrientMap = foodItemList.get(i).getNutrients();
+		// Food items by row id, in the order they were added. The nutrient indexes
+		// store row ids into this list instead of FoodItem references. Removed items
+		// leave a null behind so that row ids never change.
+		final List<FoodItem> rows;
 
-				writer.print("calories," + nutrientMap.get("calories") + ",");
-				writer.print("fat," + nutrientMap.get("fat") + ",");
-				writer.print("carbohydrate," + nutrientMap.get("carbohydrate") + ",");
-				writer.print("fiber," + nutrientMap.get("fiber") + ",");
-				writer.println("protein," + nutrientMap.get("protein"));
+		// Nutrient values of every row, one double[] per nutrient. Each food item in
+		// the catalog is a view over its row. A loaded batch shares the columns of
+		// the catalog it is added to and only adds rows after the ones in use.
+		final NutrientColumns columns;
 
-			}
+		// Trigram index over the food item names, for filterByName. Null after a
+		// snapshot load until the first name search builds it.
+		volatile NameIndex nameIndex;
 
-			// Flush and close the PrintWriter
-			writer.flush();
-			writer.close();
+		// Map of nutrients containg BPTrees of their value with the corresponding
+		// foodItem row id
+		final HashMap<String, DoubleBPTree> indexes;
 
-		} catch (IOException e) {
-			// If we encounter some sort of IOException, we will print its message
-			System.out.println(e.getMessage());
-		}
+		// Composite indexes over ordered tuples of nutrients, declared with
+		// addCompositeIndex, which replaces the list instead of changing it
+		volatile List<CompositeIndex> compositeIndexes;
 
+		// Bumped after every change to the catalog, and carried on by the catalog
+		// that replaces it, so cached results of older versions are never returned
+		volatile long version;
+
+		/**
+		 * Package constructor
+		 */
+		Catalog(SortedCatalog foodItemList, List<FoodItem> rows, NutrientColumns columns, NameIndex nameIndex,
+				HashMap<String, DoubleBPTree> indexes, List<CompositeIndex> compositeIndexes) {
+			this.foodItemList = foodItemList;
+			this.rows = rows;
+			this.columns = columns;
+			this.nameIndex = nameIndex;
+			this.indexes = indexes;
+			this.compositeIndexes = compositeIndexes;
+		}
 	}
-}
\ No newline at end of file
+}
@@ -15,6 +15,12 @@ import java.util.HashMap;
 /**
  * This class represents a food item and all its properties.
  * 
+ * The 5 nutrients are not stored in the food item itself once it is added to a
+ * FoodData. The food item is then a view over its row of the FoodData's
+ * NutrientColumns, and only keeps its own values while it is not in a catalog.
+ * Changing a nutrient of a food item in a catalog takes a copy of the row
+ * first, the catalog keeps the old values until FoodData.updateFoodItem.
+ * 
  * @author Aaron Hernandez
  * @author Xiao Fei
  * @author Henry Koenig
@@ -26,8 +32,18 @@ public class FoodItem {
 	// The id of the food item.
 	private String id;
 
-	// Map of nutrients and corresponding value.
-	private HashMap<String, Double> nutrients;
+	// Values of the 5 nutrients while this food item is not in a catalog, by
+	// Nutrient.ordinal(), null while it is a view over a row.
+	private double[] values;
+
+	// The columns this food item is a view over, null if it is not in a catalog.
+	private NutrientColumns columns;
+
+	// The row of this food item in columns.
+	private int row;
+
+	// Any nutrients other than the 5 tracked ones, null until one is added.
+	private HashMap<String, Double> otherNutrients;
 
 	/**
 	 * Constructor for FoodItem
@@ -40,7 +56,27 @@ public class FoodItem {
 	public FoodItem(String id, String name) {
 		this.id = id;
 		this.name = name;
-		this.nutrients = new HashMap<String, Double>();
+		this.values = new double[Nutrient.values().length];
+	}
+
+	/**
+	 * Constructor for a food item that is a view over a row of the given columns
+	 * from the start, for catalogs loaded from a snapshot
+	 * 
+	 * @param id
+	 *            unique id of the food item
+	 * @param name
+	 *            name of the food item
+	 * @param columns
+	 *            the columns of the catalog the food item is in
+	 * @param row
+	 *            the row id of the food item
+	 */
+	FoodItem(String id, String name, NutrientColumns columns, int row) {
+		this.id = id;
+		this.name = name;
+		this.columns = columns;
+		this.row = row;
 	}
 
 	/**
@@ -62,12 +98,20 @@ public class FoodItem {
 	}
 
 	/**
-	 * Gets the nutrients of ths food item
+	 * Gets the nutrients of ths food item. The map is a copy, changing it does not
+	 * change this food item.
 	 * 
 	 * @return nutrients hash map of this food item
 	 */
 	public HashMap<String, Double> getNutrients() {
-		return this.nutrients;
+		HashMap<String, Double> nutrients = new HashMap<String, Double>();
+		if (this.otherNutrients != null) {
+			nutrients.putAll(this.otherNutrients);
+		}
+		for (Nutrient nutrient : Nutrient.values()) {
+			nutrients.put(nutrient.getName(), this.getNutrientValue(nutrient));
+		}
+		return nutrients;
 	}
 
 	/**
@@ -80,7 +124,32 @@ public class FoodItem {
 	 *            the value of the nutrient associated with name
 	 */
 	public void addNutrient(String name, double value) {
-		this.nutrients.put(name.toLowerCase(), value);
+		Nutrient nutrient = Nutrient.fromName(name);
+		if (nutrient == null) {
+			if (this.otherNutrients == null) {
+				this.otherNutrients = new HashMap<String, Double>();
+			}
+			this.otherNutrients.put(name.toLowerCase(), value);
+		} else {
+			this.addNutrient(nutrient, value);
+		}
+	}
+
+	/**
+	 * Sets the value of one of the 5 tracked nutrients, without looking up its
+	 * name. A food item in a catalog stops being a view over its row first, so
+	 * the row and the indexes over it never change behind the catalog's back.
+	 * 
+	 * @param nutrient
+	 *            the nutrient to set
+	 * @param value
+	 *            the value of the nutrient
+	 */
+	public void addNutrient(Nutrient nutrient, double value) {
+		if (this.columns != null) {
+			this.detach(this.columns, this.row);
+		}
+		this.values[nutrient.ordinal()] = value;
 	}
 
 	/**
@@ -95,11 +164,69 @@ public class FoodItem {
 	public double getNutrientValue(String name) {
 
 		// check if given nutrient's name exists
-		if (this.nutrients.containsKey(name)) {
-			return this.nutrients.get(name);
+		Nutrient nutrient = Nutrient.fromName(name);
+		if (nutrient != null) {
+			return this.getNutrientValue(nutrient);
+		}
+		if (this.otherNutrients != null && this.otherNutrients.containsKey(name)) {
+			return this.otherNutrients.get(name);
 		}
 
 		return 0;
 	}
 
+	/**
+	 * Returns the value of one of the 5 tracked nutrients for this food item
+	 * 
+	 * @param nutrient
+	 *            the nutrient to find the value of
+	 * @return the value of the nutrient, 0 if it was never added
+	 */
+	public double getNutrientValue(Nutrient nutrient) {
+		if (this.columns != null) {
+			return this.columns.get(this.row, nutrient);
+		}
+		return this.values[nutrient.ordinal()];
+	}
+
+	/**
+	 * Makes this food item a view over a row of the given columns. The current
+	 * values of the 5 nutrients are written into the row first.
+	 * 
+	 * @param columns
+	 *            the columns of the catalog the food item is added to
+	 * @param row
+	 *            the row id of the food item
+	 */
+	void bind(NutrientColumns columns, int row) {
+		for (Nutrient nutrient : Nutrient.values()) {
+			columns.set(row, nutrient, this.getNutrientValue(nutrient));
+		}
+		this.columns = columns;
+		this.row = row;
+		this.values = null;
+	}
+
+	/**
+	 * Copies the values of the 5 nutrients out of the columns, so the food item
+	 * keeps them after it leaves the catalog. Does nothing unless this food item
+	 * is the view over the given row.
+	 * 
+	 * @param columns
+	 *            the columns of the catalog the food item leaves
+	 * @param row
+	 *            the row id the food item had
+	 */
+	void detach(NutrientColumns columns, int row) {
+		if (this.columns != columns || this.row != row) {
+			return;
+		}
+
+		this.values = new double[Nutrient.values().length];
+		for (Nutrient nutrient : Nutrient.values()) {
+			this.values[nutrient.ordinal()] = columns.get(row, nutrient);
+		}
+		this.columns = null;
+	}
+
 }
\ No newline at end of file
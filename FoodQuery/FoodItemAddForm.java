@@ -172,8 +172,12 @@ public class FoodItemAddForm {
 			public void handle(ActionEvent e) {
 
 				try {
-					// initialize food name and food id
+					// initialize food name and food id, skipping ids already taken by a loaded
+					// or earlier food item
 					String foodName = inputValues.get(0).getText();
+					while (foodData.containsID(userID + "")) {
+						userID++;
+					}
 					String foodID = userID + "";
 
 					// if the user doesn't type in a food name or id
@@ -0,0 +1,662 @@
+/**
+ * Filename:   FoodJournal.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a catalog incrementally, as a base file plus a log of the changes made
+ * since. The base is a FoodSnapshot. Every added, updated or removed food item
+ * appends one record to the log, so saving a change costs the size of the
+ * change rather than the size of the catalog.
+ *
+ * Records are gathered in memory and written to the log with one fsync every
+ * syncMillis, a group commit, so many changes share the cost of one sync. A
+ * change is durable once sync() returns or the next group commit has run.
+ *
+ * Changes are recorded by the one thread that makes them. Once the log grows
+ * past compactBytes that thread only starts a new log segment. A background
+ * thread then reads the base and the finished segments, folds them into a new
+ * base and deletes the segments, so the cost of a compaction never falls on
+ * the thread making changes. A load that replaces most of the catalog hands
+ * over a snapshot of it to be the new base instead. Compactions run one at a
+ * time in the order they were asked for, each starting from the base the one
+ * before wrote.
+ *
+ * Opening a journal reads the base and replays the segments in order. A
+ * record puts a whole food item by id or removes one, so replaying a segment
+ * whose changes are already in the base gives the same catalog, and a crash
+ * at any point of a compaction loses nothing. FoodData refuses to add a food
+ * item whose id is already loaded, so an id always names one food item.
+ *
+ * Each record is its length, the CRC32 of its payload, and the payload. A
+ * record cut short by a crash fails its check and is dropped on replay, along
+ * with everything after it in its segment.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class FoodJournal implements Closeable {
+
+	// Milliseconds between group commits when none is given
+	public static final long DEFAULT_SYNC_MILLIS = 50;
+
+	// Log bytes that trigger a compaction when none is given
+	public static final long DEFAULT_COMPACT_BYTES = 16L * 1024 * 1024;
+
+	// Record types
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+
+	// Largest payload a record can have, 2 strings of at most 64KB and 5 doubles
+	private static final int MAX_PAYLOAD = 1 + 2 * (2 + 65535) + 8 * 5;
+
+	// The base file, the log segments are next to it
+	private final File base;
+
+	// Log bytes that trigger a compaction
+	private final long compactBytes;
+
+	// Records not yet written to the log
+	private final ByteArrayOutputStream pending;
+
+	// Writes the payload of a record into a scratch buffer
+	private final ByteArrayOutputStream payload;
+	private final DataOutputStream payloadOut;
+
+	// Checksums the payload of a record
+	private final CRC32 crc;
+
+	// Runs the group commits
+	private final ScheduledExecutorService syncer;
+
+	// Runs the compactions
+	private final ExecutorService compactor;
+
+	// Held while writing to the log, so a rotation never splits a commit
+	private final Object logLock;
+
+	// The log segment being appended to
+	private FileChannel log;
+
+	// Generation of the log segment being appended to
+	private long generation;
+
+	// Bytes in the log segments not yet folded into the base
+	private long logBytes;
+
+	// The last compaction asked for, if any
+	private Future<?> compaction;
+
+	// The first error of a background write, reported by the next call
+	private volatile IOException failure;
+
+	/**
+	 * Public constructor for a journal with the default sync interval and
+	 * compaction size. Nothing is read or written until replay() and start().
+	 *
+	 * @param base
+	 *            the base file, which need not exist yet
+	 */
+	public FoodJournal(File base) {
+		this(base, DEFAULT_SYNC_MILLIS, DEFAULT_COMPACT_BYTES);
+	}
+
+	/**
+	 * Public constructor
+	 *
+	 * @param base
+	 *            the base file, which need not exist yet
+	 * @param syncMillis
+	 *            milliseconds between group commits
+	 * @param compactBytes
+	 *            log bytes that trigger a compaction
+	 */
+	public FoodJournal(File base, long syncMillis, long compactBytes) {
+		if (syncMillis < 1 || compactBytes < 1) {
+			throw new IllegalArgumentException("Illegal journal settings: " + syncMillis + ", " + compactBytes);
+		}
+		this.base = base.getAbsoluteFile();
+		this.compactBytes = compactBytes;
+		this.pending = new ByteArrayOutputStream();
+		this.payload = new ByteArrayOutputStream();
+		this.payloadOut = new DataOutputStream(this.payload);
+		this.crc = new CRC32();
+		this.logLock = new Object();
+		this.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "journal-sync");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "journal-compaction");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.syncer.scheduleWithFixedDelay(this::syncQuietly, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Reads the base file
+	 *
+	 * @return the base snapshot, or null if there is no base yet
+	 * @throws IOException
+	 *             if the base cannot be read
+	 */
+	public FoodSnapshot readBase() throws IOException {
+		return this.base.exists() ? FoodSnapshot.read(this.base) : null;
+	}
+
+	/**
+	 * Replays the log segments in order, dropping any record cut short by a crash
+	 *
+	 * @param put
+	 *            receives each food item that was added or updated
+	 * @param remove
+	 *            receives the id of each food item that was removed
+	 * @throws IOException
+	 *             if a segment cannot be read
+	 */
+	public void replay(Consumer<FoodItem> put, Consumer<String> remove) throws IOException {
+		for (long segment : segments()) {
+			File file = segmentFile(segment);
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				long position = readRecords(channel, put, remove);
+
+				// a torn record only ever ends a segment, cut it off
+				channel.truncate(position);
+				this.logBytes += position;
+			}
+		}
+	}
+
+	/**
+	 * Reads the records of a segment up to the first one that fails its check
+	 *
+	 * @return the position after the last whole record
+	 */
+	private static long readRecords(FileChannel channel, Consumer<FoodItem> put, Consumer<String> remove)
+			throws IOException {
+		CRC32 crc = new CRC32();
+		long position = 0;
+		ByteBuffer header = ByteBuffer.allocate(8);
+		while (true) {
+			header.clear();
+			if (!readFully(channel, header, position)) {
+				return position;
+			}
+			int length = header.getInt(0);
+			if (length < 1 || length > MAX_PAYLOAD) {
+				return position;
+			}
+			ByteBuffer record = ByteBuffer.allocate(length);
+			if (!readFully(channel, record, position + 8)) {
+				return position;
+			}
+			crc.reset();
+			crc.update(record.array(), 0, length);
+			if ((int) crc.getValue() != header.getInt(4)) {
+				return position;
+			}
+			apply(record.array(), put, remove);
+			position += 8 + length;
+		}
+	}
+
+	/**
+	 * Opens the newest log segment for appending, or the first one if there is
+	 * none
+	 *
+	 * @throws IOException
+	 *             if the segment cannot be opened
+	 */
+	public void start() throws IOException {
+		List<Long> segments = segments();
+		long segment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+		synchronized (this.logLock) {
+			this.generation = segment;
+			this.log = openSegment(segment);
+		}
+	}
+
+	/**
+	 * Records that a food item was added or updated
+	 *
+	 * @param foodItem
+	 *            the food item as it now is
+	 * @throws IOException
+	 *             if an earlier background write failed
+	 */
+	public synchronized void put(FoodItem foodItem) throws IOException {
+		checkFailure();
+		this.payload.reset();
+		this.payloadOut.writeByte(PUT);
+		this.payloadOut.writeUTF(foodItem.getID());
+		this.payloadOut.writeUTF(foodItem.getName());
+		for (Nutrient nutrient : Nutrient.VALUES) {
+			this.payloadOut.writeDouble(foodItem.getNutrientValue(nutrient));
+		}
+		append();
+	}
+
+	/**
+	 * Records that a food item was removed
+	 *
+	 * @param id
+	 *            the id of the food item
+	 * @throws IOException
+	 *             if an earlier background write failed
+	 */
+	public synchronized void remove(String id) throws IOException {
+		checkFailure();
+		this.payload.reset();
+		this.payloadOut.writeByte(REMOVE);
+		this.payloadOut.writeUTF(id);
+		append();
+	}
+
+	/**
+	 * Adds the record in the payload buffer to the pending records
+	 */
+	private void append() throws IOException {
+		this.crc.reset();
+		this.crc.update(this.payload.toByteArray(), 0, this.payload.size());
+		DataOutputStream out = new DataOutputStream(this.pending);
+		out.writeInt(this.payload.size());
+		out.writeInt((int) this.crc.getValue());
+		this.payload.writeTo(this.pending);
+		this.logBytes += 8 + this.payload.size();
+	}
+
+	/**
+	 * @return true if the log has grown enough to be folded into the base and no
+	 *         compaction is running
+	 */
+	public synchronized boolean needsCompaction() {
+		return this.logBytes >= this.compactBytes && (this.compaction == null || this.compaction.isDone());
+	}
+
+	/**
+	 * Makes a snapshot the new base. The pending records are committed and a new
+	 * log segment is started right away; the snapshot is written on a background
+	 * thread, and the old segments are deleted once it has replaced the base.
+	 *
+	 * @param snapshot
+	 *            the catalog as of every change recorded so far
+	 * @throws IOException
+	 *             if the log cannot be rotated, or an earlier background write
+	 *             failed
+	 */
+	public void compact(FoodSnapshot snapshot) throws IOException {
+		rotate(lastGeneration -> snapshot);
+	}
+
+	/**
+	 * Folds the log into the base. The pending records are committed and a new
+	 * log segment is started right away. The new base is made on a background
+	 * thread from the old base and the finished segments, so the caller does not
+	 * wait for it, and the finished segments are deleted once it has replaced
+	 * the base.
+	 *
+	 * @param compositeIndexes
+	 *            nutrients of each composite index the new base should hold
+	 * @throws IOException
+	 *             if the log cannot be rotated, or an earlier background write
+	 *             failed
+	 */
+	public void compact(List<String[]> compositeIndexes) throws IOException {
+		rotate(lastGeneration -> fold(lastGeneration, compositeIndexes));
+	}
+
+	/**
+	 * Makes a new base on the compaction thread
+	 */
+	private interface BaseMaker {
+
+		/**
+		 * @param lastGeneration
+		 *            the last log segment the new base must include
+		 * @return the new base
+		 */
+		FoodSnapshot make(long lastGeneration) throws IOException;
+	}
+
+	/**
+	 * Commits the pending records and starts a new log segment, then has the
+	 * compaction thread make a new base and write it in place of the old one
+	 */
+	private void rotate(BaseMaker maker) throws IOException {
+
+		// the log lock is always taken before this one, as sync() does
+		synchronized (this.logLock) {
+			synchronized (this) {
+				checkFailure();
+			}
+			sync();
+			long oldGeneration = this.generation;
+			FileChannel oldLog = this.log;
+			this.log = openSegment(oldGeneration + 1);
+			this.generation = oldGeneration + 1;
+			oldLog.close();
+			synchronized (this) {
+				this.logBytes = 0;
+				this.compaction = this.compactor.submit(() -> {
+					try {
+						writeBase(maker.make(oldGeneration), oldGeneration);
+					} catch (IOException e) {
+						fail(e);
+						throw e;
+					}
+					return null;
+				});
+			}
+		}
+	}
+
+	/**
+	 * Reads the base and applies the log segments up to a generation to it.
+	 * Among food items with the same name, those of the base keep their order
+	 * and come first, and an added or renamed item goes after them, the order
+	 * FoodData's food item list keeps them in.
+	 *
+	 * @return the folded base
+	 */
+	private FoodSnapshot fold(long lastGeneration, List<String[]> compositeIndexes) throws IOException {
+		FoodSnapshot old = readBase();
+
+		// every food item by id in row order, and its place among equal names
+		LinkedHashMap<String, FoodItem> foodItems = new LinkedHashMap<String, FoodItem>();
+		HashMap<String, Integer> ranks = new HashMap<String, Integer>();
+		int oldSize = old == null ? 0 : old.size();
+		for (int row = 0; row < oldSize; row++) {
+			FoodItem foodItem = new FoodItem(old.ids[row], old.names[row]);
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				foodItem.addNutrient(nutrient, old.columns[nutrient.ordinal()][row]);
+			}
+			foodItems.put(foodItem.getID(), foodItem);
+		}
+		for (int rank = 0; rank < oldSize; rank++) {
+			ranks.put(old.ids[old.nameOrder[rank]], rank);
+		}
+
+		int[] nextRank = { oldSize };
+		for (long segment : segments()) {
+			if (segment > lastGeneration) {
+				break;
+			}
+			try (FileChannel channel = FileChannel.open(segmentFile(segment).toPath(), StandardOpenOption.READ)) {
+				readRecords(channel, foodItem -> {
+					FoodItem previous = foodItems.put(foodItem.getID(), foodItem);
+					if (previous == null || !previous.getName().equals(foodItem.getName())) {
+						ranks.put(foodItem.getID(), nextRank[0]++);
+					}
+				}, id -> {
+					foodItems.remove(id);
+					ranks.remove(id);
+				});
+			}
+		}
+
+		int n = foodItems.size();
+		String[] ids = new String[n];
+		String[] names = new String[n];
+		double[][] columns = new double[Nutrient.VALUES.length][n];
+		int[] rowRanks = new int[n];
+		int row = 0;
+		for (FoodItem foodItem : foodItems.values()) {
+			ids[row] = foodItem.getID();
+			names[row] = foodItem.getName();
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				columns[nutrient.ordinal()][row] = foodItem.getNutrientValue(nutrient);
+			}
+			rowRanks[row] = ranks.get(foodItem.getID());
+			row++;
+		}
+		Integer[] byName = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			byName[i] = i;
+		}
+		Arrays.sort(byName, (a, b) -> {
+			int order = names[a].compareTo(names[b]);
+			return order != 0 ? order : Integer.compare(rowRanks[a], rowRanks[b]);
+		});
+		int[] nameOrder = new int[n];
+		for (int i = 0; i < n; i++) {
+			nameOrder[i] = byName[i];
+		}
+		return FoodSnapshot.build(ids, names, columns, nameOrder, compositeIndexes);
+	}
+
+	/**
+	 * Writes a new base next to the old one and moves it into place, then deletes
+	 * the segments it replaces
+	 */
+	private void writeBase(FoodSnapshot snapshot, long lastGeneration) throws IOException {
+		File temp = new File(this.base.getPath() + ".tmp");
+		snapshot.write(temp);
+		Files.move(temp.toPath(), this.base.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		for (long segment : segments()) {
+			if (segment <= lastGeneration) {
+				Files.deleteIfExists(segmentFile(segment).toPath());
+			}
+		}
+	}
+
+	/**
+	 * Writes the pending records to the log and syncs it to disk
+	 *
+	 * @throws IOException
+	 *             if the log cannot be written
+	 */
+	public void sync() throws IOException {
+		synchronized (this.logLock) {
+			byte[] records;
+			synchronized (this) {
+				records = this.pending.toByteArray();
+				this.pending.reset();
+			}
+			if (this.log == null) {
+				return;
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(records);
+			while (buffer.hasRemaining()) {
+				this.log.write(buffer);
+			}
+			this.log.force(false);
+		}
+	}
+
+	/**
+	 * Runs a group commit on the sync thread, keeping the error for the next call
+	 */
+	private void syncQuietly() {
+		try {
+			sync();
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Commits the pending records, waits for any compaction and closes the log
+	 *
+	 * @throws IOException
+	 *             if the log cannot be written, or a background write failed
+	 */
+	@Override
+	public void close() throws IOException {
+		this.syncer.shutdown();
+		try {
+			synchronized (this) {
+				awaitCompaction();
+			}
+			sync();
+			checkFailure();
+		} finally {
+			this.compactor.shutdown();
+			synchronized (this.logLock) {
+				if (this.log != null) {
+					this.log.close();
+					this.log = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits for the last compaction asked for, if any. Compactions run one at a
+	 * time in order, so every earlier one is done too.
+	 */
+	private void awaitCompaction() throws IOException {
+		if (this.compaction == null) {
+			return;
+		}
+		try {
+			this.compaction.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a compaction");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Compaction failed", e.getCause());
+		} finally {
+			this.compaction = null;
+		}
+	}
+
+	/**
+	 * Keeps the first error of a background write
+	 */
+	private void fail(IOException e) {
+		if (this.failure == null) {
+			this.failure = e;
+		}
+	}
+
+	/**
+	 * Rethrows the error of a background write, if any
+	 */
+	private void checkFailure() throws IOException {
+		IOException e = this.failure;
+		if (e != null) {
+			throw new IOException("Journal write failed: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Decodes one record and hands it on
+	 */
+	private static void apply(byte[] record, Consumer<FoodItem> put, Consumer<String> remove) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+		byte type = in.readByte();
+		if (type == PUT) {
+			FoodItem foodItem = new FoodItem(in.readUTF(), in.readUTF());
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				foodItem.addNutrient(nutrient, in.readDouble());
+			}
+			put.accept(foodItem);
+		} else if (type == REMOVE) {
+			remove.accept(in.readUTF());
+		} else {
+			throw new IOException("Unknown journal record type: " + type);
+		}
+	}
+
+	/**
+	 * @return the generations of the log segments on disk, in ascending order
+	 */
+	private List<Long> segments() {
+		String prefix = this.base.getName() + ".log.";
+		List<Long> segments = new ArrayList<Long>();
+		String[] names = this.base.getParentFile().list();
+		if (names != null) {
+			for (String name : names) {
+				if (name.startsWith(prefix)) {
+					try {
+						segments.add(Long.parseLong(name.substring(prefix.length())));
+					} catch (NumberFormatException e) {
+						// not a segment of this journal
+					}
+				}
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	/**
+	 * @return the file of a log segment
+	 */
+	private File segmentFile(long generation) {
+		return new File(this.base.getPath() + ".log." + generation);
+	}
+
+	/**
+	 * Opens a log segment for appending, creating it if missing
+	 */
+	private FileChannel openSegment(long generation) throws IOException {
+		FileChannel channel = FileChannel.open(segmentFile(generation).toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE);
+		channel.position(channel.size());
+		return channel;
+	}
+
+	/**
+	 * Fills a buffer from a channel starting at a position
+	 *
+	 * @return false if the channel ended first
+	 */
+	private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,312 @@
+/**
+ * Filename:   FoodRecordParser.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Parses one line of a food item file, <id>,<name>,<nutrient>,<value>,...,
+ * straight from its bytes. Fields are found by scanning for commas, the 5
+ * nutrient names are matched byte by byte, and values are read digit by digit,
+ * so the only objects made for a line are the food item with its id and name.
+ *
+ * A value with more than 18 digits, an exponent or anything else unusual is
+ * handed to Double.parseDouble, so every value reads exactly as it would from
+ * text. A parser keeps its scratch space between lines and must not be shared
+ * between threads.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class FoodRecordParser {
+
+	// The names of the 5 nutrients as bytes, by ordinal
+	private static final byte[][] NUTRIENT_NAMES = new byte[Nutrient.VALUES.length][];
+
+	static {
+		for (Nutrient nutrient : Nutrient.VALUES) {
+			NUTRIENT_NAMES[nutrient.ordinal()] = nutrient.getName().getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	// Start of each field of the current line
+	private int[] starts = new int[16];
+
+	// End of each field of the current line
+	private int[] ends = new int[16];
+
+	// Scratch space for decoding text
+	private byte[] text = new byte[64];
+
+	/**
+	 * Parses every line of a stream. The bytes are read in blocks, and the lines
+	 * of each block are parsed in place.
+	 *
+	 * @param in
+	 *            the stream of a food item file
+	 * @param foodItems
+	 *            list the food items are added to, in file order
+	 * @throws IOException
+	 *             if the stream cannot be read
+	 */
+	public void parse(InputStream in, List<FoodItem> foodItems) throws IOException {
+		parse(in, foodItems::add);
+	}
+
+	/**
+	 * Parses every line of a stream, handing each food item on as soon as its
+	 * line is read. Only one block of bytes is held at a time, so a stream of any
+	 * size is parsed in constant memory.
+	 *
+	 * @param in
+	 *            the stream of a food item file
+	 * @param foodItems
+	 *            receives the food items, in file order
+	 * @throws IOException
+	 *             if the stream cannot be read
+	 */
+	public void parse(InputStream in, Consumer<FoodItem> foodItems) throws IOException {
+		byte[] block = new byte[64 * 1024];
+		ByteBuffer buffer = ByteBuffer.wrap(block);
+		int length = 0;
+		int read;
+		while ((read = in.read(block, length, block.length - length)) > 0) {
+			length += read;
+
+			// parse the complete lines, a partial last line waits for the next read
+			int end = length;
+			while (end > 0 && block[end - 1] != '\n') {
+				end--;
+			}
+			if (end == 0) {
+				if (length == block.length) {
+					block = Arrays.copyOf(block, block.length * 2);
+					buffer = ByteBuffer.wrap(block);
+				}
+				continue;
+			}
+			if (!parseLines(buffer, 0, end, foodItems)) {
+				return;
+			}
+			System.arraycopy(block, end, block, 0, length - end);
+			length -= end;
+		}
+		parseLines(buffer, 0, length, foodItems);
+	}
+
+	/**
+	 * Parses every line in a range of bytes, up to the line that ends the data
+	 *
+	 * @param buffer
+	 *            the bytes holding the lines
+	 * @param from
+	 *            index of the first byte of the first line
+	 * @param to
+	 *            index after the last byte of the range, the last line may end
+	 *            without a line break
+	 * @param foodItems
+	 *            receives the food items, in order
+	 * @return false if a line ended the data
+	 */
+	public boolean parseLines(ByteBuffer buffer, int from, int to, Consumer<FoodItem> foodItems) {
+		int start = from;
+		for (int i = from; i < to; i++) {
+			if (buffer.get(i) == '\n') {
+				FoodItem foodItem = parse(buffer, start, i);
+				if (foodItem == null) {
+					return false;
+				}
+				foodItems.accept(foodItem);
+				start = i + 1;
+			}
+		}
+		if (start < to) {
+			FoodItem foodItem = parse(buffer, start, to);
+			if (foodItem == null) {
+				return false;
+			}
+			foodItems.accept(foodItem);
+		}
+		return true;
+	}
+
+	/**
+	 * Parses one line
+	 *
+	 * @param buffer
+	 *            the bytes holding the line
+	 * @param from
+	 *            index of the first byte of the line
+	 * @param to
+	 *            index after the last byte of the line, not counting the line
+	 *            break; a trailing carriage return is ignored
+	 * @return the food item of the line, or null if the line is empty or has no
+	 *         id, which ends the data
+	 * @throws IllegalArgumentException
+	 *             if the line has an id but no name
+	 * @throws NumberFormatException
+	 *             if a value is not a double
+	 */
+	public FoodItem parse(ByteBuffer buffer, int from, int to) {
+		if (to > from && buffer.get(to - 1) == '\r') {
+			to--;
+		}
+
+		// find the fields, dropping trailing empty ones as String.split does
+		int fields = 0;
+		int start = from;
+		for (int i = from; i <= to; i++) {
+			if (i == to || buffer.get(i) == ',') {
+				if (fields == this.starts.length) {
+					this.starts = Arrays.copyOf(this.starts, fields * 2);
+					this.ends = Arrays.copyOf(this.ends, fields * 2);
+				}
+				this.starts[fields] = start;
+				this.ends[fields] = i;
+				fields++;
+				start = i + 1;
+			}
+		}
+		while (fields > 0 && this.starts[fields - 1] == this.ends[fields - 1]) {
+			fields--;
+		}
+
+		if (fields == 0 || this.starts[0] == this.ends[0]) {
+			return null;
+		}
+		if (fields == 1) {
+			throw new IllegalArgumentException("Food item without a name: " + decode(buffer, from, to));
+		}
+
+		FoodItem foodItem = new FoodItem(decode(buffer, this.starts[0], this.ends[0]),
+				decode(buffer, this.starts[1], this.ends[1]));
+
+		// only complete name/value pairs are read
+		for (int f = 2; f + 1 < fields; f += 2) {
+			double value = parseDouble(buffer, this.starts[f + 1], this.ends[f + 1]);
+			Nutrient nutrient = matchNutrient(buffer, this.starts[f], this.ends[f]);
+			if (nutrient != null) {
+				foodItem.addNutrient(nutrient, value);
+			} else {
+				foodItem.addNutrient(decode(buffer, this.starts[f], this.ends[f]), value);
+			}
+		}
+		return foodItem;
+	}
+
+	/**
+	 * Finds the nutrient with the given name, ignoring case
+	 *
+	 * @return the nutrient, or null if the name is not one of the 5 nutrients
+	 */
+	private static Nutrient matchNutrient(ByteBuffer buffer, int from, int to) {
+		for (Nutrient nutrient : Nutrient.VALUES) {
+			byte[] name = NUTRIENT_NAMES[nutrient.ordinal()];
+			if (name.length != to - from) {
+				continue;
+			}
+			int i = 0;
+			while (i < name.length && (buffer.get(from + i) | 0x20) == name[i]) {
+				i++;
+			}
+			if (i == name.length) {
+				return nutrient;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads a decimal value like 12, -0.5 or 3.25 digit by digit. The digits
+	 * form an exact long mantissa and the point an exact power of ten, so one
+	 * division gives the correctly rounded double, the same as
+	 * Double.parseDouble. Anything else goes to Double.parseDouble.
+	 *
+	 * @return the value
+	 * @throws NumberFormatException
+	 *             if the text is not a double
+	 */
+	private double parseDouble(ByteBuffer buffer, int from, int to) {
+		int i = from;
+		boolean negative = false;
+		if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+			negative = buffer.get(i) == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean point = false;
+		boolean anyDigit = false;
+		boolean simple = true;
+		for (; i < to && simple; i++) {
+			byte b = buffer.get(i);
+			if (b >= '0' && b <= '9') {
+				anyDigit = true;
+				if (mantissa != 0 || b != '0') {
+					digits++;
+				}
+				mantissa = mantissa * 10 + (b - '0');
+				if (point) {
+					scale++;
+				}
+				simple = digits <= 18;
+			} else if (b == '.' && !point) {
+				point = true;
+			} else {
+				simple = false;
+			}
+		}
+
+		// no digits, too many digits, or an exponent take the slow path
+		if (!simple || !anyDigit || mantissa >= ExactDecimal.MAX_MANTISSA
+				|| scale > ExactDecimal.MAX_SCALE) {
+			return Double.parseDouble(decode(buffer, from, to));
+		}
+
+		double value = ExactDecimal.toDouble(mantissa, scale);
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Decodes text, ASCII directly and anything else as UTF-8
+	 *
+	 * @return the text
+	 */
+	private String decode(ByteBuffer buffer, int from, int to) {
+		int length = to - from;
+		if (length > this.text.length) {
+			this.text = new byte[Math.max(length, this.text.length * 2)];
+		}
+
+		boolean ascii = true;
+		for (int i = 0; i < length; i++) {
+			byte b = buffer.get(from + i);
+			this.text[i] = b;
+			ascii &= b >= 0;
+		}
+		return new String(this.text, 0, length, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+	}
+}
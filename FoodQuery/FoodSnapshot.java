@@ -0,0 +1,519 @@
+/**
+ * Filename:   FoodSnapshot.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The state of a catalog in a binary file that loads without parsing. Rows are
+ * numbered densely from 0, and the file holds everything FoodData would
+ * otherwise rebuild from text:
+ *
+ * A header with the magic number, the format version, the number of rows and
+ * the schema, the names of the nutrient columns in order, followed by the
+ * nutrients of each composite index. Then a string table, the id and name of
+ * every row as UTF-8 after the offset of each string. Then one contiguous
+ * double column per nutrient. Then, per nutrient, the rows in ascending order
+ * of value, which is the leaf order of its index. Then the rows in name order,
+ * and last the rows of each composite index in tuple order.
+ *
+ * Every section starts on an 8 byte boundary and all numbers are
+ * little-endian. read() maps the file and copies each section into its array
+ * with one bulk get, so loading costs about as much as reading the bytes.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class FoodSnapshot {
+
+	// "FDS1", marks a file written by write()
+	private static final int MAGIC = 0x31534446;
+
+	// Version of the file format
+	private static final int VERSION = 1;
+
+	// Bytes written at a time
+	private static final int WRITE_BUFFER_BYTES = 1024 * 1024;
+
+	// Id of each row
+	final String[] ids;
+
+	// Name of each row
+	final String[] names;
+
+	// Value of each nutrient for each row, by ordinal and then by row
+	final double[][] columns;
+
+	// Rows in ascending order of each nutrient's value, by ordinal
+	final int[][] sortedRows;
+
+	// Rows in name order
+	final int[] nameOrder;
+
+	// Nutrients of each composite index, in order
+	final List<String[]> compositeIndexes;
+
+	// Rows of each composite index in tuple order, parallel to compositeIndexes
+	final List<int[]> compositeRows;
+
+	/**
+	 * Package constructor
+	 */
+	FoodSnapshot(String[] ids, String[] names, double[][] columns, int[][] sortedRows, int[] nameOrder,
+			List<String[]> compositeIndexes, List<int[]> compositeRows) {
+		this.ids = ids;
+		this.names = names;
+		this.columns = columns;
+		this.sortedRows = sortedRows;
+		this.nameOrder = nameOrder;
+		this.compositeIndexes = compositeIndexes;
+		this.compositeRows = compositeRows;
+	}
+
+	/**
+	 * Makes a snapshot of rows that are not in any index, sorting each nutrient
+	 * column and bulk loading each composite index to find their orders
+	 *
+	 * @param ids
+	 *            id of each row
+	 * @param names
+	 *            name of each row
+	 * @param columns
+	 *            value of each nutrient for each row, by ordinal and then by row
+	 * @param nameOrder
+	 *            rows in name order
+	 * @param compositeIndexes
+	 *            nutrients of each composite index, in order
+	 * @return the snapshot
+	 */
+	static FoodSnapshot build(String[] ids, String[] names, double[][] columns, int[] nameOrder,
+			List<String[]> compositeIndexes) {
+		int n = ids.length;
+		int[][] sortedRows = new int[Nutrient.VALUES.length][];
+		for (Nutrient nutrient : Nutrient.VALUES) {
+			double[] keys = Arrays.copyOf(columns[nutrient.ordinal()], n);
+			int[] rows = new int[n];
+			for (int row = 0; row < n; row++) {
+				rows[row] = row;
+			}
+			DoubleBPTree.sortByKey(keys, rows);
+			sortedRows[nutrient.ordinal()] = rows;
+		}
+
+		// the composite indexes read their keys from food items over the columns
+		NutrientColumns view = new NutrientColumns(columns, n);
+		List<FoodItem> foodItems = new ArrayList<FoodItem>(n);
+		for (int row = 0; row < n; row++) {
+			foodItems.add(new FoodItem(ids[row], names[row], view, row));
+		}
+		List<int[]> compositeRows = new ArrayList<int[]>();
+		for (String[] nutrients : compositeIndexes) {
+			CompositeIndex composite = new CompositeIndex(nutrients);
+			composite.bulkLoad(foodItems, view);
+			compositeRows.add(composite.toRowArray());
+		}
+		return new FoodSnapshot(ids, names, columns, sortedRows, nameOrder, compositeIndexes, compositeRows);
+	}
+
+	/**
+	 * @return the number of rows in the snapshot
+	 */
+	public int size() {
+		return this.ids.length;
+	}
+
+	/**
+	 * Writes the snapshot to a file
+	 *
+	 * @param file
+	 *            the file to write, replaced if it exists
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void write(File file) throws IOException {
+		int n = size();
+
+		// encode the strings first, the offsets go before them
+		byte[][] strings = new byte[2 * n][];
+		long stringBytes = 0;
+		for (int row = 0; row < n; row++) {
+			strings[2 * row] = this.ids[row].getBytes(StandardCharsets.UTF_8);
+			strings[2 * row + 1] = this.names[row].getBytes(StandardCharsets.UTF_8);
+			stringBytes += strings[2 * row].length + strings[2 * row + 1].length;
+		}
+		if (stringBytes > Integer.MAX_VALUE) {
+			throw new IOException("Too many string bytes for one snapshot: " + stringBytes);
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			Writer out = new Writer(channel);
+
+			// header and schema
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putInt(n);
+			out.putInt(Nutrient.VALUES.length);
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				out.putString(nutrient.getName());
+			}
+			out.putInt(this.compositeIndexes.size());
+			for (String[] nutrients : this.compositeIndexes) {
+				out.putInt(nutrients.length);
+				for (String nutrient : nutrients) {
+					out.putString(nutrient);
+				}
+			}
+			out.align();
+
+			// string table
+			out.putLong(stringBytes);
+			int offset = 0;
+			for (byte[] string : strings) {
+				out.putInt(offset);
+				offset += string.length;
+			}
+			out.putInt(offset);
+			for (byte[] string : strings) {
+				out.put(string);
+			}
+			out.align();
+
+			// columns, then the index arrays, then the name order
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				for (int row = 0; row < n; row++) {
+					out.putDouble(this.columns[nutrient.ordinal()][row]);
+				}
+			}
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				for (int row : this.sortedRows[nutrient.ordinal()]) {
+					out.putInt(row);
+				}
+			}
+			out.align();
+			for (int row : this.nameOrder) {
+				out.putInt(row);
+			}
+			for (int[] rows : this.compositeRows) {
+				out.align();
+				for (int row : rows) {
+					out.putInt(row);
+				}
+			}
+			out.flush();
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * Reads a snapshot file written by write()
+	 *
+	 * @param file
+	 *            the file to read
+	 * @return the snapshot
+	 * @throws IOException
+	 *             if the file cannot be read, or is not a snapshot of the current
+	 *             version and schema
+	 */
+	public static FoodSnapshot read(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			Reader in = new Reader(channel, file);
+
+			// header and schema
+			if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+				throw new IOException("Not a snapshot file: " + file);
+			}
+			int n = in.getInt();
+			int nutrientCount = in.getInt();
+			if (n < 0 || nutrientCount != Nutrient.VALUES.length) {
+				throw new IOException("Snapshot schema does not match: " + file);
+			}
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				if (!nutrient.getName().equals(in.getString())) {
+					throw new IOException("Snapshot schema does not match: " + file);
+				}
+			}
+			int compositeCount = in.getInt();
+			List<String[]> compositeIndexes = new ArrayList<String[]>();
+			for (int i = 0; i < compositeCount; i++) {
+				String[] nutrients = new String[in.getInt()];
+				for (int j = 0; j < nutrients.length; j++) {
+					nutrients[j] = in.getString();
+				}
+				compositeIndexes.add(nutrients);
+			}
+			in.align();
+
+			// string table
+			long stringBytes = in.getLong();
+			int[] offsets = in.getInts(2 * n + 1);
+			if (stringBytes > Integer.MAX_VALUE || offsets[2 * n] != stringBytes) {
+				throw new IOException("Corrupt snapshot file: " + file);
+			}
+			byte[] bytes = in.getBytes((int) stringBytes);
+			String[] ids = new String[n];
+			String[] names = new String[n];
+			for (int row = 0; row < n; row++) {
+				ids[row] = decode(bytes, offsets[2 * row], offsets[2 * row + 1]);
+				names[row] = decode(bytes, offsets[2 * row + 1], offsets[2 * row + 2]);
+			}
+			in.align();
+
+			// columns, then the index arrays, then the name order
+			double[][] columns = new double[Nutrient.VALUES.length][];
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				columns[nutrient.ordinal()] = in.getDoubles(n);
+			}
+			int[][] sortedRows = new int[Nutrient.VALUES.length][];
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				sortedRows[nutrient.ordinal()] = in.getInts(n);
+			}
+			in.align();
+			int[] nameOrder = in.getInts(n);
+			for (int[] rows : sortedRows) {
+				checkRows(rows, n, file);
+			}
+			checkRows(nameOrder, n, file);
+			List<int[]> compositeRows = new ArrayList<int[]>();
+			for (int i = 0; i < compositeCount; i++) {
+				in.align();
+				compositeRows.add(in.getInts(n));
+				checkRows(compositeRows.get(i), n, file);
+			}
+
+			return new FoodSnapshot(ids, names, columns, sortedRows, nameOrder, compositeIndexes, compositeRows);
+		}
+	}
+
+	/**
+	 * Checks that every row id of an array is a row of the snapshot
+	 */
+	private static void checkRows(int[] rows, int n, File file) throws IOException {
+		for (int row : rows) {
+			if (row < 0 || row >= n) {
+				throw new IOException("Corrupt snapshot file: " + file);
+			}
+		}
+	}
+
+	/**
+	 * Decodes a string of the string table
+	 */
+	private static String decode(byte[] bytes, int from, int to) {
+		return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes little-endian numbers to a channel through one buffer
+	 */
+	static class Writer {
+
+		// the file
+		final FileChannel channel;
+
+		// bytes not yet written
+		final ByteBuffer buffer;
+
+		// bytes written so far, for alignment
+		long position;
+
+		/**
+		 * Package constructor
+		 */
+		Writer(FileChannel channel) {
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		void putInt(int value) throws IOException {
+			ensure(4);
+			this.buffer.putInt(value);
+			this.position += 4;
+		}
+
+		void putLong(long value) throws IOException {
+			ensure(8);
+			this.buffer.putLong(value);
+			this.position += 8;
+		}
+
+		void putDouble(double value) throws IOException {
+			ensure(8);
+			this.buffer.putDouble(value);
+			this.position += 8;
+		}
+
+		void put(byte[] bytes) throws IOException {
+			int from = 0;
+			while (from < bytes.length) {
+				ensure(1);
+				int length = Math.min(bytes.length - from, this.buffer.remaining());
+				this.buffer.put(bytes, from, length);
+				from += length;
+				this.position += length;
+			}
+		}
+
+		/**
+		 * Writes a short string as its length and UTF-8 bytes
+		 */
+		void putString(String value) throws IOException {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			putInt(bytes.length);
+			put(bytes);
+		}
+
+		/**
+		 * Pads with zeros up to the next 8 byte boundary
+		 */
+		void align() throws IOException {
+			while (this.position % 8 != 0) {
+				ensure(1);
+				this.buffer.put((byte) 0);
+				this.position++;
+			}
+		}
+
+		/**
+		 * Makes room for at least the given number of bytes
+		 */
+		private void ensure(int bytes) throws IOException {
+			if (this.buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+
+		/**
+		 * Writes out the buffered bytes
+		 */
+		void flush() throws IOException {
+			this.buffer.flip();
+			while (this.buffer.hasRemaining()) {
+				this.channel.write(this.buffer);
+			}
+			this.buffer.clear();
+		}
+	}
+
+	/**
+	 * Reads little-endian numbers from a channel, mapping it one section at a
+	 * time so no mapping has to cover the whole file
+	 */
+	private static class Reader {
+
+		// the file
+		final FileChannel channel;
+
+		// the file, for error messages
+		final File file;
+
+		// scratch space for single numbers
+		final ByteBuffer scratch;
+
+		// bytes read so far
+		long position;
+
+		/**
+		 * Package constructor
+		 */
+		Reader(FileChannel channel, File file) {
+			this.channel = channel;
+			this.file = file;
+			this.scratch = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		int getInt() throws IOException {
+			return read(4).getInt(0);
+		}
+
+		long getLong() throws IOException {
+			return read(8).getLong(0);
+		}
+
+		String getString() throws IOException {
+			int length = getInt();
+			if (length < 0 || length > 1024) {
+				throw new IOException("Corrupt snapshot file: " + this.file);
+			}
+			return new String(getBytes(length), StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Reads a few bytes into the scratch buffer and moves past them
+		 */
+		private ByteBuffer read(int bytes) throws IOException {
+			this.scratch.clear().limit(bytes);
+			while (this.scratch.hasRemaining()) {
+				if (this.channel.read(this.scratch, this.position + this.scratch.position()) < 0) {
+					throw new IOException("Corrupt snapshot file: " + this.file);
+				}
+			}
+			this.position += bytes;
+			return this.scratch;
+		}
+
+		byte[] getBytes(int count) throws IOException {
+			byte[] values = new byte[count];
+			map(count).get(values);
+			return values;
+		}
+
+		int[] getInts(int count) throws IOException {
+			int[] values = new int[count];
+			map(4L * count).asIntBuffer().get(values);
+			return values;
+		}
+
+		double[] getDoubles(int count) throws IOException {
+			double[] values = new double[count];
+			map(8L * count).asDoubleBuffer().get(values);
+			return values;
+		}
+
+		/**
+		 * Skips the padding up to the next 8 byte boundary
+		 */
+		void align() {
+			this.position = (this.position + 7) & ~7L;
+		}
+
+		/**
+		 * Maps the next bytes of the file and moves past them, for the sections
+		 * read with one bulk get
+		 */
+		private ByteBuffer map(long bytes) throws IOException {
+			if (bytes > Integer.MAX_VALUE || this.position + bytes > this.channel.size()) {
+				throw new IOException("Corrupt snapshot file: " + this.file);
+			}
+			MappedByteBuffer section = this.channel.map(FileChannel.MapMode.READ_ONLY, this.position, bytes);
+			section.order(ByteOrder.LITTLE_ENDIAN);
+			this.position += bytes;
+			return section;
+		}
+	}
+}
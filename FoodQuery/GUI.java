@@ -79,6 +79,10 @@ public class GUI {
 	// the private field of MealData for my meal list
 	private static MealData mealData = new MealData();
 
+	// the base file of the journal every change to foodData is saved in, its log
+	// files are kept next to it
+	private static final String JOURNAL_PATH = "foodData.snap";
+
 	// the private field of Comparator comparing names of FoodItem
 	private static final Comparator<FoodItem> FOOD_COMPARATOR = new Comparator<FoodItem>() {
 		@Override
@@ -97,6 +101,12 @@ public class GUI {
 	 */
 	public static BorderPane setupGUI(BorderPane root) {
 
+		// food list starts with the food items saved in the journal by the last run
+		foodData.openJournal(JOURNAL_PATH);
+		for (FoodItem food : foodData.getAllFoodItems()) {
+			foodList.add(food);
+		}
+
 		// top pane as menu
 		root.setTop(setTopMenu());
 
@@ -115,6 +125,14 @@ public class GUI {
 		return root;
 	}
 
+	/**
+	 * Saves the last changes to the journal and closes it, called when the
+	 * application exits
+	 */
+	public static void close() {
+		foodData.closeJournal();
+	}
+
 	/**
 	 * Menu bar includes load & save and controls over filters
 	 * 
@@ -134,6 +152,7 @@ public class GUI {
 		// items underneath the file menu
 		MenuItem load = new MenuItem("Load");
 		MenuItem save = new MenuItem("Save");
+		MenuItem export = new MenuItem("Export");
 
 		// when user clicks on load button, user can choose a file to load through
 		// file-chooser
@@ -152,9 +171,17 @@ public class GUI {
 			}
 		});
 
-		// when user clicks on load button, user can choose a file name to save through
-		// file-chooser
+		// when user clicks on save button, the changes made since the last save are
+		// appended to the journal instead of rewriting every food item
 		save.setOnAction(new EventHandler<ActionEvent>() {
+			public void handle(ActionEvent t) {
+				foodData.syncJournal();
+			}
+		});
+
+		// when user clicks on export button, user can choose a file name to write the
+		// whole food list to through file-chooser
+		export.setOnAction(new EventHandler<ActionEvent>() {
 			public void handle(ActionEvent t) {
 				FileChooser fileChooser = new FileChooser();
 				File file = fileChooser.showSaveDialog(new Stage());
@@ -164,9 +191,10 @@ public class GUI {
 			}
 		});
 
-		// add load and save to fileMenu
+		// add load, save and export to fileMenu
 		fileMenu.getItems().add(load);
 		fileMenu.getItems().add(save);
+		fileMenu.getItems().add(export);
 
 		// items underneath the filter menu
 		MenuItem applyQuery = new MenuItem("Apply Query");
@@ -180,16 +208,16 @@ public class GUI {
 				// nutrient rules list filtered without name rules
 				List<String> nutrientRules = new ArrayList<String>();
 
-				// list of filtered name rules
-				List<FoodItem> nameFilterResults = null;
+				// bitmap of the rows matching every name rule
+				RowBitmap nameFilterResults = null;
 
 				// loop through filter list
 				for (String rule : filterList) {
 					if (rule.contains("name")) {
 						if (nameFilterResults == null) {
-							nameFilterResults = foodData.filterByName(rule.split(" ")[1]);
+							nameFilterResults = foodData.filterRowsByName(rule.split(" ")[1]);
 						} else {
-							nameFilterResults.retainAll(foodData.filterByName(rule.split(" ")[1]));
+							nameFilterResults = nameFilterResults.and(foodData.filterRowsByName(rule.split(" ")[1]));
 						}
 					} else {
 
@@ -198,20 +226,18 @@ public class GUI {
 					}
 				}
 
-				// filter foodItem by nutrient rules
-				List<FoodItem> filteredNutrients = foodData.filterByNutrients(nutrientRules);
+				// filter foodItem rows by nutrient rules
+				RowBitmap filteredNutrients = foodData.filterRowsByNutrients(nutrientRules);
 
-				// if there isn't any rules in name filter, then get all the foodItem
-				if (nameFilterResults == null) {
-					nameFilterResults = foodData.getAllFoodItems();
+				// intersect result of filtering name and filtering nutrients, if there were
+				// any name rules
+				if (nameFilterResults != null) {
+					filteredNutrients = filteredNutrients.and(nameFilterResults);
 				}
 
-				// intersect result of filtering name and filtering nutrients
-				filteredNutrients.retainAll(nameFilterResults);
-
 				// update foodList
 				foodList.clear();
-				for (FoodItem food : filteredNutrients) {
+				for (FoodItem food : foodData.getFoodItems(filteredNutrients)) {
 					foodList.add(food);
 				}
 			}
@@ -0,0 +1,212 @@
+/**
+ * Filename:   LoadBenchmark.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times reading a food item file the original way, with Scanner and
+ * String.split on one thread, against FoodRecordParser on one thread and
+ * CsvLoader on fork-join pools of 1, 2, 4, ... threads up to the number of
+ * cores, then times the whole of loadFoodItems against loadFoodItemsParallel.
+ * If CsvLoader scales with cores, its rows per second grow with the pool size.
+ *
+ * Usage: java application.LoadBenchmark [file [runs]]
+ *
+ * Without a file, a file of 400,000 generated food items is written to the
+ * temporary directory and deleted afterwards. Each case runs a few times to
+ * warm up and then the given number of runs, 5 by default; the fastest and
+ * the median run are printed.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class LoadBenchmark {
+
+	// Food items in a generated file
+	private static final int GENERATED_ROWS = 400000;
+
+	// Runs of each case that are not timed
+	private static final int WARMUP_RUNS = 2;
+
+	/**
+	 * A case being timed
+	 */
+	private interface Case {
+
+		/**
+		 * Reads the file once
+		 *
+		 * @return the number of food items read
+		 */
+		int run(File file) throws IOException;
+	}
+
+	/**
+	 * Runs the benchmark
+	 *
+	 * @param args
+	 *            the file to read and the number of timed runs, both optional
+	 * @throws IOException
+	 *             if the file cannot be read or generated
+	 */
+	public static void main(String[] args) throws IOException {
+		File file = args.length > 0 ? new File(args[0]) : generate(GENERATED_ROWS);
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int cores = Runtime.getRuntime().availableProcessors();
+		System.out.printf("%s, %d bytes, %d cores%n", file, file.length(), cores);
+
+		try {
+			time("Scanner + split, 1 thread", file, runs, LoadBenchmark::readWithScanner);
+			time("FoodRecordParser, 1 thread", file, runs, f -> {
+				List<FoodItem> foodItems = new ArrayList<FoodItem>();
+				try (InputStream in = new FileInputStream(f)) {
+					new FoodRecordParser().parse(in, foodItems);
+				}
+				return foodItems.size();
+			});
+			for (int threads = 1; threads < cores * 2; threads *= 2) {
+				int parallelism = Math.min(threads, cores);
+				ForkJoinPool pool = new ForkJoinPool(parallelism);
+				try {
+					time("CsvLoader, pool of " + parallelism, file, runs,
+							f -> new CsvLoader(pool).read(f).size());
+				} finally {
+					pool.shutdown();
+				}
+			}
+
+			// the whole load, catalog and indexes included
+			time("FoodData.loadFoodItems", file, runs, f -> {
+				FoodData foodData = new FoodData();
+				foodData.loadFoodItems(f.getPath());
+				return foodData.getAllFoodItems().size();
+			});
+			time("FoodData.loadFoodItemsParallel", file, runs, f -> {
+				FoodData foodData = new FoodData();
+				foodData.loadFoodItemsParallel(f.getPath());
+				return foodData.getAllFoodItems().size();
+			});
+		} finally {
+			if (args.length == 0) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Reads the file the way loadFoodItems did before FoodRecordParser, a
+	 * Scanner line, a split and a Double.parseDouble per value
+	 *
+	 * @return the number of food items read
+	 */
+	private static int readWithScanner(File file) throws IOException {
+		List<FoodItem> foodItems = new ArrayList<FoodItem>();
+		try (Scanner readFile = new Scanner(file)) {
+			while (readFile.hasNextLine()) {
+				String[] currLine = readFile.nextLine().split(",");
+				if (currLine.length == 0 || currLine[0].equals("")) {
+					break;
+				}
+				FoodItem foodItem = new FoodItem(currLine[0], currLine[1]);
+				for (int i = 2; i + 1 < currLine.length; i += 2) {
+					foodItem.addNutrient(currLine[i], Double.parseDouble(currLine[i + 1]));
+				}
+				foodItems.add(foodItem);
+			}
+		}
+		return foodItems.size();
+	}
+
+	/**
+	 * Runs a case, untimed to warm up and then timed, and prints its fastest and
+	 * median run
+	 */
+	private static void time(String name, File file, int runs, Case c) throws IOException {
+		int rows = 0;
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			rows = c.run(file);
+		}
+
+		long[] nanos = new long[runs];
+		for (int i = 0; i < runs; i++) {
+			System.gc();
+			long start = System.nanoTime();
+			rows = c.run(file);
+			nanos[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(nanos);
+
+		long best = nanos[0];
+		long median = nanos[runs / 2];
+		System.out.printf("%-34s %8d rows  best %7.1f ms  median %7.1f ms  %10.0f rows/s%n", name, rows,
+				best / 1e6, median / 1e6, rows / (best / 1e9));
+	}
+
+	/**
+	 * Writes a temporary food item file of generated rows, with ids, names and
+	 * values shaped like those of foodItems.csv
+	 *
+	 * @param rows
+	 *            the number of food items
+	 * @return the file, deleted when the JVM exits
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	static File generate(int rows) throws IOException {
+		File file = File.createTempFile("foodItems", ".csv");
+		file.deleteOnExit();
+
+		Random random = new Random(400);
+		String[] brands = { "Similac", "Stewarts", "Yoplait", "Kelloggs", "Nabisco", "Dannon", "Kraft", "Heinz" };
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(file))) {
+			for (int row = 0; row < rows; row++) {
+				out.write(String.format("%024x", random.nextLong() & Long.MAX_VALUE));
+				out.write(',');
+				out.write(brands[random.nextInt(brands.length)]);
+				out.write("_Item");
+				out.write(Integer.toString(random.nextInt(100000)));
+				for (Nutrient nutrient : Nutrient.VALUES) {
+					out.write(',');
+					out.write(nutrient.getName());
+					out.write(',');
+
+					// mostly whole numbers, some with a digit or two after the point
+					if (random.nextInt(4) == 0) {
+						out.write(Double.toString(random.nextInt(50000) / 100.0));
+					} else {
+						out.write(Integer.toString(random.nextInt(nutrient == Nutrient.CALORIES ? 900 : 60)));
+					}
+				}
+				out.write('\n');
+			}
+		}
+		return file;
+	}
+}
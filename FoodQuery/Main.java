@@ -55,6 +55,14 @@ public class Main extends Application {
 		}
 	}
 
+	/**
+	 * Saves the last changes to the food list when the application exits
+	 */
+	@Override
+	public void stop() {
+		GUI.close();
+	}
+
 	/**
 	 * The main method to launch the application
 	 * 
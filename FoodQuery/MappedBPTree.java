@@ -0,0 +1,868 @@
+/**
+ * Filename:   MappedBPTree.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A read-only B+ tree of double keys and int row ids that lives in a file.
+ * The file is mapped into memory with FileChannel.map and every search reads
+ * the mapped pages directly, so opening a tree costs a header read no matter
+ * how large the tree is, and the pages are held by the operating system
+ * instead of the Java heap.
+ *
+ * The file is a sequence of fixed-size pages. Page 0 is the header, followed
+ * by the leaves in key order and then the internal levels from the bottom up.
+ * Every node page starts with four ints: the node type, the number of keys,
+ * and the next and previous leaf pages (-1 if none). The keys follow as
+ * doubles, then the row ids of a leaf, or the child pages and child counts of
+ * an internal node. All numbers are little-endian.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class MappedBPTree implements BPTreeADT<Double, Integer> {
+
+	// "BPT1", marks a file written by write()
+	private static final int MAGIC = 0x31545042;
+
+	// Version of the page format
+	private static final int VERSION = 1;
+
+	// Page types
+	private static final int LEAF = 0;
+	private static final int INTERNAL = 1;
+
+	// Offsets of the header fields in page 0
+	private static final int HEADER_PAGE_SIZE = 8;
+	private static final int HEADER_BRANCHING_FACTOR = 12;
+	private static final int HEADER_SIZE = 16;
+	private static final int HEADER_ROOT = 20;
+	private static final int HEADER_FIRST_LEAF = 24;
+
+	// Offsets of the fields at the start of each node page
+	private static final int NODE_TYPE = 0;
+	private static final int NODE_SIZE = 4;
+	private static final int NODE_NEXT = 8;
+	private static final int NODE_PREVIOUS = 12;
+	private static final int NODE_KEYS = 16;
+
+	// The mapped pages of the file
+	private final ByteBuffer pages;
+
+	// Number of bytes in each page
+	private final int pageSize;
+
+	// Branching factor the file was written with
+	private final int branchingFactor;
+
+	// Number of key-row pairs in the tree
+	private final int size;
+
+	// Page of the root node
+	private final int rootPage;
+
+	// Page of the leftmost leaf
+	private final int firstLeafPage;
+
+	// Offset within a page of the row ids or child pages
+	private final int valuesOffset;
+
+	// Offset within an internal page of the child counts
+	private final int countsOffset;
+
+	/**
+	 * Private constructor, trees are created with open()
+	 *
+	 * @param pages
+	 *            the mapped file
+	 */
+	private MappedBPTree(ByteBuffer pages) {
+		this.pages = pages;
+		this.pageSize = pages.getInt(HEADER_PAGE_SIZE);
+		this.branchingFactor = pages.getInt(HEADER_BRANCHING_FACTOR);
+		this.size = pages.getInt(HEADER_SIZE);
+		this.rootPage = pages.getInt(HEADER_ROOT);
+		this.firstLeafPage = pages.getInt(HEADER_FIRST_LEAF);
+		this.valuesOffset = valuesOffset(this.branchingFactor);
+		this.countsOffset = this.valuesOffset + 4 * this.branchingFactor;
+	}
+
+	/**
+	 * Maps a tree file written by write(). The channel is closed once the file is
+	 * mapped, the mapping stays valid until the tree is garbage collected.
+	 *
+	 * @param file
+	 *            the file to open
+	 * @return the tree stored in the file
+	 * @throws IOException
+	 *             if the file cannot be read or is not a tree file
+	 */
+	public static MappedBPTree open(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Tree file is too large to map: " + file);
+			}
+
+			MappedByteBuffer pages = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			pages.order(ByteOrder.LITTLE_ENDIAN);
+
+			// check the header before trusting any page offsets
+			if (pages.capacity() < 28 || pages.getInt(0) != MAGIC || pages.getInt(4) != VERSION) {
+				throw new IOException("Not a tree file: " + file);
+			}
+			int pageSize = pages.getInt(HEADER_PAGE_SIZE);
+			int branchingFactor = pages.getInt(HEADER_BRANCHING_FACTOR);
+			if (branchingFactor <= 2 || pageSize != pageSize(branchingFactor) || pages.capacity() % pageSize != 0) {
+				throw new IOException("Corrupt tree file: " + file);
+			}
+
+			return new MappedBPTree(pages);
+		}
+	}
+
+	/**
+	 * Sorted key-row pairs handed to write() one at a time, so a tree can be
+	 * written from data that is not all in memory
+	 */
+	public interface PairStream {
+
+		/**
+		 * Moves to the next pair
+		 *
+		 * @return false if there are no more pairs
+		 * @throws IOException
+		 *             if the pairs cannot be read
+		 */
+		boolean advance() throws IOException;
+
+		/**
+		 * @return the key of the current pair
+		 */
+		double key();
+
+		/**
+		 * @return the row id of the current pair
+		 */
+		int row();
+	}
+
+	/**
+	 * Writes sorted key-row pairs to a tree file. Like DoubleBPTree.bulkLoad, the
+	 * pairs are spread evenly over the fewest leaves that can hold them and each
+	 * internal level is built from the one below, so every page is written once.
+	 *
+	 * @param file
+	 *            the file to write, replaced if it exists
+	 * @param keys
+	 *            the keys to write, sorted in ascending order
+	 * @param rows
+	 *            the row id of each key, parallel to keys
+	 * @param branchingFactor
+	 *            the branching factor of the tree
+	 * @throws IOException
+	 *             if the file cannot be written
+	 * @throws IllegalArgumentException
+	 *             if the arrays differ in length or keys are not sorted
+	 */
+	public static void write(File file, double[] keys, int[] rows, int branchingFactor) throws IOException {
+		if (keys.length != rows.length) {
+			throw new IllegalArgumentException("Keys and rows differ in length: " + keys.length + " != " + rows.length);
+		}
+		for (int i = 1; i < keys.length; i++) {
+			if (keys[i] < keys[i - 1]) {
+				throw new IllegalArgumentException("Keys must be sorted in ascending order");
+			}
+		}
+
+		write(file, keys.length, new PairStream() {
+			private int i = -1;
+
+			@Override
+			public boolean advance() {
+				return ++this.i < keys.length;
+			}
+
+			@Override
+			public double key() {
+				return keys[this.i];
+			}
+
+			@Override
+			public int row() {
+				return rows[this.i];
+			}
+		}, branchingFactor);
+	}
+
+	/**
+	 * Writes a known number of sorted key-row pairs to a tree file, reading them
+	 * one at a time. The leaves are filled straight from the stream, and each
+	 * internal level reads the pages, counts and first keys of its children back
+	 * from the file, so writing takes constant heap no matter how many pairs
+	 * there are.
+	 *
+	 * @param file
+	 *            the file to write, replaced if it exists
+	 * @param n
+	 *            the number of pairs in the stream
+	 * @param pairs
+	 *            the pairs, sorted by key in ascending order
+	 * @param branchingFactor
+	 *            the branching factor of the tree
+	 * @throws IOException
+	 *             if the file cannot be written, or the stream has fewer than n
+	 *             pairs
+	 * @throws IllegalArgumentException
+	 *             if the keys are not sorted
+	 */
+	public static void write(File file, int n, PairStream pairs, int branchingFactor) throws IOException {
+		if (branchingFactor <= 2) {
+			throw new IllegalArgumentException("Illegal branching factor: " + branchingFactor);
+		}
+
+		int pageSize = pageSize(branchingFactor);
+		int valuesOffset = valuesOffset(branchingFactor);
+		int countsOffset = valuesOffset + 4 * branchingFactor;
+
+		// work out how many pages each level needs before writing anything
+		int leafCount = Math.max(1, (n + branchingFactor - 2) / (branchingFactor - 1));
+		long pageCount = 1 + leafCount;
+		for (int level = leafCount; level > 1;) {
+			level = (level + branchingFactor - 1) / branchingFactor;
+			pageCount += level;
+		}
+		if (pageCount * pageSize > Integer.MAX_VALUE) {
+			throw new IOException("Tree is too large to map: " + n + " keys");
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer pages = channel.map(FileChannel.MapMode.READ_WRITE, 0, pageCount * pageSize);
+			pages.order(ByteOrder.LITTLE_ENDIAN);
+
+			// leaves take pages 1 to leafCount, linked in key order
+			int from = 0;
+			double previousKey = Double.NEGATIVE_INFINITY;
+			for (int l = 0; l < leafCount; l++) {
+				int to = (int) ((long) n * (l + 1) / leafCount);
+				int page = 1 + l;
+				int base = page * pageSize;
+				pages.putInt(base + NODE_TYPE, LEAF);
+				pages.putInt(base + NODE_SIZE, to - from);
+				pages.putInt(base + NODE_NEXT, l + 1 < leafCount ? page + 1 : -1);
+				pages.putInt(base + NODE_PREVIOUS, l > 0 ? page - 1 : -1);
+				for (int i = from; i < to; i++) {
+					if (!pairs.advance()) {
+						throw new IOException("Expected " + n + " pairs but got " + i);
+					}
+					if (pairs.key() < previousKey) {
+						throw new IllegalArgumentException("Keys must be sorted in ascending order");
+					}
+					previousKey = pairs.key();
+					pages.putDouble(base + NODE_KEYS + 8 * (i - from), previousKey);
+					pages.putInt(base + valuesOffset + 4 * (i - from), pairs.row());
+				}
+				from = to;
+			}
+
+			// build each internal level from the one below until one node is left,
+			// the nodes of a level take consecutive pages
+			int levelStart = 1;
+			int levelSize = leafCount;
+			int nextPage = 1 + leafCount;
+			while (levelSize > 1) {
+				int parentCount = (levelSize + branchingFactor - 1) / branchingFactor;
+				int parentStart = nextPage;
+				from = 0;
+				for (int p = 0; p < parentCount; p++) {
+					int to = (int) ((long) levelSize * (p + 1) / parentCount);
+					int page = nextPage++;
+					int base = page * pageSize;
+					pages.putInt(base + NODE_TYPE, INTERNAL);
+					pages.putInt(base + NODE_SIZE, to - from - 1);
+					pages.putInt(base + NODE_NEXT, -1);
+					pages.putInt(base + NODE_PREVIOUS, -1);
+					for (int c = from; c < to; c++) {
+						int child = levelStart + c;
+						pages.putInt(base + valuesOffset + 4 * (c - from), child);
+						pages.putInt(base + countsOffset + 4 * (c - from), subtreeCount(pages, child, pageSize, countsOffset));
+						if (c > from) {
+							pages.putDouble(base + NODE_KEYS + 8 * (c - from - 1),
+									firstKey(pages, child, pageSize, valuesOffset));
+						}
+					}
+					from = to;
+				}
+				levelStart = parentStart;
+				levelSize = parentCount;
+			}
+
+			// the header is written last, so a partly written file never opens
+			pages.putInt(HEADER_PAGE_SIZE, pageSize);
+			pages.putInt(HEADER_BRANCHING_FACTOR, branchingFactor);
+			pages.putInt(HEADER_SIZE, n);
+			pages.putInt(HEADER_ROOT, levelStart);
+			pages.putInt(HEADER_FIRST_LEAF, 1);
+			pages.putInt(4, VERSION);
+			pages.putInt(0, MAGIC);
+			pages.force();
+		}
+	}
+
+	/**
+	 * Reads the number of keys below a node that has already been written
+	 */
+	private static int subtreeCount(ByteBuffer pages, int page, int pageSize, int countsOffset) {
+		int base = page * pageSize;
+		if (pages.getInt(base + NODE_TYPE) == LEAF) {
+			return pages.getInt(base + NODE_SIZE);
+		}
+		int count = 0;
+		for (int c = 0; c <= pages.getInt(base + NODE_SIZE); c++) {
+			count += pages.getInt(base + countsOffset + 4 * c);
+		}
+		return count;
+	}
+
+	/**
+	 * Reads the smallest key below a node that has already been written, by
+	 * following the first child down to a leaf
+	 */
+	private static double firstKey(ByteBuffer pages, int page, int pageSize, int valuesOffset) {
+		int base = page * pageSize;
+		while (pages.getInt(base + NODE_TYPE) == INTERNAL) {
+			base = pages.getInt(base + valuesOffset) * pageSize;
+		}
+		return pages.getInt(base + NODE_SIZE) > 0 ? pages.getDouble(base + NODE_KEYS) : 0;
+	}
+
+	/**
+	 * Gets the number of bytes in each page for a branching factor: the four int
+	 * fields, branchingFactor - 1 keys, then branchingFactor child pages and
+	 * branchingFactor child counts. A leaf uses the space of the child pages for
+	 * its row ids.
+	 *
+	 * @param branchingFactor
+	 *            the branching factor of the tree
+	 * @return the page size in bytes
+	 */
+	private static int pageSize(int branchingFactor) {
+		return valuesOffset(branchingFactor) + 8 * branchingFactor;
+	}
+
+	/**
+	 * @param branchingFactor
+	 *            the branching factor of the tree
+	 * @return the offset within a page of the row ids or child pages
+	 */
+	private static int valuesOffset(int branchingFactor) {
+		return NODE_KEYS + 8 * (branchingFactor - 1);
+	}
+
+	/**
+	 * The tree is read-only
+	 *
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public void insert(Double key, Integer value) {
+		throw new UnsupportedOperationException("Mapped trees are read-only");
+	}
+
+	/**
+	 * The tree is read-only
+	 *
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public boolean remove(Double key, Integer value) {
+		throw new UnsupportedOperationException("Mapped trees are read-only");
+	}
+
+	/**
+	 * The tree is read-only
+	 *
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	@Override
+	public boolean update(Double oldKey, Double newKey, Integer value) {
+		throw new UnsupportedOperationException("Mapped trees are read-only");
+	}
+
+	/**
+	 * Gets the values that satisfy the given range search arguments.
+	 *
+	 * Value of comparator can be one of these: "<=", "==", ">="
+	 *
+	 * If key is null or not found, return empty list. If comparator is null, empty,
+	 * or not according to required form, return empty list.
+	 *
+	 * @param key
+	 *            to be searched
+	 * @param comparator
+	 *            is a string
+	 * @return list of row ids that are the result of the range search; if nothing
+	 *         found, return empty list
+	 */
+	@Override
+	public List<Integer> rangeSearch(Double key, String comparator) {
+		if (key == null || comparator == null) {
+			return new ArrayList<Integer>();
+		}
+
+		// each comparator is a range with one or both ends at the key
+		switch (comparator) {
+		case "<=":
+			return rangeSearch(null, true, key, true);
+		case ">=":
+			return rangeSearch(key, true, null, true);
+		case "==":
+			return rangeSearch(key, true, key, true);
+		default:
+			return new ArrayList<Integer>();
+		}
+	}
+
+	/**
+	 * Gets the row ids whose keys are between lo and hi, in ascending order of
+	 * key. A null lo or hi leaves that side of the range unbounded.
+	 *
+	 * @param lo
+	 *            lower end of the range, or null
+	 * @param loInclusive
+	 *            whether keys equal to lo are included
+	 * @param hi
+	 *            upper end of the range, or null
+	 * @param hiInclusive
+	 *            whether keys equal to hi are included
+	 * @return list of row ids in the range; if nothing found, return empty list
+	 */
+	@Override
+	public List<Integer> rangeSearch(Double lo, boolean loInclusive, Double hi, boolean hiInclusive) {
+		List<Integer> comparedValues = new ArrayList<Integer>();
+		PrimitiveIterator.OfInt it = rangeRows(lo == null ? Double.NEGATIVE_INFINITY : lo.doubleValue(), loInclusive,
+				hi == null ? Double.POSITIVE_INFINITY : hi.doubleValue(), hiInclusive);
+		while (it.hasNext()) {
+			comparedValues.add(it.nextInt());
+		}
+		return comparedValues;
+	}
+
+	/**
+	 * Gets an iterator over the row ids whose keys are in the range [lo, hi], in
+	 * ascending order of key. A null lo or hi leaves that side unbounded.
+	 *
+	 * @param lo
+	 *            smallest key to include, or null
+	 * @param hi
+	 *            largest key to include, or null
+	 * @return iterator over the row ids in the range
+	 */
+	@Override
+	public PrimitiveIterator.OfInt rangeIterator(Double lo, Double hi) {
+		return rangeRows(lo == null ? Double.NEGATIVE_INFINITY : lo.doubleValue(),
+				hi == null ? Double.POSITIVE_INFINITY : hi.doubleValue());
+	}
+
+	/**
+	 * Gets an iterator over the row ids whose keys are in the range [lo, hi], in
+	 * ascending order of key. The iterator descends the mapped pages once and then
+	 * follows the leaf links.
+	 *
+	 * @param lo
+	 *            smallest key to include
+	 * @param hi
+	 *            largest key to include
+	 * @return iterator over the row ids in the range
+	 */
+	public PrimitiveIterator.OfInt rangeRows(double lo, double hi) {
+		return new RowIterator(lo, true, hi, true);
+	}
+
+	/**
+	 * Gets an iterator over the row ids whose keys are between lo and hi, where
+	 * each end of the range can be inclusive or exclusive.
+	 *
+	 * @param lo
+	 *            lower end of the range
+	 * @param loInclusive
+	 *            whether keys equal to lo are included
+	 * @param hi
+	 *            upper end of the range
+	 * @param hiInclusive
+	 *            whether keys equal to hi are included
+	 * @return iterator over the row ids in the range
+	 */
+	public PrimitiveIterator.OfInt rangeRows(double lo, boolean loInclusive, double hi, boolean hiInclusive) {
+		return new RowIterator(lo, loInclusive, hi, hiInclusive);
+	}
+
+	/**
+	 * Gets the row ids of the k largest keys
+	 *
+	 * @param k
+	 *            the number of row ids to return
+	 * @param descending
+	 *            whether the row ids are ordered from the largest key down
+	 * @return list of at most k row ids
+	 */
+	@Override
+	public List<Integer> topK(int k, boolean descending) {
+		List<Integer> values = new ArrayList<Integer>();
+		for (int row : topKRows(k, descending)) {
+			values.add(row);
+		}
+		return values;
+	}
+
+	/**
+	 * Gets the row ids of the k largest keys as a primitive array. The scan starts
+	 * at the last leaf page and follows the previous links until k rows are found.
+	 *
+	 * @param k
+	 *            the number of row ids to return
+	 * @param descending
+	 *            whether the row ids are ordered from the largest key down
+	 * @return array of at most k row ids
+	 */
+	public int[] topKRows(int k, boolean descending) {
+		int[] rowIds = new int[Math.max(0, Math.min(k, this.size))];
+
+		// the last leaf is at the end of the rightmost path
+		int leaf = this.rootPage;
+		while (type(leaf) == INTERNAL) {
+			leaf = child(leaf, keyCount(leaf));
+		}
+
+		int found = 0;
+		for (; leaf != -1 && found < rowIds.length; leaf = previousLeaf(leaf)) {
+			for (int i = keyCount(leaf) - 1; i >= 0 && found < rowIds.length; i--) {
+				rowIds[found++] = row(leaf, i);
+			}
+		}
+
+		// the rows were collected largest first, flip them for ascending order
+		if (!descending) {
+			for (int i = 0, j = rowIds.length - 1; i < j; i++, j--) {
+				int row = rowIds[i];
+				rowIds[i] = rowIds[j];
+				rowIds[j] = row;
+			}
+		}
+		return rowIds;
+	}
+
+	/**
+	 * Gets the row ids of the k smallest keys in ascending order of key
+	 *
+	 * @param k
+	 *            the number of row ids to return
+	 * @return list of at most k row ids
+	 */
+	@Override
+	public List<Integer> bottomK(int k) {
+		List<Integer> values = new ArrayList<Integer>();
+		for (int row : bottomKRows(k)) {
+			values.add(row);
+		}
+		return values;
+	}
+
+	/**
+	 * Gets the row ids of the k smallest keys as a primitive array. The leaves
+	 * start at page 1, so the scan reads forward from there.
+	 *
+	 * @param k
+	 *            the number of row ids to return
+	 * @return array of at most k row ids
+	 */
+	public int[] bottomKRows(int k) {
+		int[] rowIds = new int[Math.max(0, Math.min(k, this.size))];
+		int found = 0;
+		for (int leaf = this.firstLeafPage; leaf != -1 && found < rowIds.length; leaf = nextLeaf(leaf)) {
+			for (int i = 0; i < keyCount(leaf) && found < rowIds.length; i++) {
+				rowIds[found++] = row(leaf, i);
+			}
+		}
+		return rowIds;
+	}
+
+	/**
+	 * @return the number of key-row pairs in the tree
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Counts the keys between lo and hi in O(log n) using the child counts stored
+	 * in the internal pages.
+	 *
+	 * @param lo
+	 *            lower end of the range
+	 * @param loInclusive
+	 *            whether keys equal to lo are counted
+	 * @param hi
+	 *            upper end of the range
+	 * @param hiInclusive
+	 *            whether keys equal to hi are counted
+	 * @return the number of keys in the range
+	 */
+	public int count(double lo, boolean loInclusive, double hi, boolean hiInclusive) {
+		int count = countBelow(hi, hiInclusive) - countBelow(lo, !loInclusive);
+		return Math.max(count, 0);
+	}
+
+	/**
+	 * Returns a string representation of the tree's header
+	 *
+	 * @return a string representation
+	 */
+	@Override
+	public String toString() {
+		return "MappedBPTree[size=" + this.size + ", branchingFactor=" + this.branchingFactor + ", pages="
+				+ (this.pages.capacity() / this.pageSize) + "]";
+	}
+
+	/**
+	 * Counts the keys below the given key by descending from the root and adding
+	 * the counts of the children left of the path
+	 *
+	 * @param key
+	 *            the key to compare against
+	 * @param inclusive
+	 *            whether keys equal to key are counted
+	 * @return the number of keys < key, or <= key when inclusive
+	 */
+	private int countBelow(double key, boolean inclusive) {
+		int page = this.rootPage;
+		int total = 0;
+		while (type(page) == INTERNAL) {
+			int i = inclusive ? upperBound(page, key) : lowerBound(page, key);
+			int base = page * this.pageSize + this.countsOffset;
+			for (int j = 0; j < i; j++) {
+				total += this.pages.getInt(base + 4 * j);
+			}
+			page = child(page, i);
+		}
+		return total + (inclusive ? upperBound(page, key) : lowerBound(page, key));
+	}
+
+	/**
+	 * Finds the leaf page that the given key would be found in or inserted into
+	 *
+	 * @param key
+	 *            the key to search for
+	 * @return the leaf page
+	 */
+	private int findLeaf(double key) {
+		int page = this.rootPage;
+		while (type(page) == INTERNAL) {
+			page = child(page, lowerBound(page, key));
+		}
+		return page;
+	}
+
+	/**
+	 * @return the type of the node on a page
+	 */
+	private int type(int page) {
+		return this.pages.getInt(page * this.pageSize + NODE_TYPE);
+	}
+
+	/**
+	 * @return the number of keys in the node on a page
+	 */
+	private int keyCount(int page) {
+		return this.pages.getInt(page * this.pageSize + NODE_SIZE);
+	}
+
+	/**
+	 * @return the page of the next leaf, or -1 after the last leaf
+	 */
+	private int nextLeaf(int page) {
+		return this.pages.getInt(page * this.pageSize + NODE_NEXT);
+	}
+
+	/**
+	 * @return the page of the previous leaf, or -1 before the first leaf
+	 */
+	private int previousLeaf(int page) {
+		return this.pages.getInt(page * this.pageSize + NODE_PREVIOUS);
+	}
+
+	/**
+	 * @return the i-th key of the node on a page
+	 */
+	private double key(int page, int i) {
+		return this.pages.getDouble(page * this.pageSize + NODE_KEYS + 8 * i);
+	}
+
+	/**
+	 * @return the i-th row id of the leaf on a page
+	 */
+	private int row(int page, int i) {
+		return this.pages.getInt(page * this.pageSize + this.valuesOffset + 4 * i);
+	}
+
+	/**
+	 * @return the page of the i-th child of the internal node on a page
+	 */
+	private int child(int page, int i) {
+		return this.pages.getInt(page * this.pageSize + this.valuesOffset + 4 * i);
+	}
+
+	/**
+	 * Finds the index of the first key on a page that is >= the given key
+	 *
+	 * @return an index in [0, keyCount(page)]
+	 */
+	private int lowerBound(int page, double key) {
+		int low = 0;
+		int high = keyCount(page);
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (key(page, mid) < key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Finds the index of the first key on a page that is > the given key
+	 *
+	 * @return an index in [0, keyCount(page)]
+	 */
+	private int upperBound(int page, double key) {
+		int low = 0;
+		int high = keyCount(page);
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (key(page, mid) <= key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Iterates over the row ids of a key range by following the leaf links. The
+	 * iterator always rests on the next row to return, or on page -1 once the
+	 * range is exhausted.
+	 */
+	private class RowIterator implements PrimitiveIterator.OfInt {
+
+		// The leaf page holding the next row, -1 when there are no more rows
+		private int leaf;
+
+		// Index of the next row in leaf
+		private int index;
+
+		// Upper end of the range
+		private double hi;
+
+		// Whether keys equal to hi are returned
+		private boolean hiInclusive;
+
+		/**
+		 * Descends to the first row of the range
+		 *
+		 * @param lo
+		 *            lower end of the range
+		 * @param loInclusive
+		 *            whether keys equal to lo are included
+		 * @param hi
+		 *            upper end of the range
+		 * @param hiInclusive
+		 *            whether keys equal to hi are included
+		 */
+		RowIterator(double lo, boolean loInclusive, double hi, boolean hiInclusive) {
+			this.hi = hi;
+			this.hiInclusive = hiInclusive;
+			this.leaf = findLeaf(lo);
+			this.index = lowerBound(this.leaf, lo);
+			settle();
+
+			// an exclusive lower end skips the keys equal to lo, which may span leaves
+			if (!loInclusive) {
+				while (this.leaf != -1 && key(this.leaf, this.index) == lo) {
+					this.index++;
+					settle();
+				}
+			}
+		}
+
+		/**
+		 * Moves past exhausted leaves and stops the iterator once a key is past hi
+		 */
+		private void settle() {
+			while (this.leaf != -1 && this.index >= keyCount(this.leaf)) {
+				this.leaf = nextLeaf(this.leaf);
+				this.index = 0;
+			}
+
+			if (this.leaf != -1) {
+				double key = key(this.leaf, this.index);
+				if (key > this.hi || (key == this.hi && !this.hiInclusive)) {
+					this.leaf = -1;
+				}
+			}
+		}
+
+		/**
+		 * @see java.util.Iterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext() {
+			return this.leaf != -1;
+		}
+
+		/**
+		 * @see java.util.PrimitiveIterator.OfInt#nextInt()
+		 */
+		@Override
+		public int nextInt() {
+			if (this.leaf == -1) {
+				throw new NoSuchElementException();
+			}
+
+			int row = row(this.leaf, this.index++);
+			settle();
+			return row;
+		}
+	}
+}
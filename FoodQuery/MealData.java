@@ -82,11 +82,11 @@ public class MealData {
 
 		// add the values for each nutrient of each FoodItem
 		for (int i = 0; i < mealList.size(); i++) {
-			calories += mealList.get(i).getNutrients().get("calories");
-			fat += mealList.get(i).getNutrients().get("fat");
-			carbs += mealList.get(i).getNutrients().get("carbohydrate");
-			protein += mealList.get(i).getNutrients().get("protein");
-			fiber += mealList.get(i).getNutrients().get("fiber");
+			calories += mealList.get(i).getNutrientValue(Nutrient.CALORIES);
+			fat += mealList.get(i).getNutrientValue(Nutrient.FAT);
+			carbs += mealList.get(i).getNutrientValue(Nutrient.CARBOHYDRATE);
+			protein += mealList.get(i).getNutrientValue(Nutrient.PROTEIN);
+			fiber += mealList.get(i).getNutrientValue(Nutrient.FIBER);
 		}
 
 		// put nutrient and its value to a hashmap
@@ -0,0 +1,279 @@
+/**
+ * Filename:   NameIndex.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+/**
+ * A trigram index over the food item names, for case-insensitive substring
+ * search. Every run of three characters of a lower-cased name, its trigrams,
+ * maps to a posting list of the rows whose names contain it.
+ *
+ * A name can only contain a substring if it contains every trigram of the
+ * substring, so a search intersects the posting lists of the substring's
+ * trigrams, rarest first, and only checks the names of the rows left over.
+ * Substrings shorter than three characters have no trigrams and are checked
+ * against every name.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class NameIndex {
+
+	// Lower-cased name of each row, null for removed rows
+	private final List<String> names;
+
+	// Rows of the names containing each trigram, by packed trigram
+	private final PostingMap postings;
+
+	/**
+	 * Public constructor for an empty index
+	 */
+	public NameIndex() {
+		this.names = new ArrayList<String>();
+		this.postings = new PostingMap();
+	}
+
+	/**
+	 * Adds the name of a row
+	 *
+	 * @param row
+	 *            the row id of the food item
+	 * @param name
+	 *            the name of the food item
+	 */
+	public void add(int row, String name) {
+		String lowerName = name.toLowerCase();
+		while (this.names.size() <= row) {
+			this.names.add(null);
+		}
+		this.names.set(row, lowerName);
+
+		for (int i = 0; i + 3 <= lowerName.length(); i++) {
+			this.postings.getOrCreate(trigram(lowerName, i)).add(row);
+		}
+	}
+
+	/**
+	 * Removes the name of a row
+	 *
+	 * @param row
+	 *            the row id of the food item
+	 */
+	public void remove(int row) {
+		String lowerName = row < this.names.size() ? this.names.set(row, null) : null;
+		if (lowerName == null) {
+			return;
+		}
+
+		for (int i = 0; i + 3 <= lowerName.length(); i++) {
+			long trigram = trigram(lowerName, i);
+			RowBitmap posting = this.postings.get(trigram);
+			if (posting != null) {
+				posting.remove(row);
+				if (posting.isEmpty()) {
+					this.postings.remove(trigram);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the rows whose names contain the substring, ignoring case
+	 *
+	 * @param substring
+	 *            substring to be searched
+	 * @return bitmap of the matching row ids
+	 */
+	public RowBitmap search(String substring) {
+		String lowerSubstring = substring.toLowerCase();
+		RowBitmap matches = new RowBitmap();
+
+		// without a trigram every name is a candidate
+		if (lowerSubstring.length() < 3) {
+			for (int row = 0; row < this.names.size(); row++) {
+				String name = this.names.get(row);
+				if (name != null && name.contains(lowerSubstring)) {
+					matches.add(row);
+				}
+			}
+			return matches;
+		}
+
+		// gather the posting list of every trigram, any missing one means no match
+		List<RowBitmap> lists = new ArrayList<RowBitmap>();
+		for (int i = 0; i + 3 <= lowerSubstring.length(); i++) {
+			RowBitmap posting = this.postings.get(trigram(lowerSubstring, i));
+			if (posting == null) {
+				return matches;
+			}
+			if (!lists.contains(posting)) {
+				lists.add(posting);
+			}
+		}
+
+		// intersect the rarest lists first so the candidates shrink fastest
+		lists.sort((a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+		RowBitmap candidates = lists.get(0);
+		for (int i = 1; i < lists.size() && !candidates.isEmpty(); i++) {
+			candidates = candidates.and(lists.get(i));
+		}
+
+		// the trigrams can all appear without the whole substring, check each name
+		PrimitiveIterator.OfInt it = candidates.iterator();
+		while (it.hasNext()) {
+			int row = it.nextInt();
+			if (this.names.get(row).contains(lowerSubstring)) {
+				matches.add(row);
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * @return the number of distinct trigrams in the index
+	 */
+	public int trigramCount() {
+		return this.postings.size;
+	}
+
+	/**
+	 * Packs the three characters at the given position into one key
+	 *
+	 * @param s
+	 *            the lower-cased text
+	 * @param i
+	 *            position of the first character
+	 * @return the trigram as a long
+	 */
+	private static long trigram(String s, int i) {
+		return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+	}
+
+	/**
+	 * Posting lists by packed trigram, in an open addressing table so that adding
+	 * a name does not box a key per trigram
+	 */
+	private static class PostingMap {
+
+		// the trigram of each slot, EMPTY for a free slot
+		long[] keys;
+
+		// the posting list of each slot
+		RowBitmap[] values;
+
+		// number of slots in use
+		int size;
+
+		// marks a free slot, no trigram of chars packs to -1
+		static final long EMPTY = -1;
+
+		/**
+		 * Package constructor for an empty map
+		 */
+		PostingMap() {
+			this.keys = new long[1024];
+			this.values = new RowBitmap[1024];
+			Arrays.fill(this.keys, EMPTY);
+		}
+
+		/**
+		 * @return the posting list of the trigram, or null if it has none
+		 */
+		RowBitmap get(long trigram) {
+			int slot = slot(this.keys, trigram);
+			return this.keys[slot] == EMPTY ? null : this.values[slot];
+		}
+
+		/**
+		 * @return the posting list of the trigram, added empty if it has none
+		 */
+		RowBitmap getOrCreate(long trigram) {
+			int slot = slot(this.keys, trigram);
+			if (this.keys[slot] == EMPTY) {
+				if (2 * (this.size + 1) > this.keys.length) {
+					grow();
+					slot = slot(this.keys, trigram);
+				}
+				this.keys[slot] = trigram;
+				this.values[slot] = new RowBitmap();
+				this.size++;
+			}
+			return this.values[slot];
+		}
+
+		/**
+		 * Removes the trigram, moving back any later entries of its probe run
+		 */
+		void remove(long trigram) {
+			int mask = this.keys.length - 1;
+			int slot = slot(this.keys, trigram);
+			if (this.keys[slot] == EMPTY) {
+				return;
+			}
+			this.keys[slot] = EMPTY;
+			this.values[slot] = null;
+			this.size--;
+
+			// re-insert the rest of the run so no lookup stops at the new gap
+			for (int i = (slot + 1) & mask; this.keys[i] != EMPTY; i = (i + 1) & mask) {
+				long key = this.keys[i];
+				RowBitmap value = this.values[i];
+				this.keys[i] = EMPTY;
+				this.values[i] = null;
+				int target = slot(this.keys, key);
+				this.keys[target] = key;
+				this.values[target] = value;
+			}
+		}
+
+		/**
+		 * Doubles the table
+		 */
+		private void grow() {
+			long[] oldKeys = this.keys;
+			RowBitmap[] oldValues = this.values;
+			this.keys = new long[oldKeys.length * 2];
+			this.values = new RowBitmap[oldKeys.length * 2];
+			Arrays.fill(this.keys, EMPTY);
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != EMPTY) {
+					int slot = slot(this.keys, oldKeys[i]);
+					this.keys[slot] = oldKeys[i];
+					this.values[slot] = oldValues[i];
+				}
+			}
+		}
+
+		/**
+		 * @return the slot holding the trigram, or the free slot where it belongs
+		 */
+		private static int slot(long[] keys, long trigram) {
+			int mask = keys.length - 1;
+			long h = trigram * 0x9E3779B97F4A7C15L;
+			int i = (int) (h >>> 32) & mask;
+			while (keys[i] != EMPTY && keys[i] != trigram) {
+				i = (i + 1) & mask;
+			}
+			return i;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ * Filename:   Nutrient.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+/**
+ * The 5 nutrients tracked for every food item. The ordinal of each nutrient is
+ * the index of its column in NutrientColumns.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public enum Nutrient {
+	CALORIES("calories"), FAT("fat"), CARBOHYDRATE("carbohydrate"), FIBER("fiber"), PROTEIN("protein");
+
+	// The 5 nutrients in ordinal order, shared since values() copies its array on
+	// every call; must not be modified
+	static final Nutrient[] VALUES = values();
+
+	// The name used for the nutrient in rules and .csv files
+	private final String name;
+
+	/**
+	 * Private constructor
+	 *
+	 * @param name
+	 *            the name used for the nutrient in rules and .csv files
+	 */
+	private Nutrient(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Gets the name used for the nutrient in rules and .csv files
+	 *
+	 * @return the lower case name of the nutrient
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Finds the nutrient with the given name
+	 *
+	 * @param name
+	 *            the name of the nutrient [CASE-INSENSITIVE]
+	 * @return the nutrient, or null if no nutrient has that name
+	 */
+	public static Nutrient fromName(String name) {
+		for (Nutrient nutrient : VALUES) {
+			if (nutrient.name.equalsIgnoreCase(name)) {
+				return nutrient;
+			}
+		}
+		return null;
+	}
+}
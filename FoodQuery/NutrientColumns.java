@@ -0,0 +1,125 @@
+/**
+ * Filename:   NutrientColumns.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Columnar storage for the nutrient values of food items. Each nutrient has one
+ * double[] column and every food item has a dense row id, so the value of a
+ * nutrient for a row is columns[nutrient][row]. A scan over one nutrient walks
+ * a single primitive array, with no boxing and no hashing.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class NutrientColumns {
+
+	// One column per nutrient, indexed by Nutrient.ordinal() and then by row id.
+	// Growing replaces the whole array in one volatile write, so a reader of the
+	// rows in use never sees a column that is still being copied.
+	private volatile double[][] columns;
+
+	// Number of rows in use
+	private int size;
+
+	/**
+	 * Public constructor for an empty store
+	 */
+	public NutrientColumns() {
+		this.columns = new double[Nutrient.values().length][16];
+		this.size = 0;
+	}
+
+	/**
+	 * Package constructor for a store over columns that are already filled, as
+	 * read from a snapshot
+	 *
+	 * @param columns
+	 *            one column per nutrient, indexed by Nutrient.ordinal()
+	 * @param size
+	 *            number of rows in use, every column must be at least this long
+	 */
+	NutrientColumns(double[][] columns, int size) {
+		this.columns = columns;
+		this.size = size;
+	}
+
+	/**
+	 * Adds a row with every nutrient set to 0
+	 *
+	 * @return the row id of the new row
+	 */
+	public int addRow() {
+		if (this.size == this.columns[0].length) {
+			double[][] grown = new double[this.columns.length][];
+			for (int n = 0; n < grown.length; n++) {
+				grown[n] = Arrays.copyOf(this.columns[n], Math.max(16, this.size * 2));
+			}
+			this.columns = grown;
+		}
+		return this.size++;
+	}
+
+	/**
+	 * @return the number of rows in the store
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Gets the value of a nutrient for a row
+	 *
+	 * @param row
+	 *            the row id
+	 * @param nutrient
+	 *            the nutrient
+	 * @return the value of the nutrient
+	 */
+	public double get(int row, Nutrient nutrient) {
+		return this.columns[nutrient.ordinal()][row];
+	}
+
+	/**
+	 * Sets the value of a nutrient for a row
+	 *
+	 * @param row
+	 *            the row id
+	 * @param nutrient
+	 *            the nutrient
+	 * @param value
+	 *            the new value of the nutrient
+	 */
+	public void set(int row, Nutrient nutrient, double value) {
+		this.columns[nutrient.ordinal()][row] = value;
+	}
+
+	/**
+	 * Gets the backing column of a nutrient for scan loops. Only the first size()
+	 * entries are rows, and the array is replaced when the store grows, so it
+	 * must not be kept across an addRow.
+	 *
+	 * @param nutrient
+	 *            the nutrient
+	 * @return the column of the nutrient, indexed by row id
+	 */
+	public double[] column(Nutrient nutrient) {
+		return this.columns[nutrient.ordinal()];
+	}
+}
@@ -0,0 +1,284 @@
+/**
+ * Filename:   OnDiskCatalog.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+/**
+ * A read-only catalog written by StreamingLoader, for catalogs too large for
+ * the heap. Nothing but the open files is held in memory: food items are read
+ * from the row file when asked for, and each nutrient has a MappedBPTree whose
+ * pages are held by the operating system.
+ *
+ * A catalog directory holds rows.dat, the food items one after another, and
+ * rows.off, the offset of each food item in rows.dat as a long followed by the
+ * length of rows.dat, so food item i is the bytes between offsets i and i + 1.
+ * Each food item is its id and name as modified UTF-8 and the values of the 5
+ * nutrients as doubles, in Nutrient order. The index of each nutrient is in
+ * <nutrient>.idx.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class OnDiskCatalog implements Closeable {
+
+	// The food items
+	private final FileChannel rows;
+
+	// Where each food item starts in the row file
+	private final FileChannel offsets;
+
+	// Index of each nutrient, by ordinal
+	private final MappedBPTree[] indexes;
+
+	// Number of food items
+	private final int size;
+
+	/**
+	 * Private constructor, catalogs are created with open()
+	 */
+	private OnDiskCatalog(FileChannel rows, FileChannel offsets, MappedBPTree[] indexes, int size) {
+		this.rows = rows;
+		this.offsets = offsets;
+		this.indexes = indexes;
+		this.size = size;
+	}
+
+	/**
+	 * Opens a catalog directory written by StreamingLoader
+	 *
+	 * @param directory
+	 *            the catalog directory
+	 * @return the catalog
+	 * @throws IOException
+	 *             if a file of the catalog is missing or cannot be read
+	 */
+	public static OnDiskCatalog open(File directory) throws IOException {
+		FileChannel rows = FileChannel.open(rowFile(directory).toPath(), StandardOpenOption.READ);
+		try {
+			FileChannel offsets = FileChannel.open(offsetFile(directory).toPath(), StandardOpenOption.READ);
+			try {
+				long size = offsets.size() / 8 - 1;
+				if (size < 0 || size > Integer.MAX_VALUE || offsets.size() % 8 != 0) {
+					throw new IOException("Corrupt offset file: " + offsetFile(directory));
+				}
+
+				MappedBPTree[] indexes = new MappedBPTree[Nutrient.VALUES.length];
+				for (Nutrient nutrient : Nutrient.VALUES) {
+					indexes[nutrient.ordinal()] = MappedBPTree.open(indexFile(directory, nutrient));
+					if (indexes[nutrient.ordinal()].size() != size) {
+						throw new IOException("Index does not match the rows: " + indexFile(directory, nutrient));
+					}
+				}
+				return new OnDiskCatalog(rows, offsets, indexes, (int) size);
+			} catch (IOException e) {
+				offsets.close();
+				throw e;
+			}
+		} catch (IOException e) {
+			rows.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the number of food items in the catalog
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Reads a food item from the row file
+	 *
+	 * @param row
+	 *            the row id of the food item, its position in the loaded file
+	 * @return a new food item, not in any catalog
+	 * @throws IOException
+	 *             if the row file cannot be read
+	 * @throws IndexOutOfBoundsException
+	 *             if row is not in [0, size())
+	 */
+	public FoodItem getFoodItem(int row) throws IOException {
+		if (row < 0 || row >= this.size) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + this.size);
+		}
+		ByteBuffer bounds = ByteBuffer.allocate(16);
+		readFully(this.offsets, bounds, 8L * row);
+		long start = bounds.getLong(0);
+		long end = bounds.getLong(8);
+
+		ByteBuffer record = ByteBuffer.allocate((int) (end - start));
+		readFully(this.rows, record, start);
+		return readRow(new DataInputStream(new ByteArrayInputStream(record.array())));
+	}
+
+	/**
+	 * Reads the food items of the given rows, in the order of the rows
+	 *
+	 * @param rowIds
+	 *            bitmap of row ids
+	 * @return the food items
+	 * @throws IOException
+	 *             if the row file cannot be read
+	 */
+	public List<FoodItem> getFoodItems(RowBitmap rowIds) throws IOException {
+		List<FoodItem> foodItems = new ArrayList<FoodItem>(rowIds.cardinality());
+		PrimitiveIterator.OfInt it = rowIds.iterator();
+		while (it.hasNext()) {
+			foodItems.add(getFoodItem(it.nextInt()));
+		}
+		return foodItems;
+	}
+
+	/**
+	 * Gets the index of a nutrient
+	 *
+	 * @param nutrient
+	 *            the nutrient
+	 * @return the tree of the nutrient's values to row ids
+	 */
+	public MappedBPTree getIndex(Nutrient nutrient) {
+		return this.indexes[nutrient.ordinal()];
+	}
+
+	/**
+	 * Gets the rows that satisfy every window of a query. The windows are
+	 * searched on the indexes, smallest count first, and intersected.
+	 *
+	 * @param query
+	 *            the compiled query
+	 * @return bitmap of the matching row ids
+	 */
+	public RowBitmap filterRows(CompiledQuery query) {
+		RowBitmap matches = new RowBitmap();
+		if (query.isEmpty()) {
+			return matches;
+		}
+		List<Nutrient> nutrients = new ArrayList<Nutrient>(query.getNutrients());
+		if (nutrients.isEmpty()) {
+			for (int row = 0; row < this.size; row++) {
+				matches.add(row);
+			}
+			return matches;
+		}
+
+		// the most selective window first keeps the intersections small
+		nutrients.sort((a, b) -> Integer.compare(count(query, a), count(query, b)));
+		for (int i = 0; i < nutrients.size(); i++) {
+			Nutrient nutrient = nutrients.get(i);
+			RowBitmap rows = new RowBitmap();
+			PrimitiveIterator.OfInt it = getIndex(nutrient).rangeRows(query.lo(nutrient), query.hi(nutrient));
+			while (it.hasNext()) {
+				rows.add(it.nextInt());
+			}
+			matches = i == 0 ? rows : matches.and(rows);
+			if (matches.isEmpty()) {
+				break;
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Counts the rows in a query's window on a nutrient
+	 */
+	private int count(CompiledQuery query, Nutrient nutrient) {
+		return getIndex(nutrient).count(query.lo(nutrient), true, query.hi(nutrient), true);
+	}
+
+	/**
+	 * Closes the row and offset files. The indexes stay mapped until they are
+	 * garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			this.offsets.close();
+		} finally {
+			this.rows.close();
+		}
+	}
+
+	/**
+	 * @return the row file of a catalog directory
+	 */
+	static File rowFile(File directory) {
+		return new File(directory, "rows.dat");
+	}
+
+	/**
+	 * @return the offset file of a catalog directory
+	 */
+	static File offsetFile(File directory) {
+		return new File(directory, "rows.off");
+	}
+
+	/**
+	 * @return the index file of a nutrient in a catalog directory
+	 */
+	static File indexFile(File directory, Nutrient nutrient) {
+		return new File(directory, nutrient.getName() + ".idx");
+	}
+
+	/**
+	 * Writes a food item in the format of the row file
+	 */
+	static void writeRow(DataOutputStream out, FoodItem foodItem) throws IOException {
+		out.writeUTF(foodItem.getID());
+		out.writeUTF(foodItem.getName());
+		for (Nutrient nutrient : Nutrient.VALUES) {
+			out.writeDouble(foodItem.getNutrientValue(nutrient));
+		}
+	}
+
+	/**
+	 * Reads a food item in the format of the row file
+	 */
+	private static FoodItem readRow(DataInputStream in) throws IOException {
+		FoodItem foodItem = new FoodItem(in.readUTF(), in.readUTF());
+		for (Nutrient nutrient : Nutrient.VALUES) {
+			foodItem.addNutrient(nutrient, in.readDouble());
+		}
+		return foodItem;
+	}
+
+	/**
+	 * Fills a buffer from a channel starting at a position
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new EOFException("Unexpected end of file");
+			}
+		}
+	}
+}
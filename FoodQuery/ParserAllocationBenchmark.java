@@ -0,0 +1,181 @@
+/**
+ * Filename:   ParserAllocationBenchmark.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Measures the bytes allocated per row while reading a food item file already
+ * in memory, using the allocation counter the JVM keeps for each thread. It
+ * measures Scanner and String.split, the way loadFoodItems read before
+ * FoodRecordParser, then FoodRecordParser.parseLines on the bytes, then only
+ * what every reader has to make: the id and name strings and the food item
+ * with its values, built from line offsets found beforehand.
+ *
+ * The difference between the last two is what the parser itself allocates per
+ * row, which should be close to nothing. The list holding the food items is
+ * made before measuring, so it is not counted.
+ *
+ * Usage: java application.ParserAllocationBenchmark [file]
+ *
+ * The file must have a line break after every line and no blank lines. Without
+ * a file, the file of LoadBenchmark.generate is used.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class ParserAllocationBenchmark {
+
+	// Food items in a generated file
+	private static final int GENERATED_ROWS = 400000;
+
+	// Rounds of each case, the first ones warm up the JIT
+	private static final int ROUNDS = 5;
+
+	/**
+	 * Runs the benchmark
+	 *
+	 * @param args
+	 *            the file to read, optional
+	 * @throws IOException
+	 *             if the file cannot be read or generated
+	 */
+	public static void main(String[] args) throws IOException {
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			System.out.println("This JVM does not count allocated bytes per thread");
+			return;
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		File file = args.length > 0 ? new File(args[0]) : LoadBenchmark.generate(GENERATED_ROWS);
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		int[] lineStarts = lineStarts(bytes);
+		int rows = lineStarts.length - 1;
+		System.out.printf("%s, %d rows%n", file, rows);
+
+		for (int round = 1; round <= ROUNDS; round++) {
+			List<FoodItem> foodItems = new ArrayList<FoodItem>(rows);
+			long start = allocatedBytes(threads);
+			readWithScanner(bytes, foodItems);
+			long scanner = allocatedBytes(threads) - start;
+
+			foodItems = new ArrayList<FoodItem>(rows);
+			FoodRecordParser parser = new FoodRecordParser();
+			start = allocatedBytes(threads);
+			parser.parseLines(buffer, 0, bytes.length, foodItems::add);
+			long parsed = allocatedBytes(threads) - start;
+
+			foodItems = new ArrayList<FoodItem>(rows);
+			start = allocatedBytes(threads);
+			readFieldsOnly(bytes, lineStarts, foodItems);
+			long fields = allocatedBytes(threads) - start;
+
+			System.out.printf("round %d  Scanner + split %5d B/row  FoodRecordParser %4d B/row  "
+					+ "id, name and food item %4d B/row  parser overhead %3d B/row%n", round, scanner / rows,
+					parsed / rows, fields / rows, (parsed - fields) / rows);
+		}
+	}
+
+	/**
+	 * @return the bytes the current thread has allocated so far
+	 */
+	private static long allocatedBytes(ThreadMXBean threads) {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Reads the lines the way loadFoodItems did before FoodRecordParser
+	 */
+	private static void readWithScanner(byte[] bytes, List<FoodItem> foodItems) {
+		try (Scanner readFile = new Scanner(new ByteArrayInputStream(bytes), "UTF-8")) {
+			while (readFile.hasNextLine()) {
+				String[] currLine = readFile.nextLine().split(",");
+				if (currLine.length == 0 || currLine[0].equals("")) {
+					break;
+				}
+				FoodItem foodItem = new FoodItem(currLine[0], currLine[1]);
+				for (int i = 2; i + 1 < currLine.length; i += 2) {
+					foodItem.addNutrient(currLine[i], Double.parseDouble(currLine[i + 1]));
+				}
+				foodItems.add(foodItem);
+			}
+		}
+	}
+
+	/**
+	 * Makes only the id, the name and the food item of each line, with every
+	 * nutrient set to 0, from offsets already known
+	 */
+	private static void readFieldsOnly(byte[] bytes, int[] lineStarts, List<FoodItem> foodItems) {
+		for (int line = 0; line + 1 < lineStarts.length; line++) {
+			int idEnd = indexOf(bytes, ',', lineStarts[line]);
+			int nameEnd = indexOf(bytes, ',', idEnd + 1);
+			FoodItem foodItem = new FoodItem(
+					new String(bytes, lineStarts[line], idEnd - lineStarts[line], StandardCharsets.ISO_8859_1),
+					new String(bytes, idEnd + 1, nameEnd - idEnd - 1, StandardCharsets.ISO_8859_1));
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				foodItem.addNutrient(nutrient, 0);
+			}
+			foodItems.add(foodItem);
+		}
+	}
+
+	/**
+	 * @return the start of every line, followed by the end of the last one
+	 */
+	private static int[] lineStarts(byte[] bytes) {
+		int lines = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] == '\n') {
+				lines++;
+			}
+		}
+		int[] starts = new int[lines + 1];
+		int line = 1;
+		for (int i = 0; i < bytes.length && line <= lines; i++) {
+			if (bytes[i] == '\n') {
+				starts[line++] = i + 1;
+			}
+		}
+		return starts;
+	}
+
+	/**
+	 * @return the index of the first b at or after from
+	 */
+	private static int indexOf(byte[] bytes, char b, int from) {
+		int i = from;
+		while (bytes[i] != b) {
+			i++;
+		}
+		return i;
+	}
+}
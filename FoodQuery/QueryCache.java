@@ -0,0 +1,227 @@
+/**
+ * Filename:   QueryCache.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A cache of filter results in front of FoodData. Each result is a bitmap of
+ * row ids, keyed by its canonical query, and the least recently used results
+ * are evicted once the cache holds too many entries or too many bytes.
+ *
+ * Results are only valid for the catalog they were computed on. FoodData bumps
+ * a version number after every change to the catalog, and a lookup or store
+ * with a newer version drops every cached result first. A result computed on
+ * an older version than the cache's is never stored.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class QueryCache {
+
+	// Cached results by query, least recently used first
+	private final LinkedHashMap<Object, RowBitmap> results;
+
+	// Most results the cache holds
+	private final int maxEntries;
+
+	// Most bytes the cached results may take
+	private final long maxBytes;
+
+	// Catalog version the cached results were computed on
+	private long version;
+
+	// Bytes taken by the cached results
+	private long bytes;
+
+	// Lookups that found a result
+	private long hits;
+
+	// Lookups that found nothing
+	private long misses;
+
+	// Results dropped to stay within the bounds
+	private long evictions;
+
+	// Times every result was dropped because the catalog changed
+	private long invalidations;
+
+	/**
+	 * Public constructor for an empty cache
+	 *
+	 * @param maxEntries
+	 *            most results the cache holds
+	 * @param maxBytes
+	 *            most bytes the cached results may take
+	 */
+	public QueryCache(int maxEntries, long maxBytes) {
+		if (maxEntries < 1 || maxBytes < 1) {
+			throw new IllegalArgumentException("A query cache needs room for at least one result");
+		}
+		this.results = new LinkedHashMap<Object, RowBitmap>(16, 0.75f, true);
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Looks up the result of a query
+	 *
+	 * @param query
+	 *            the canonical query
+	 * @param version
+	 *            the current catalog version
+	 * @return the cached result, or null if there is none
+	 */
+	public synchronized RowBitmap get(Object query, long version) {
+		this.invalidateBefore(version);
+		RowBitmap result = this.results.get(query);
+		if (result == null) {
+			this.misses++;
+		} else {
+			this.hits++;
+		}
+		return result;
+	}
+
+	/**
+	 * Stores the result of a query. The result is frozen, since every later hit
+	 * shares it.
+	 *
+	 * @param query
+	 *            the canonical query
+	 * @param version
+	 *            the catalog version the result was computed on
+	 * @param result
+	 *            bitmap of the matching row ids
+	 */
+	public synchronized void put(Object query, long version, RowBitmap result) {
+		this.invalidateBefore(version);
+		long size = result.sizeInBytes();
+		if (version != this.version || size > this.maxBytes) {
+			return;
+		}
+
+		result.freeze();
+		RowBitmap previous = this.results.put(query, result);
+		if (previous != null) {
+			this.bytes -= previous.sizeInBytes();
+		}
+		this.bytes += size;
+
+		// evict from the least recently used end
+		Iterator<RowBitmap> it = this.results.values().iterator();
+		while (this.results.size() > this.maxEntries || this.bytes > this.maxBytes) {
+			RowBitmap eldest = it.next();
+			this.bytes -= eldest.sizeInBytes();
+			it.remove();
+			this.evictions++;
+		}
+	}
+
+	/**
+	 * Drops every cached result if they were computed before the given version
+	 *
+	 * @param version
+	 *            the current catalog version
+	 */
+	private void invalidateBefore(long version) {
+		if (version > this.version) {
+			if (!this.results.isEmpty()) {
+				this.results.clear();
+				this.invalidations++;
+			}
+			this.bytes = 0;
+			this.version = version;
+		}
+	}
+
+	/**
+	 * Drops every cached result and resets the metrics
+	 */
+	public synchronized void clear() {
+		this.results.clear();
+		this.bytes = 0;
+		this.hits = 0;
+		this.misses = 0;
+		this.evictions = 0;
+		this.invalidations = 0;
+	}
+
+	/**
+	 * @return the number of cached results
+	 */
+	public synchronized int size() {
+		return this.results.size();
+	}
+
+	/**
+	 * @return the bytes taken by the cached results
+	 */
+	public synchronized long getBytes() {
+		return this.bytes;
+	}
+
+	/**
+	 * @return the number of lookups that found a result
+	 */
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	/**
+	 * @return the number of lookups that found nothing
+	 */
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * @return the number of results dropped to stay within the bounds
+	 */
+	public synchronized long getEvictions() {
+		return this.evictions;
+	}
+
+	/**
+	 * @return the number of times the catalog changed under cached results
+	 */
+	public synchronized long getInvalidations() {
+		return this.invalidations;
+	}
+
+	/**
+	 * @return the fraction of lookups that found a result, 0 if there were none
+	 */
+	public synchronized double getHitRate() {
+		long lookups = this.hits + this.misses;
+		return lookups == 0 ? 0 : (double) this.hits / lookups;
+	}
+
+	/**
+	 * Returns a string representation of the cache
+	 *
+	 * @return the size and the metrics of the cache
+	 */
+	@Override
+	public synchronized String toString() {
+		return "QueryCache[entries=" + this.results.size() + "/" + this.maxEntries + ", bytes=" + this.bytes + "/"
+				+ this.maxBytes + ", hits=" + this.hits + ", misses=" + this.misses + ", evictions=" + this.evictions
+				+ ", invalidations=" + this.invalidations + "]";
+	}
+}
@@ -0,0 +1,186 @@
+/**
+ * Filename:   QueryPlan.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The plan FoodData chose for a set of nutrient rules. A plan scans one index,
+ * the driver, for the candidate rows and checks every other rule as a
+ * predicate on each candidate's nutrient values. The driver is the rule with
+ * the fewest matching rows, as estimated from the index counts, so the scan
+ * touches as few rows as possible.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class QueryPlan {
+
+	/**
+	 * How the candidate rows are found
+	 */
+	public enum Strategy {
+		// no food item can match, nothing is scanned
+		EMPTY,
+		// there are no rules, every food item matches
+		ALL,
+		// a range scan of one nutrient index
+		INDEX_SCAN,
+		// a range scan of a composite index over its leading nutrients
+		COMPOSITE_SCAN
+	}
+
+	// How the candidate rows are found
+	final Strategy strategy;
+
+	// The index scanned for an INDEX_SCAN, null otherwise
+	final DoubleBPTree driverIndex;
+
+	// The index scanned for a COMPOSITE_SCAN, null otherwise
+	final CompositeIndex composite;
+
+	// The nutrient of the scanned index, or the composite's nutrients
+	final String driver;
+
+	// The [lo, hi] window of the driver for an INDEX_SCAN
+	final double[] driverWindow;
+
+	// Estimated number of candidate rows the scan yields
+	final int estimatedRows;
+
+	// The compiled rules the plan answers
+	final CompiledQuery query;
+
+	// Nutrients checked on each candidate, most selective first
+	final List<Nutrient> predicates;
+
+	// The [lo, hi] window of each predicate, parallel to predicates
+	final List<double[]> predicateWindows;
+
+	// Estimated number of rows each predicate matches on its own
+	final List<Integer> predicateRows;
+
+	/**
+	 * Package constructor, plans are made by FoodData
+	 */
+	QueryPlan(Strategy strategy, DoubleBPTree driverIndex, CompositeIndex composite, String driver,
+			double[] driverWindow, int estimatedRows, CompiledQuery query) {
+		this.strategy = strategy;
+		this.driverIndex = driverIndex;
+		this.composite = composite;
+		this.driver = driver;
+		this.driverWindow = driverWindow;
+		this.estimatedRows = estimatedRows;
+		this.query = query;
+		this.predicates = new ArrayList<Nutrient>();
+		this.predicateWindows = new ArrayList<double[]>();
+		this.predicateRows = new ArrayList<Integer>();
+	}
+
+	/**
+	 * Adds a rule that is checked on every candidate row
+	 *
+	 * @param nutrient
+	 *            the nutrient of the rule
+	 * @param window
+	 *            the [lo, hi] window of the rule
+	 * @param estimatedRows
+	 *            estimated number of rows the rule matches on its own
+	 */
+	void addPredicate(Nutrient nutrient, double[] window, int estimatedRows) {
+		this.predicates.add(nutrient);
+		this.predicateWindows.add(window);
+		this.predicateRows.add(estimatedRows);
+	}
+
+	/**
+	 * @return how the candidate rows are found
+	 */
+	public Strategy getStrategy() {
+		return this.strategy;
+	}
+
+	/**
+	 * @return the nutrient of the scanned index, or null if no index is scanned
+	 */
+	public String getDriver() {
+		return this.driver;
+	}
+
+	/**
+	 * @return estimated number of candidate rows the scan yields
+	 */
+	public int getEstimatedRows() {
+		return this.estimatedRows;
+	}
+
+	/**
+	 * @return the nutrients checked on each candidate, in the order they are
+	 *         checked
+	 */
+	public List<Nutrient> getPredicates() {
+		return Collections.unmodifiableList(this.predicates);
+	}
+
+	/**
+	 * Describes the plan, one step per line, for example
+	 *
+	 * <pre>
+	 * Index scan on fiber [17.0, 17.0], est. 3 rows
+	 *   Filter calories [-Infinity, 400.0], est. 210 rows
+	 * </pre>
+	 *
+	 * @return the plan as text
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		switch (this.strategy) {
+		case EMPTY:
+			sb.append("Empty result, no scan");
+			break;
+		case ALL:
+			sb.append("All rows, est. ").append(this.estimatedRows).append(" rows");
+			break;
+		case INDEX_SCAN:
+			sb.append("Index scan on ").append(this.driver).append(' ').append(window(this.driverWindow))
+					.append(", est. ").append(this.estimatedRows).append(" rows");
+			break;
+		case COMPOSITE_SCAN:
+			sb.append("Composite index scan on ").append(this.driver).append(", est. at most ")
+					.append(this.estimatedRows).append(" rows");
+			break;
+		}
+
+		for (int i = 0; i < this.predicates.size(); i++) {
+			sb.append("\n  Filter ").append(this.predicates.get(i).getName()).append(' ')
+					.append(window(this.predicateWindows.get(i))).append(", est. ").append(this.predicateRows.get(i))
+					.append(" rows");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the window as [lo, hi]
+	 */
+	private static String window(double[] window) {
+		return "[" + window[0] + ", " + window[1] + "]";
+	}
+}
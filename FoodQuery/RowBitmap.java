@@ -0,0 +1,703 @@
+/**
+ * Filename:   RowBitmap.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    Container layout after Roaring bitmaps (Chambi, Lemire et al.)
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A compressed set of row ids. Row ids are split into chunks of 65536 by their
+ * high 16 bits, and each chunk that holds any row is stored in a container. A
+ * sparse chunk is a sorted array of the low 16 bits, and a dense chunk is a
+ * bitmap of 1024 longs. AND and OR work one container at a time, with word-wide
+ * operations when both sides are bitmaps, so intersecting the results of
+ * several rules never compares rows one by one across whole lists.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class RowBitmap {
+
+	// Most rows an array container holds before it becomes a bitmap container
+	private static final int ARRAY_LIMIT = 4096;
+
+	// High 16 bits of the rows in each container, in ascending order
+	private char[] keys;
+
+	// The containers, parallel to keys
+	private Container[] containers;
+
+	// Number of containers in use
+	private int size;
+
+	// True once the bitmap is shared and may no longer change
+	private boolean frozen;
+
+	/**
+	 * Public constructor for an empty bitmap
+	 */
+	public RowBitmap() {
+		this.keys = new char[4];
+		this.containers = new Container[4];
+		this.size = 0;
+	}
+
+	/**
+	 * Builds a bitmap from row ids in any order. The rows are sorted once, so each
+	 * container is filled in a single pass.
+	 *
+	 * @param rows
+	 *            the row ids, which are not changed
+	 * @return a bitmap of the rows
+	 */
+	public static RowBitmap of(int[] rows) {
+		int[] sorted = rows.clone();
+		Arrays.sort(sorted);
+
+		RowBitmap bitmap = new RowBitmap();
+		int from = 0;
+		while (from < sorted.length) {
+
+			// find the run of rows that share the high 16 bits
+			char key = (char) (sorted[from] >>> 16);
+			int to = from;
+			while (to < sorted.length && (char) (sorted[to] >>> 16) == key) {
+				to++;
+			}
+
+			char[] low = new char[to - from];
+			int count = 0;
+			for (int i = from; i < to; i++) {
+				char value = (char) sorted[i];
+				if (count == 0 || low[count - 1] != value) {
+					low[count++] = value;
+				}
+			}
+
+			Container container = new ArrayContainer(low, count);
+			if (count > ARRAY_LIMIT) {
+				container = ((ArrayContainer) container).toBitmap();
+			}
+			bitmap.append(key, container);
+			from = to;
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Adds a row id
+	 *
+	 * @param row
+	 *            the row id to add
+	 */
+	public void add(int row) {
+		if (this.frozen) {
+			throw new UnsupportedOperationException("Frozen bitmaps are read-only");
+		}
+
+		char key = (char) (row >>> 16);
+		int i = indexOf(key);
+		if (i < 0) {
+			i = -i - 1;
+			insertAt(i, key, new ArrayContainer(new char[4], 0));
+		}
+		this.containers[i] = this.containers[i].add((char) row);
+	}
+
+	/**
+	 * Removes a row id
+	 *
+	 * @param row
+	 *            the row id to remove
+	 * @return true if the row was in the bitmap
+	 */
+	public boolean remove(int row) {
+		if (this.frozen) {
+			throw new UnsupportedOperationException("Frozen bitmaps are read-only");
+		}
+
+		int i = indexOf((char) (row >>> 16));
+		if (i < 0 || !this.containers[i].contains((char) row)) {
+			return false;
+		}
+		this.containers[i] = this.containers[i].remove((char) row);
+
+		// drop the container once it is empty
+		if (this.containers[i].cardinality() == 0) {
+			System.arraycopy(this.keys, i + 1, this.keys, i, this.size - i - 1);
+			System.arraycopy(this.containers, i + 1, this.containers, i, this.size - i - 1);
+			this.size--;
+			this.containers[this.size] = null;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if the bitmap holds a row id
+	 *
+	 * @param row
+	 *            the row id to look for
+	 * @return true if the row is in the bitmap
+	 */
+	public boolean contains(int row) {
+		int i = indexOf((char) (row >>> 16));
+		return i >= 0 && this.containers[i].contains((char) row);
+	}
+
+	/**
+	 * @return the number of row ids in the bitmap
+	 */
+	public int cardinality() {
+		int cardinality = 0;
+		for (int i = 0; i < this.size; i++) {
+			cardinality += this.containers[i].cardinality();
+		}
+		return cardinality;
+	}
+
+	/**
+	 * Makes the bitmap read-only, so that it can be shared. and() and or() still
+	 * work, since they build new bitmaps.
+	 */
+	public void freeze() {
+		this.frozen = true;
+	}
+
+	/**
+	 * Estimates the memory taken by the bitmap
+	 *
+	 * @return the approximate size of the bitmap in bytes
+	 */
+	public long sizeInBytes() {
+		long bytes = 32 + 2L * this.keys.length + 8L * this.containers.length;
+		for (int i = 0; i < this.size; i++) {
+			bytes += this.containers[i].sizeInBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return true if the bitmap holds no row ids
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Intersects this bitmap with another. Only chunks present in both bitmaps
+	 * are visited.
+	 *
+	 * @param other
+	 *            the bitmap to intersect with
+	 * @return a new bitmap of the rows in both bitmaps
+	 */
+	public RowBitmap and(RowBitmap other) {
+		RowBitmap result = new RowBitmap();
+		int i = 0;
+		int j = 0;
+		while (i < this.size && j < other.size) {
+			if (this.keys[i] < other.keys[j]) {
+				i++;
+			} else if (this.keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				Container container = this.containers[i].and(other.containers[j]);
+				if (container.cardinality() > 0) {
+					result.append(this.keys[i], container);
+				}
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Unites this bitmap with another
+	 *
+	 * @param other
+	 *            the bitmap to unite with
+	 * @return a new bitmap of the rows in either bitmap
+	 */
+	public RowBitmap or(RowBitmap other) {
+		RowBitmap result = new RowBitmap();
+		int i = 0;
+		int j = 0;
+		while (i < this.size || j < other.size) {
+			if (j == other.size || (i < this.size && this.keys[i] < other.keys[j])) {
+				result.append(this.keys[i], this.containers[i].copy());
+				i++;
+			} else if (i == this.size || this.keys[i] > other.keys[j]) {
+				result.append(other.keys[j], other.containers[j].copy());
+				j++;
+			} else {
+				result.append(this.keys[i], this.containers[i].or(other.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets an iterator over the row ids in ascending order
+	 *
+	 * @return iterator over the row ids
+	 */
+	public PrimitiveIterator.OfInt iterator() {
+		return new RowIterator();
+	}
+
+	/**
+	 * @return the row ids in ascending order
+	 */
+	public int[] toArray() {
+		int[] rows = new int[cardinality()];
+		int count = 0;
+		for (int i = 0; i < this.size; i++) {
+			int[] chunk = this.containers[i].toRows(this.keys[i] << 16);
+			System.arraycopy(chunk, 0, rows, count, chunk.length);
+			count += chunk.length;
+		}
+		return rows;
+	}
+
+	/**
+	 * Returns a string representation of the bitmap
+	 *
+	 * @return the row ids in ascending order
+	 */
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+	/**
+	 * Finds the container for the given high bits
+	 *
+	 * @param key
+	 *            the high 16 bits of a row id
+	 * @return the index of the container, or -(insertion point) - 1 if none
+	 */
+	private int indexOf(char key) {
+		return Arrays.binarySearch(this.keys, 0, this.size, key);
+	}
+
+	/**
+	 * Adds a container after all the others. Its key must be larger than every
+	 * key already in the bitmap.
+	 */
+	private void append(char key, Container container) {
+		insertAt(this.size, key, container);
+	}
+
+	/**
+	 * Inserts a container at the given index, growing the arrays when full
+	 */
+	private void insertAt(int i, char key, Container container) {
+		if (this.size == this.keys.length) {
+			this.keys = Arrays.copyOf(this.keys, this.size * 2);
+			this.containers = Arrays.copyOf(this.containers, this.size * 2);
+		}
+		System.arraycopy(this.keys, i, this.keys, i + 1, this.size - i);
+		System.arraycopy(this.containers, i, this.containers, i + 1, this.size - i);
+		this.keys[i] = key;
+		this.containers[i] = container;
+		this.size++;
+	}
+
+	/**
+	 * Iterates over the row ids one container at a time
+	 */
+	private class RowIterator implements PrimitiveIterator.OfInt {
+
+		// Index of the next container to expand
+		private int container = 0;
+
+		// Rows of the current container, with the high bits filled in
+		private int[] rows = new int[0];
+
+		// Index of the next row in rows
+		private int index = 0;
+
+		/**
+		 * @see java.util.Iterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext() {
+			while (this.index == this.rows.length && this.container < size) {
+				this.rows = containers[this.container].toRows(keys[this.container] << 16);
+				this.index = 0;
+				this.container++;
+			}
+			return this.index < this.rows.length;
+		}
+
+		/**
+		 * @see java.util.PrimitiveIterator.OfInt#nextInt()
+		 */
+		@Override
+		public int nextInt() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return this.rows[this.index++];
+		}
+	}
+
+	/**
+	 * The low 16 bits of the rows in one chunk of 65536 row ids
+	 */
+	private abstract static class Container {
+
+		/**
+		 * Adds a value, possibly changing the kind of container
+		 *
+		 * @return the container that now holds the value
+		 */
+		abstract Container add(char value);
+
+		/**
+		 * Removes a value, possibly changing the kind of container
+		 *
+		 * @return the container that now holds the other values
+		 */
+		abstract Container remove(char value);
+
+		/**
+		 * @return true if the container holds the value
+		 */
+		abstract boolean contains(char value);
+
+		/**
+		 * @return the number of values in the container
+		 */
+		abstract int cardinality();
+
+		/**
+		 * @return a new container of the values in both containers
+		 */
+		abstract Container and(Container other);
+
+		/**
+		 * @return a new container of the values in either container
+		 */
+		abstract Container or(Container other);
+
+		/**
+		 * @return a copy of the container
+		 */
+		abstract Container copy();
+
+		/**
+		 * @return the values in ascending order, each combined with the high bits
+		 */
+		abstract int[] toRows(int high);
+
+		/**
+		 * @return the approximate size of the container in bytes
+		 */
+		abstract long sizeInBytes();
+	}
+
+	/**
+	 * A sparse container, the values are kept sorted in a char array
+	 */
+	private static class ArrayContainer extends Container {
+
+		// The values in ascending order, only the first cardinality are in use
+		char[] values;
+
+		// Number of values in use
+		int cardinality;
+
+		/**
+		 * Package constructor
+		 *
+		 * @param values
+		 *            sorted distinct values
+		 * @param cardinality
+		 *            number of values in use
+		 */
+		ArrayContainer(char[] values, int cardinality) {
+			this.values = values;
+			this.cardinality = cardinality;
+		}
+
+		@Override
+		Container add(char value) {
+			int i = Arrays.binarySearch(this.values, 0, this.cardinality, value);
+			if (i >= 0) {
+				return this;
+			}
+			if (this.cardinality == ARRAY_LIMIT) {
+				return toBitmap().add(value);
+			}
+
+			i = -i - 1;
+			if (this.cardinality == this.values.length) {
+				this.values = Arrays.copyOf(this.values, Math.min(Math.max(this.cardinality * 2, 4), ARRAY_LIMIT));
+			}
+			System.arraycopy(this.values, i, this.values, i + 1, this.cardinality - i);
+			this.values[i] = value;
+			this.cardinality++;
+			return this;
+		}
+
+		@Override
+		Container remove(char value) {
+			int i = Arrays.binarySearch(this.values, 0, this.cardinality, value);
+			if (i >= 0) {
+				System.arraycopy(this.values, i + 1, this.values, i, this.cardinality - i - 1);
+				this.cardinality--;
+			}
+			return this;
+		}
+
+		@Override
+		boolean contains(char value) {
+			return Arrays.binarySearch(this.values, 0, this.cardinality, value) >= 0;
+		}
+
+		@Override
+		int cardinality() {
+			return this.cardinality;
+		}
+
+		@Override
+		Container and(Container other) {
+			char[] result = new char[this.cardinality];
+			int count = 0;
+			if (other instanceof BitmapContainer) {
+
+				// probe the bitmap for each value of the array
+				long[] words = ((BitmapContainer) other).words;
+				for (int i = 0; i < this.cardinality; i++) {
+					char value = this.values[i];
+					if ((words[value >>> 6] & (1L << value)) != 0) {
+						result[count++] = value;
+					}
+				}
+			} else {
+
+				// merge the two sorted arrays
+				ArrayContainer array = (ArrayContainer) other;
+				int i = 0;
+				int j = 0;
+				while (i < this.cardinality && j < array.cardinality) {
+					if (this.values[i] < array.values[j]) {
+						i++;
+					} else if (this.values[i] > array.values[j]) {
+						j++;
+					} else {
+						result[count++] = this.values[i];
+						i++;
+						j++;
+					}
+				}
+			}
+			return new ArrayContainer(result, count);
+		}
+
+		@Override
+		Container or(Container other) {
+			if (other instanceof BitmapContainer) {
+				return other.or(this);
+			}
+
+			// merge the two sorted arrays, a bitmap holds the result if it is large
+			ArrayContainer array = (ArrayContainer) other;
+			char[] result = new char[this.cardinality + array.cardinality];
+			int count = 0;
+			int i = 0;
+			int j = 0;
+			while (i < this.cardinality || j < array.cardinality) {
+				if (j == array.cardinality || (i < this.cardinality && this.values[i] < array.values[j])) {
+					result[count++] = this.values[i++];
+				} else if (i == this.cardinality || this.values[i] > array.values[j]) {
+					result[count++] = array.values[j++];
+				} else {
+					result[count++] = this.values[i];
+					i++;
+					j++;
+				}
+			}
+
+			ArrayContainer union = new ArrayContainer(result, count);
+			return count > ARRAY_LIMIT ? union.toBitmap() : union;
+		}
+
+		@Override
+		Container copy() {
+			return new ArrayContainer(Arrays.copyOf(this.values, this.cardinality), this.cardinality);
+		}
+
+		@Override
+		int[] toRows(int high) {
+			int[] rows = new int[this.cardinality];
+			for (int i = 0; i < this.cardinality; i++) {
+				rows[i] = high | this.values[i];
+			}
+			return rows;
+		}
+
+		@Override
+		long sizeInBytes() {
+			return 32 + 2L * this.values.length;
+		}
+
+		/**
+		 * @return a bitmap container of the same values
+		 */
+		BitmapContainer toBitmap() {
+			BitmapContainer bitmap = new BitmapContainer();
+			for (int i = 0; i < this.cardinality; i++) {
+				bitmap.words[this.values[i] >>> 6] |= 1L << this.values[i];
+			}
+			bitmap.cardinality = this.cardinality;
+			return bitmap;
+		}
+	}
+
+	/**
+	 * A dense container, one bit for each of the 65536 values of the chunk
+	 */
+	private static class BitmapContainer extends Container {
+
+		// The bits, value v is bit (v & 63) of words[v >>> 6]
+		long[] words;
+
+		// Number of bits set
+		int cardinality;
+
+		/**
+		 * Package constructor for an empty container
+		 */
+		BitmapContainer() {
+			this.words = new long[1024];
+			this.cardinality = 0;
+		}
+
+		@Override
+		Container add(char value) {
+			long bit = 1L << value;
+			if ((this.words[value >>> 6] & bit) == 0) {
+				this.words[value >>> 6] |= bit;
+				this.cardinality++;
+			}
+			return this;
+		}
+
+		@Override
+		Container remove(char value) {
+			long bit = 1L << value;
+			if ((this.words[value >>> 6] & bit) != 0) {
+				this.words[value >>> 6] &= ~bit;
+				this.cardinality--;
+			}
+			return this.cardinality <= ARRAY_LIMIT ? toArray() : this;
+		}
+
+		@Override
+		boolean contains(char value) {
+			return (this.words[value >>> 6] & (1L << value)) != 0;
+		}
+
+		@Override
+		int cardinality() {
+			return this.cardinality;
+		}
+
+		@Override
+		Container and(Container other) {
+			if (other instanceof ArrayContainer) {
+				return other.and(this);
+			}
+
+			// AND word by word, a small result goes back to an array
+			long[] otherWords = ((BitmapContainer) other).words;
+			BitmapContainer result = new BitmapContainer();
+			for (int i = 0; i < this.words.length; i++) {
+				result.words[i] = this.words[i] & otherWords[i];
+				result.cardinality += Long.bitCount(result.words[i]);
+			}
+			return result.cardinality <= ARRAY_LIMIT ? result.toArray() : result;
+		}
+
+		@Override
+		Container or(Container other) {
+			BitmapContainer result = (BitmapContainer) copy();
+			if (other instanceof ArrayContainer) {
+				ArrayContainer array = (ArrayContainer) other;
+				for (int i = 0; i < array.cardinality; i++) {
+					result.add(array.values[i]);
+				}
+				return result;
+			}
+
+			// OR word by word
+			long[] otherWords = ((BitmapContainer) other).words;
+			result.cardinality = 0;
+			for (int i = 0; i < result.words.length; i++) {
+				result.words[i] |= otherWords[i];
+				result.cardinality += Long.bitCount(result.words[i]);
+			}
+			return result;
+		}
+
+		@Override
+		Container copy() {
+			BitmapContainer copy = new BitmapContainer();
+			System.arraycopy(this.words, 0, copy.words, 0, this.words.length);
+			copy.cardinality = this.cardinality;
+			return copy;
+		}
+
+		@Override
+		int[] toRows(int high) {
+			int[] rows = new int[this.cardinality];
+			int count = 0;
+			for (int i = 0; i < this.words.length; i++) {
+				long word = this.words[i];
+				while (word != 0) {
+					rows[count++] = high | (i << 6) | Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+				}
+			}
+			return rows;
+		}
+
+		@Override
+		long sizeInBytes() {
+			return 32 + 8L * this.words.length;
+		}
+
+		/**
+		 * @return an array container of the same values
+		 */
+		ArrayContainer toArray() {
+			int[] rows = toRows(0);
+			char[] values = new char[rows.length];
+			for (int i = 0; i < rows.length; i++) {
+				values[i] = (char) rows[i];
+			}
+			return new ArrayContainer(values, values.length);
+		}
+	}
+}
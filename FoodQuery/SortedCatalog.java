@@ -0,0 +1,290 @@
+/**
+ * Filename:   SortedCatalog.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The food items of the catalog in ascending order by name, as a read-only
+ * list. Items with equal names stay in the order they were added.
+ *
+ * The items are kept in a B+ tree whose nodes count the entries below them, so
+ * adding or removing an item and reading the item at a position all take
+ * O(log n) instead of shifting an array. Each item is keyed by its name and a
+ * sequence number given when it is added, which makes every key unique and
+ * keeps items with equal names in insertion order. Like the tuples of
+ * CompositeIndex, each key is also its own value and carries its food item
+ * and row id.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class SortedCatalog extends AbstractList<FoodItem> {
+
+	// Branching factor of the tree
+	private static final int BRANCHING_FACTOR = 64;
+
+	// The food items by name, then by sequence number
+	private BPTree<Key, Key> tree;
+
+	// The key of each row, null for rows not in the catalog
+	private final List<Key> keysByRow;
+
+	// Sequence number given to the next item added
+	private long nextSequence;
+
+	/**
+	 * Public constructor for an empty catalog
+	 */
+	public SortedCatalog() {
+		this.tree = new BPTree<Key, Key>(BRANCHING_FACTOR);
+		this.keysByRow = new ArrayList<Key>();
+		this.nextSequence = 0;
+	}
+
+	/**
+	 * Private constructor for a copy that shares the other catalog's tree. The
+	 * copy must replace the tree before changing it, as addRows does.
+	 *
+	 * @param other
+	 *            the catalog to copy
+	 */
+	private SortedCatalog(SortedCatalog other) {
+		this.tree = other.tree;
+		this.keysByRow = new ArrayList<Key>(other.keysByRow);
+		this.nextSequence = other.nextSequence;
+	}
+
+	/**
+	 * Adds a food item after every item with a name less than or equal to its own
+	 *
+	 * @param row
+	 *            the row id of the food item
+	 * @param foodItem
+	 *            the food item to add
+	 */
+	public void addRow(int row, FoodItem foodItem) {
+		Key key = new Key(foodItem, row, this.nextSequence++);
+		setKey(row, key);
+		this.tree.insert(key, key);
+	}
+
+	/**
+	 * Adds a batch of food items. The batch is sorted on its own and then merged
+	 * with the catalog in one pass, and the tree is bulk loaded from the result,
+	 * so adding m items to n costs O(n + m log m) rather than m inserts.
+	 *
+	 * @param rows
+	 *            the row id of each food item
+	 * @param foodItems
+	 *            the food items to add, in the same order as rows
+	 */
+	public void addRows(int[] rows, List<FoodItem> foodItems) {
+		List<Key> batch = new ArrayList<Key>(foodItems.size());
+		for (int i = 0; i < foodItems.size(); i++) {
+			Key key = new Key(foodItems.get(i), rows[i], this.nextSequence++);
+			setKey(rows[i], key);
+			batch.add(key);
+		}
+
+		// the sequence numbers keep equal names in batch order
+		batch.sort(null);
+
+		// merge the sorted batch with the catalog, which is already in key order
+		List<Key> keys = new ArrayList<Key>(this.tree.size() + batch.size());
+		Iterator<Key> catalog = this.tree.rangeIterator(null, null);
+		int b = 0;
+		while (catalog.hasNext()) {
+			Key key = catalog.next();
+			while (b < batch.size() && batch.get(b).compareTo(key) < 0) {
+				keys.add(batch.get(b++));
+			}
+			keys.add(key);
+		}
+		keys.addAll(batch.subList(b, batch.size()));
+
+		BPTree<Key, Key> newTree = new BPTree<Key, Key>(BRANCHING_FACTOR);
+		newTree.bulkLoad(keys, keys);
+		this.tree = newTree;
+	}
+
+	/**
+	 * Makes a new catalog holding this catalog's food items plus a batch, merged
+	 * the same way as addRows, and leaves this catalog unchanged
+	 *
+	 * @param rows
+	 *            the row id of each food item
+	 * @param foodItems
+	 *            the food items to add, in the same order as rows
+	 * @return the new catalog
+	 */
+	public SortedCatalog withRows(int[] rows, List<FoodItem> foodItems) {
+		SortedCatalog copy = new SortedCatalog(this);
+		copy.addRows(rows, foodItems);
+		return copy;
+	}
+
+	/**
+	 * Removes the food item of a row
+	 *
+	 * @param row
+	 *            the row id of the food item
+	 * @return true if the food item was removed
+	 */
+	public boolean removeRow(int row) {
+		Key key = row < this.keysByRow.size() ? this.keysByRow.set(row, null) : null;
+		return key != null && this.tree.remove(key, key);
+	}
+
+	/**
+	 * Replaces the food item of a row. An item with the same name keeps its
+	 * position, a renamed item moves after every item with a name less than or
+	 * equal to its new one.
+	 *
+	 * @param row
+	 *            the row id of the food item
+	 * @param foodItem
+	 *            the new version of the food item
+	 */
+	public void replaceRow(int row, FoodItem foodItem) {
+		Key key = this.keysByRow.get(row);
+		if (key != null && key.name.equals(foodItem.getName())) {
+			Key newKey = new Key(foodItem, row, key.sequence);
+			this.tree.remove(key, key);
+			this.tree.insert(newKey, newKey);
+			setKey(row, newKey);
+		} else {
+			removeRow(row);
+			addRow(row, foodItem);
+		}
+	}
+
+	/**
+	 * Gets the food item at a position in name order
+	 *
+	 * @param index
+	 *            position of the food item, counting from 0
+	 * @return the food item
+	 * @throws IndexOutOfBoundsException
+	 *             if index is not in [0, size())
+	 */
+	@Override
+	public FoodItem get(int index) {
+		return this.tree.select(index).foodItem;
+	}
+
+	/**
+	 * @return the number of food items in the catalog
+	 */
+	@Override
+	public int size() {
+		return this.tree.size();
+	}
+
+	/**
+	 * Iterates over the food items in name order along the leaf chain, so a full
+	 * pass costs O(n) rather than n selects
+	 *
+	 * @return iterator over the food items
+	 */
+	@Override
+	public Iterator<FoodItem> iterator() {
+		Iterator<Key> keys = this.tree.rangeIterator(null, null);
+		return new Iterator<FoodItem>() {
+			@Override
+			public boolean hasNext() {
+				return keys.hasNext();
+			}
+
+			@Override
+			public FoodItem next() {
+				return keys.next().foodItem;
+			}
+		};
+	}
+
+	/**
+	 * Gets the row id of every food item in name order, along the leaf chain
+	 *
+	 * @return the row ids in name order
+	 */
+	public int[] toRowArray() {
+		int[] rows = new int[this.tree.size()];
+		Iterator<Key> keys = this.tree.rangeIterator(null, null);
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = keys.next().row;
+		}
+		return rows;
+	}
+
+	/**
+	 * Remembers the key of a row
+	 */
+	private void setKey(int row, Key key) {
+		while (this.keysByRow.size() <= row) {
+			this.keysByRow.add(null);
+		}
+		this.keysByRow.set(row, key);
+	}
+
+	/**
+	 * The position of a food item: its name, then the order it was added in.
+	 * Keys are only equal to themselves.
+	 */
+	private static class Key implements Comparable<Key> {
+
+		// the food item
+		final FoodItem foodItem;
+
+		// the name of the food item
+		final String name;
+
+		// the row id of the food item
+		final int row;
+
+		// sequence number given when the item was added
+		final long sequence;
+
+		/**
+		 * Package constructor
+		 */
+		Key(FoodItem foodItem, int row, long sequence) {
+			this.foodItem = foodItem;
+			this.name = foodItem.getName();
+			this.row = row;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Key other) {
+			int byName = this.name.compareTo(other.name);
+			return byName != 0 ? byName : Long.compare(this.sequence, other.sequence);
+		}
+
+		/**
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return this.name + "#" + this.sequence;
+		}
+	}
+}
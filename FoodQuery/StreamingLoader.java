@@ -0,0 +1,584 @@
+/**
+ * Filename:   StreamingLoader.java
+ * Project:    Meal Planner
+ * Authors:    Aaron Hernandez 001, Henry Koenig 001, Xiao Fei 001
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400
+ *
+ * Due Date:   Dec 12th
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       N/A
+ */
+
+package application;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads a food item file that may be larger than the heap into an
+ * OnDiskCatalog, the external sort way. The file is parsed one block at a
+ * time, each food item is appended to a row file as soon as its line is read,
+ * and its 5 nutrient values go into in-memory runs of (value, row id) pairs.
+ * Full runs are sorted and spilled to temporary files on a background thread,
+ * and once the file is read the runs of each nutrient are k-way merged
+ * straight into a MappedBPTree.
+ *
+ * Memory does not grow with the file: at most SPILL_BUFFERS sets of runs
+ * exist at once, and when the disk falls behind the parser waits for a set to
+ * come back before reading on. A merge reads at most MAX_MERGE_WIDTH runs at
+ * a time through fixed-size buffers, merging in several passes if there are
+ * more runs than that.
+ *
+ * As with loadFoodItems, reading stops at the first empty line, or the first
+ * line without an id.
+ *
+ * @author Aaron Hernandez
+ * @author Xiao Fei
+ * @author Henry Koenig
+ */
+public class StreamingLoader {
+
+	// Pairs in each run when none is given, 12 bytes each per nutrient
+	public static final int DEFAULT_RUN_SIZE = 256 * 1024;
+
+	// Sets of runs that exist at once, one being filled and the rest spilling
+	private static final int SPILL_BUFFERS = 3;
+
+	// Most runs merged in one pass
+	private static final int MAX_MERGE_WIDTH = 64;
+
+	// Bytes buffered for each run file read or written
+	private static final int RUN_BUFFER_BYTES = 64 * 1024;
+
+	// Branching factor of the on-disk indexes
+	private static final int INDEX_BRANCHING_FACTOR = 64;
+
+	// Directory the temporary runs are written to
+	private final File tempDirectory;
+
+	// Pairs in each run
+	private final int runSize;
+
+	/**
+	 * Public constructor for a loader that spills to the system temp directory
+	 */
+	public StreamingLoader() {
+		this(new File(System.getProperty("java.io.tmpdir")), DEFAULT_RUN_SIZE);
+	}
+
+	/**
+	 * Public constructor
+	 *
+	 * @param tempDirectory
+	 *            directory the temporary runs are written to
+	 * @param runSize
+	 *            pairs in each run, which bounds the memory used
+	 */
+	public StreamingLoader(File tempDirectory, int runSize) {
+		if (runSize < 1) {
+			throw new IllegalArgumentException("Illegal run size: " + runSize);
+		}
+		this.tempDirectory = tempDirectory;
+		this.runSize = runSize;
+	}
+
+	/**
+	 * Loads a food item file into a catalog directory, replacing any catalog
+	 * already in it
+	 *
+	 * @param file
+	 *            the food item file
+	 * @param directory
+	 *            the directory the catalog is written to, created if missing
+	 * @return the catalog, open for reading
+	 * @throws IOException
+	 *             if the file cannot be read or the catalog cannot be written
+	 */
+	public OnDiskCatalog load(File file, File directory) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory: " + directory);
+		}
+		File runDirectory = Files.createTempDirectory(this.tempDirectory.toPath(), "ingest").toFile();
+		try {
+			Spiller spiller = new Spiller(runDirectory);
+			int rowCount;
+			try (InputStream in = new FileInputStream(file)) {
+				rowCount = spiller.read(in, directory);
+			} finally {
+				spiller.finish();
+			}
+
+			// merge the runs of each nutrient into its index
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				List<File> runs = spiller.runs.get(nutrient.ordinal());
+				runs = mergeDown(runs, runDirectory, nutrient);
+				try (RunMerger merger = new RunMerger(runs)) {
+					MappedBPTree.write(OnDiskCatalog.indexFile(directory, nutrient), rowCount, merger,
+							INDEX_BRANCHING_FACTOR);
+				}
+				for (File run : runs) {
+					run.delete();
+				}
+			}
+			return OnDiskCatalog.open(directory);
+		} finally {
+			File[] leftovers = runDirectory.listFiles();
+			if (leftovers != null) {
+				for (File run : leftovers) {
+					run.delete();
+				}
+			}
+			runDirectory.delete();
+		}
+	}
+
+	/**
+	 * Merges groups of runs into longer runs until few enough are left for one
+	 * final merge. Groups are of consecutive runs, so pairs with equal values
+	 * stay in row order.
+	 *
+	 * @return the runs left
+	 */
+	private static List<File> mergeDown(List<File> runs, File runDirectory, Nutrient nutrient) throws IOException {
+		int pass = 0;
+		while (runs.size() > MAX_MERGE_WIDTH) {
+			List<File> merged = new ArrayList<File>();
+			for (int from = 0; from < runs.size(); from += MAX_MERGE_WIDTH) {
+				List<File> group = runs.subList(from, Math.min(runs.size(), from + MAX_MERGE_WIDTH));
+				File run = new File(runDirectory, nutrient.getName() + "-" + pass + "-" + merged.size() + ".run");
+				try (RunMerger merger = new RunMerger(group);
+						DataOutputStream out = new DataOutputStream(
+								new BufferedOutputStream(new FileOutputStream(run), RUN_BUFFER_BYTES))) {
+					while (merger.advance()) {
+						out.writeDouble(merger.key());
+						out.writeInt(merger.row());
+					}
+				}
+				for (File done : group) {
+					done.delete();
+				}
+				merged.add(run);
+			}
+			runs = merged;
+			pass++;
+		}
+		return runs;
+	}
+
+	/**
+	 * The (value, row id) pairs of each nutrient for up to runSize rows
+	 */
+	private static class RunBuffers {
+
+		// values of each nutrient, by ordinal
+		final double[][] keys;
+
+		// row id of each value, by ordinal
+		final int[][] rows;
+
+		// pairs held for each nutrient
+		int size;
+
+		/**
+		 * Package constructor
+		 */
+		RunBuffers(int runSize) {
+			this.keys = new double[Nutrient.VALUES.length][runSize];
+			this.rows = new int[Nutrient.VALUES.length][runSize];
+		}
+	}
+
+	/**
+	 * Writes the rows as they are parsed and spills the full runs on a
+	 * background thread
+	 */
+	private class Spiller {
+
+		// directory the runs are written to
+		final File runDirectory;
+
+		// run files of each nutrient in row order, by ordinal
+		final List<List<File>> runs;
+
+		// sets of runs ready to be filled, taking one waits for a spill to finish
+		final BlockingQueue<RunBuffers> free;
+
+		// the thread the runs are spilled on
+		final ExecutorService executor;
+
+		// spills handed to the executor, checked for errors
+		final List<Future<?>> spills;
+
+		// the set of runs being filled
+		RunBuffers current;
+
+		// sets of runs made so far
+		int created;
+
+		/**
+		 * Package constructor
+		 */
+		Spiller(File runDirectory) {
+			this.runDirectory = runDirectory;
+			this.runs = new ArrayList<List<File>>();
+			for (int i = 0; i < Nutrient.VALUES.length; i++) {
+				this.runs.add(new ArrayList<File>());
+			}
+			this.free = new ArrayBlockingQueue<RunBuffers>(SPILL_BUFFERS);
+			this.executor = Executors.newSingleThreadExecutor();
+			this.spills = new ArrayList<Future<?>>();
+		}
+
+		/**
+		 * Reads every food item of a stream, writing it to the row file and adding
+		 * its values to the runs
+		 *
+		 * @return the number of rows read
+		 */
+		int read(InputStream in, File directory) throws IOException {
+			this.current = nextBuffers();
+			int[] rowCount = new int[1];
+			try (RowWriter rows = new RowWriter(directory)) {
+				new FoodRecordParser().parse(in, foodItem -> {
+					try {
+						int row = rows.write(foodItem);
+						add(row, foodItem);
+						rowCount[0] = row + 1;
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+
+			// the last run may be partly full, every nutrient gets at least one run
+			if (this.current.size > 0 || this.spills.isEmpty()) {
+				spill();
+			}
+			return rowCount[0];
+		}
+
+		/**
+		 * Adds the values of a row to the runs, spilling them once full
+		 */
+		private void add(int row, FoodItem foodItem) throws IOException {
+			RunBuffers buffers = this.current;
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				buffers.keys[nutrient.ordinal()][buffers.size] = foodItem.getNutrientValue(nutrient);
+				buffers.rows[nutrient.ordinal()][buffers.size] = row;
+			}
+			buffers.size++;
+			if (buffers.size == buffers.keys[0].length) {
+				spill();
+				this.current = nextBuffers();
+			}
+		}
+
+		/**
+		 * Gets an empty set of runs, waiting if every set is still spilling. This
+		 * is what holds the parser back when the disk cannot keep up.
+		 */
+		private RunBuffers nextBuffers() throws IOException {
+			RunBuffers buffers = this.free.poll();
+			if (buffers != null) {
+				return buffers;
+			}
+			if (this.created < SPILL_BUFFERS) {
+				this.created++;
+				return new RunBuffers(StreamingLoader.this.runSize);
+			}
+			try {
+				return this.free.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for a run to spill");
+			}
+		}
+
+		/**
+		 * Hands the current set of runs to the spill thread
+		 */
+		private void spill() throws IOException {
+			RunBuffers buffers = this.current;
+			int index = this.spills.size();
+			File[] files = new File[Nutrient.VALUES.length];
+			for (Nutrient nutrient : Nutrient.VALUES) {
+				files[nutrient.ordinal()] = new File(this.runDirectory, nutrient.getName() + "-" + index + ".run");
+				this.runs.get(nutrient.ordinal()).add(files[nutrient.ordinal()]);
+			}
+			this.spills.add(this.executor.submit(() -> {
+				try {
+					for (Nutrient nutrient : Nutrient.VALUES) {
+						writeRun(files[nutrient.ordinal()], buffers.keys[nutrient.ordinal()],
+								buffers.rows[nutrient.ordinal()], buffers.size);
+					}
+				} finally {
+					buffers.size = 0;
+					this.free.offer(buffers);
+				}
+				return null;
+			}));
+			this.current = null;
+
+			// fail early instead of parsing on after a spill went wrong
+			Future<?> first = this.spills.get(0);
+			if (first.isDone()) {
+				check(first);
+			}
+		}
+
+		/**
+		 * Waits for every spill to finish and stops the spill thread
+		 */
+		void finish() throws IOException {
+			this.executor.shutdown();
+			for (Future<?> spill : this.spills) {
+				check(spill);
+			}
+		}
+
+		/**
+		 * Waits for a spill and rethrows its error, if any
+		 */
+		private void check(Future<?> spill) throws IOException {
+			try {
+				spill.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for a run to spill");
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException("Could not spill a run", e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Sorts the first size pairs of a run by value and writes them to a file.
+	 * The sort is stable, so pairs with equal values stay in row order.
+	 */
+	private static void writeRun(File file, double[] keys, int[] rows, int size) throws IOException {
+		double[] runKeys = keys;
+		int[] runRows = rows;
+		if (size < keys.length) {
+			runKeys = Arrays.copyOf(keys, size);
+			runRows = Arrays.copyOf(rows, size);
+		}
+		DoubleBPTree.sortByKey(runKeys, runRows);
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file), RUN_BUFFER_BYTES))) {
+			for (int i = 0; i < size; i++) {
+				out.writeDouble(runKeys[i]);
+				out.writeInt(runRows[i]);
+			}
+		}
+	}
+
+	/**
+	 * Appends food items to the row file of a catalog, and the offset of each to
+	 * the offset file
+	 */
+	private static class RowWriter implements Closeable {
+
+		// the food items
+		final DataOutputStream rows;
+
+		// the food item being written, so its length is known
+		final ByteArrayOutputStream record;
+		final DataOutputStream recordOut;
+
+		// where each food item starts in the row file, then where the file ends
+		final DataOutputStream offsets;
+
+		// number of rows written
+		int count;
+
+		// bytes written to the row file
+		long position;
+
+		/**
+		 * Package constructor
+		 */
+		RowWriter(File directory) throws IOException {
+			this.rows = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(OnDiskCatalog.rowFile(directory)), RUN_BUFFER_BYTES));
+			this.offsets = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(OnDiskCatalog.offsetFile(directory)), RUN_BUFFER_BYTES));
+			this.record = new ByteArrayOutputStream();
+			this.recordOut = new DataOutputStream(this.record);
+		}
+
+		/**
+		 * Writes a food item
+		 *
+		 * @return the row id of the food item
+		 */
+		int write(FoodItem foodItem) throws IOException {
+			if (this.count == Integer.MAX_VALUE) {
+				throw new IOException("Too many rows for one catalog");
+			}
+			this.offsets.writeLong(this.position);
+			this.record.reset();
+			OnDiskCatalog.writeRow(this.recordOut, foodItem);
+			this.record.writeTo(this.rows);
+			this.position += this.record.size();
+			return this.count++;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				this.offsets.writeLong(this.position);
+				this.offsets.close();
+			} finally {
+				this.rows.close();
+			}
+		}
+	}
+
+	/**
+	 * Merges sorted run files into one sorted stream of pairs. Pairs with equal
+	 * values come out in the order of their runs, which is row order.
+	 */
+	private static class RunMerger implements MappedBPTree.PairStream, Closeable {
+
+		// the runs not yet used up, smallest head first
+		final PriorityQueue<RunReader> heads;
+
+		// every run, to close them
+		final List<RunReader> readers;
+
+		// the current pair
+		double key;
+		int row;
+
+		/**
+		 * Package constructor
+		 */
+		RunMerger(List<File> runs) throws IOException {
+			this.heads = new PriorityQueue<RunReader>(Math.max(1, runs.size()), (a, b) -> {
+				if (a.key < b.key) {
+					return -1;
+				}
+				if (a.key > b.key) {
+					return 1;
+				}
+				return Integer.compare(a.index, b.index);
+			});
+			this.readers = new ArrayList<RunReader>();
+			try {
+				for (File run : runs) {
+					RunReader reader = new RunReader(run, this.readers.size());
+					this.readers.add(reader);
+					if (reader.advance()) {
+						this.heads.add(reader);
+					}
+				}
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		@Override
+		public boolean advance() throws IOException {
+			RunReader head = this.heads.poll();
+			if (head == null) {
+				return false;
+			}
+			this.key = head.key;
+			this.row = head.row;
+			if (head.advance()) {
+				this.heads.add(head);
+			}
+			return true;
+		}
+
+		@Override
+		public double key() {
+			return this.key;
+		}
+
+		@Override
+		public int row() {
+			return this.row;
+		}
+
+		@Override
+		public void close() throws IOException {
+			for (RunReader reader : this.readers) {
+				reader.in.close();
+			}
+		}
+	}
+
+	/**
+	 * Reads the pairs of one run file in order
+	 */
+	private static class RunReader {
+
+		// the run file
+		final DataInputStream in;
+
+		// position of the run among those being merged
+		final int index;
+
+		// the current pair
+		double key;
+		int row;
+
+		/**
+		 * Package constructor
+		 */
+		RunReader(File run, int index) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), RUN_BUFFER_BYTES));
+			this.index = index;
+		}
+
+		/**
+		 * Reads the next pair
+		 *
+		 * @return false if the run is used up
+		 */
+		boolean advance() throws IOException {
+			try {
+				this.key = this.in.readDouble();
+			} catch (EOFException e) {
+				return false;
+			}
+			this.row = this.in.readInt();
+			return true;
+		}
+	}
+}